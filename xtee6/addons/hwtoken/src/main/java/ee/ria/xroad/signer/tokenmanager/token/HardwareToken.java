@@ -22,11 +22,21 @@
  */
 package ee.ria.xroad.signer.tokenmanager.token;
 
+import static ee.ria.xroad.signer.protocol.ComponentNames.TOKEN_SIGN_WORKER;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import akka.actor.ActorRef;
 import akka.actor.Props;
+import akka.routing.RoundRobinPool;
 import ee.ria.xroad.signer.protocol.dto.TokenInfo;
+import iaik.pkcs.pkcs11.objects.RSAPrivateKey;
 
 /**
- * Hardware token.
+ * Hardware token. If the module is configured with a sign session pool,
+ * signatures are calculated by a pool of sign workers, each using its own
+ * PKCS#11 session, while key management is handled by the token worker.
  */
 public class HardwareToken extends AbstractToken {
 
@@ -34,6 +44,11 @@ public class HardwareToken extends AbstractToken {
 
     private final HardwareTokenType tokenType;
 
+    private final Map<String, RSAPrivateKey> privateKeys =
+            new ConcurrentHashMap<>();
+
+    private ActorRef signWorkers;
+
     /**
      * @param tokenInfo the token info
      * @param tokenType the token type
@@ -44,15 +59,52 @@ public class HardwareToken extends AbstractToken {
         this.tokenType = tokenType;
     }
 
+    @Override
+    public void preStart() throws Exception {
+        super.preStart();
+
+        if (isSignSessionPoolUsed()) {
+            signWorkers = createWatchedActor(createSignWorkers(),
+                    TOKEN_SIGN_WORKER);
+        }
+    }
+
+    @Override
+    public void postStop() throws Exception {
+        if (signWorkers != null) {
+            stopWatchedActor(signWorkers);
+        }
+
+        super.postStop();
+    }
+
     @Override
     protected Props createSigner() {
+        if (isSignSessionPoolUsed()) {
+            return Props.create(TokenSigner.class, TOKEN_SIGN_WORKER);
+        }
+
         return Props.create(TokenSigner.class);
     }
 
     @Override
     protected Props createWorker() {
         return Props.create(HardwareTokenWorker.class,
-                tokenInfo, tokenType).withDispatcher(DISPATCHER);
+                tokenInfo, tokenType, privateKeys).withDispatcher(DISPATCHER);
+    }
+
+    private Props createSignWorkers() {
+        return new RoundRobinPool(tokenType.getSignSessionPoolSize()).props(
+                Props.create(HardwareTokenSignWorker.class,
+                        tokenInfo, tokenType, privateKeys, worker)
+                        .withDispatcher(DISPATCHER));
+    }
+
+    private boolean isSignSessionPoolUsed() {
+        // Signing with PIN verification needs to log in and out of the token,
+        // which cannot be done in parallel with other sessions
+        return tokenType.getSignSessionPoolSize() > 1
+                && !tokenType.isPinVerificationPerSigning();
     }
 
 }
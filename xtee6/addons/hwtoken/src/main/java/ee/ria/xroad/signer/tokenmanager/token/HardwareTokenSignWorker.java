@@ -0,0 +1,181 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager.token;
+
+import static ee.ria.xroad.common.ErrorCodes.X_CANNOT_SIGN;
+import static ee.ria.xroad.signer.tokenmanager.TokenManager.isKeyAvailable;
+import static ee.ria.xroad.signer.tokenmanager.TokenManager.isTokenActive;
+import static ee.ria.xroad.signer.tokenmanager.token.HardwareTokenWorker.SIGN_MECHANISM;
+import static ee.ria.xroad.signer.util.ExceptionHelper.keyNotAvailable;
+import static ee.ria.xroad.signer.util.ExceptionHelper.tokenNotActive;
+import static iaik.pkcs.pkcs11.Token.SessionType.SERIAL_SESSION;
+
+import java.util.Map;
+
+import akka.actor.ActorRef;
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.ErrorCodes;
+import ee.ria.xroad.signer.protocol.dto.TokenInfo;
+import ee.ria.xroad.signer.util.AbstractSignerActor;
+import ee.ria.xroad.signer.util.CalculateSignature;
+import ee.ria.xroad.signer.util.CalculatedSignature;
+import ee.ria.xroad.signer.util.SignerUtil;
+import iaik.pkcs.pkcs11.Session;
+import iaik.pkcs.pkcs11.TokenException;
+import iaik.pkcs.pkcs11.objects.RSAPrivateKey;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Exception;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Calculates signatures with the private keys found by the hardware token
+ * worker, using a PKCS#11 session of its own. The login state of a token
+ * is shared by all sessions of the signer, so logging in and out through the
+ * token worker applies to the sign workers as well.
+ *
+ * A session that fails is closed and a new one is opened for the next
+ * signing request.
+ */
+@Slf4j
+public class HardwareTokenSignWorker extends AbstractSignerActor {
+
+    private final String tokenId;
+
+    private final String workerId;
+
+    private final HardwareTokenType tokenType;
+
+    private final Map<String, RSAPrivateKey> privateKeys;
+
+    private final ActorRef tokenWorker;
+
+    private Session session;
+
+    /**
+     * Creates new sign worker.
+     * @param tokenInfo the token info
+     * @param tokenType the token type
+     * @param privateKeys the private keys found by the token worker
+     * @param tokenWorker the token worker that finds the private keys
+     */
+    public HardwareTokenSignWorker(TokenInfo tokenInfo,
+            HardwareTokenType tokenType,
+            Map<String, RSAPrivateKey> privateKeys, ActorRef tokenWorker) {
+        this.tokenId = tokenInfo.getId();
+        this.workerId = SignerUtil.getWorkerId(tokenInfo);
+        this.tokenType = tokenType;
+        this.privateKeys = privateKeys;
+        this.tokenWorker = tokenWorker;
+    }
+
+    @Override
+    public void postStop() throws Exception {
+        closeSession();
+    }
+
+    @Override
+    public void onReceive(Object message) throws Exception {
+        if (message instanceof CalculateSignature) {
+            handleCalculateSignature((CalculateSignature) message);
+        } else {
+            unhandled(message);
+        }
+    }
+
+    private void handleCalculateSignature(CalculateSignature signRequest) {
+        String keyId = signRequest.getKeyId();
+
+        try {
+            if (!isTokenActive(tokenId)) {
+                throw tokenNotActive(tokenId);
+            }
+
+            if (!isKeyAvailable(keyId)) {
+                throw keyNotAvailable(keyId);
+            }
+
+            RSAPrivateKey key = privateKeys.get(keyId);
+            if (key == null) {
+                // The keys may be reloading, let the token worker handle it
+                tokenWorker.forward(signRequest, getContext());
+                return;
+            }
+
+            log.debug("Signing with key '{}'", keyId);
+
+            byte[] signature = sign(key, signRequest.getData());
+            sendResponse(new CalculatedSignature(signRequest, signature, null));
+        } catch (Exception e) { // catch-log-rethrow
+            log.error("Error while signing with key '{}'", keyId, e);
+            CodedException tr = translateError(
+                    customizeException(e)).withPrefix(X_CANNOT_SIGN);
+            sendResponse(new CalculatedSignature(signRequest, null, tr));
+        }
+    }
+
+    private static Exception customizeException(Exception e) {
+        if (e instanceof PKCS11Exception) {
+            // See HardwareTokenWorker#customizeException
+            return new Exception(e.getMessage());
+        }
+
+        return e;
+    }
+
+    private byte[] sign(RSAPrivateKey key, byte[] data) throws Exception {
+        Session signSession = getSession();
+        try {
+            signSession.signInit(SIGN_MECHANISM, key);
+            return signSession.sign(data);
+        } catch (TokenException e) {
+            log.warn("Signing failed on token '{}', closing session", workerId);
+            closeSession();
+            throw e;
+        }
+    }
+
+    private Session getSession() throws Exception {
+        if (session == null) {
+            if (tokenType.getToken() == null) {
+                throw new CodedException(ErrorCodes.X_INTERNAL_ERROR,
+                        "No active session on token %s", tokenId);
+            }
+
+            session = tokenType.getToken().openSession(SERIAL_SESSION,
+                    false, null, null);
+        }
+
+        return session;
+    }
+
+    private void closeSession() {
+        if (session != null) {
+            try {
+                session.closeSession();
+            } catch (Exception e) {
+                log.warn("Failed to close session on token '{}'", workerId, e);
+            } finally {
+                session = null;
+            }
+        }
+    }
+}
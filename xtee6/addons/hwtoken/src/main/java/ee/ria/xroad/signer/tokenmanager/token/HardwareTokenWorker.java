@@ -69,7 +69,7 @@ import static iaik.pkcs.pkcs11.Token.SessionType.SERIAL_SESSION;
 @Slf4j
 public class HardwareTokenWorker extends AbstractTokenWorker {
 
-    private static final Mechanism SIGN_MECHANISM =
+    static final Mechanism SIGN_MECHANISM =
             Mechanism.get(PKCS11Constants.CKM_RSA_PKCS);
 
     private static final Mechanism KEYGEN_MECHANISM =
@@ -77,8 +77,8 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
 
     private final HardwareTokenType tokenType;
 
-    // maps key id (hex) to RSAPrivateKey
-    private final Map<String, RSAPrivateKey> privateKeys = new HashMap<>();
+    // maps key id (hex) to RSAPrivateKey, shared with the sign workers
+    private final Map<String, RSAPrivateKey> privateKeys;
     private final Map<String, List<X509PublicKeyCertificate>> certs =
             new HashMap<>();
 
@@ -87,12 +87,16 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
     /**
      * @param tokenInfo the token info
      * @param tokenType the token type
+     * @param privateKeys the private keys found on the token, shared with
+     * the sign workers of the token
      */
     public HardwareTokenWorker(TokenInfo tokenInfo,
-            HardwareTokenType tokenType) {
+            HardwareTokenType tokenType,
+            Map<String, RSAPrivateKey> privateKeys) {
         super(tokenInfo);
 
         this.tokenType = tokenType;
+        this.privateKeys = privateKeys;
     }
 
     @Override
@@ -23,13 +23,14 @@
 package ee.ria.xroad.proxy.serverproxy;
 
 import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.conf.serverconf.ServerConf;
 import ee.ria.xroad.common.conf.serverconf.ServerConfDatabaseCtx;
 import ee.ria.xroad.common.conf.serverconf.dao.WsdlDAOImpl;
 import ee.ria.xroad.common.conf.serverconf.model.WsdlType;
+import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.ServiceId;
 import ee.ria.xroad.common.message.*;
-import ee.ria.xroad.common.message.SoapUtils.SOAPCallback;
 import ee.ria.xroad.common.metadata.MethodListType;
 import ee.ria.xroad.common.metadata.ObjectFactory;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
@@ -39,25 +40,16 @@ import ee.ria.xroad.proxy.protocol.ProxyMessage;
 import lombok.extern.slf4j.Slf4j;
 import lombok.SneakyThrows;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.http.HttpResponse;
-import org.apache.http.HttpStatus;
-import org.apache.http.StatusLine;
 import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.protocol.BasicHttpContext;
-import org.apache.http.protocol.HttpContext;
-import org.w3c.dom.Node;
 
 import javax.xml.bind.*;
-import javax.xml.soap.SOAPMessage;
 import javax.servlet.http.HttpServletRequest;
 import java.io.*;
-import java.net.URI;
-import java.net.URISyntaxException;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INVALID_REQUEST;
-import static ee.ria.xroad.common.ErrorCodes.X_UNKNOWN_SERVICE;
 import static ee.ria.xroad.common.metadata.MetadataRequests.*;
 
 @Slf4j
@@ -66,14 +58,36 @@ class MetadataServiceHandlerImpl implements ServiceHandler {
     static final JAXBContext JAXB_CTX = initJaxbCtx();
     static final ObjectFactory OBJECT_FACTORY = new ObjectFactory();
 
+    // Upper limit for the number of cached method lists
+    private static final long METHOD_LIST_CACHE_MAX_SIZE = 10000;
+
+    // Stands for the method list in the rendered response envelope
+    private static final String METHOD_LIST_PLACEHOLDER = "METHOD_LIST";
+
+    // Method lists are cached for the same period as other server conf
+    // lookups, so that changes in services and access rights show up
+    // within that period
+    private static final MethodListCache METHOD_LIST_CACHE =
+            new MethodListCache(SystemProperties.getServerConfCachePeriod(),
+                    METHOD_LIST_CACHE_MAX_SIZE);
+
+    // Upper limit for the total size of the cached WSDLs
+    private static final long WSDL_CACHE_MAX_SIZE = 16 * 1024 * 1024;
+
+    private static final HttpClientCreator WSDL_HTTP_CLIENT_CREATOR =
+            new HttpClientCreator();
+
+    private static final WsdlCache WSDL_CACHE = new WsdlCache(
+            WSDL_CACHE_MAX_SIZE,
+            MetadataServiceHandlerImpl::getWsdlHttpClient,
+            System::currentTimeMillis);
+
     private final ByteArrayOutputStream responseOut =
             new ByteArrayOutputStream();
 
     private SoapMessageImpl requestMessage;
     private SoapMessageEncoder responseEncoder;
 
-    private HttpClientCreator wsdlHttpClientCreator = new HttpClientCreator();
-
     @Override
     public boolean shouldVerifyAccess() {
         return false;
@@ -162,29 +176,31 @@ class MetadataServiceHandlerImpl implements ServiceHandler {
     private void handleListMethods(SoapMessageImpl request) throws Exception {
         log.trace("handleListMethods()");
 
-        MethodListType methodList = OBJECT_FACTORY.createMethodListType();
-        methodList.getService().addAll(
-                ServerConf.getAllServices(
-                        request.getService().getClientId()));
+        ClientId serviceProvider = request.getService().getClientId();
 
-        SoapMessageImpl result = createMethodListResponse(request,
-                OBJECT_FACTORY.createListMethodsResponse(methodList));
-        responseEncoder.soap(result, new HashMap<>());
+        String methodList = METHOD_LIST_CACHE.get(
+                LIST_METHODS, serviceProvider, null,
+                () -> renderMethodList(OBJECT_FACTORY.createListMethodsResponse(
+                        createMethodList(
+                                ServerConf.getAllServices(serviceProvider)))));
+
+        writeMethodListResponse(request, methodList);
     }
 
     private void handleAllowedMethods(SoapMessageImpl request)
             throws Exception {
         log.trace("handleAllowedMethods()");
 
-        MethodListType methodList = OBJECT_FACTORY.createMethodListType();
-        methodList.getService().addAll(
-                ServerConf.getAllowedServices(
-                        request.getService().getClientId(),
-                        request.getClient()));
-
-        SoapMessageImpl result = createMethodListResponse(request,
-                OBJECT_FACTORY.createAllowedMethodsResponse(methodList));
-        responseEncoder.soap(result, new HashMap<>());
+        ClientId serviceProvider = request.getService().getClientId();
+        ClientId client = request.getClient();
+
+        String methodList = METHOD_LIST_CACHE.get(
+                ALLOWED_METHODS, serviceProvider, client,
+                () -> renderMethodList(OBJECT_FACTORY.createAllowedMethodsResponse(
+                        createMethodList(ServerConf.getAllowedServices(
+                                serviceProvider, client)))));
+
+        writeMethodListResponse(request, methodList);
     }
 
     private void handleGetWsdl(SoapMessageImpl request) throws Exception {
@@ -202,19 +218,11 @@ class MetadataServiceHandlerImpl implements ServiceHandler {
         }
 
         ServiceId serviceId = requestData.toServiceId(request.getService().getClientId());
-        String url = getWsdlUrl(serviceId);
-        if (url == null) {
-            throw new CodedException(X_UNKNOWN_SERVICE,
-                    "Could not find wsdl URL for service %s",
-                    requestData.toServiceId(
-                            request.getService().getClientId()));
-        }
+        byte[] wsdl = getWsdl(serviceId);
 
-        log.info("Downloading WSDL from URL: {}", url);
-        try (InputStream in = getWsdl(url, serviceId)) {
-            responseEncoder.soap(SoapUtils.toResponse(request), new HashMap<>());
-            responseEncoder.attachment(MimeTypes.TEXT_XML, in, null);
-        }
+        responseEncoder.soap(SoapUtils.toResponse(request), new HashMap<>());
+        responseEncoder.attachment(MimeTypes.TEXT_XML,
+                new ByteArrayInputStream(wsdl), null);
     }
 
     // ------------------------------------------------------------------------
@@ -226,26 +234,47 @@ class MetadataServiceHandlerImpl implements ServiceHandler {
         });
     }
 
-    private static SoapMessageImpl createMethodListResponse(
-            SoapMessageImpl requestMessage,
-            final JAXBElement<MethodListType> methodList) throws Exception {
-        SoapMessageImpl responseMessage = SoapUtils.toResponse(requestMessage,
-                new SOAPCallback() {
-            @Override
-            public void call(SOAPMessage soap) throws Exception {
-                soap.getSOAPBody().removeContents();
-                marshal(methodList, soap.getSOAPBody());
-            }
-        });
-
-        return responseMessage;
+    private static MethodListType createMethodList(List<ServiceId> services) {
+        MethodListType methodList = OBJECT_FACTORY.createMethodListType();
+        methodList.getService().addAll(services);
+        return methodList;
     }
 
-    private static void marshal(Object object, Node out) throws Exception {
+    private static String renderMethodList(
+            JAXBElement<MethodListType> methodList) throws Exception {
         Marshaller marshaller = JAXB_CTX.createMarshaller();
         marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
         marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
-        marshaller.marshal(object, out);
+
+        StringWriter out = new StringWriter();
+        marshaller.marshal(methodList, out);
+        return out.toString();
+    }
+
+    private void writeMethodListResponse(SoapMessageImpl request,
+            String methodList) throws Exception {
+        responseOut.write(renderMethodListResponse(request, methodList));
+    }
+
+    /**
+     * Renders the response envelope from the request and inserts the
+     * rendered method list into the body.
+     */
+    static byte[] renderMethodListResponse(SoapMessageImpl request,
+            String methodList) throws Exception {
+        SoapMessageImpl response = SoapUtils.toResponse(request, soap -> {
+            soap.getSOAPBody().removeContents();
+            soap.getSOAPBody().addTextNode(METHOD_LIST_PLACEHOLDER);
+        });
+
+        // The body is the last element, so the placeholder cannot be
+        // confused with header content
+        String xml = response.getXml();
+        int index = xml.lastIndexOf(METHOD_LIST_PLACEHOLDER);
+
+        return (xml.substring(0, index) + methodList
+                + xml.substring(index + METHOD_LIST_PLACEHOLDER.length()))
+                        .getBytes(response.getCharset());
     }
 
     private static JAXBContext initJaxbCtx() {
@@ -256,25 +285,15 @@ class MetadataServiceHandlerImpl implements ServiceHandler {
         }
     }
 
-    private InputStream getWsdl(String url, ServiceId serviceId)
-            throws HttpClientCreator.HttpClientCreatorException, URISyntaxException, IOException {
-
-        HttpClient client = wsdlHttpClientCreator.getHttpClient();
-
-        HttpContext httpContext = new BasicHttpContext();
-
-        // ServerMessageProcessor uses the same method to pass the ServiceId to CustomSSLSocketFactory
-        httpContext.setAttribute(ServiceId.class.getName(), serviceId);
+    private byte[] getWsdl(ServiceId serviceId) throws Exception {
+        long maxAge = TimeUnit.SECONDS.toMillis(
+                SystemProperties.getServerProxyWsdlCacheMaxAge());
 
-        HttpResponse response = client.execute(new HttpGet(new URI(url)), httpContext);
-
-        StatusLine statusLine = response.getStatusLine();
-
-        if (HttpStatus.SC_OK != statusLine.getStatusCode()) {
-            throw new RuntimeException("Received HTTP error: "
-                    + statusLine.getStatusCode() + " - " + statusLine.getReasonPhrase());
-        }
+        return WSDL_CACHE.get(serviceId, maxAge, () -> getWsdlUrl(serviceId));
+    }
 
-        return response.getEntity().getContent();
+    private static synchronized HttpClient getWsdlHttpClient()
+            throws HttpClientCreator.HttpClientCreatorException {
+        return WSDL_HTTP_CLIENT_CREATOR.getHttpClient();
     }
 }
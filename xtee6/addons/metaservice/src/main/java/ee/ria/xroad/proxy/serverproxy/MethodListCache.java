@@ -0,0 +1,86 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.serverproxy;
+
+import ee.ria.xroad.common.identifier.ClientId;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import lombok.Value;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.common.ErrorCodes.translateException;
+
+/**
+ * Caches the rendered method lists of the listMethods and allowedMethods
+ * requests. The lists are keyed by the request type, the service provider
+ * and the client, so that the allowed methods of one client are never
+ * returned to another.
+ */
+class MethodListCache {
+
+    private final Cache<Key, String> cache;
+
+    /**
+     * Creates a method list cache.
+     * @param period the time in seconds a rendered method list is kept
+     * @param maxSize the maximum number of cached method lists
+     */
+    MethodListCache(long period, long maxSize) {
+        this.cache = CacheBuilder.newBuilder()
+                .expireAfterWrite(period, TimeUnit.SECONDS)
+                .maximumSize(maxSize)
+                .build();
+    }
+
+    /**
+     * Returns the cached method list or renders and caches it.
+     * @param requestType the metadata request, listMethods or allowedMethods
+     * @param serviceProvider the service provider whose methods are listed
+     * @param client the client the methods are allowed for, null for
+     * listMethods, because the list of all services does not depend on
+     * the client
+     * @param renderer renders the method list
+     * @return the rendered method list
+     * @throws Exception if the method list cannot be rendered
+     */
+    String get(String requestType, ClientId serviceProvider, ClientId client,
+            Callable<String> renderer) throws Exception {
+        try {
+            return cache.get(new Key(requestType, serviceProvider, client),
+                    renderer);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw translateException(e.getCause());
+        }
+    }
+
+    @Value
+    private static class Key {
+        String requestType;
+        ClientId serviceProvider;
+        ClientId client;
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.serverproxy;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.identifier.ServiceId;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+import java.net.URI;
+import java.util.concurrent.Callable;
+import java.util.function.LongSupplier;
+
+import static ee.ria.xroad.common.ErrorCodes.X_UNKNOWN_SERVICE;
+
+/**
+ * Caches the WSDLs downloaded from the service providers. A cached WSDL is
+ * served without contacting the provider until it is older than the maximum
+ * age. After that it is revalidated with the ETag and Last-Modified
+ * validators of the previous response, so an unchanged WSDL is not
+ * downloaded again. The total size of the cached WSDLs is limited.
+ */
+@Slf4j
+class WsdlCache {
+
+    private final Cache<ServiceId, CachedWsdl> cache;
+    private final Callable<HttpClient> httpClient;
+    private final LongSupplier clock;
+
+    /**
+     * Creates a WSDL cache.
+     * @param maxSize the maximum total size of the cached WSDLs in bytes
+     * @param httpClient the source of the HTTP client used for downloading
+     * @param clock the source of the current time in milliseconds
+     */
+    WsdlCache(long maxSize, Callable<HttpClient> httpClient,
+            LongSupplier clock) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxSize)
+                .weigher((ServiceId id, CachedWsdl wsdl) ->
+                        wsdl.getContent().length)
+                .build();
+        this.httpClient = httpClient;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the WSDL of the service, downloading or revalidating it
+     * if the cached copy is missing or too old.
+     * @param serviceId the service
+     * @param maxAge the time in milliseconds a cached WSDL is used without
+     * revalidating it
+     * @param urlLookup finds the URL of the WSDL of the service, returns
+     * null if the service has no WSDL
+     * @return the WSDL
+     * @throws Exception if the WSDL cannot be found or downloaded
+     */
+    byte[] get(ServiceId serviceId, long maxAge, Callable<String> urlLookup)
+            throws Exception {
+        CachedWsdl cached = cache.getIfPresent(serviceId);
+        if (cached != null
+                && clock.getAsLong() - cached.getFetchedAt() < maxAge) {
+            log.trace("Using cached WSDL for service {}", serviceId);
+            return cached.getContent();
+        }
+
+        String url = urlLookup.call();
+        if (url == null) {
+            cache.invalidate(serviceId);
+
+            throw new CodedException(X_UNKNOWN_SERVICE,
+                    "Could not find wsdl URL for service %s", serviceId);
+        }
+
+        // The validators only apply to the URL the WSDL was downloaded from
+        if (cached != null && !url.equals(cached.getUrl())) {
+            cached = null;
+        }
+
+        log.info("Downloading WSDL from URL: {}", url);
+        CachedWsdl wsdl = download(url, serviceId, cached);
+        cache.put(serviceId, wsdl);
+
+        return wsdl.getContent();
+    }
+
+    private CachedWsdl download(String url, ServiceId serviceId,
+            CachedWsdl cached) throws Exception {
+        HttpClient client = httpClient.call();
+
+        HttpContext httpContext = new BasicHttpContext();
+
+        // ServerMessageProcessor uses the same method to pass the ServiceId to CustomSSLSocketFactory
+        httpContext.setAttribute(ServiceId.class.getName(), serviceId);
+
+        HttpGet request = new HttpGet(new URI(url));
+        if (cached != null) {
+            if (cached.getETag() != null) {
+                request.setHeader(HttpHeaders.IF_NONE_MATCH, cached.getETag());
+            }
+
+            if (cached.getLastModified() != null) {
+                request.setHeader(HttpHeaders.IF_MODIFIED_SINCE,
+                        cached.getLastModified());
+            }
+        }
+
+        HttpResponse response = client.execute(request, httpContext);
+
+        try {
+            StatusLine statusLine = response.getStatusLine();
+
+            if (cached != null
+                    && HttpStatus.SC_NOT_MODIFIED == statusLine.getStatusCode()) {
+                log.trace("WSDL from URL {} has not been modified", url);
+
+                return new CachedWsdl(url, cached.getContent(),
+                        cached.getETag(), cached.getLastModified(),
+                        clock.getAsLong());
+            }
+
+            if (HttpStatus.SC_OK != statusLine.getStatusCode()) {
+                throw new RuntimeException("Received HTTP error: "
+                        + statusLine.getStatusCode() + " - " + statusLine.getReasonPhrase());
+            }
+
+            return new CachedWsdl(url,
+                    EntityUtils.toByteArray(response.getEntity()),
+                    getHeader(response, HttpHeaders.ETAG),
+                    getHeader(response, HttpHeaders.LAST_MODIFIED),
+                    clock.getAsLong());
+        } finally {
+            // Releases the connection back to the pool
+            EntityUtils.consumeQuietly(response.getEntity());
+        }
+    }
+
+    private static String getHeader(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header != null ? header.getValue() : null;
+    }
+
+    /**
+     * WSDL downloaded from the service provider together with the
+     * validators of the response.
+     */
+    @Value
+    private static class CachedWsdl {
+        String url;
+        byte[] content;
+        String eTag;
+        String lastModified;
+        long fetchedAt;
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.serverproxy;
+
+import ee.ria.xroad.common.message.SoapMessageImpl;
+import ee.ria.xroad.common.message.SoapParserImpl;
+import ee.ria.xroad.common.util.MimeTypes;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests rendering of the metadata service responses.
+ */
+public class MetadataServiceHandlerImplTest {
+
+    private static final String METHOD_LIST =
+            "<xroad:allowedMethodsResponse/>";
+
+    /**
+     * Test that the method list is inserted into the body of the response
+     * even when the header contains the same text as the placeholder.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void methodListInsertedIntoBody() throws Exception {
+        SoapMessageImpl request = parse(createRequest("METHOD_LIST"));
+
+        String xml = new String(
+                MetadataServiceHandlerImpl.renderMethodListResponse(request,
+                        METHOD_LIST), StandardCharsets.UTF_8);
+
+        int body = xml.indexOf("Body>");
+        assertTrue(body > 0);
+        assertTrue(xml.indexOf(METHOD_LIST) > body);
+        assertTrue(xml.indexOf("<xroad:id>METHOD_LIST</xroad:id>") < body);
+
+        SoapMessageImpl response = parse(xml);
+        assertEquals("METHOD_LIST", response.getQueryId());
+        assertTrue(response.isResponse());
+    }
+
+    private static SoapMessageImpl parse(String xml) {
+        return (SoapMessageImpl) new SoapParserImpl().parse(
+                MimeTypes.TEXT_XML_UTF_8, new ByteArrayInputStream(
+                        xml.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String createRequest(String queryId) {
+        return "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+                + "<SOAP-ENV:Envelope"
+                + " xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\""
+                + " xmlns:xroad=\"http://x-road.eu/xsd/xroad.xsd\""
+                + " xmlns:id=\"http://x-road.eu/xsd/identifiers\">"
+                + "<SOAP-ENV:Header>"
+                + "<xroad:client id:objectType=\"MEMBER\">"
+                + "<id:xRoadInstance>EE</id:xRoadInstance>"
+                + "<id:memberClass>BUSINESS</id:memberClass>"
+                + "<id:memberCode>consumer</id:memberCode>"
+                + "</xroad:client>"
+                + "<xroad:service id:objectType=\"SERVICE\">"
+                + "<id:xRoadInstance>EE</id:xRoadInstance>"
+                + "<id:memberClass>BUSINESS</id:memberClass>"
+                + "<id:memberCode>producer</id:memberCode>"
+                + "<id:serviceCode>allowedMethods</id:serviceCode>"
+                + "</xroad:service>"
+                + "<xroad:id>" + queryId + "</xroad:id>"
+                + "<xroad:protocolVersion>4.0</xroad:protocolVersion>"
+                + "</SOAP-ENV:Header>"
+                + "<SOAP-ENV:Body>"
+                + "<xroad:allowedMethods/>"
+                + "</SOAP-ENV:Body>"
+                + "</SOAP-ENV:Envelope>";
+    }
+}
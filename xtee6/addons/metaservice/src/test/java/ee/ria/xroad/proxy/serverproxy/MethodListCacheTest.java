@@ -0,0 +1,88 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.serverproxy;
+
+import ee.ria.xroad.common.identifier.ClientId;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static ee.ria.xroad.common.metadata.MetadataRequests.ALLOWED_METHODS;
+import static ee.ria.xroad.common.metadata.MetadataRequests.LIST_METHODS;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the cache of rendered method lists.
+ */
+public class MethodListCacheTest {
+
+    private static final ClientId PROVIDER =
+            ClientId.create("EE", "BUSINESS", "producer");
+    private static final ClientId CLIENT_A =
+            ClientId.create("EE", "BUSINESS", "consumer-a");
+    private static final ClientId CLIENT_B =
+            ClientId.create("EE", "BUSINESS", "consumer-b");
+
+    private final MethodListCache cache = new MethodListCache(60, 100);
+
+    private final AtomicInteger renderCount = new AtomicInteger();
+
+    /**
+     * Test that the allowed methods are cached per client, so that the
+     * list rendered for one client is never returned to another.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void allowedMethodsPerClient() throws Exception {
+        assertEquals("a", get(ALLOWED_METHODS, CLIENT_A, "a"));
+        assertEquals("b", get(ALLOWED_METHODS, CLIENT_B, "b"));
+
+        assertEquals("a", get(ALLOWED_METHODS, CLIENT_A, "x"));
+        assertEquals("b", get(ALLOWED_METHODS, CLIENT_B, "x"));
+
+        assertEquals(2, renderCount.get());
+    }
+
+    /**
+     * Test that the method lists of different request types are cached
+     * separately.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void requestTypes() throws Exception {
+        assertEquals("all", get(LIST_METHODS, null, "all"));
+        assertEquals("allowed", get(ALLOWED_METHODS, null, "allowed"));
+
+        assertEquals("all", get(LIST_METHODS, null, "x"));
+
+        assertEquals(2, renderCount.get());
+    }
+
+    private String get(String requestType, ClientId client,
+            String methodList) throws Exception {
+        return cache.get(requestType, PROVIDER, client, () -> {
+            renderCount.incrementAndGet();
+            return methodList;
+        });
+    }
+}
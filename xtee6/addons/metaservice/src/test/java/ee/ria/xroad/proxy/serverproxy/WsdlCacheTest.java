@@ -0,0 +1,203 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.serverproxy;
+
+import ee.ria.xroad.common.identifier.ServiceId;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.HttpContext;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the caching and revalidation of downloaded WSDLs.
+ */
+public class WsdlCacheTest {
+
+    private static final long MAX_AGE = TimeUnit.MINUTES.toMillis(1);
+
+    private static final String URL = "http://localhost/wsdl";
+
+    private static final String ETAG = "\"v1\"";
+    private static final String LAST_MODIFIED =
+            "Wed, 21 Oct 2015 07:28:00 GMT";
+
+    private static final ServiceId SERVICE = ServiceId.create("EE",
+            "BUSINESS", "producer", null, "getState");
+    private static final ServiceId OTHER_SERVICE = ServiceId.create("EE",
+            "BUSINESS", "producer", null, "getRandom");
+
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicInteger urlLookups = new AtomicInteger();
+
+    private HttpClient httpClient;
+    private WsdlCache cache;
+
+    /**
+     * Creates the cache with a mock HTTP client.
+     */
+    @Before
+    public void setUp() {
+        httpClient = mock(HttpClient.class);
+        cache = new WsdlCache(1000, () -> httpClient, clock::get);
+    }
+
+    /**
+     * Test that a cached WSDL is used without looking up the URL or
+     * contacting the provider until it is older than the maximum age.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void cachedWsdl() throws Exception {
+        byte[] wsdl = "<wsdl/>".getBytes();
+        when(execute()).thenReturn(ok(wsdl));
+
+        assertArrayEquals(wsdl, get(SERVICE));
+
+        clock.addAndGet(MAX_AGE - 1);
+
+        assertArrayEquals(wsdl, get(SERVICE));
+
+        assertEquals(1, urlLookups.get());
+        verify(httpClient, times(1)).execute(any(HttpUriRequest.class),
+                any(HttpContext.class));
+    }
+
+    /**
+     * Test that a WSDL older than the maximum age is revalidated with the
+     * validators of the previous response and the cached content is used
+     * when the provider answers 304 Not Modified.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void revalidateNotModified() throws Exception {
+        byte[] wsdl = "<wsdl/>".getBytes();
+        when(execute()).thenReturn(ok(wsdl), notModified());
+
+        assertArrayEquals(wsdl, get(SERVICE));
+
+        clock.addAndGet(MAX_AGE);
+
+        assertArrayEquals(wsdl, get(SERVICE));
+
+        ArgumentCaptor<HttpUriRequest> requests =
+                ArgumentCaptor.forClass(HttpUriRequest.class);
+        verify(httpClient, times(2)).execute(requests.capture(),
+                any(HttpContext.class));
+
+        HttpUriRequest first = requests.getAllValues().get(0);
+        assertFalse(first.containsHeader(HttpHeaders.IF_NONE_MATCH));
+        assertFalse(first.containsHeader(HttpHeaders.IF_MODIFIED_SINCE));
+
+        HttpUriRequest second = requests.getAllValues().get(1);
+        assertEquals(ETAG,
+                second.getFirstHeader(HttpHeaders.IF_NONE_MATCH).getValue());
+        assertEquals(LAST_MODIFIED,
+                second.getFirstHeader(HttpHeaders.IF_MODIFIED_SINCE)
+                        .getValue());
+
+        // The revalidated WSDL is fresh again
+        clock.addAndGet(MAX_AGE - 1);
+
+        assertArrayEquals(wsdl, get(SERVICE));
+
+        verify(httpClient, times(2)).execute(any(HttpUriRequest.class),
+                any(HttpContext.class));
+    }
+
+    /**
+     * Test that a WSDL larger than the size limit of the cache is not kept,
+     * while a small one is.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void sizeLimit() throws Exception {
+        byte[] small = new byte[10];
+        byte[] large = new byte[2000];
+        when(execute()).thenReturn(ok(small), ok(large), ok(large));
+
+        assertArrayEquals(small, get(SERVICE));
+        assertArrayEquals(large, get(OTHER_SERVICE));
+
+        assertArrayEquals(small, get(SERVICE));
+        assertArrayEquals(large, get(OTHER_SERVICE));
+
+        ArgumentCaptor<HttpUriRequest> requests =
+                ArgumentCaptor.forClass(HttpUriRequest.class);
+        verify(httpClient, times(3)).execute(requests.capture(),
+                any(HttpContext.class));
+
+        // The large WSDL was downloaded again from scratch
+        List<HttpUriRequest> all = requests.getAllValues();
+        assertNull(all.get(2).getFirstHeader(HttpHeaders.IF_NONE_MATCH));
+    }
+
+    private byte[] get(ServiceId serviceId) throws Exception {
+        return cache.get(serviceId, MAX_AGE, () -> {
+            urlLookups.incrementAndGet();
+            return URL;
+        });
+    }
+
+    private HttpResponse execute() throws Exception {
+        return httpClient.execute(any(HttpUriRequest.class),
+                any(HttpContext.class));
+    }
+
+    private static HttpResponse ok(byte[] content) {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1,
+                HttpStatus.SC_OK, "OK");
+        response.setEntity(new ByteArrayEntity(content));
+        response.setHeader(HttpHeaders.ETAG, ETAG);
+        response.setHeader(HttpHeaders.LAST_MODIFIED, LAST_MODIFIED);
+
+        return response;
+    }
+
+    private static HttpResponse notModified() {
+        return new BasicHttpResponse(HttpVersion.HTTP_1_1,
+                HttpStatus.SC_NOT_MODIFIED, "Not Modified");
+    }
+}
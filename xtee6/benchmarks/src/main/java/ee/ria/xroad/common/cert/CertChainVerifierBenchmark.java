@@ -0,0 +1,148 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.cert;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ee.ria.xroad.common.OcspTestUtils;
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.TestSecurityUtil;
+import ee.ria.xroad.common.conf.globalconf.EmptyGlobalConf;
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+
+/**
+ * Measures verification of a certificate chain with three intermediate
+ * certificates and the OCSP responses of its certificates. Verified paths
+ * are cached by CertChainVerifier, so the path building is measured only by
+ * the first invocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CertChainVerifierBenchmark {
+
+    private CertChain chain;
+    private List<OCSPResp> ocspResponses;
+    private Date atDate;
+
+    /**
+     * Creates the certificate chain and its OCSP responses.
+     * @throws Exception if an error occurs
+     */
+    @Setup
+    public void setUp() throws Exception {
+        TestSecurityUtil.initSecurity();
+
+        X509Certificate rootCa = TestCertUtil.getCertChainCert("root_ca.p12");
+        List<X509Certificate> intermediates = Arrays.asList(
+                TestCertUtil.getCertChainCert("ca_1.p12"),
+                TestCertUtil.getCertChainCert("ca_2.p12"),
+                TestCertUtil.getCertChainCert("ca_3.p12"));
+        X509Certificate userCert = TestCertUtil.getCertChainCert("user_3.p12");
+
+        GlobalConf.reload(new ChainGlobalConf(intermediates));
+
+        chain = new CertChain("EE", userCert, rootCa, intermediates);
+
+        List<X509Certificate> subjects = new ArrayList<>(intermediates);
+        subjects.add(userCert);
+
+        ocspResponses = new ArrayList<>();
+        for (X509Certificate subject : subjects) {
+            ocspResponses.add(OcspTestUtils.createOCSPResponse(subject,
+                    getIssuer(subject, intermediates, rootCa),
+                    TestCertUtil.getOcspSigner().cert,
+                    TestCertUtil.getOcspSigner().key,
+                    CertificateStatus.GOOD));
+        }
+
+        atDate = new Date(rootCa.getNotBefore().getTime()
+                + TimeUnit.DAYS.toMillis(1));
+    }
+
+    /**
+     * Verifies the chain and the OCSP responses.
+     */
+    @Benchmark
+    public void verify() {
+        new CertChainVerifier(chain).verify(ocspResponses, atDate);
+    }
+
+    private static X509Certificate getIssuer(X509Certificate subject,
+            List<X509Certificate> certs, X509Certificate rootCa) {
+        for (X509Certificate cert : certs) {
+            if (cert.getSubjectX500Principal().equals(
+                    subject.getIssuerX500Principal())) {
+                return cert;
+            }
+        }
+
+        return rootCa;
+    }
+
+    private static class ChainGlobalConf extends EmptyGlobalConf {
+
+        private final List<X509Certificate> intermediates;
+        private final List<X509Certificate> ocspResponders;
+
+        ChainGlobalConf(List<X509Certificate> intermediates) {
+            this.intermediates = intermediates;
+            this.ocspResponders = Collections.singletonList(
+                    TestCertUtil.getOcspSigner().cert);
+        }
+
+        @Override
+        public List<X509Certificate> getOcspResponderCertificates() {
+            return ocspResponders;
+        }
+
+        @Override
+        public X509Certificate getCaCert(String instanceIdentifier,
+                X509Certificate orgCert) throws Exception {
+            return getIssuer(orgCert, intermediates,
+                    TestCertUtil.getCertChainCert("root_ca.p12"));
+        }
+    }
+}
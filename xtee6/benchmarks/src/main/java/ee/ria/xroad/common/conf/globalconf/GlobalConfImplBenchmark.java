@@ -0,0 +1,120 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.globalconf;
+
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.TestSecurityUtil;
+import ee.ria.xroad.common.identifier.CentralServiceId;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.SecurityServerId;
+import ee.ria.xroad.common.identifier.ServiceId;
+
+/**
+ * Measures the global configuration lookups that are done for every
+ * message, using the configuration of GlobalConfTest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class GlobalConfImplBenchmark {
+
+    private GlobalConfImpl conf;
+
+    private ClientId client;
+    private SecurityServerId server;
+    private CentralServiceId centralService;
+    private X509Certificate serverCert;
+
+    /**
+     * Loads the global configuration.
+     * @throws Exception if an error occurs
+     */
+    @Setup
+    public void setUp() throws Exception {
+        TestSecurityUtil.initSecurity();
+
+        conf = new GlobalConfImpl(new ConfigurationDirectoryV2(
+                "../common-util/src/test/resources/globalconf_good_v2"));
+
+        client = ClientId.create("EE", "BUSINESS", "consumer");
+        server = SecurityServerId.create("EE", "BUSINESS", "producer",
+                "producerServerCode");
+        centralService = CentralServiceId.create("EE", "central1");
+        serverCert = TestCertUtil.getProducer().cert;
+    }
+
+    /**
+     * Looks up the addresses of the servers of a client.
+     * @return the addresses
+     */
+    @Benchmark
+    public Collection<String> getProviderAddress() {
+        return conf.getProviderAddress(client);
+    }
+
+    /**
+     * Resolves a central service.
+     * @return the implementing service
+     */
+    @Benchmark
+    public ServiceId getServiceId() {
+        return conf.getServiceId(centralService);
+    }
+
+    /**
+     * Checks whether a client is registered on a server.
+     * @return the check result
+     */
+    @Benchmark
+    public boolean isSecurityServerClient() {
+        return conf.isSecurityServerClient(client, server);
+    }
+
+    /**
+     * Looks up the server of an authentication certificate.
+     * @return the server
+     * @throws Exception if an error occurs
+     */
+    @Benchmark
+    public SecurityServerId getServerId() throws Exception {
+        return conf.getServerId(serverCert);
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.hashchain;
+
+import static ee.ria.xroad.common.util.CryptoUtils.SHA256_ID;
+import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
+import static ee.ria.xroad.common.util.CryptoUtils.getDigestAlgorithmURI;
+import static ee.ria.xroad.common.util.MessageFileNames.MESSAGE;
+import static ee.ria.xroad.common.util.MessageFileNames.SIG_HASH_CHAIN;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures building and verifying the hash chains of a signature or
+ * time-stamp batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class HashChainBenchmark {
+
+    @Param({"10000"})
+    public int batchSize;
+
+    private byte[][] inputs;
+
+    private String hashChainResult;
+    private String[] hashChains;
+
+    /**
+     * Creates the inputs and the hash chains to be verified.
+     * @throws Exception if an error occurs
+     */
+    @Setup
+    public void setUp() throws Exception {
+        org.apache.xml.security.Init.init();
+
+        inputs = new byte[batchSize][];
+        for (int i = 0; i < batchSize; i++) {
+            inputs[i] = calculateDigest(SHA256_ID,
+                    String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+        }
+
+        HashChainBuilder builder = build();
+        hashChainResult = builder.getHashChainResult(SIG_HASH_CHAIN);
+        hashChains = builder.getHashChains(MESSAGE);
+    }
+
+    /**
+     * Builds the tree and writes the hash chain result and all hash chains.
+     * @return the hash chains
+     * @throws Exception if an error occurs
+     */
+    @Benchmark
+    public String[] buildHashChains() throws Exception {
+        HashChainBuilder builder = build();
+        builder.getHashChainResult(SIG_HASH_CHAIN);
+        return builder.getHashChains(MESSAGE);
+    }
+
+    /**
+     * Verifies every hash chain of the batch against the hash chain result.
+     * @throws Exception if an error occurs
+     */
+    @Benchmark
+    public void verifyHashChains() throws Exception {
+        String digestMethod = getDigestAlgorithmURI(SHA256_ID);
+
+        for (int i = 0; i < batchSize; i++) {
+            final String hashChain = hashChains[i];
+
+            HashChainVerifier.verify(toStream(hashChainResult),
+                    new HashChainReferenceResolver() {
+                        @Override
+                        public InputStream resolve(String uri) {
+                            return toStream(hashChain);
+                        }
+
+                        @Override
+                        public boolean shouldResolve(String uri,
+                                byte[] digestValue) {
+                            return true;
+                        }
+                    },
+                    Collections.singletonMap(MESSAGE,
+                            new DigestValue(digestMethod, inputs[i])));
+        }
+    }
+
+    private HashChainBuilder build() throws Exception {
+        HashChainBuilder builder = new HashChainBuilder(SHA256_ID);
+        for (byte[] input : inputs) {
+            builder.addInputHash(input);
+        }
+
+        builder.finishBuilding();
+        return builder;
+    }
+
+    private static InputStream toStream(String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+}
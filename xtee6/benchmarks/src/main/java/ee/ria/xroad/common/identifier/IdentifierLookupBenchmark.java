@@ -0,0 +1,159 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.identifier;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures looking up clients in a hash map keyed by client identifiers.
+ * The reflective keys compare and hash the same fields the way the
+ * identifiers did before equals and hashCode were field-based.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class IdentifierLookupBenchmark {
+
+    @Param({"1000"})
+    public int clientCount;
+
+    private Map<ReflectiveKey, Integer> reflectiveMap;
+    private ReflectiveKey[] reflectiveKeys;
+
+    private Map<ClientId, Integer> idMap;
+    private ClientId[] equalIds;
+    private ClientId[] internedIds;
+
+    /**
+     * Fills the maps and creates lookup keys that are equal to, but not
+     * the same instances as, the map keys.
+     */
+    @Setup
+    public void setUp() {
+        reflectiveMap = new HashMap<>();
+        reflectiveKeys = new ReflectiveKey[clientCount];
+
+        idMap = new HashMap<>();
+        equalIds = new ClientId[clientCount];
+        internedIds = new ClientId[clientCount];
+
+        for (int i = 0; i < clientCount; i++) {
+            reflectiveMap.put(new ReflectiveKey(client(i)), i);
+            reflectiveKeys[i] = new ReflectiveKey(client(i));
+
+            idMap.put(XRoadId.intern(client(i)), i);
+            equalIds[i] = client(i);
+            internedIds[i] = XRoadId.intern(client(i));
+        }
+    }
+
+    /**
+     * Looks up every client with reflective equals and hashCode.
+     * @return sum of the found values
+     */
+    @Benchmark
+    public int lookupReflectiveKey() {
+        int sum = 0;
+        for (ReflectiveKey key : reflectiveKeys) {
+            sum += reflectiveMap.get(key);
+        }
+
+        return sum;
+    }
+
+    /**
+     * Looks up every client with an equal identifier instance.
+     * @return sum of the found values
+     */
+    @Benchmark
+    public int lookupEqualId() {
+        int sum = 0;
+        for (ClientId key : equalIds) {
+            sum += idMap.get(key);
+        }
+
+        return sum;
+    }
+
+    /**
+     * Looks up every client with the canonical identifier instance.
+     * @return sum of the found values
+     */
+    @Benchmark
+    public int lookupInternedId() {
+        int sum = 0;
+        for (ClientId key : internedIds) {
+            sum += idMap.get(key);
+        }
+
+        return sum;
+    }
+
+    private static ClientId client(int i) {
+        return ClientId.create("EE", "BUSINESS", "member" + i,
+                "subsystem" + i);
+    }
+
+    private static final class ReflectiveKey {
+        private final String xRoadInstance;
+        private final String memberClass;
+        private final String memberCode;
+        private final String subsystemCode;
+
+        ReflectiveKey(ClientId id) {
+            xRoadInstance = id.getXRoadInstance();
+            memberClass = id.getMemberClass();
+            memberCode = id.getMemberCode();
+            subsystemCode = id.getSubsystemCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return EqualsBuilder.reflectionEquals(this, obj);
+        }
+
+        @Override
+        public int hashCode() {
+            return HashCodeBuilder.reflectionHashCode(this);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.ocsp;
+
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ee.ria.xroad.common.OcspTestUtils;
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.TestSecurityUtil;
+import ee.ria.xroad.common.conf.globalconf.EmptyGlobalConf;
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+
+/**
+ * Measures verification of the validity and status of an OCSP response,
+ * as done for every OCSP response of a signed message. The verified
+ * responses are cached by OcspVerifier for the configured period.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class OcspVerifierBenchmark {
+
+    private X509Certificate subject;
+    private X509Certificate issuer;
+    private OCSPResp ocsp;
+
+    /**
+     * Creates the OCSP response.
+     * @throws Exception if an error occurs
+     */
+    @Setup
+    public void setUp() throws Exception {
+        TestSecurityUtil.initSecurity();
+
+        issuer = TestCertUtil.getCertChainCert("root_ca.p12");
+        subject = TestCertUtil.getCertChainCert("user_0.p12");
+
+        GlobalConf.reload(new EmptyGlobalConf() {
+            @Override
+            public List<X509Certificate> getOcspResponderCertificates() {
+                return Collections.singletonList(issuer);
+            }
+
+            @Override
+            public X509Certificate getCaCert(String instanceIdentifier,
+                    X509Certificate orgCert) {
+                return TestCertUtil.getCaCert();
+            }
+        });
+
+        Date thisUpdate = new DateTime().plusDays(1).toDate();
+        ocsp = OcspTestUtils.createOCSPResponse(subject, issuer, issuer,
+                TestCertUtil.getCertChainKey("root_ca.p12"),
+                CertificateStatus.GOOD, thisUpdate, null);
+    }
+
+    /**
+     * Verifies the OCSP response.
+     * @throws Exception if verification fails
+     */
+    @Benchmark
+    public void verifyValidityAndStatus() throws Exception {
+        new OcspVerifier(GlobalConf.getOcspFreshnessSeconds(true),
+                new OcspVerifierOptions(true)).verifyValidityAndStatus(
+                        ocsp, subject, issuer);
+    }
+}
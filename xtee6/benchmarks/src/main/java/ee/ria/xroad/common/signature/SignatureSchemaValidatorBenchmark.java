@@ -0,0 +1,102 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.signature;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.dom.DOMSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * Compares the full schema validation of signatures with the structure
+ * fingerprint fast path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SignatureSchemaValidatorBenchmark {
+
+    private static final String DS_NS = "http://www.w3.org/2000/09/xmldsig#";
+
+    @Param({"sig-0.xml", "batch-sig.xml"})
+    public String signatureFile;
+
+    private Node signature;
+
+    /**
+     * Loads the signature.
+     * @throws Exception if an error occurs
+     */
+    @Setup
+    public void setUp() throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+
+        try (InputStream in = new FileInputStream(
+                "../common-verifier/src/test/signatures/" + signatureFile)) {
+            Document doc = factory.newDocumentBuilder().parse(in);
+            signature = doc.getElementsByTagNameNS(DS_NS, "Signature").item(0);
+        }
+
+        // The test signatures are genuine, their structure may be cached
+        SignatureSchemaValidator.addVerifiedStructure(
+                SignatureSchemaValidator.validate(signature));
+    }
+
+    /**
+     * Full schema validation.
+     * @throws Exception if validation fails
+     */
+    @Benchmark
+    public void fullValidation() throws Exception {
+        SignatureSchemaValidator.validate(new DOMSource(signature));
+    }
+
+    /**
+     * Validation through the structure fingerprint.
+     * @throws Exception if validation fails
+     */
+    @Benchmark
+    public void fingerprintValidation() throws Exception {
+        SignatureSchemaValidator.validate(signature);
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.signature;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.cert.X509Certificate;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.TestSecurityUtil;
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+import ee.ria.xroad.common.conf.globalconf.TestGlobalConfImpl;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.util.CryptoUtils;
+import ee.ria.xroad.common.util.MessageFileNames;
+
+/**
+ * Measures verification of a message signature, including the
+ * verification of the signing certificate chain and its OCSP responses.
+ * The signature and the global configuration are the ones used by
+ * SignatureVerifierTest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SignatureVerifierBenchmark {
+
+    private static final String SIGNATURES =
+            "../common-verifier/src/test/signatures/";
+
+    private SignatureData signatureData;
+    private List<MessagePart> parts;
+
+    private ClientId signer;
+    private Date atDate;
+
+    /**
+     * Loads the signature and the global configuration.
+     * @throws Exception if an error occurs
+     */
+    @Setup
+    public void setUp() throws Exception {
+        TestSecurityUtil.initSecurity();
+
+        System.setProperty(SystemProperties.CONFIGURATION_PATH,
+                "../common-util/src/test/resources/globalconf_good_v2");
+        System.setProperty(SystemProperties.CONFIGURATION_ANCHOR_FILE,
+                "../common-util/src/test/resources/configuration-anchor1.xml");
+        GlobalConf.reload(new TestGlobalConfImpl(false) {
+            @Override
+            public X509Certificate getCaCert(String instanceIdentifier,
+                    X509Certificate memberCert) throws Exception {
+                return TestCertUtil.getCaCert();
+            }
+        });
+
+        signatureData = new SignatureData(new String(Files.readAllBytes(
+                Paths.get(SIGNATURES, "sig-0.xml")), StandardCharsets.UTF_8),
+                null, null);
+
+        byte[] message = Files.readAllBytes(
+                Paths.get(SIGNATURES, "message-0.xml"));
+        parts = Collections.singletonList(new MessagePart(
+                MessageFileNames.MESSAGE, CryptoUtils.SHA512_ID,
+                CryptoUtils.calculateDigest(CryptoUtils.SHA512_ID, message),
+                message));
+
+        signer = ClientId.create("EE", "BUSINESS", "consumer");
+
+        Calendar cal = Calendar.getInstance();
+        cal.clear();
+        cal.set(2014, 9, 30);
+        atDate = cal.getTime();
+    }
+
+    /**
+     * Parses and verifies the signature.
+     * @throws Exception if verification fails
+     */
+    @Benchmark
+    public void verify() throws Exception {
+        SignatureVerifier verifier = new SignatureVerifier(signatureData);
+        verifier.addParts(parts);
+        verifier.verify(signer, atDate);
+    }
+}
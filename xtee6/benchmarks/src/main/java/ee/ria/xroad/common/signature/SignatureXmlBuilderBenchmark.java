@@ -0,0 +1,138 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.signature;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ee.ria.xroad.common.OcspTestUtils;
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.TestSecurityUtil;
+import ee.ria.xroad.common.util.CryptoUtils;
+import ee.ria.xroad.common.util.MessageFileNames;
+
+/**
+ * Measures the construction of a single message signature with a template
+ * that is created for every signature and with a template that is shared by
+ * all signatures. The signature value is a constant, so that only the XML
+ * construction is measured. Run with "-prof gc" to see the allocations per
+ * signature.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SignatureXmlBuilderBenchmark {
+
+    @Param({"0", "2"})
+    public int extraCertCount;
+
+    private X509Certificate signingCert;
+    private List<X509Certificate> extraCerts;
+    private List<OCSPResp> ocspResponses;
+
+    private SignatureTemplate template;
+
+    private List<MessagePart> parts;
+    private byte[] signatureValue;
+
+    /**
+     * Creates the certificates, OCSP responses and the shared template.
+     * @throws Exception if an error occurs
+     */
+    @Setup
+    public void setUp() throws Exception {
+        TestSecurityUtil.initSecurity();
+
+        TestCertUtil.PKCS12 consumer = TestCertUtil.getConsumer();
+        TestCertUtil.PKCS12 ocspSigner = TestCertUtil.getOcspSigner();
+
+        signingCert = consumer.cert;
+        extraCerts = new ArrayList<>(
+                Collections.nCopies(extraCertCount, TestCertUtil.getCaCert()));
+        ocspResponses = Collections.singletonList(
+                OcspTestUtils.createOCSPResponse(signingCert,
+                        TestCertUtil.getCaCert(), ocspSigner.cert,
+                        ocspSigner.key, CertificateStatus.GOOD));
+
+        template = new SignatureTemplate(signingCert, extraCerts,
+                ocspResponses);
+
+        byte[] message = "<message/>".getBytes();
+        parts = Collections.singletonList(new MessagePart(
+                MessageFileNames.MESSAGE, CryptoUtils.SHA512_ID,
+                CryptoUtils.calculateDigest(CryptoUtils.SHA512_ID, message),
+                message));
+
+        signatureValue = new byte[256];
+    }
+
+    /**
+     * Signature with a template created for the signature.
+     * @return the signature XML
+     * @throws Exception if an error occurs
+     */
+    @Benchmark
+    public String newTemplate() throws Exception {
+        return sign(new SignatureTemplate(signingCert, extraCerts,
+                ocspResponses));
+    }
+
+    /**
+     * Signature with the shared template.
+     * @return the signature XML
+     * @throws Exception if an error occurs
+     */
+    @Benchmark
+    public String sharedTemplate() throws Exception {
+        return sign(template);
+    }
+
+    private String sign(SignatureTemplate signatureTemplate)
+            throws Exception {
+        SignatureCtx ctx = new SignatureCtx(CryptoUtils.SHA512WITHRSA_ID);
+        ctx.add(new SigningRequest(signatureTemplate, parts));
+        ctx.getDataToBeSigned();
+
+        return ctx.createSignatureXml(signatureValue);
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.protocol;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ee.ria.xroad.common.message.SaxSoapParserImpl;
+import ee.ria.xroad.common.message.SoapMessageImpl;
+import ee.ria.xroad.common.signature.SignatureData;
+import ee.ria.xroad.common.util.CryptoUtils;
+import ee.ria.xroad.common.util.MimeTypes;
+
+/**
+ * Measures encoding and decoding of the signed messages that are exchanged
+ * between the client proxy and the server proxy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ProxyMessageCodecBenchmark {
+
+    private static final String QUERIES = "../proxy/src/test/queries/";
+
+    private SoapMessageImpl message;
+    private SignatureData signature;
+
+    private String encodedContentType;
+    private byte[] encoded;
+
+    /**
+     * Loads the message and the signature and encodes the message to be
+     * decoded.
+     * @throws Exception if an error occurs
+     */
+    @Setup
+    public void setUp() throws Exception {
+        try (InputStream in = new FileInputStream(QUERIES + "getstate.query")) {
+            message = (SoapMessageImpl) new SaxSoapParserImpl().parse(
+                    MimeTypes.TEXT_XML_UTF_8, in);
+        }
+
+        signature = new SignatureData(new String(Files.readAllBytes(
+                Paths.get(QUERIES, "signature.xml")), StandardCharsets.UTF_8),
+                null, null);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encodedContentType = encode(out);
+        encoded = out.toByteArray();
+    }
+
+    /**
+     * Encodes the message.
+     * @return the encoded message
+     * @throws Exception if an error occurs
+     */
+    @Benchmark
+    public byte[] encode() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encode(out);
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes the message.
+     * @return the decoded message
+     * @throws Exception if an error occurs
+     */
+    @Benchmark
+    public ProxyMessage decode() throws Exception {
+        return decode(encodedContentType, encoded);
+    }
+
+    /**
+     * Encodes the message and decodes the result.
+     * @return the decoded message
+     * @throws Exception if an error occurs
+     */
+    @Benchmark
+    public ProxyMessage roundTrip() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        String contentType = encode(out);
+
+        return decode(contentType, out.toByteArray());
+    }
+
+    private String encode(ByteArrayOutputStream out) throws Exception {
+        ProxyMessageEncoder encoder = new ProxyMessageEncoder(out,
+                CryptoUtils.DEFAULT_DIGEST_ALGORITHM_ID);
+        encoder.soap(message, new HashMap<>());
+        encoder.signature(signature);
+        encoder.close();
+
+        return encoder.getContentType();
+    }
+
+    private static ProxyMessage decode(String contentType, byte[] data)
+            throws Exception {
+        ProxyMessage proxyMessage = new ProxyMessage(MimeTypes.TEXT_XML);
+        new ProxyMessageDecoder(proxyMessage, contentType,
+                CryptoUtils.DEFAULT_DIGEST_ALGORITHM_ID).parse(
+                        new ByteArrayInputStream(data));
+
+        return proxyMessage;
+    }
+}
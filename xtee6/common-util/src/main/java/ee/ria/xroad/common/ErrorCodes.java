@@ -114,6 +114,9 @@ public final class ErrorCodes {
     public static final String X_ACCESS_DENIED = "AccessDenied";
     public static final String X_SERVICE_DISABLED = "ServiceDisabled";
     public static final String X_SERVICE_FAILED_X = "ServiceFailed";
+    public static final String X_SERVICE_OVERLOADED = "ServiceOverloaded";
+    public static final String X_SERVICE_UNAVAILABLE = "ServiceUnavailable";
+    public static final String X_RATE_LIMIT_EXCEEDED = "RateLimitExceeded";
     public static final String X_MISSING_SIGNATURE = "MissingSignature";
     public static final String X_UNKNOWN_SERVICE = "UnknownService";
     public static final String X_SECURITY_CATEGORY = "SecurityCategory";
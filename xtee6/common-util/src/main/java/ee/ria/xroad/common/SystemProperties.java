@@ -200,6 +200,47 @@ public final class SystemProperties {
     private static final String CLIENTPROXY_POOL_REUSE_CONNECTIONS =
             PREFIX + "proxy.pool-enable-connection-reuse";
 
+    private static final String BATCH_SIGNER_MAX_BATCH_SIZE =
+            PREFIX + "proxy.batch-signer-max-batch-size";
+
+    private static final String BATCH_SIGNER_MAX_LINGER =
+            PREFIX + "proxy.batch-signer-max-linger";
+
+    private static final String BATCH_SIGNER_MAX_IN_FLIGHT_BATCHES =
+            PREFIX + "proxy.batch-signer-max-in-flight-batches";
+
+    /** Property name of the switch for selecting the service provider's
+     * security server by observed latency and health. */
+    public static final String CLIENTPROXY_TARGET_SELECTION_BY_LATENCY =
+            PREFIX + "proxy.client-target-selection-by-latency";
+
+    private static final String CLIENTPROXY_TARGET_SELECTION_RACE_INTERVAL =
+            PREFIX + "proxy.client-target-selection-race-interval";
+
+    private static final String SERVERPROXY_CLIENT_RATE_LIMIT =
+            PREFIX + "proxy.server-client-rate-limit";
+
+    private static final String SERVERPROXY_ADDRESS_RATE_LIMIT =
+            PREFIX + "proxy.server-address-rate-limit";
+
+    private static final String SERVERPROXY_SERVICE_MAX_CONCURRENCY =
+            PREFIX + "proxy.server-service-max-concurrency";
+
+    private static final String SERVERPROXY_SERVICE_FAILURE_THRESHOLD =
+            PREFIX + "proxy.server-service-failure-threshold";
+
+    private static final String SERVERPROXY_SERVICE_OPEN_TIME =
+            PREFIX + "proxy.server-service-open-time";
+
+    private static final String ATTACHMENT_CACHE_MEMORY_THRESHOLD =
+            PREFIX + "proxy.attachment-cache-memory-threshold";
+
+    private static final String SERVERPROXY_WSDL_CACHE_MAX_AGE =
+            PREFIX + "proxy.server-wsdl-cache-max-age";
+
+    private static final String PROXY_STAGE_TIMING_ENABLED =
+            PREFIX + "proxy.stage-timing-enabled";
+
 
     private static final String DEFAULT_SERVERPROXY_CONNECTOR_MAX_IDLE_TIME = "0";
 
@@ -233,12 +274,49 @@ public final class SystemProperties {
      * for the ClientProxy can be actually reused **/
     private static final String DEFAULT_CLIENTPROXY_POOL_REUSE_CONNECTIONS = "false";
 
+    private static final String DEFAULT_BATCH_SIGNER_MAX_BATCH_SIZE = "256";
+
+    private static final String DEFAULT_BATCH_SIGNER_MAX_LINGER = "0";
+
+    private static final String DEFAULT_BATCH_SIGNER_MAX_IN_FLIGHT_BATCHES = "1";
+
+    private static final String DEFAULT_CLIENTPROXY_TARGET_SELECTION_BY_LATENCY = "false";
+
+    private static final String DEFAULT_CLIENTPROXY_TARGET_SELECTION_RACE_INTERVAL = "300";
+
+    private static final String DEFAULT_SERVERPROXY_CLIENT_RATE_LIMIT = "0";
+
+    private static final String DEFAULT_SERVERPROXY_ADDRESS_RATE_LIMIT = "0";
+
+    private static final String DEFAULT_SERVERPROXY_SERVICE_MAX_CONCURRENCY = "0";
+
+    private static final String DEFAULT_SERVERPROXY_SERVICE_FAILURE_THRESHOLD = "0";
+
+    private static final String DEFAULT_SERVERPROXY_SERVICE_OPEN_TIME = "30";
+
+    private static final String DEFAULT_ATTACHMENT_CACHE_MEMORY_THRESHOLD = "65536";
+
+    private static final String DEFAULT_SERVERPROXY_WSDL_CACHE_MAX_AGE = "60";
+
+    private static final String DEFAULT_PROXY_STAGE_TIMING_ENABLED = "false";
+
 
     private static final String OCSP_VERIFIER_CACHE_PERIOD =
             PREFIX + "proxy.ocsp-verifier-cache-period";
 
     private static final int OCSP_VERIFIER_CACHE_PERIOD_MAX = 180;
 
+    private static final String CERT_PATH_CACHE_SIZE =
+            PREFIX + "proxy.cert-path-cache-size";
+
+    private static final String DEFAULT_CERT_PATH_CACHE_SIZE = "1000";
+
+    private static final String AUTH_CERT_VERIFICATION_CACHE_PERIOD =
+            PREFIX + "proxy.auth-cert-verification-cache-period";
+
+    private static final String DEFAULT_AUTH_CERT_VERIFICATION_CACHE_PERIOD =
+            "60";
+
 
     // Signer -----------------------------------------------------------------
 
@@ -274,6 +352,34 @@ public final class SystemProperties {
     public static final String SIGNER_CSR_SIGNATURE_ALGORITHM =
             PREFIX + "signer.csr-signature-algorithm";
 
+    /** Property name of the number of OCSP responses the signer fetches in parallel */
+    public static final String SIGNER_OCSP_FETCH_PARALLELISM =
+            PREFIX + "signer.ocsp-fetch-parallelism";
+
+    /** Property name of the maximum number of concurrent requests sent to a single OCSP responder */
+    public static final String SIGNER_OCSP_RESPONDER_MAX_CONCURRENT_REQUESTS =
+            PREFIX + "signer.ocsp-responder-max-concurrent-requests";
+
+    /** Property name of the OCSP responder connect timeout */
+    public static final String SIGNER_OCSP_CONNECT_TIMEOUT =
+            PREFIX + "signer.ocsp-connect-timeout";
+
+    /** Property name of the OCSP responder read timeout */
+    public static final String SIGNER_OCSP_READ_TIMEOUT =
+            PREFIX + "signer.ocsp-read-timeout";
+
+    /** Property name of the number of signing workers per software token */
+    public static final String SIGNER_SOFTWARE_TOKEN_SIGN_WORKERS =
+            PREFIX + "signer.software-token-sign-workers";
+
+    private static final String DEFAULT_SIGNER_OCSP_FETCH_PARALLELISM = "8";
+
+    private static final String DEFAULT_SIGNER_OCSP_RESPONDER_MAX_CONCURRENT_REQUESTS = "4";
+
+    private static final String DEFAULT_SIGNER_OCSP_CONNECT_TIMEOUT = "20000";
+
+    private static final String DEFAULT_SIGNER_OCSP_READ_TIMEOUT = "60000";
+
     // AntiDos ----------------------------------------------------------------
 
     /** Property name of the AntiDos on/off switch */
@@ -714,6 +820,48 @@ public final class SystemProperties {
         return System.getProperty(SIGNER_CSR_SIGNATURE_ALGORITHM, getDefaultSignatureAlgorithm());
     }
 
+    /**
+     * @return the number of signing workers per software token, the number of
+     * available processors by default.
+     */
+    public static int getSignerSoftwareTokenSignWorkers() {
+        return Math.max(1, Integer.parseInt(System.getProperty(SIGNER_SOFTWARE_TOKEN_SIGN_WORKERS,
+                String.valueOf(Runtime.getRuntime().availableProcessors()))));
+    }
+
+    /**
+     * @return the number of OCSP responses the signer fetches in parallel, '8' by default.
+     */
+    public static int getSignerOcspFetchParallelism() {
+        return Math.max(1, Integer.parseInt(System.getProperty(SIGNER_OCSP_FETCH_PARALLELISM,
+                DEFAULT_SIGNER_OCSP_FETCH_PARALLELISM)));
+    }
+
+    /**
+     * @return the maximum number of concurrent requests the signer sends to a single OCSP responder,
+     * '4' by default.
+     */
+    public static int getSignerOcspResponderMaxConcurrentRequests() {
+        return Math.max(1, Integer.parseInt(System.getProperty(SIGNER_OCSP_RESPONDER_MAX_CONCURRENT_REQUESTS,
+                DEFAULT_SIGNER_OCSP_RESPONDER_MAX_CONCURRENT_REQUESTS)));
+    }
+
+    /**
+     * @return the OCSP responder connect timeout in milliseconds, '20000' by default.
+     */
+    public static int getSignerOcspConnectTimeout() {
+        return Integer.parseInt(System.getProperty(SIGNER_OCSP_CONNECT_TIMEOUT,
+                DEFAULT_SIGNER_OCSP_CONNECT_TIMEOUT));
+    }
+
+    /**
+     * @return the OCSP responder read timeout in milliseconds, '60000' by default.
+     */
+    public static int getSignerOcspReadTimeout() {
+        return Integer.parseInt(System.getProperty(SIGNER_OCSP_READ_TIMEOUT,
+                DEFAULT_SIGNER_OCSP_READ_TIMEOUT));
+    }
+
     /**
      * @return the HTTP port on which the configuration client is listening,
      * '5665' by default.
@@ -1091,6 +1239,26 @@ public final class SystemProperties {
         return period < OCSP_VERIFIER_CACHE_PERIOD_MAX ? period : OCSP_VERIFIER_CACHE_PERIOD_MAX;
     }
 
+    /**
+     * @return the maximum number of verified certificate paths to cache,
+     * 0 disables the cache
+     */
+    public static int getCertPathCacheSize() {
+        return Integer.parseInt(System.getProperty(CERT_PATH_CACHE_SIZE,
+                DEFAULT_CERT_PATH_CACHE_SIZE));
+    }
+
+    /**
+     * @return the maximum time (in seconds) a successful verification of
+     * a service provider's authentication certificate is cached, 0 disables
+     * the cache
+     */
+    public static int getAuthCertVerificationCachePeriod() {
+        return Integer.parseInt(System.getProperty(
+                AUTH_CERT_VERIFICATION_CACHE_PERIOD,
+                DEFAULT_AUTH_CERT_VERIFICATION_CACHE_PERIOD));
+    }
+
     /**
      * @return the connection maximum idle time that should be set for server proxy connector
      */
@@ -1172,6 +1340,140 @@ public final class SystemProperties {
                 DEFAULT_CLIENTPROXY_POOL_REUSE_CONNECTIONS));
     }
 
+    /**
+     * @return the maximum number of signing requests the batch signer
+     * collects into one batch signature
+     */
+    public static int getBatchSignerMaxBatchSize() {
+        return Math.max(1, Integer.parseInt(System.getProperty(
+                BATCH_SIGNER_MAX_BATCH_SIZE,
+                DEFAULT_BATCH_SIGNER_MAX_BATCH_SIZE)));
+    }
+
+    /**
+     * @return the maximum time (in milliseconds) the batch signer waits for
+     * more signing requests before signing a batch that is not full
+     */
+    public static int getBatchSignerMaxLinger() {
+        return Integer.parseInt(System.getProperty(BATCH_SIGNER_MAX_LINGER,
+                DEFAULT_BATCH_SIGNER_MAX_LINGER));
+    }
+
+    /**
+     * @return the maximum number of batches the batch signer may have
+     * waiting for a signature per signing key at the same time
+     */
+    public static int getBatchSignerMaxInFlightBatches() {
+        return Math.max(1, Integer.parseInt(System.getProperty(
+                BATCH_SIGNER_MAX_IN_FLIGHT_BATCHES,
+                DEFAULT_BATCH_SIGNER_MAX_IN_FLIGHT_BATCHES)));
+    }
+
+    /**
+     * @return true if the client proxy should connect to the service
+     * provider's security server with the lowest observed latency instead of
+     * the one that accepts the connection first
+     */
+    public static boolean isClientProxyTargetSelectionByLatency() {
+        return Boolean.parseBoolean(System.getProperty(
+                CLIENTPROXY_TARGET_SELECTION_BY_LATENCY,
+                DEFAULT_CLIENTPROXY_TARGET_SELECTION_BY_LATENCY));
+    }
+
+    /**
+     * @return the interval (in seconds) after which the client proxy again
+     * connects to all security servers of a service provider at the same time
+     * to measure their latency
+     */
+    public static int getClientProxyTargetSelectionRaceInterval() {
+        return Integer.parseInt(System.getProperty(
+                CLIENTPROXY_TARGET_SELECTION_RACE_INTERVAL,
+                DEFAULT_CLIENTPROXY_TARGET_SELECTION_RACE_INTERVAL));
+    }
+
+    /**
+     * @return the maximum number of requests per second the server proxy
+     * accepts from one client (member or subsystem), 0 if unlimited
+     */
+    public static int getServerProxyClientRateLimit() {
+        return Integer.parseInt(System.getProperty(
+                SERVERPROXY_CLIENT_RATE_LIMIT,
+                DEFAULT_SERVERPROXY_CLIENT_RATE_LIMIT));
+    }
+
+    /**
+     * @return the maximum number of requests per second the server proxy
+     * accepts from one IP address, 0 if unlimited
+     */
+    public static int getServerProxyAddressRateLimit() {
+        return Integer.parseInt(System.getProperty(
+                SERVERPROXY_ADDRESS_RATE_LIMIT,
+                DEFAULT_SERVERPROXY_ADDRESS_RATE_LIMIT));
+    }
+
+    /**
+     * @return the maximum number of requests the server proxy sends to one
+     * service address (host and port) at the same time, 0 if unlimited
+     */
+    public static int getServerProxyServiceMaxConcurrency() {
+        return Integer.parseInt(System.getProperty(
+                SERVERPROXY_SERVICE_MAX_CONCURRENCY,
+                DEFAULT_SERVERPROXY_SERVICE_MAX_CONCURRENCY));
+    }
+
+    /**
+     * @return the number of consecutive failed requests after which the
+     * server proxy stops sending requests to a service address for a while,
+     * 0 if requests are always sent
+     */
+    public static int getServerProxyServiceFailureThreshold() {
+        return Integer.parseInt(System.getProperty(
+                SERVERPROXY_SERVICE_FAILURE_THRESHOLD,
+                DEFAULT_SERVERPROXY_SERVICE_FAILURE_THRESHOLD));
+    }
+
+    /**
+     * @return the time (in seconds) the server proxy stops sending requests
+     * to a failing service address before trying it again
+     */
+    public static int getServerProxyServiceOpenTime() {
+        return Integer.parseInt(System.getProperty(
+                SERVERPROXY_SERVICE_OPEN_TIME,
+                DEFAULT_SERVERPROXY_SERVICE_OPEN_TIME));
+    }
+
+    /**
+     * @return the number of bytes of a message with attachments that is
+     * cached in memory before the message is written to a temporary file,
+     * 0 if messages are always cached in a file
+     */
+    public static int getAttachmentCacheMemoryThreshold() {
+        return Integer.parseInt(System.getProperty(
+                ATTACHMENT_CACHE_MEMORY_THRESHOLD,
+                DEFAULT_ATTACHMENT_CACHE_MEMORY_THRESHOLD));
+    }
+
+    /**
+     * @return the time (in seconds) a WSDL downloaded by the metadata
+     * service is returned without contacting the service provider,
+     * 0 if the WSDL is revalidated on every request
+     */
+    public static int getServerProxyWsdlCacheMaxAge() {
+        return Integer.parseInt(System.getProperty(
+                SERVERPROXY_WSDL_CACHE_MAX_AGE,
+                DEFAULT_SERVERPROXY_WSDL_CACHE_MAX_AGE));
+    }
+
+    /**
+     * @return true if the time spent in the stages of processing messages
+     * in the client and server proxy is measured
+     */
+    public static boolean isProxyStageTimingEnabled() {
+        return Boolean.parseBoolean(System.getProperty(
+                PROXY_STAGE_TIMING_ENABLED,
+                DEFAULT_PROXY_STAGE_TIMING_ENABLED));
+    }
+
     public static int getClientProxyPoolTotalMaxConnections() {
         return Integer.parseInt(System.getProperty(CLIENTPROXY_POOL_TOTAL_MAX_CONNECTIONS,
                 DEFAULT_CLIENTPROXY_POOL_TOTAL_MAX_CONNECTIONS));
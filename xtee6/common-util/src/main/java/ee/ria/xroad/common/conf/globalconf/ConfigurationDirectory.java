@@ -72,6 +72,27 @@ public interface ConfigurationDirectory {
     saveMetadata(fileName, expirationDate);
   }
 
+  /**
+   * Moves the content file to the given file atomically and saves the
+   * metadata. The content file must be on the same file system.
+   * @param content the content file
+   * @param fileName the file
+   * @param metadata the metadata
+   * @throws Exception if an error occurs
+   */
+  static void move(Path content, Path fileName,
+                   ConfigurationPartMetadata metadata) throws Exception {
+    if (fileName == null) {
+      return;
+    }
+
+    LOG.info("Saving content to file {}", fileName);
+
+    Files.move(content, fileName, StandardCopyOption.ATOMIC_MOVE);
+
+    saveMetadata(fileName, metadata);
+  }
+
   /**
    * Saves the expiration date for the given file.
    * @param fileName the file
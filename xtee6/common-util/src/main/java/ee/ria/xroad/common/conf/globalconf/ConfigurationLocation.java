@@ -59,6 +59,8 @@ public class ConfigurationLocation {
 
     public static final int READ_TIMEOUT = 30000;
 
+    public static final int CONNECT_TIMEOUT = 10000;
+
     /**
      * @return the input stream acquired by connecting to the download url.
      * @throws Exception if an error occurs
@@ -79,6 +81,7 @@ public class ConfigurationLocation {
     public static URLConnection getDownloadURLConnection(String urlStr) throws IOException {
         URL url = new URL(urlStr);
         URLConnection connection = url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
         connection.setReadTimeout(READ_TIMEOUT);
         return connection;
     }
@@ -27,6 +27,7 @@ import ee.ria.xroad.common.conf.globalconf.sharedparameters.v1.*;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.GlobalGroupId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
+import ee.ria.xroad.common.identifier.XRoadId;
 import lombok.AccessLevel;
 import lombok.Getter;
 import org.apache.commons.lang3.StringUtils;
@@ -73,19 +74,22 @@ public class SharedParametersV1 extends AbstractXmlConf<SharedParametersType> {
   }
 
   ClientId createMemberId(MemberType member) {
-    return ClientId.create(confType.getInstanceIdentifier(),
-        member.getMemberClass().getCode(), member.getMemberCode());
+    return XRoadId.intern(ClientId.create(
+        confType.getInstanceIdentifier(),
+        member.getMemberClass().getCode(), member.getMemberCode()));
   }
 
   ClientId createSubsystemId(MemberType member, SubsystemType subsystem) {
-    return ClientId.create(confType.getInstanceIdentifier(),
+    return XRoadId.intern(ClientId.create(
+        confType.getInstanceIdentifier(),
         member.getMemberClass().getCode(), member.getMemberCode(),
-        subsystem.getSubsystemCode());
+        subsystem.getSubsystemCode()));
   }
 
   GlobalGroupId createGlobalGroupId(GlobalGroupType globalGroup) {
-    return GlobalGroupId.create(confType.getInstanceIdentifier(),
-        globalGroup.getGroupCode());
+    return XRoadId.intern(GlobalGroupId.create(
+        confType.getInstanceIdentifier(),
+        globalGroup.getGroupCode()));
   }
 
   String getInstanceIdentifier() {
@@ -247,10 +251,11 @@ public class SharedParametersV1 extends AbstractXmlConf<SharedParametersType> {
       addServerClient(createMemberId(owner), securityServer);
 
       // cache security server information by serverId
-      SecurityServerId securityServerId = SecurityServerId.create(
+      SecurityServerId securityServerId =
+          XRoadId.intern(SecurityServerId.create(
           confType.getInstanceIdentifier(),
           owner.getMemberClass().getCode(),
-          owner.getMemberCode(), securityServer.getServerCode());
+          owner.getMemberCode(), securityServer.getServerCode()));
       securityServersById.put(securityServerId, securityServer);
 
       // Add clients of the security server.
@@ -281,10 +286,11 @@ public class SharedParametersV1 extends AbstractXmlConf<SharedParametersType> {
     }
 
     MemberType owner = getOwner(server);
-    SecurityServerId securityServerId = SecurityServerId.create(
+    SecurityServerId securityServerId =
+        XRoadId.intern(SecurityServerId.create(
         confType.getInstanceIdentifier(),
         owner.getMemberClass().getCode(),
-        owner.getMemberCode(), server.getServerCode());
+        owner.getMemberCode(), server.getServerCode()));
 
     addToMap(securityServerClients, securityServerId, client);
   }
@@ -23,20 +23,17 @@
 package ee.ria.xroad.common.hashchain;
 
 import static ee.ria.xroad.common.hashchain.DigestList.digestHashStep;
+import static ee.ria.xroad.common.util.CryptoUtils.encodeBase64;
 import static ee.ria.xroad.common.util.CryptoUtils.getDigestAlgorithmURI;
 import static ee.ria.xroad.common.util.MessageFileNames.attachment;
 import static java.lang.Integer.numberOfLeadingZeros;
 
-import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBElement;
-import javax.xml.bind.Marshaller;
-
+import org.apache.commons.lang3.StringEscapeUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -63,6 +60,9 @@ import org.slf4j.LoggerFactory;
  * treated as a single array consisting of nodes+inputs.
  *
  * For incomplete binary trees, some inputs and nodes can be null.
+ *
+ * The XML is written directly, in the same layout as the formatted output
+ * of the JAXB types generated from hashchain.xsd.
  */
 public final class HashChainBuilder {
 
@@ -71,8 +71,20 @@ public final class HashChainBuilder {
     private static final Logger LOG =
             LoggerFactory.getLogger(HashChainBuilder.class);
 
-    /** For accessing JAXB functionality. Shared between all the builders. */
-    private static JAXBContext jaxbCtx;
+    private static final String XML_DECLARATION =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+
+    private static final String NAMESPACES =
+            " xmlns:ns2=\"http://cyber.ee/hashchain\""
+                    + " xmlns=\"http://www.w3.org/2000/09/xmldsig#\"";
+
+    private static final String INDENT = "    ";
+
+    /** Approximate size of a hash chain XML, excluding hash steps. */
+    private static final int HASH_CHAIN_SIZE = 256;
+
+    /** Approximate size of one hash step XML. */
+    private static final int HASH_STEP_SIZE = 320;
 
     /**
      * Index of the root of the tree.
@@ -87,6 +99,9 @@ public final class HashChainBuilder {
     /** Hash algorithm URI used in XML. */
     private final String hashAlgorithmUri;
 
+    /** Start of every hash chain, including the default digest method. */
+    private final String hashChainStart;
+
     /** Array of input hashes. */
     private final List<byte[]> inputs = new ArrayList<>();
 
@@ -96,7 +111,7 @@ public final class HashChainBuilder {
      */
     private final Map<Integer, byte[][]> multiparts = new HashMap<>();
 
-    /** The file name to be used for data refs. */
+    /** The file name to be used for data refs, escaped for XML. */
     private String dataRefFileName;
 
     /** Array of intermediate Merkle tree nodes. */
@@ -105,12 +120,6 @@ public final class HashChainBuilder {
     /** Maximum index a tree node can have. */
     private int maxIndex;
 
-    /** Used for serializing XML objects. */
-    private Marshaller marshaller;
-
-    /** Factory for creating XML objects. */
-    private ObjectFactory objectFactory = new ObjectFactory();
-
     /**
      * Constructs a hash chain builder.
      * @param hashAlgorithm Identifier (not URL) of the hash algorithm
@@ -123,9 +132,9 @@ public final class HashChainBuilder {
         this.hashAlgorithm = hashAlgorithm;
         hashAlgorithmUri = getDigestAlgorithmURI(hashAlgorithm);
 
-        marshaller = jaxbCtx.createMarshaller();
-        // Format the XML, good for debugging.
-        marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+        hashChainStart = XML_DECLARATION + "<ns2:HashChain" + NAMESPACES
+                + ">\n" + INDENT + "<ns2:DefaultDigestMethod Algorithm=\""
+                + escape(hashAlgorithmUri) + "\"/>\n";
     }
 
     /**
@@ -214,13 +223,17 @@ public final class HashChainBuilder {
                             + "without attachments.");
         }
 
-        HashChainResultType result = new HashChainResultType();
-
-        result.setDigestValue(getTreeTop());
-        result.setDigestMethod(digestMethod());
-        result.setURI(hashChainFileName + "#" + STEP + "0");
-
-        return elementToString(objectFactory.createHashChainResult(result));
+        StringBuilder result = new StringBuilder(HASH_CHAIN_SIZE);
+        result.append(XML_DECLARATION)
+            .append("<ns2:HashChainResult URI=\"")
+            .append(escape(hashChainFileName + "#" + STEP + "0"))
+            .append('"').append(NAMESPACES).append(">\n")
+            .append(INDENT).append("<DigestMethod Algorithm=\"")
+            .append(escape(hashAlgorithmUri)).append("\"/>\n");
+        appendDigestValue(result, INDENT, getTreeTop());
+        result.append("</ns2:HashChainResult>");
+
+        return result.toString();
     }
 
     /**
@@ -244,11 +257,11 @@ public final class HashChainBuilder {
                             + "without attachments.");
         }
 
-        this.dataRefFileName = dataFileName;
         if (dataFileName == null) {
             throw new IllegalArgumentException(
                     "dataRefFileName must not be null");
         }
+        this.dataRefFileName = escape(dataFileName);
 
         String[] ret = new String[inputs.size()];
 
@@ -409,16 +422,16 @@ public final class HashChainBuilder {
     private String makeHashChain(int itemIndex) throws Exception {
         LOG.trace("makeHashChain({})", itemIndex);
 
-        HashChainType hashChain = new HashChainType();
-        hashChain.setDefaultDigestMethod(digestMethod());
+        // current level will be height of non-leaf part of the tree.
+        int currentLevel = ceilingLog2(inputs.size()) - 1;
+
+        StringBuilder hashChain = startHashChain(currentLevel + 2);
 
         // Hash step count is used to generate references.
         int stepCount = 0;
 
         // Start with root node
         int currentNodeIdx = ROOT_IDX;
-        // current level will be height of non-leaf part of the tree.
-        int currentLevel = ceilingLog2(inputs.size()) - 1;
 
         // Walk the tree downwards from the root node.
         while (currentNodeIdx < nodes.length) {
@@ -439,35 +452,23 @@ public final class HashChainBuilder {
                 --currentLevel;
             }
 
-            // For the other node, we always use hash value.
-            AbstractValueType otherData = hashValue(getDeep(otherChildIdx));
-            AbstractValueType myData;
-
-            // If the child is leaf node and there are no attachments,
-            // use the data ref. Otherwise use the StepRef.
-            if (isLeaf(myChildIdx) && !multiparts.containsKey(itemIndex)) {
-                // Plain data ref.
-                myData = dataRef(get(myChildIdx));
-            } else {
-                // Non-leaf nodes refer to other hash steps.
-                myData = stepRef(stepCount + 1);
+            // Construct the hash step. The value for our child comes first
+            // if we are interested in the left child.
+            hashChain.append(INDENT).append("<ns2:HashStep id=\"")
+                .append(STEP).append(stepCount).append("\">\n");
+
+            if (myDirection == 0) {
+                appendMyData(hashChain, itemIndex, myChildIdx, stepCount);
             }
 
-            // Construct the hash step.
-            HashStepType hashStep = new HashStepType();
-            hashStep.setId(STEP + stepCount);
-            // Create two elements.
-            hashStep.getHashValueOrStepRefOrDataRef().add(null);
-            hashStep.getHashValueOrStepRefOrDataRef().add(null);
+            // For the other node, we always use hash value.
+            appendHashValue(hashChain, getDeep(otherChildIdx));
 
-            // Set the data items.
-            hashStep.getHashValueOrStepRefOrDataRef().set(
-                    myDirection, myData);
-            hashStep.getHashValueOrStepRefOrDataRef().set(
-                    1 - myDirection, otherData);
+            if (myDirection != 0) {
+                appendMyData(hashChain, itemIndex, myChildIdx, stepCount);
+            }
 
-            // Add to chain
-            hashChain.getHashStep().add(hashStep);
+            hashChain.append(INDENT).append("</ns2:HashStep>\n");
 
             // Update state variables.
             ++stepCount;
@@ -479,46 +480,29 @@ public final class HashChainBuilder {
         // step that references all the individual parts.
         if (multiparts.containsKey(itemIndex)) {
             LOG.trace("Adding attachments");
-            hashChain.getHashStep().add(
-                    multipartStep(multiparts.get(itemIndex), stepCount));
+            appendMultipartStep(hashChain, multiparts.get(itemIndex),
+                    stepCount);
         }
 
-        return elementToString(objectFactory.createHashChain(hashChain));
-    }
-
-    /**
-     * Creates reference to input data.
-     */
-    private DataRefType dataRef(byte[] digest) {
-        return dataRef(dataRefFileName, digest);
-    }
-
-    /**
-     * Creates reference to input data with given file name.
-     */
-    private static DataRefType dataRef(String fileName, byte[] digest) {
-        DataRefType dataRef = new DataRefType();
-        dataRef.setURI(fileName);
-        dataRef.setDigestValue(digest);
-        return dataRef;
-    }
-
-    /**
-     * Creates reference to another hash step.
-     */
-    private static StepRefType stepRef(int stepCount) {
-        StepRefType stepRef = new StepRefType();
-        stepRef.setURI("#" + STEP + stepCount);
-        return stepRef;
+        return endHashChain(hashChain);
     }
 
     /**
-     * Creates a concrete hash value.
+     * Appends the value of the child on the path to the input data item.
+     * If the child is leaf node and there are no attachments, the value is
+     * the data ref. Otherwise the value refers to the next hash step.
      */
-    private static HashValueType hashValue(byte[] data) {
-        HashValueType hashValue = new HashValueType();
-        hashValue.setDigestValue(data);
-        return hashValue;
+    private void appendMyData(StringBuilder hashChain, int itemIndex,
+            int myChildIdx, int stepCount) {
+        if (isLeaf(myChildIdx) && !multiparts.containsKey(itemIndex)) {
+            // Plain data ref.
+            appendDataRef(hashChain, dataRefFileName, get(myChildIdx));
+        } else {
+            // Non-leaf nodes refer to other hash steps.
+            hashChain.append(INDENT).append(INDENT)
+                .append("<ns2:StepRef URI=\"#").append(STEP)
+                .append(stepCount + 1).append("\"/>\n");
+        }
     }
 
     /**
@@ -527,51 +511,73 @@ public final class HashChainBuilder {
     private String makeSingleInputHashChain() throws Exception {
         LOG.trace("makeSingleInputHashChain()");
 
-        HashChainType hashChain = new HashChainType();
-        hashChain.setDefaultDigestMethod(digestMethod());
+        StringBuilder hashChain = startHashChain(1);
 
         // This is a multipart input. Add single step for all
         // the input parts
-        hashChain.getHashStep().add(multipartStep(multiparts.get(0), 0));
+        appendMultipartStep(hashChain, multiparts.get(0), 0);
 
-        return elementToString(objectFactory.createHashChain(hashChain));
+        return endHashChain(hashChain);
     }
 
-    private HashStepType multipartStep(byte[][] inputSet, int stepCount) {
-        HashStepType ret = new HashStepType();
-        ret.setId(STEP + stepCount);
+    private void appendMultipartStep(StringBuilder hashChain,
+            byte[][] inputSet, int stepCount) {
+        hashChain.append(INDENT).append("<ns2:HashStep id=\"")
+            .append(STEP).append(stepCount).append("\">\n");
 
         for (int i = 0; i < inputSet.length; ++i) {
             if (i == 0) {
                 // The first input is message
-                ret.getHashValueOrStepRefOrDataRef().add(dataRef(inputSet[i]));
+                appendDataRef(hashChain, dataRefFileName, inputSet[i]);
             } else {
                 // All the other inputs are attachments, starting from 1.
-                ret.getHashValueOrStepRefOrDataRef().add(
-                        dataRef(attachment(i), inputSet[i]));
+                appendDataRef(hashChain, escape(attachment(i)), inputSet[i]);
             }
         }
 
-        return ret;
+        hashChain.append(INDENT).append("</ns2:HashStep>\n");
+    }
+
+    private StringBuilder startHashChain(int stepCount) {
+        StringBuilder hashChain =
+                new StringBuilder(HASH_CHAIN_SIZE + stepCount * HASH_STEP_SIZE);
+        return hashChain.append(hashChainStart);
+    }
+
+    private static String endHashChain(StringBuilder hashChain) {
+        return hashChain.append("</ns2:HashChain>").toString();
     }
 
     /**
-     * Creates a DigestMethod element, based on the current hash algorithm.
+     * Appends reference to input data with given (escaped) file name.
      */
-    private DigestMethodType digestMethod() {
-        DigestMethodType digestMethod = new DigestMethodType();
-        digestMethod.setAlgorithm(hashAlgorithmUri);
-        return digestMethod;
+    private static void appendDataRef(StringBuilder hashChain,
+            String escapedFileName, byte[] digest) {
+        hashChain.append(INDENT).append(INDENT)
+            .append("<ns2:DataRef URI=\"").append(escapedFileName)
+            .append("\">\n");
+        appendDigestValue(hashChain, INDENT + INDENT + INDENT, digest);
+        hashChain.append(INDENT).append(INDENT).append("</ns2:DataRef>\n");
     }
 
     /**
-     * Serializes the given XML element to a string.
+     * Appends a concrete hash value.
      */
-    private <T> String elementToString(JAXBElement<T> element)
-            throws Exception {
-        StringWriter writer = new StringWriter();
-        marshaller.marshal(element, writer);
-        return writer.toString();
+    private static void appendHashValue(StringBuilder hashChain,
+            byte[] digest) {
+        hashChain.append(INDENT).append(INDENT).append("<ns2:HashValue>\n");
+        appendDigestValue(hashChain, INDENT + INDENT + INDENT, digest);
+        hashChain.append(INDENT).append(INDENT).append("</ns2:HashValue>\n");
+    }
+
+    private static void appendDigestValue(StringBuilder xml, String indent,
+            byte[] digest) {
+        xml.append(indent).append("<DigestValue>")
+            .append(encodeBase64(digest)).append("</DigestValue>\n");
+    }
+
+    private static String escape(String attributeValue) {
+        return StringEscapeUtils.escapeXml10(attributeValue);
     }
 
     /**
@@ -624,12 +630,4 @@ public final class HashChainBuilder {
     private static int pow2(int n) {
         return 1 << n;
     }
-
-    static {
-        try {
-            jaxbCtx = JAXBContext.newInstance(ObjectFactory.class);
-        } catch (Exception ex) {
-            LOG.error("Failed to initialize JAXB context", ex);
-        }
-    }
 }
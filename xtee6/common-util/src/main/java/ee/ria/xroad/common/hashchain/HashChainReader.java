@@ -0,0 +1,364 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.hashchain;
+
+import java.io.ByteArrayInputStream;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.xerces.util.XMLChar;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads hash chains and hash chain results with StAX.
+ *
+ * Only documents that stay within the part of hashchain.xsd that is written
+ * by HashChainBuilder are read: digest methods without content, values
+ * without transforms and no foreign elements or attributes. The reader
+ * checks the structure of these documents against the schema as it goes.
+ * For any other document null is returned, and the caller must unmarshal
+ * and validate the document against the schema instead.
+ */
+final class HashChainReader {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(HashChainReader.class);
+
+    private static final String NS_HASHCHAIN = "http://cyber.ee/hashchain";
+    private static final String NS_DS = "http://www.w3.org/2000/09/xmldsig#";
+
+    private static final String ALGORITHM = "Algorithm";
+    private static final String URI = "URI";
+    private static final String ID = "id";
+
+    private static final XMLInputFactory FACTORY = createInputFactory();
+
+    private final XMLStreamReader reader;
+
+    private final Set<String> stepIds = new HashSet<>();
+
+    private HashChainReader(XMLStreamReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @return the hash chain, or null if the document must be unmarshalled
+     * and validated instead
+     */
+    static HashChainType readHashChain(byte[] xml) {
+        try {
+            HashChainReader hashChainReader = create(xml);
+            try {
+                return hashChainReader.readHashChain();
+            } finally {
+                hashChainReader.reader.close();
+            }
+        } catch (XMLStreamException | UnsupportedDocumentException e) {
+            LOG.trace("Hash chain not read with StAX: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return the hash chain result, or null if the document must be
+     * unmarshalled and validated instead
+     */
+    static HashChainResultType readHashChainResult(byte[] xml) {
+        try {
+            HashChainReader hashChainReader = create(xml);
+            try {
+                return hashChainReader.readHashChainResult();
+            } finally {
+                hashChainReader.reader.close();
+            }
+        } catch (XMLStreamException | UnsupportedDocumentException e) {
+            LOG.trace("Hash chain result not read with StAX: {}",
+                    e.getMessage());
+            return null;
+        }
+    }
+
+    private static HashChainReader create(byte[] xml)
+            throws XMLStreamException {
+        return new HashChainReader(
+                FACTORY.createXMLStreamReader(new ByteArrayInputStream(xml)));
+    }
+
+    private HashChainType readHashChain()
+            throws XMLStreamException, UnsupportedDocumentException {
+        reader.nextTag();
+        requireStart(NS_HASHCHAIN, "HashChain");
+        readAttribute(null, false);
+
+        HashChainType hashChain = new HashChainType();
+
+        reader.nextTag();
+        if (isStart(NS_HASHCHAIN, "DefaultDigestMethod")) {
+            hashChain.setDefaultDigestMethod(readDigestMethod());
+            reader.nextTag();
+        }
+
+        while (isStart(NS_HASHCHAIN, "HashStep")) {
+            hashChain.getHashStep().add(readHashStep());
+            reader.nextTag();
+        }
+
+        requireDocumentEnd();
+
+        return hashChain;
+    }
+
+    private HashChainResultType readHashChainResult()
+            throws XMLStreamException, UnsupportedDocumentException {
+        reader.nextTag();
+        requireStart(NS_HASHCHAIN, "HashChainResult");
+
+        HashChainResultType result = new HashChainResultType();
+        result.setURI(readAttribute(URI, true));
+
+        reader.nextTag();
+        if (isStart(NS_DS, "DigestMethod")) {
+            result.setDigestMethod(readDigestMethod());
+            reader.nextTag();
+        }
+
+        result.setDigestValue(readDigestValue());
+        reader.nextTag();
+
+        requireDocumentEnd();
+
+        return result;
+    }
+
+    private HashStepType readHashStep()
+            throws XMLStreamException, UnsupportedDocumentException {
+        HashStepType hashStep = new HashStepType();
+
+        String id = readAttribute(ID, false);
+        if (id != null) {
+            // The id attribute is of type ID
+            if (!XMLChar.isValidNCName(id) || !stepIds.add(id)) {
+                throw new UnsupportedDocumentException("Invalid id " + id);
+            }
+
+            hashStep.setId(id);
+        }
+
+        reader.nextTag();
+        while (reader.isStartElement()) {
+            hashStep.getHashValueOrStepRefOrDataRef().add(readValue());
+            reader.nextTag();
+        }
+
+        return hashStep;
+    }
+
+    private AbstractValueType readValue()
+            throws XMLStreamException, UnsupportedDocumentException {
+        if (isStart(NS_HASHCHAIN, "StepRef")) {
+            StepRefType stepRef = new StepRefType();
+            stepRef.setURI(readAttribute(URI, true));
+
+            reader.nextTag();
+            stepRef.setDigestMethod(readOptionalDigestMethod());
+            requireEnd();
+
+            return stepRef;
+        } else if (isStart(NS_HASHCHAIN, "DataRef")) {
+            DataRefType dataRef = new DataRefType();
+            dataRef.setURI(readAttribute(URI, true));
+
+            reader.nextTag();
+            dataRef.setDigestMethod(readOptionalDigestMethod());
+            dataRef.setDigestValue(readDigestValue());
+            reader.nextTag();
+            requireEnd();
+
+            return dataRef;
+        } else if (isStart(NS_HASHCHAIN, "HashValue")) {
+            HashValueType hashValue = new HashValueType();
+            readAttribute(null, false);
+
+            reader.nextTag();
+            hashValue.setDigestMethod(readOptionalDigestMethod());
+            hashValue.setDigestValue(readDigestValue());
+            reader.nextTag();
+            requireEnd();
+
+            return hashValue;
+        }
+
+        throw new UnsupportedDocumentException(
+                "Unexpected element " + reader.getName());
+    }
+
+    /**
+     * Reads ds:DigestMethod if the reader is at its start and moves to
+     * the next tag after it.
+     */
+    private DigestMethodType readOptionalDigestMethod()
+            throws XMLStreamException, UnsupportedDocumentException {
+        if (!isStart(NS_DS, "DigestMethod")) {
+            return null;
+        }
+
+        DigestMethodType digestMethod = readDigestMethod();
+        reader.nextTag();
+
+        return digestMethod;
+    }
+
+    private DigestMethodType readDigestMethod()
+            throws XMLStreamException, UnsupportedDocumentException {
+        DigestMethodType digestMethod = new DigestMethodType();
+        digestMethod.setAlgorithm(readAttribute(ALGORITHM, true));
+
+        // Any content of the digest method is left to the schema validation
+        if (reader.nextTag() != XMLStreamConstants.END_ELEMENT) {
+            throw new UnsupportedDocumentException(
+                    "Digest method with content");
+        }
+
+        return digestMethod;
+    }
+
+    private byte[] readDigestValue()
+            throws XMLStreamException, UnsupportedDocumentException {
+        requireStart(NS_DS, "DigestValue");
+        readAttribute(null, false);
+
+        String text = reader.getElementText();
+        try {
+            return Base64.getDecoder().decode(removeWhitespace(text));
+        } catch (IllegalArgumentException e) {
+            throw new UnsupportedDocumentException("Invalid digest value");
+        }
+    }
+
+    /**
+     * Returns the value of the only attribute allowed for the current
+     * element, or null if the element has no attributes.
+     */
+    private String readAttribute(String name, boolean required)
+            throws UnsupportedDocumentException {
+        String value = null;
+
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String namespace = reader.getAttributeNamespace(i);
+            if ((namespace != null && !namespace.isEmpty())
+                    || !reader.getAttributeLocalName(i).equals(name)) {
+                throw new UnsupportedDocumentException(
+                        "Unexpected attribute " + reader.getAttributeName(i));
+            }
+
+            value = reader.getAttributeValue(i);
+        }
+
+        if (required && value == null) {
+            throw new UnsupportedDocumentException(
+                    "Missing attribute " + name);
+        }
+
+        return value;
+    }
+
+    private boolean isStart(String namespace, String localName) {
+        return reader.isStartElement()
+                && localName.equals(reader.getLocalName())
+                && namespace.equals(reader.getNamespaceURI());
+    }
+
+    private void requireStart(String namespace, String localName)
+            throws UnsupportedDocumentException {
+        if (!isStart(namespace, localName)) {
+            throw new UnsupportedDocumentException(
+                    "Expected element " + localName);
+        }
+    }
+
+    private void requireEnd() throws UnsupportedDocumentException {
+        if (!reader.isEndElement()) {
+            throw new UnsupportedDocumentException(
+                    "Unexpected element " + reader.getName());
+        }
+    }
+
+    /**
+     * Checks that the reader is at the end of the document element and
+     * that only whitespace, comments and processing instructions follow.
+     */
+    private void requireDocumentEnd()
+            throws XMLStreamException, UnsupportedDocumentException {
+        requireEnd();
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event != XMLStreamConstants.COMMENT
+                    && event != XMLStreamConstants.PROCESSING_INSTRUCTION
+                    && event != XMLStreamConstants.SPACE
+                    && event != XMLStreamConstants.END_DOCUMENT
+                    && !reader.isWhiteSpace()) {
+                throw new UnsupportedDocumentException(
+                        "Content after document element");
+            }
+        }
+    }
+
+    private static String removeWhitespace(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!XMLChar.isSpace(c)) {
+                sb.append(c);
+            }
+        }
+
+        return sb.toString();
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(
+                XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    /**
+     * Signals that the document must be read through the schema validation.
+     */
+    private static final class UnsupportedDocumentException extends Exception {
+        UnsupportedDocumentException(String message) {
+            super(message, null, false, false);
+        }
+    }
+}
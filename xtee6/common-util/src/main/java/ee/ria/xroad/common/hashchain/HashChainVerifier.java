@@ -31,6 +31,7 @@ import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
 import static ee.ria.xroad.common.util.CryptoUtils.encodeBase64;
 import static ee.ria.xroad.common.util.CryptoUtils.getAlgorithmId;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -49,6 +50,7 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.transform.Source;
 import javax.xml.validation.Schema;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
@@ -63,6 +65,10 @@ import ee.ria.xroad.common.util.SchemaValidator;
 
 /**
  * Verification of hash chains.
+ *
+ * Hash chains and hash chain results in the form written by
+ * HashChainBuilder are read with HashChainReader. Other documents are
+ * unmarshalled with JAXB and validated against the schema.
  */
 public final class HashChainVerifier {
     private static final Logger LOG = LoggerFactory.getLogger(
@@ -154,9 +160,33 @@ public final class HashChainVerifier {
         }
     }
 
-    @SuppressWarnings("unchecked")
     private static HashChainResultType parseHashChainResult(InputStream xml)
             throws Exception {
+        byte[] data = IOUtils.toByteArray(xml);
+
+        HashChainResultType result = HashChainReader.readHashChainResult(data);
+        if (result != null) {
+            return result;
+        }
+
+        return unmarshalHashChainResult(new ByteArrayInputStream(data));
+    }
+
+    private static HashChainType parseHashChain(InputStream xml)
+            throws Exception {
+        byte[] data = IOUtils.toByteArray(xml);
+
+        HashChainType hashChain = HashChainReader.readHashChain(data);
+        if (hashChain != null) {
+            return hashChain;
+        }
+
+        return unmarshalHashChain(new ByteArrayInputStream(data));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static HashChainResultType unmarshalHashChainResult(
+            InputStream xml) throws Exception {
         Unmarshaller unmarshaller = jaxbCtx.createUnmarshaller();
         JAXBElement<HashChainResultType> element =
                 (JAXBElement<HashChainResultType>) unmarshaller.unmarshal(xml);
@@ -167,7 +197,7 @@ public final class HashChainVerifier {
     }
 
     @SuppressWarnings("unchecked")
-    private static HashChainType parseHashChain(InputStream xml)
+    private static HashChainType unmarshalHashChain(InputStream xml)
             throws Exception {
         Unmarshaller unmarshaller = jaxbCtx.createUnmarshaller();
         JAXBElement<HashChainType> element =
@@ -123,40 +123,42 @@ final class IdentifierTypeConverter {
                     "Redundant subsystem code");
         }
 
-        return ClientId.create(v.getXRoadInstance(), v.getMemberClass(),
-                v.getMemberCode(),
+        return XRoadId.intern(ClientId.create(v.getXRoadInstance(),
+                v.getMemberClass(), v.getMemberCode(),
                 XRoadObjectType.MEMBER.equals(v.getObjectType())
-                        ? null : v.getSubsystemCode());
+                        ? null : v.getSubsystemCode()));
     }
 
     static ServiceId parseServiceId(XRoadIdentifierType v) {
-        return ServiceId.create(v.getXRoadInstance(),
+        return XRoadId.intern(ServiceId.create(v.getXRoadInstance(),
                 v.getMemberClass(), v.getMemberCode(),
                 v.getSubsystemCode(), v.getServiceCode(),
-                v.getServiceVersion());
+                v.getServiceVersion()));
     }
 
     static SecurityCategoryId parseSecurityCategoryId(XRoadIdentifierType v) {
-        return SecurityCategoryId.create(v.getXRoadInstance(),
-                v.getSecurityCategoryCode());
+        return XRoadId.intern(SecurityCategoryId.create(
+                v.getXRoadInstance(),
+                v.getSecurityCategoryCode()));
     }
 
     static CentralServiceId parseCentralServiceId(XRoadIdentifierType v) {
-        return CentralServiceId.create(v.getXRoadInstance(),
-                v.getServiceCode());
+        return XRoadId.intern(CentralServiceId.create(v.getXRoadInstance(),
+                v.getServiceCode()));
     }
 
     static SecurityServerId parseSecurityServerId(XRoadIdentifierType v) {
-        return SecurityServerId.create(v.getXRoadInstance(),
-                v.getMemberClass(), v.getMemberCode(), v.getServerCode());
+        return XRoadId.intern(SecurityServerId.create(v.getXRoadInstance(),
+                v.getMemberClass(), v.getMemberCode(), v.getServerCode()));
     }
 
     static GlobalGroupId parseGlobalGroupId(XRoadIdentifierType v) {
-        return GlobalGroupId.create(v.getXRoadInstance(), v.getGroupCode());
+        return XRoadId.intern(GlobalGroupId.create(v.getXRoadInstance(),
+                v.getGroupCode()));
     }
 
     static LocalGroupId parseLocalGroupId(XRoadIdentifierType v) {
-        return LocalGroupId.create(v.getGroupCode());
+        return XRoadId.intern(LocalGroupId.create(v.getGroupCode()));
     }
 
     // -- Identifier-specific adapter classes ---------------------------------
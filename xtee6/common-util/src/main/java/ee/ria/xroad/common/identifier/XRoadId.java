@@ -23,13 +23,16 @@
 package ee.ria.xroad.common.identifier;
 
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Objects;
 
 import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
 
-import org.apache.commons.lang.builder.EqualsBuilder;
-import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.apache.commons.lang3.StringUtils;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
 
 /**
  * Base class for global identifiers in the X-Road system.
@@ -37,11 +40,16 @@ import org.apache.commons.lang3.StringUtils;
 @XmlJavaTypeAdapter(IdentifierTypeConverter.GenericXRoadIdAdapter.class)
 public abstract class XRoadId implements Serializable {
 
+    private static final Interner<XRoadId> INTERNER =
+            Interners.newWeakInterner();
+
     private final XRoadObjectType type;
     private final String xRoadInstance;
 
     private Long id; // used for references in database
 
+    private transient int hash; // computed on first use, 0 if not yet
+
     XRoadId() {
         this(null, null);
     }
@@ -72,16 +80,36 @@ public abstract class XRoadId implements Serializable {
 
     @Override
     public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (obj == null || getClass() != obj.getClass()
+                || hashCode() != obj.hashCode()) {
+            return false;
+        }
+
         // exclude 'id' field, because it is not part of identifier
         // and all identifiers are unique
-        return EqualsBuilder.reflectionEquals(this, obj, new String[] {"id"});
+        XRoadId other = (XRoadId) obj;
+        return type == other.type
+                && Objects.equals(xRoadInstance, other.xRoadInstance)
+                && Arrays.equals(getFieldsForStringFormat(),
+                        other.getFieldsForStringFormat());
     }
 
     @Override
     public int hashCode() {
         // exclude 'id' field, because it is not part of identifier
         // and all identifiers are unique
-        return HashCodeBuilder.reflectionHashCode(this, new String[] {"id"});
+        int h = hash;
+        if (h == 0) {
+            h = Objects.hash(type, xRoadInstance) * 31
+                    + Arrays.hashCode(getFieldsForStringFormat());
+            hash = h;
+        }
+
+        return h;
     }
 
     @Override
@@ -119,6 +147,20 @@ public abstract class XRoadId implements Serializable {
      */
     protected abstract String[] getFieldsForStringFormat();
 
+    /**
+     * Returns the canonical instance of the given identifier. Identifiers
+     * that are equal share the same canonical instance for as long as it
+     * is referenced, so that they can be compared and used as hash keys
+     * without comparing their fields.
+     * @param <T> the type of the identifier
+     * @param id the identifier
+     * @return the canonical instance, or null if the identifier is null
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends XRoadId> T intern(T id) {
+        return id == null ? null : (T) INTERNER.intern(id);
+    }
+
     protected static void validateField(String fieldName, String fieldValue) {
         if (StringUtils.isBlank(fieldValue)) {
             throw new IllegalArgumentException(
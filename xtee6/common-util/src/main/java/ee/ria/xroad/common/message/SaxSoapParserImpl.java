@@ -60,6 +60,7 @@ import ee.ria.xroad.common.identifier.CentralServiceId;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
 import ee.ria.xroad.common.identifier.ServiceId;
+import ee.ria.xroad.common.identifier.XRoadId;
 import ee.ria.xroad.common.identifier.XRoadObjectType;
 import ee.ria.xroad.common.util.MimeUtils;
 
@@ -858,11 +859,11 @@ public class SaxSoapParserImpl implements SoapParser {
 
         @Override
         public void closeTag() {
-            onClientCallback.accept(ClientId.create(
+            onClientCallback.accept(XRoadId.intern(ClientId.create(
                     getValue(QNAME_ID_INSTANCE),
                     getValue(QNAME_ID_MEMBER_CLASS),
                     getValue(QNAME_ID_MEMBER_CODE),
-                    getValue(QNAME_ID_SUBSYSTEM_CODE)));
+                    getValue(QNAME_ID_SUBSYSTEM_CODE))));
         }
     }
 
@@ -890,13 +891,13 @@ public class SaxSoapParserImpl implements SoapParser {
 
         @Override
         protected void closeTag() {
-            onServiceCallback.accept(ServiceId.create(
+            onServiceCallback.accept(XRoadId.intern(ServiceId.create(
                     getValue(QNAME_ID_INSTANCE),
                     getValue(QNAME_ID_MEMBER_CLASS),
                     getValue(QNAME_ID_MEMBER_CODE),
                     getValue(QNAME_ID_SUBSYSTEM_CODE),
                     getValue(QNAME_ID_SERVICE_CODE),
-                    getValue(QNAME_ID_SERVICE_VERSION)));
+                    getValue(QNAME_ID_SERVICE_VERSION))));
         }
     }
 
@@ -981,9 +982,9 @@ public class SaxSoapParserImpl implements SoapParser {
 
         @Override
         protected void closeTag() {
-            onServiceCallback.accept(CentralServiceId.create(
+            onServiceCallback.accept(XRoadId.intern(CentralServiceId.create(
                     getValue(QNAME_ID_INSTANCE),
-                    getValue(QNAME_ID_SERVICE_CODE)));
+                    getValue(QNAME_ID_SERVICE_CODE))));
         }
     }
 
@@ -1010,11 +1011,11 @@ public class SaxSoapParserImpl implements SoapParser {
 
         @Override
         protected void closeTag() {
-            onServiceCallback.accept(SecurityServerId.create(
+            onServiceCallback.accept(XRoadId.intern(SecurityServerId.create(
                     getValue(QNAME_ID_INSTANCE),
                     getValue(QNAME_ID_MEMBER_CLASS),
                     getValue(QNAME_ID_MEMBER_CODE),
-                    getValue(QNAME_ID_SERVER_CODE)));
+                    getValue(QNAME_ID_SERVER_CODE))));
         }
     }
 
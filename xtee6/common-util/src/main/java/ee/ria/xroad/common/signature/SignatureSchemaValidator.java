@@ -22,9 +22,30 @@
  */
 package ee.ria.xroad.common.signature;
 
+import static ee.ria.xroad.common.util.CryptoUtils.SHA256_ID;
+import static ee.ria.xroad.common.util.CryptoUtils.encodeHex;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
 import javax.xml.validation.Schema;
 
+import org.apache.commons.lang3.StringUtils;
+import org.apache.xerces.util.XMLChar;
+import org.w3c.dom.Attr;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import ee.ria.xroad.common.ErrorCodes;
 import ee.ria.xroad.common.util.SchemaValidator;
 
@@ -35,8 +56,22 @@ public class SignatureSchemaValidator extends SchemaValidator {
 
     private static final String FILE = "xades-schema.xsd";
 
+    private static final String ID_ATTRIBUTE = "Id";
+
+    private static final int MAX_VALIDATED_STRUCTURES = 256;
+
     private static Schema schema;
 
+    /**
+     * Fingerprints of the structures of signatures that have passed
+     * validation and whose signature value has been verified. The least
+     * recently used structures are evicted when the cache is full.
+     */
+    private static final Cache<String, Boolean> VALIDATED_STRUCTURES =
+            CacheBuilder.newBuilder()
+                    .maximumSize(MAX_VALIDATED_STRUCTURES)
+                    .build();
+
     static {
         schema = createSchema(FILE);
     }
@@ -49,4 +84,137 @@ public class SignatureSchemaValidator extends SchemaValidator {
     public static void validate(Source source) throws Exception {
         validate(schema, source, ErrorCodes.X_MALFORMED_SIGNATURE);
     }
+
+    /**
+     * Validates the provided XML signature element. Signatures created by
+     * security servers have only a few distinct structures, so the
+     * structure of the signature (element and attribute names, and the
+     * positions of text content) is compared against the structures of
+     * signatures that have already passed the full schema validation and
+     * the signature verification. The full validation is done only for
+     * structures not seen before.
+     *
+     * The fast path does not check the lexical form of text content and
+     * attribute values -- those are parsed by the signature verification
+     * anyway -- except for the ID attributes, which must be unique.
+     * @param signature the XML signature element to be validated
+     * @return the fingerprint of a structure that passed the full validation,
+     * to be passed to {@link #addVerifiedStructure(String)} once the
+     * signature has been verified, or null if there is nothing to add
+     * @throws Exception if validation is unsuccessful
+     */
+    public static String validate(Node signature) throws Exception {
+        String structure = getStructureFingerprint(signature);
+        if (structure != null
+                && VALIDATED_STRUCTURES.getIfPresent(structure) != null) {
+            return null;
+        }
+
+        validate(new DOMSource(signature));
+
+        return structure;
+    }
+
+    /**
+     * Lets signatures with the given structure skip the full schema
+     * validation. Only structures of signatures with a verified signature
+     * value may be added, so that unauthenticated senders cannot push the
+     * structures of genuine signatures out of the cache.
+     * @param structure the fingerprint returned by
+     * {@link #validate(Node)}, may be null
+     */
+    public static void addVerifiedStructure(String structure) {
+        if (structure != null) {
+            VALIDATED_STRUCTURES.put(structure, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Forgets all validated structures.
+     */
+    static void clear() {
+        VALIDATED_STRUCTURES.invalidateAll();
+    }
+
+    /**
+     * @return the fingerprint of the structure of the given node or null,
+     * if the node contains ID attributes that are not unique valid NCNames
+     */
+    static String getStructureFingerprint(Node node) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance(SHA256_ID);
+        Set<String> ids = new HashSet<>();
+
+        if (!appendStructure(node, digest, ids)) {
+            return null;
+        }
+
+        return encodeHex(digest.digest());
+    }
+
+    private static boolean appendStructure(Node node, MessageDigest digest,
+            Set<String> ids) {
+        switch (node.getNodeType()) {
+            case Node.ELEMENT_NODE:
+                update(digest, "<" + node.getNamespaceURI() + "|"
+                        + node.getLocalName());
+
+                if (!appendAttributes(node.getAttributes(), digest, ids)) {
+                    return false;
+                }
+
+                for (Node child = node.getFirstChild(); child != null;
+                        child = child.getNextSibling()) {
+                    if (!appendStructure(child, digest, ids)) {
+                        return false;
+                    }
+                }
+
+                update(digest, ">");
+                break;
+            case Node.TEXT_NODE:
+            case Node.CDATA_SECTION_NODE:
+                if (!StringUtils.isWhitespace(node.getNodeValue())) {
+                    update(digest, "#");
+                }
+                break;
+            default:
+                // Comments and processing instructions are not
+                // validated by the schema
+                break;
+        }
+
+        return true;
+    }
+
+    private static boolean appendAttributes(NamedNodeMap attributes,
+            MessageDigest digest, Set<String> ids) {
+        List<String> names = new ArrayList<>();
+
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Attr attribute = (Attr) attributes.item(i);
+
+            names.add(attribute.getNamespaceURI() + "|"
+                    + attribute.getLocalName());
+
+            if (attribute.getNamespaceURI() == null
+                    && ID_ATTRIBUTE.equals(attribute.getLocalName())
+                    && (!XMLChar.isValidNCName(attribute.getValue())
+                            || !ids.add(attribute.getValue()))) {
+                return false;
+            }
+        }
+
+        Collections.sort(names);
+
+        for (String name : names) {
+            update(digest, "@" + name);
+        }
+
+        return true;
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
 }
@@ -0,0 +1,304 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.signature;
+
+import static ee.ria.xroad.common.signature.Helper.ALGORITHM_ATTRIBUTE;
+import static ee.ria.xroad.common.signature.Helper.CERTIFFICATE_VALUES_TAG;
+import static ee.ria.xroad.common.signature.Helper.CERT_DIGEST_TAG;
+import static ee.ria.xroad.common.signature.Helper.CERT_REFS_TAG;
+import static ee.ria.xroad.common.signature.Helper.CERT_TAG;
+import static ee.ria.xroad.common.signature.Helper.COMPLETE_CERTIFICATE_REFS_ID;
+import static ee.ria.xroad.common.signature.Helper.COMPLETE_CERTIFICATE_REFS_TAG;
+import static ee.ria.xroad.common.signature.Helper.DIGEST_METHOD_TAG;
+import static ee.ria.xroad.common.signature.Helper.DIGEST_VALUE_TAG;
+import static ee.ria.xroad.common.signature.Helper.ENCAPSULATED_CERT_ID;
+import static ee.ria.xroad.common.signature.Helper.ENCAPSULATED_OCSP_VALUE_TAG;
+import static ee.ria.xroad.common.signature.Helper.ENCAPSULATED_X509_CERTIFICATE_TAG;
+import static ee.ria.xroad.common.signature.Helper.ID_ATTRIBUTE;
+import static ee.ria.xroad.common.signature.Helper.ISSUER_SERIAL_TAG;
+import static ee.ria.xroad.common.signature.Helper.OCSP_RESPONSE_ID;
+import static ee.ria.xroad.common.signature.Helper.OCSP_VALUES_TAG;
+import static ee.ria.xroad.common.signature.Helper.PREFIX_DS;
+import static ee.ria.xroad.common.signature.Helper.PREFIX_XADES;
+import static ee.ria.xroad.common.signature.Helper.REVOCATION_VALUES_TAG;
+import static ee.ria.xroad.common.signature.Helper.SIGNING_CERTIFICATE_TAG;
+import static ee.ria.xroad.common.signature.Helper.UNSIGNED_PROPS_TAG;
+import static ee.ria.xroad.common.signature.Helper.UNSIGNED_SIGNATURE_PROPS_TAG;
+import static ee.ria.xroad.common.signature.Helper.URI_ATTRIBUTE;
+import static ee.ria.xroad.common.signature.Helper.X509_ISSUER_NAME_TAG;
+import static ee.ria.xroad.common.signature.Helper.X509_SERIAL_NUMBER_TAG;
+import static ee.ria.xroad.common.signature.Helper.createDocument;
+import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
+import static ee.ria.xroad.common.util.CryptoUtils.encodeBase64;
+import static ee.ria.xroad.common.util.CryptoUtils.getDigestAlgorithmURI;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * Pre-rendered parts of the XAdES signature that depend only on the signing
+ * certificate, the extra certificates and the OCSP responses. The parts are
+ * rendered once per hash algorithm and copied into each signature document,
+ * so that certificate digests and base64 encodings are not recalculated for
+ * every signed message.
+ */
+@Getter
+public final class SignatureTemplate {
+
+    private final X509Certificate signingCert;
+    private final List<X509Certificate> extraCertificates;
+    private final List<OCSPResp> ocspResponses;
+
+    @Getter(AccessLevel.NONE)
+    private final Map<String, Parts> parts = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new template.
+     * @param signingCert the signing certificate
+     * @param extraCertificates extra certificates included in the signature
+     * @param ocspResponses OCSP responses included in the signature
+     */
+    public SignatureTemplate(X509Certificate signingCert,
+            List<X509Certificate> extraCertificates,
+            List<OCSPResp> ocspResponses) {
+        this.signingCert = signingCert;
+        this.extraCertificates = Collections.unmodifiableList(
+                new ArrayList<>(extraCertificates));
+        this.ocspResponses = Collections.unmodifiableList(
+                new ArrayList<>(ocspResponses));
+    }
+
+    /**
+     * @param cert the signing certificate
+     * @param certs extra certificates
+     * @param responses OCSP responses
+     * @return true if this template was created for the given certificates
+     * and OCSP responses
+     */
+    public boolean matches(X509Certificate cert, List<X509Certificate> certs,
+            List<OCSPResp> responses) {
+        return signingCert.equals(cert)
+                && extraCertificates.equals(certs)
+                && ocspResponses.equals(responses);
+    }
+
+    /**
+     * Returns a copy of the xades:SigningCertificate element owned by
+     * the given document.
+     */
+    Element importSigningCertificate(Document document,
+            String hashAlgorithmId) throws Exception {
+        Parts p = getParts(hashAlgorithmId);
+        return p.importNode(document, p.signingCertificate);
+    }
+
+    /**
+     * Returns a copy of the xades:UnsignedProperties element owned by
+     * the given document.
+     */
+    Element importUnsignedProperties(Document document,
+            String hashAlgorithmId) throws Exception {
+        Parts p = getParts(hashAlgorithmId);
+        return p.importNode(document, p.unsignedProperties);
+    }
+
+    private Parts getParts(String hashAlgorithmId) throws Exception {
+        Parts p = parts.get(hashAlgorithmId);
+        if (p == null) {
+            p = new Parts(hashAlgorithmId);
+
+            Parts existing = parts.putIfAbsent(hashAlgorithmId, p);
+            if (existing != null) {
+                p = existing;
+            }
+        }
+
+        return p;
+    }
+
+    /**
+     * The rendered elements for one hash algorithm. The elements are owned
+     * by a private document and are only read when copied.
+     */
+    private final class Parts {
+
+        private final String hashAlgorithmId;
+        private final String hashAlgorithmURI;
+
+        private final Document document;
+
+        private final Element signingCertificate;
+        private final Element unsignedProperties;
+
+        Parts(String hashAlgorithmId) throws Exception {
+            this.hashAlgorithmId = hashAlgorithmId;
+            this.hashAlgorithmURI = getDigestAlgorithmURI(hashAlgorithmId);
+            this.document = createDocument();
+
+            this.signingCertificate = createSigningCertificate();
+            this.unsignedProperties = createUnsignedProperties();
+        }
+
+        synchronized Element importNode(Document target, Element element) {
+            // DOM implementations do not guarantee that concurrent reads
+            // of the same document are safe
+            return (Element) target.importNode(element, true);
+        }
+
+        private Element createSigningCertificate() throws Exception {
+            Element signingCertificate =
+                    createXadesElement(SIGNING_CERTIFICATE_TAG);
+
+            Element cert = createXadesElement(signingCertificate, CERT_TAG);
+            createCertDigest(signingCert, cert);
+
+            return signingCertificate;
+        }
+
+        private Element createUnsignedProperties() throws Exception {
+            Element properties = createXadesElement(UNSIGNED_PROPS_TAG);
+
+            Element unsignedSignatureProperties = createXadesElement(
+                    properties, UNSIGNED_SIGNATURE_PROPS_TAG);
+
+            if (!extraCertificates.isEmpty()) {
+                createCompleteCertificateRefs(unsignedSignatureProperties);
+                createCertificateValues(unsignedSignatureProperties);
+            }
+
+            createRevocationValues(unsignedSignatureProperties);
+
+            return properties;
+        }
+
+        private void createRevocationValues(
+                Element unsignedSignatureProperties) throws Exception {
+            Element revocationValues = createXadesElement(
+                    unsignedSignatureProperties, REVOCATION_VALUES_TAG);
+
+            Element ocspValues =
+                    createXadesElement(revocationValues, OCSP_VALUES_TAG);
+
+            int c = 1;
+            for (OCSPResp ocspResp : ocspResponses) {
+                Element encapsulatedOcspValue = createXadesElement(ocspValues,
+                        ENCAPSULATED_OCSP_VALUE_TAG);
+                encapsulatedOcspValue.setAttribute(ID_ATTRIBUTE,
+                        OCSP_RESPONSE_ID + (c++));
+                encapsulatedOcspValue.setTextContent(
+                        encodeBase64(ocspResp.getEncoded()));
+            }
+        }
+
+        private void createCertificateValues(
+                Element unsignedSignatureProperties) throws Exception {
+            Element certificateValues = createXadesElement(
+                    unsignedSignatureProperties, CERTIFFICATE_VALUES_TAG);
+
+            int c = 1;
+            for (X509Certificate cert : extraCertificates) {
+                Element encapsulatedX509Certificate =
+                        createXadesElement(certificateValues,
+                                ENCAPSULATED_X509_CERTIFICATE_TAG);
+                encapsulatedX509Certificate.setTextContent(
+                        encodeBase64(cert.getEncoded()));
+                encapsulatedX509Certificate.setAttribute(ID_ATTRIBUTE,
+                        ENCAPSULATED_CERT_ID + (c++));
+            }
+        }
+
+        private void createCompleteCertificateRefs(
+                Element unsignedSignatureProperties) throws Exception {
+            Element completeCertificateRefs = createXadesElement(
+                    unsignedSignatureProperties,
+                    COMPLETE_CERTIFICATE_REFS_TAG);
+            completeCertificateRefs.setAttribute(ID_ATTRIBUTE,
+                    COMPLETE_CERTIFICATE_REFS_ID);
+
+            Element certRefs =
+                    createXadesElement(completeCertificateRefs, CERT_REFS_TAG);
+
+            // add references to all the extra certificates
+            int c = 1;
+            for (X509Certificate cert : extraCertificates) {
+                Element certElement = createXadesElement(certRefs, CERT_TAG);
+                certElement.setAttribute(URI_ATTRIBUTE,
+                        "#" + ENCAPSULATED_CERT_ID + (c++));
+                createCertDigest(cert, certElement);
+            }
+        }
+
+        private void createCertDigest(X509Certificate cert,
+                Element certElement) throws Exception {
+            Element certDigest =
+                    createXadesElement(certElement, CERT_DIGEST_TAG);
+
+            Element digestMethod =
+                    createDsElement(certDigest, DIGEST_METHOD_TAG);
+            digestMethod.setAttribute(ALGORITHM_ATTRIBUTE, hashAlgorithmURI);
+
+            Element digestValue =
+                    createDsElement(certDigest, DIGEST_VALUE_TAG);
+            digestValue.setTextContent(encodeBase64(
+                    calculateDigest(hashAlgorithmId, cert.getEncoded())));
+
+            Element issuerSerial =
+                    createXadesElement(certElement, ISSUER_SERIAL_TAG);
+
+            Element issuerName =
+                    createDsElement(issuerSerial, X509_ISSUER_NAME_TAG);
+            issuerName.setTextContent(cert.getIssuerX500Principal().getName());
+
+            Element issuerNumber =
+                    createDsElement(issuerSerial, X509_SERIAL_NUMBER_TAG);
+            issuerNumber.setTextContent(cert.getSerialNumber().toString());
+        }
+
+        private Element createXadesElement(Element parent, String name) {
+            Element element = createXadesElement(name);
+            parent.appendChild(element);
+            return element;
+        }
+
+        private Element createXadesElement(String name) {
+            return document.createElement(PREFIX_XADES + name);
+        }
+
+        private Element createDsElement(Element parent, String name) {
+            Element element = document.createElement(PREFIX_DS + name);
+            parent.appendChild(element);
+            return element;
+        }
+    }
+}
@@ -23,7 +23,6 @@
 package ee.ria.xroad.common.signature;
 
 import java.security.cert.X509Certificate;
-import java.util.ArrayList;
 import java.util.List;
 
 import org.bouncycastle.cert.ocsp.OCSPResp;
@@ -35,15 +34,33 @@ import lombok.Value;
  * Encapsulates contents of a signing request.
  */
 @Value
-@ToString(exclude = { "signingCert", "extraCertificates", "ocspResponses" })
+@ToString(exclude = "template")
 public final class SigningRequest {
 
-    private final X509Certificate signingCert;
+    private final SignatureTemplate template;
 
     private final List<MessagePart> parts;
 
-    private final List<X509Certificate> extraCertificates = new ArrayList<>();
-    private final List<OCSPResp> ocspResponses = new ArrayList<>();
+    /**
+     * @return the signing certificate
+     */
+    public X509Certificate getSigningCert() {
+        return template.getSigningCert();
+    }
+
+    /**
+     * @return extra certificates included in the signature
+     */
+    public List<X509Certificate> getExtraCertificates() {
+        return template.getExtraCertificates();
+    }
+
+    /**
+     * @return OCSP responses included in the signature
+     */
+    public List<OCSPResp> getOcspResponses() {
+        return template.getOcspResponses();
+    }
 
     /**
      * @return true if signing request is for a single message
@@ -22,40 +22,70 @@
  */
 package ee.ria.xroad.common.util;
 
-import java.io.FilterOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.channels.Channels;
-import java.nio.channels.SeekableByteChannel;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
 import ee.ria.xroad.common.DefaultFilepaths;
 import ee.ria.xroad.common.ErrorCodes;
+import ee.ria.xroad.common.SystemProperties;
 
 /**
- * Caches stuff in a temporary file.
+ * Caches stuff in memory up to a threshold and in a temporary file
+ * beyond it.
  */
-public class CachingStream extends FilterOutputStream {
-    private SeekableByteChannel channel;
+public class CachingStream extends OutputStream {
+
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+
+    private final int memoryThreshold;
+
+    private byte[] buffer;
+    private int count;
+
+    private FileChannel channel;
+    private OutputStream fileOut;
 
     /**
-     * Constructs a new caching stream that caches data in a temporary file.
+     * Constructs a new caching stream that caches data in memory up to
+     * the configured threshold and in a temporary file beyond it.
      * @throws IOException if I/O errors occurred
      */
     public CachingStream() throws IOException {
-        // Construct the parent class with null stream and replace it later.
-        super(null);
+        this(SystemProperties.getAttachmentCacheMemoryThreshold());
+    }
 
-        Path tempFile = DefaultFilepaths.createTempFile("tmpattach", null);
-        channel = Files.newByteChannel(tempFile, StandardOpenOption.CREATE,
-                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING,
-                StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+    /**
+     * Constructs a new caching stream that caches data in memory up to
+     * the given threshold and in a temporary file beyond it.
+     * @param memoryThreshold the number of bytes cached in memory,
+     * 0 if data is always cached in a temporary file
+     * @throws IOException if I/O errors occurred
+     */
+    public CachingStream(int memoryThreshold) throws IOException {
+        this.memoryThreshold = Math.max(memoryThreshold, 0);
+
+        if (this.memoryThreshold == 0) {
+            spill();
+        } else {
+            buffer = new byte[Math.min(this.memoryThreshold,
+                    INITIAL_BUFFER_SIZE)];
+        }
+    }
 
-        // Now that we are set up, we can set the output stream in the
-        // parent class.
-        out = Channels.newOutputStream(channel);
+    /**
+     * @return true, if the cached data has not exceeded the memory
+     * threshold and no temporary file has been created
+     */
+    public boolean isInMemory() {
+        return channel == null;
     }
 
     @Override
@@ -65,10 +95,34 @@ public class CachingStream extends FilterOutputStream {
     }
 
     @Override
-    public void write(byte[] b, int off, int len)
-            throws IOException {
-        // prevent FilterOutputStream from writing inefficiently
-        out.write(b, off, len);
+    public void flush() throws IOException {
+        if (fileOut != null) {
+            fileOut.flush();
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (isInMemory() && len > memoryThreshold - count) {
+            spill();
+        }
+
+        if (isInMemory()) {
+            if (count + len > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.min(memoryThreshold,
+                        Math.max(buffer.length * 2, count + len)));
+            }
+
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        } else {
+            fileOut.write(b, off, len);
+        }
     }
 
     /**
@@ -76,6 +130,10 @@ public class CachingStream extends FilterOutputStream {
      * The caller is responsible for freeing the stream.
      */
     public InputStream getCachedContents() {
+        if (isInMemory()) {
+            return new ByteArrayInputStream(buffer, 0, count);
+        }
+
         try {
             // Flush any unwritten data, just in case.
             flush();
@@ -87,4 +145,47 @@ public class CachingStream extends FilterOutputStream {
         }
     }
 
+    /**
+     * Writes the cached contents to the given stream and frees the
+     * temporary file, if any. Contents cached in a file are transferred
+     * with {@link FileChannel#transferTo(long, long, WritableByteChannel)}
+     * so that they are not copied through an intermediate stream.
+     * @param out the stream to write to
+     * @throws IOException if I/O errors occurred
+     */
+    public void writeCachedContents(OutputStream out) throws IOException {
+        if (isInMemory()) {
+            out.write(buffer, 0, count);
+
+            return;
+        }
+
+        flush();
+
+        try (FileChannel source = channel) {
+            WritableByteChannel target = Channels.newChannel(out);
+            long size = source.size();
+            long position = 0;
+
+            while (position < size) {
+                position += source.transferTo(position, size - position,
+                        target);
+            }
+        }
+    }
+
+    private void spill() throws IOException {
+        Path tempFile = DefaultFilepaths.createTempFile("tmpattach", null);
+        channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+        fileOut = Channels.newOutputStream(channel);
+
+        if (count > 0) {
+            fileOut.write(buffer, 0, count);
+        }
+
+        buffer = null;
+        count = 0;
+    }
 }
@@ -25,17 +25,23 @@ package ee.ria.xroad.common.hashchain;
 import static ee.ria.xroad.common.ErrorCodes.X_HASHCHAIN_UNUSED_INPUTS;
 import static ee.ria.xroad.common.ErrorCodes.X_INVALID_HASH_CHAIN_REF;
 import static ee.ria.xroad.common.ErrorCodes.X_INVALID_HASH_CHAIN_RESULT;
+import static ee.ria.xroad.common.util.CryptoUtils.SHA256_ID;
 import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
 import static ee.ria.xroad.common.util.CryptoUtils.getAlgorithmId;
 import static ee.ria.xroad.common.util.MessageFileNames.MESSAGE;
 import static ee.ria.xroad.common.util.MessageFileNames.attachment;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
 import javax.xml.crypto.dsig.DigestMethod;
 
+import org.apache.commons.io.IOUtils;
 import org.junit.Rule;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -258,6 +264,59 @@ public class HashChainVerifierTest {
                 resolver, inputs);
     }
 
+    /**
+     * Test to ensure that hash chains written by the builder are verified.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void builtHashChains() throws Exception {
+        LOG.info("builtHashChains()");
+
+        HashChainBuilder builder = new HashChainBuilder(SHA256_ID);
+        for (int i = 0; i < 5; ++i) {
+            builder.addInputHash(calculateDigest(SHA256_ID,
+                    String.valueOf(i).getBytes(StandardCharsets.UTF_8)));
+        }
+        builder.finishBuilding();
+
+        String hashChainResult = builder.getHashChainResult(HASH_CHAIN);
+        String[] hashChains = builder.getHashChains(MESSAGE);
+
+        for (int i = 0; i < hashChains.length; ++i) {
+            final String hashChain = hashChains[i];
+
+            Map<String, DigestValue> inputs = makeInputs(MESSAGE,
+                    String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+
+            HashChainVerifier.verify(
+                    toStream(hashChainResult),
+                    new Resolver() {
+                        @Override
+                        public InputStream resolve(String uri) {
+                            return HASH_CHAIN.equals(uri)
+                                    ? toStream(hashChain) : null;
+                        }
+                    }, inputs);
+        }
+    }
+
+    /**
+     * Test to ensure that hash chains with transforms are not read by
+     * the StAX reader.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void readerSkipsTransforms() throws Exception {
+        assertNotNull(HashChainReader.readHashChain(
+                IOUtils.toByteArray(load("hc-verifier1-hashchain.xml"))));
+        assertNull(HashChainReader.readHashChain(
+                IOUtils.toByteArray(load("hc-verifier3-hashchain.xml"))));
+    }
+
+    private static InputStream toStream(String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+
     private static Map<String, DigestValue> makeInputs(Object ...items)
             throws Exception {
         Map<String, DigestValue> ret = new HashMap<>();
@@ -26,6 +26,8 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ObjectInputStream;
@@ -255,6 +257,17 @@ public class IdentifierEqualsAndHashCodeTest {
         assertNotEquals(first.hashCode(), second.hashCode());
     }
 
+    /**
+     * Test case with equal identifiers sharing a canonical instance.
+     */
+    @Test
+    public void shouldInternToSameInstance() {
+        XRoadId first = XRoadId.intern(provider.provideVariant1());
+        XRoadId second = XRoadId.intern(provider.provideVariant1());
+        assertSame(first, second);
+        assertNotSame(first, XRoadId.intern(provider.provideVariant2()));
+    }
+
     /**
      * Test case to ensure equality after serialization.
      * @throws Exception in case of any unexpected errors
@@ -0,0 +1,145 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ee.ria.xroad.common.SystemProperties;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link CachingStream}
+ */
+public class CachingStreamTest {
+
+    private static final int THRESHOLD = 1024;
+
+    /**
+     * Writes the temporary files to the build directory.
+     */
+    @BeforeClass
+    public static void setUpClass() {
+        System.setProperty(SystemProperties.TEMP_FILES_PATH, "build/");
+    }
+
+    /**
+     * Ensure content below the threshold is cached in memory.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void cachesSmallContentInMemory() throws Exception {
+        byte[] data = randomBytes(THRESHOLD);
+
+        CachingStream cache = write(new CachingStream(THRESHOLD), data);
+
+        assertTrue(cache.isInMemory());
+        assertArrayEquals(data, read(cache));
+        assertArrayEquals(data, transfer(cache));
+    }
+
+    /**
+     * Ensure content beyond the threshold is cached in a file.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void spillsLargeContentToFile() throws Exception {
+        byte[] data = randomBytes(THRESHOLD * 10 + 1);
+
+        CachingStream cache = write(new CachingStream(THRESHOLD), data);
+
+        assertFalse(cache.isInMemory());
+        assertArrayEquals(data, read(cache));
+    }
+
+    /**
+     * Ensure content cached in a file is transferred in full.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void transfersFileContent() throws Exception {
+        byte[] data = randomBytes(THRESHOLD * 100);
+
+        CachingStream cache = write(new CachingStream(THRESHOLD), data);
+
+        assertFalse(cache.isInMemory());
+        assertArrayEquals(data, transfer(cache));
+    }
+
+    /**
+     * Ensure threshold 0 always caches content in a file.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void zeroThresholdUsesFile() throws Exception {
+        byte[] data = randomBytes(1);
+
+        CachingStream cache = write(new CachingStream(0), data);
+
+        assertFalse(cache.isInMemory());
+        assertArrayEquals(data, read(cache));
+    }
+
+    private static CachingStream write(CachingStream cache, byte[] data)
+            throws Exception {
+        // Write in uneven pieces to cross the threshold mid-write.
+        int off = 0;
+        while (off < data.length) {
+            int len = Math.min(data.length - off, 300);
+            cache.write(data, off, len);
+            off += len;
+        }
+
+        cache.close();
+
+        return cache;
+    }
+
+    private static byte[] read(CachingStream cache) throws Exception {
+        try (InputStream in = cache.getCachedContents()) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    private static byte[] transfer(CachingStream cache) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cache.writeCachedContents(out);
+
+        return out.toByteArray();
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+
+        return data;
+    }
+}
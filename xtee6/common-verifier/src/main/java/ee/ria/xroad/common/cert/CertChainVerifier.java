@@ -145,14 +145,27 @@ public class CertChainVerifier {
     private void verifyImpl(List<OCSPResp> ocspResponses, Date atDate) {
         pkixParams.setDate(atDate);
         try {
-            certPath = buildCertPath(pkixParams);
-
-            PKIXCertPathValidatorResult pkixResult =
-                    verifyCertPath(certPath, pkixParams);
+            VerifiedCertPathCache.Key key =
+                    VerifiedCertPathCache.createKey(certChain);
+
+            // Skip building and validating the path, if the same chain
+            // has already been validated for this date
+            certPath = VerifiedCertPathCache.get(key,
+                    atDate != null ? atDate : new Date());
+            boolean cached = certPath != null;
+
+            if (!cached) {
+                certPath = buildCertPath(pkixParams);
+                verifyCertPath(certPath, pkixParams);
+            }
 
             if (ocspResponses != null) {
-                verifyOcspResponses(
-                        getCerts(), ocspResponses, pkixResult, atDate);
+                verifyOcspResponses(getCerts(), ocspResponses, atDate);
+            }
+
+            if (!cached) {
+                VerifiedCertPathCache.put(key, certPath,
+                        certChain.getTrustedRootCert(), ocspResponses);
             }
         } catch (CertPathBuilderException ex) {
             throw translateWithPrefix(X_CANNOT_CREATE_CERT_PATH, ex);
@@ -162,8 +175,12 @@ public class CertChainVerifier {
     }
 
     private void verifyOcspResponses(List<X509Certificate> certs,
-            List<OCSPResp> ocspResponses, PKIXCertPathValidatorResult result,
-            Date atDate) throws Exception {
+            List<OCSPResp> ocspResponses, Date atDate) throws Exception {
+        OcspVerifier verifier = new OcspVerifier(
+                GlobalConf.getOcspFreshnessSeconds(false),
+                new OcspVerifierOptions(GlobalConfExtensions.getInstance()
+                        .shouldVerifyOcspNextUpdate()));
+
         for (X509Certificate subject : certs) {
             X509Certificate issuer =
                     GlobalConf.getCaCert(certChain.getInstanceIdentifier(),
@@ -176,8 +193,6 @@ public class CertChainVerifier {
                         + subject.getSubjectX500Principal().getName());
             }
 
-            OcspVerifier verifier = new OcspVerifier(GlobalConf.getOcspFreshnessSeconds(false),
-                    new OcspVerifierOptions(GlobalConfExtensions.getInstance().shouldVerifyOcspNextUpdate()));
             verifier.verifyValidityAndStatus(response, subject, issuer,
                     atDate);
         }
@@ -0,0 +1,274 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.cert;
+
+import static ee.ria.xroad.common.util.CryptoUtils.SHA256_ID;
+import static ee.ria.xroad.common.util.CryptoUtils.hexDigest;
+
+import java.security.cert.CertPath;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.SingleResp;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Holds certificate paths that have been successfully built and validated.
+ * The entries are keyed by the digests of the certificates in the chain and
+ * the version of the trusted CA certificate set. The version changes (and
+ * the cache is cleared) whenever the CA certificates in global
+ * configuration change. Global configuration parses the CA certificates
+ * once when it is reloaded, so a change is detected by comparing the
+ * certificate instances against the set seen at the previous change
+ * instead of comparing the encoded certificates.
+ *
+ * An entry expires at the earliest notAfter of the certificates in the path
+ * or nextUpdate of the OCSP responses that were verified with it, and is
+ * only used for validation dates within the validity of all certificates
+ * in the path.
+ */
+@Slf4j
+final class VerifiedCertPathCache {
+
+    private static final Map<Key, Entry> CACHE = new ConcurrentHashMap<>();
+
+    private static volatile CaCerts caCerts =
+            new CaCerts(Collections.emptySet(), 0, 0);
+
+    private VerifiedCertPathCache() {
+    }
+
+    /**
+     * @param certChain the certificate chain
+     * @return the cache key of the certificate chain at the current version
+     * of the trusted CA certificates
+     * @throws Exception if the digest of a certificate cannot be calculated
+     */
+    static Key createKey(CertChain certChain) throws Exception {
+        List<String> certHashes = new ArrayList<>();
+        certHashes.add(certHash(certChain.getEndEntityCert()));
+
+        for (X509Certificate cert : certChain.getAdditionalCerts()) {
+            certHashes.add(certHash(cert));
+        }
+
+        certHashes.add(certHash(certChain.getTrustedRootCert()));
+
+        return new Key(certHashes, getCaCertsVersion());
+    }
+
+    /**
+     * @param key the cache key
+     * @param atDate the validation date
+     * @return the cached certificate path or null, if the path is not
+     * cached or the cached validation does not apply at the given date
+     */
+    static CertPath get(Key key, Date atDate) {
+        Entry entry = CACHE.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.getExpiresAt() <= System.currentTimeMillis()) {
+            CACHE.remove(key, entry);
+            return null;
+        }
+
+        if (atDate.before(entry.getValidFrom())
+                || atDate.after(entry.getValidUntil())) {
+            return null;
+        }
+
+        return entry.getCertPath();
+    }
+
+    /**
+     * Caches a successfully validated certificate path.
+     * @param key the cache key
+     * @param certPath the validated certificate path
+     * @param trustedRootCert the trust anchor of the path
+     * @param ocspResponses the OCSP responses verified with the path or
+     * null, if none
+     * @throws Exception if the OCSP responses cannot be parsed
+     */
+    @SuppressWarnings("unchecked")
+    static void put(Key key, CertPath certPath,
+            X509Certificate trustedRootCert, List<OCSPResp> ocspResponses)
+                    throws Exception {
+        int maxSize = SystemProperties.getCertPathCacheSize();
+        if (maxSize <= 0) {
+            return;
+        }
+
+        List<X509Certificate> certs = new ArrayList<>(
+                (List<X509Certificate>) certPath.getCertificates());
+        certs.add(trustedRootCert);
+
+        long validFrom = Long.MIN_VALUE;
+        long validUntil = Long.MAX_VALUE;
+        for (X509Certificate cert : certs) {
+            validFrom = Math.max(validFrom, cert.getNotBefore().getTime());
+            validUntil = Math.min(validUntil, cert.getNotAfter().getTime());
+        }
+
+        long expiresAt = Math.min(validUntil, getEarliestNextUpdate(
+                ocspResponses));
+        if (expiresAt <= System.currentTimeMillis()) {
+            return;
+        }
+
+        if (CACHE.size() >= maxSize) {
+            removeExpired();
+        }
+
+        if (CACHE.size() >= maxSize) {
+            log.trace("Certificate path cache is full, clearing");
+
+            CACHE.clear();
+        }
+
+        CACHE.put(key, new Entry(certPath, new Date(validFrom),
+                new Date(validUntil), expiresAt));
+    }
+
+    /**
+     * Clears the cache and forgets the trusted CA certificates.
+     */
+    static synchronized void clear() {
+        CACHE.clear();
+        caCerts = new CaCerts(Collections.emptySet(), 0, 0);
+    }
+
+    private static int getCaCertsVersion() {
+        Collection<X509Certificate> currentCaCerts = GlobalConf.getAllCaCerts();
+
+        CaCerts current = caCerts;
+        if (current.matches(currentCaCerts)) {
+            return current.getVersion();
+        }
+
+        synchronized (VerifiedCertPathCache.class) {
+            current = caCerts;
+            if (!current.matches(currentCaCerts)) {
+                log.trace("CA certificates changed, clearing certificate "
+                        + "path cache");
+
+                Set<X509Certificate> certs =
+                        Collections.newSetFromMap(new IdentityHashMap<>());
+                certs.addAll(currentCaCerts);
+
+                current = new CaCerts(certs, currentCaCerts.size(),
+                        current.getVersion() + 1);
+                caCerts = current;
+
+                CACHE.clear();
+            }
+
+            return current.getVersion();
+        }
+    }
+
+    private static long getEarliestNextUpdate(List<OCSPResp> ocspResponses)
+            throws Exception {
+        long earliest = Long.MAX_VALUE;
+        if (ocspResponses == null) {
+            return earliest;
+        }
+
+        for (OCSPResp ocspResponse : ocspResponses) {
+            BasicOCSPResp basicResponse =
+                    (BasicOCSPResp) ocspResponse.getResponseObject();
+            if (basicResponse == null) {
+                continue;
+            }
+
+            for (SingleResp singleResponse : basicResponse.getResponses()) {
+                if (singleResponse.getNextUpdate() != null) {
+                    earliest = Math.min(earliest,
+                            singleResponse.getNextUpdate().getTime());
+                }
+            }
+        }
+
+        return earliest;
+    }
+
+    private static void removeExpired() {
+        long now = System.currentTimeMillis();
+
+        CACHE.values().removeIf(e -> e.getExpiresAt() <= now);
+    }
+
+    private static String certHash(X509Certificate cert) throws Exception {
+        return hexDigest(SHA256_ID, cert.getEncoded());
+    }
+
+    @Value
+    static class Key {
+        private final List<String> certHashes;
+        private final int caCertsVersion;
+    }
+
+    @Value
+    private static class CaCerts {
+        private final Set<X509Certificate> certs;
+        private final int count;
+        private final int version;
+
+        boolean matches(Collection<X509Certificate> currentCerts) {
+            if (currentCerts.size() != count) {
+                return false;
+            }
+
+            for (X509Certificate cert : currentCerts) {
+                if (!certs.contains(cert)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    @Value
+    private static class Entry {
+        private final CertPath certPath;
+        private final Date validFrom;
+        private final Date validUntil;
+        private final long expiresAt;
+    }
+}
@@ -33,8 +33,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import javax.xml.transform.dom.DOMSource;
-
 import lombok.extern.slf4j.Slf4j;
 import org.apache.xml.security.signature.Manifest;
 import org.apache.xml.security.signature.MissingResourceFailureException;
@@ -228,8 +226,9 @@ public class SignatureVerifier {
     public void verify(ClientId signer, Date atDate) throws Exception {
         // first, validate the signature against the Xades schema
         // our asic:XadesSignatures element contains only one Xades signature
+        String structure = null;
         if (verifySchema) {
-            verifySchema();
+            structure = verifySchema();
         }
 
         // if this is a batch signature, verify the hash chain
@@ -243,14 +242,18 @@ public class SignatureVerifier {
         verifySignerName(signer, signingCert);
 
         verifySignatureValue(signingCert);
+
+        // only structures of authentic signatures skip schema validation
+        SignatureSchemaValidator.addVerifiedStructure(structure);
+
         verifyTimestampManifests();
         verifyCertificateChain(atDate, signer, signingCert);
     }
 
-    private void verifySchema() throws Exception {
+    private String verifySchema() throws Exception {
         Node signatureNode =
                 signature.getDocument().getDocumentElement().getFirstChild();
-        SignatureSchemaValidator.validate(new DOMSource(signatureNode));
+        return SignatureSchemaValidator.validate(signatureNode);
     }
 
     private void verifyHashChain() throws Exception {
@@ -0,0 +1,209 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.cert;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.CertPath;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ee.ria.xroad.common.OcspTestUtils;
+import ee.ria.xroad.common.conf.globalconf.EmptyGlobalConf;
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+
+/**
+ * Tests the cache of verified certificate paths.
+ */
+public class VerifiedCertPathCacheTest {
+
+    private static KeyPair caKeyPair;
+    private static X509Certificate caCert;
+    private static X509Certificate otherCaCert;
+    private static X509Certificate userCert;
+
+    private final TestGlobalConf globalConf = new TestGlobalConf();
+
+    /**
+     * Creates a CA and a user certificate that are valid for a day.
+     * @throws Exception if an error occurs
+     */
+    @BeforeClass
+    public static void createCerts() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+
+        caKeyPair = generator.generateKeyPair();
+        caCert = createCert("CN=ca", "CN=ca", caKeyPair.getPublic(),
+                caKeyPair.getPrivate());
+
+        KeyPair otherCaKeyPair = generator.generateKeyPair();
+        otherCaCert = createCert("CN=other-ca", "CN=other-ca",
+                otherCaKeyPair.getPublic(), otherCaKeyPair.getPrivate());
+
+        userCert = createCert("CN=user", "CN=ca",
+                generator.generateKeyPair().getPublic(),
+                caKeyPair.getPrivate());
+    }
+
+    /**
+     * Clears the cache and trusts the test CA.
+     */
+    @Before
+    public void setUp() {
+        VerifiedCertPathCache.clear();
+
+        globalConf.caCerts = Arrays.asList(caCert);
+        GlobalConf.reload(globalConf);
+    }
+
+    /**
+     * Tests that a cached path is returned for validation dates within the
+     * validity of the certificates.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void cachedPath() throws Exception {
+        VerifiedCertPathCache.Key key = createKey();
+        CertPath certPath = createCertPath();
+
+        assertNull(VerifiedCertPathCache.get(key, new Date()));
+
+        VerifiedCertPathCache.put(key, certPath, caCert, null);
+
+        assertSame(certPath, VerifiedCertPathCache.get(createKey(),
+                new Date()));
+        assertNull(VerifiedCertPathCache.get(createKey(),
+                new DateTime().minusDays(2).toDate()));
+    }
+
+    /**
+     * Tests that the cache is cleared when the trusted CA certificates
+     * change, but not when they are only returned in a different order.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void caCertsChanged() throws Exception {
+        CertPath certPath = createCertPath();
+
+        VerifiedCertPathCache.put(createKey(), certPath, caCert, null);
+
+        globalConf.caCerts = Arrays.asList(caCert, otherCaCert);
+
+        assertNull(VerifiedCertPathCache.get(createKey(), new Date()));
+
+        VerifiedCertPathCache.put(createKey(), certPath, caCert, null);
+
+        globalConf.caCerts = Arrays.asList(otherCaCert, caCert);
+
+        assertSame(certPath, VerifiedCertPathCache.get(createKey(),
+                new Date()));
+
+        globalConf.caCerts = Arrays.asList(otherCaCert);
+
+        assertNull(VerifiedCertPathCache.get(createKey(), new Date()));
+    }
+
+    /**
+     * Tests that an entry expires at the next update of the OCSP responses
+     * that were verified with the path.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void expiredEntry() throws Exception {
+        VerifiedCertPathCache.Key key = createKey();
+        CertPath certPath = createCertPath();
+
+        Date nextUpdate = new DateTime().plusSeconds(2).toDate();
+        OCSPResp ocsp = OcspTestUtils.createOCSPResponse(userCert, caCert,
+                caCert, caKeyPair.getPrivate(), CertificateStatus.GOOD,
+                new Date(), nextUpdate);
+
+        VerifiedCertPathCache.put(key, certPath, caCert,
+                Collections.singletonList(ocsp));
+
+        assertSame(certPath, VerifiedCertPathCache.get(key, new Date()));
+
+        Thread.sleep(nextUpdate.getTime() - System.currentTimeMillis() + 1000);
+
+        assertNull(VerifiedCertPathCache.get(key, new Date()));
+    }
+
+    private static VerifiedCertPathCache.Key createKey() throws Exception {
+        return VerifiedCertPathCache.createKey(new CertChain("EE", userCert,
+                caCert, new ArrayList<>()));
+    }
+
+    private static CertPath createCertPath() throws Exception {
+        return CertificateFactory.getInstance("X.509").generateCertPath(
+                Arrays.asList(userCert));
+    }
+
+    private static X509Certificate createCert(String subject, String issuer,
+            PublicKey publicKey, PrivateKey issuerKey) throws Exception {
+        ContentSigner signer = new JcaContentSignerBuilder("SHA256withRSA")
+                .build(issuerKey);
+
+        JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+                new X500Name(issuer), BigInteger.ONE,
+                new DateTime().minusDays(1).toDate(),
+                new DateTime().plusDays(1).toDate(),
+                new X500Name(subject), publicKey);
+
+        return new JcaX509CertificateConverter().getCertificate(
+                builder.build(signer));
+    }
+
+    private static class TestGlobalConf extends EmptyGlobalConf {
+
+        private volatile List<X509Certificate> caCerts;
+
+        @Override
+        public List<X509Certificate> getAllCaCerts() {
+            return new ArrayList<>(caCerts);
+        }
+    }
+}
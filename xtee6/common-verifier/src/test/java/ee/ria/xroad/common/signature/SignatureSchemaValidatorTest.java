@@ -0,0 +1,153 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.signature;
+
+import static ee.ria.xroad.common.ErrorCodes.X_MALFORMED_SIGNATURE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import ee.ria.xroad.common.ExpectedCodedException;
+
+/**
+ * Tests the structure fingerprint fast path of the signature schema
+ * validator.
+ */
+public class SignatureSchemaValidatorTest {
+
+    private static final String DS_NS = "http://www.w3.org/2000/09/xmldsig#";
+
+    @Rule
+    public ExpectedCodedException thrown = ExpectedCodedException.none();
+
+    /**
+     * Forgets the structures validated by other tests.
+     */
+    @Before
+    public void clearValidatedStructures() {
+        SignatureSchemaValidator.clear();
+    }
+
+    /**
+     * Tests that a valid signature passes validation repeatedly.
+     * @throws Exception if error occurs
+     */
+    @Test
+    public void validSignature() throws Exception {
+        Node signature = signature(load("sig-0.xml"));
+
+        SignatureSchemaValidator.validate(signature);
+        SignatureSchemaValidator.validate(signature);
+    }
+
+    /**
+     * Tests that the structure of a signature skips the full validation
+     * only after it has been added as verified.
+     * @throws Exception if error occurs
+     */
+    @Test
+    public void structureAddedOnlyAfterVerification() throws Exception {
+        Node signature = signature(load("sig-0.xml"));
+
+        String structure = SignatureSchemaValidator.validate(signature);
+        assertEquals(fingerprint(load("sig-0.xml")), structure);
+
+        // Passing the schema validation alone does not cache the structure
+        assertEquals(structure, SignatureSchemaValidator.validate(signature));
+
+        SignatureSchemaValidator.addVerifiedStructure(structure);
+        assertNull(SignatureSchemaValidator.validate(signature));
+    }
+
+    /**
+     * Tests that the fingerprint depends on the structure of the signature
+     * but not on the text content.
+     * @throws Exception if error occurs
+     */
+    @Test
+    public void fingerprintIgnoresTextContent() throws Exception {
+        Document doc = load("sig-0.xml");
+        String fingerprint = fingerprint(doc);
+        assertNotNull(fingerprint);
+
+        element(doc, "SignatureValue").setTextContent("AAAA");
+        assertEquals(fingerprint, fingerprint(doc));
+
+        element(doc, "SignatureValue").setAttributeNS(null, "Foo", "bar");
+        assertNotEquals(fingerprint, fingerprint(doc));
+    }
+
+    /**
+     * Tests that a signature with duplicate IDs gets no fingerprint and
+     * fails validation even if its structure has already been validated.
+     * @throws Exception if error occurs
+     */
+    @Test
+    public void duplicateIdsFailValidation() throws Exception {
+        SignatureSchemaValidator.addVerifiedStructure(
+                SignatureSchemaValidator.validate(signature(load("sig-0.xml"))));
+
+        Document doc = load("sig-0.xml");
+        element(doc, "SignatureValue").setAttribute("Id", "signature");
+        assertNull(fingerprint(doc));
+
+        thrown.expectError(X_MALFORMED_SIGNATURE);
+        SignatureSchemaValidator.validate(signature(doc));
+    }
+
+    private static String fingerprint(Document doc) throws Exception {
+        return SignatureSchemaValidator.getStructureFingerprint(
+                signature(doc));
+    }
+
+    private static Node signature(Document doc) {
+        return element(doc, "Signature");
+    }
+
+    private static Element element(Document doc, String localName) {
+        return (Element) doc.getElementsByTagNameNS(DS_NS, localName).item(0);
+    }
+
+    private static Document load(String fileName) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+
+        try (InputStream in =
+                new FileInputStream("src/test/signatures/" + fileName)) {
+            return factory.newDocumentBuilder().parse(in);
+        }
+    }
+}
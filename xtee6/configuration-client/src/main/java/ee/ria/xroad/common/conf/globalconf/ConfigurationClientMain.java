@@ -175,7 +175,7 @@ public final class ConfigurationClientMain {
             }
 
             @Override
-            void persistContent(byte[] content, Path destination,
+            void persistContent(Path content, Path destination,
                     ConfigurationFile file) throws Exception {
             }
 
@@ -23,22 +23,38 @@
 package ee.ria.xroad.common.conf.globalconf;
 
 import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.DefaultFilepaths;
 import ee.ria.xroad.common.SystemProperties;
 import lombok.Getter;
 import lombok.SneakyThrows;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.TeeOutputStream;
 import org.apache.commons.lang.StringUtils;
 import org.bouncycastle.operator.DigestCalculator;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.common.ErrorCodes.X_IO_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.X_MALFORMED_GLOBALCONF;
@@ -52,14 +68,26 @@ import static ee.ria.xroad.common.util.CryptoUtils.*;
  * is used. If there is more than one configuration location, then, for
  * high-availability concerns, list of configuration locations is shuffled and
  * then traversed to find the first location where configuration * can be
- * downloaded. The successful location is remembered and used first next time
- * the configuration is downloaded.
+ * downloaded. The next location is tried as soon as the previous one fails or
+ * if it has not answered within the location race delay, while the previous
+ * one is still waited for. The successful location is remembered and
+ * used first next time the configuration is downloaded.
  */
 @Slf4j
 class ConfigurationDownloader {
 
     public static final int READ_TIMEOUT = 30000;
 
+    // Milliseconds after which the next location is tried in parallel
+    private static final int LOCATION_RACE_DELAY = 5000;
+
+    private static final ExecutorService LOCATION_EXECUTOR =
+            Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "configuration-location");
+                thread.setDaemon(true);
+                return thread;
+            });
+
     protected final FileNameProvider fileNameProvider;
     protected final String[] instanceIdentifiers;
     private final int version;
@@ -71,6 +99,10 @@ class ConfigurationDownloader {
     protected final Map<String, Set<ConfigurationSource>> additionalSources =
             new HashMap<>();
 
+    // Hashes of the local files, so that unchanged files are not rehashed
+    private final Map<Path, LocalFileHash> localFileHashes =
+            new ConcurrentHashMap<>();
+
     ConfigurationDownloader(FileNameProvider fileNameProvider, int version,
             String... instanceIdentifiers) {
         this.fileNameProvider = fileNameProvider;
@@ -97,9 +129,19 @@ class ConfigurationDownloader {
             String... contentIdentifiers) {
         DownloadResult result = new DownloadResult();
 
-        for (ConfigurationLocation location : getLocations(source)) {
+        Deque<ConfigurationLocation> locations =
+                new ArrayDeque<>(getLocations(source));
+
+        while (!locations.isEmpty()) {
+            Configuration config =
+                    parseFirst(locations, contentIdentifiers, result);
+            if (config == null) {
+                break;
+            }
+
+            ConfigurationLocation location = config.getLocation();
             try {
-                Configuration config = download(location, contentIdentifiers);
+                handleFiles(config);
 
                 rememberLastSuccessfulLocation(location);
                 return result.success(config);
@@ -112,6 +154,87 @@ class ConfigurationDownloader {
         return result.failure();
     }
 
+    /**
+     * Parses the configuration directory from the given locations, starting
+     * the next location when the previous one fails or is slower than
+     * the location race delay. Locations that fail are removed and
+     * recorded in the result. Locations that were still being tried when
+     * another one succeeded are put back to be tried first, if needed.
+     * @return the first successfully parsed configuration or null, if
+     * parsing failed for all locations
+     */
+    private Configuration parseFirst(Deque<ConfigurationLocation> locations,
+            String[] contentIdentifiers, DownloadResult result) {
+        CompletionService<Configuration> completionService =
+                new ExecutorCompletionService<>(LOCATION_EXECUTOR);
+        Map<Future<Configuration>, ConfigurationLocation> running =
+                new LinkedHashMap<>();
+
+        try {
+            startNext(locations, contentIdentifiers, completionService,
+                    running);
+
+            while (!running.isEmpty()) {
+                Future<Configuration> done = locations.isEmpty()
+                        ? completionService.take()
+                        : completionService.poll(getLocationRaceDelay(),
+                                TimeUnit.MILLISECONDS);
+
+                if (done == null) {
+                    // the running locations are slow, try the next one too
+                    startNext(locations, contentIdentifiers, completionService,
+                            running);
+                    continue;
+                }
+
+                ConfigurationLocation location = running.remove(done);
+                try {
+                    return done.get();
+                } catch (ExecutionException e) {
+                    result.addFailure(location, toException(e.getCause()));
+
+                    startNext(locations, contentIdentifiers, completionService,
+                            running);
+                }
+            }
+
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            return null;
+        } finally {
+            List<ConfigurationLocation> unfinished = new ArrayList<>();
+            running.forEach((future, location) -> {
+                future.cancel(true);
+                unfinished.add(location);
+            });
+
+            // keep the original order of the unfinished locations
+            Collections.reverse(unfinished);
+            unfinished.forEach(locations::addFirst);
+        }
+    }
+
+    private void startNext(Deque<ConfigurationLocation> locations,
+            String[] contentIdentifiers,
+            CompletionService<Configuration> completionService,
+            Map<Future<Configuration>, ConfigurationLocation> running) {
+        ConfigurationLocation location = locations.pollFirst();
+        if (location != null) {
+            running.put(completionService.submit(
+                    () -> parse(location, contentIdentifiers)), location);
+        }
+    }
+
+    int getLocationRaceDelay() {
+        return LOCATION_RACE_DELAY;
+    }
+
+    private static Exception toException(Throwable t) {
+        return t instanceof Exception ? (Exception) t : new RuntimeException(t);
+    }
+
     private void rememberLastSuccessfulLocation(ConfigurationLocation location) {
         log.trace("rememberLastSuccessfulLocation source={} location={}", location.getSource(), location);
         lastSuccessfulLocation.put(location.getSource(), location);
@@ -119,7 +242,7 @@ class ConfigurationDownloader {
 
     private List<ConfigurationLocation> getLocations(
             ConfigurationSource source) {
-        List<ConfigurationLocation> result = new ArrayList<>();
+        Set<ConfigurationLocation> result = new LinkedHashSet<>();
         List<ConfigurationLocation> randomized = new ArrayList<>();
 
         preferLastSuccessLocation(source, result);
@@ -130,11 +253,11 @@ class ConfigurationDownloader {
 
         result.removeIf(Objects::isNull);
 
-        return result;
+        return new ArrayList<>(result);
     }
 
     private void preferLastSuccessLocation(
-            ConfigurationSource source, List<ConfigurationLocation> result) {
+            ConfigurationSource source, Set<ConfigurationLocation> result) {
         if (lastSuccessfulLocation != null) {
             log.trace("preferLastSuccessLocation source={} location={}", source, lastSuccessfulLocation.get(source));
             result.add(lastSuccessfulLocation.get(source));
@@ -143,19 +266,18 @@ class ConfigurationDownloader {
         }
     }
 
-    Configuration download(ConfigurationLocation location,
+    Configuration parse(ConfigurationLocation location,
             String[] contentIdentifiers) throws Exception {
         log.info("Downloading configuration from {}",
                 location.getDownloadURL());
 
-        additionalSources.clear();
+        return getParser().parse(location, contentIdentifiers);
+    }
 
-        Configuration configuration =
-                getParser().parse(location, contentIdentifiers);
+    void handleFiles(Configuration configuration) {
+        additionalSources.clear();
 
         configuration.eachFile(this::handle);
-
-        return configuration;
     }
 
     @SneakyThrows
@@ -167,12 +289,14 @@ class ConfigurationDownloader {
 
         Path contentFileName = getFileName(file);
         if (shouldDownload(file, contentFileName)) {
-            byte[] content = downloadContent(location, file);
-
-            verifyContent(content, file);
-            handleContent(content, file);
+            Path content = downloadContent(location, file, contentFileName);
+            try {
+                handleContent(content, file);
 
-            persistContent(content, contentFileName, file);
+                persistContent(content, contentFileName, file);
+            } finally {
+                Files.deleteIfExists(content);
+            }
         } else {
             log.trace("{} is up to date", file.getContentLocation());
 
@@ -188,8 +312,8 @@ class ConfigurationDownloader {
 
         if (Files.exists(file)) {
             String contentHash = configurationFile.getHash();
-            String existingHash = encodeBase64(hash(file,
-                    configurationFile.getHashAlgorithmId()));
+            String existingHash = getLocalHash(file,
+                    configurationFile.getHashAlgorithmId());
             if (!StringUtils.equals(existingHash, contentHash)) {
                 log.trace("Downloading {} because file has changed ({} != {})",
                         new Object[] {configurationFile.getContentLocation(),
@@ -205,24 +329,50 @@ class ConfigurationDownloader {
         return true;
     }
 
-    byte[] downloadContent(ConfigurationLocation location,
+    /**
+     * Downloads the content into a temporary file in the directory of the
+     * destination, hashing it while it is written.
+     * @return the temporary file with the verified content
+     */
+    Path downloadContent(ConfigurationLocation location,
+            ConfigurationFile file, Path destination) throws Exception {
+        DigestCalculator dc = createDigestCalculator(
+                getAlgorithmId(file.getHashAlgorithmId()));
+
+        Path tempFile = createTempFile(destination);
+        try {
+            try (InputStream in = openContent(location, file);
+                    FileChannel channel = FileChannel.open(tempFile,
+                            StandardOpenOption.WRITE)) {
+                OutputStream out = new TeeOutputStream(
+                        Channels.newOutputStream(channel),
+                        dc.getOutputStream());
+                IOUtils.copy(in, out);
+
+                channel.force(true);
+            }
+
+            verifyContent(dc.getDigest(), file);
+
+            return tempFile;
+        } catch (Exception e) {
+            Files.deleteIfExists(tempFile);
+
+            throw e;
+        }
+    }
+
+    InputStream openContent(ConfigurationLocation location,
             ConfigurationFile file) throws Exception {
         URLConnection connection = getDownloadURLConnection(getDownloadURL(location, file));
         log.info("Downloading content from {}", connection.getURL());
-        try (InputStream in = connection.getInputStream()) {
-            return IOUtils.toByteArray(in);
-        }
+        return connection.getInputStream();
     }
 
-    void verifyContent(byte[] content, ConfigurationFile file)
-            throws Exception {
-        String algoId = getAlgorithmId(file.getHashAlgorithmId());
-        log.trace("verifyContent({}, {})", file.getHash(), algoId);
-
-        DigestCalculator dc = createDigestCalculator(algoId);
-        dc.getOutputStream().write(content);
+    void verifyContent(byte[] hash, ConfigurationFile file) {
+        log.trace("verifyContent({}, {})", file.getHash(),
+                file.getHashAlgorithmId());
 
-        byte[] hash = dc.getDigest();
         if (!Arrays.equals(hash, decodeBase64(file.getHash()))) {
             log.trace("Content {} hash {} does not match expected hash {}",
                     new Object[] {
@@ -232,36 +382,46 @@ class ConfigurationDownloader {
         }
     }
 
-    void handleContent(byte[] content, ConfigurationFile file)
+    void handleContent(Path content, ConfigurationFile file)
             throws Exception {
         switch (file.getContentIdentifier()) {
             case ConfigurationConstants.CONTENT_ID_PRIVATE_PARAMETERS:
-                if (version != SystemProperties.CURRENT_GLOBAL_CONFIGURATION_VERSION) {
-                    PrivateParametersV1 privateParameters = new PrivateParametersV1();
-                    privateParameters.load(content);
-                    handlePrivateParameters(privateParameters, file);
-                } else {
-                    PrivateParametersV2 privateParameters = new PrivateParametersV2();
-                    privateParameters.load(content);
-                    handlePrivateParameters(privateParameters, file);
-                }
+                handlePrivateParameters(Files.readAllBytes(content), file);
                 break;
             case ConfigurationConstants.CONTENT_ID_SHARED_PARAMETERS:
-                if (version != SystemProperties.CURRENT_GLOBAL_CONFIGURATION_VERSION) {
-                    SharedParametersV1 sharedParameters = new SharedParametersV1();
-                    sharedParameters.load(content);
-                    handleSharedParameters(sharedParameters, file);
-                } else {
-                    SharedParametersV2 sharedParameters = new SharedParametersV2();
-                    sharedParameters.load(content);
-                    handleSharedParameters(sharedParameters, file);
-                }
+                handleSharedParameters(Files.readAllBytes(content), file);
                 break;
             default: // do nothing
                 break;
         }
     }
 
+    private void handlePrivateParameters(byte[] content,
+            ConfigurationFile file) throws Exception {
+        if (version != SystemProperties.CURRENT_GLOBAL_CONFIGURATION_VERSION) {
+            PrivateParametersV1 privateParameters = new PrivateParametersV1();
+            privateParameters.load(content);
+            handlePrivateParameters(privateParameters, file);
+        } else {
+            PrivateParametersV2 privateParameters = new PrivateParametersV2();
+            privateParameters.load(content);
+            handlePrivateParameters(privateParameters, file);
+        }
+    }
+
+    private void handleSharedParameters(byte[] content,
+            ConfigurationFile file) throws Exception {
+        if (version != SystemProperties.CURRENT_GLOBAL_CONFIGURATION_VERSION) {
+            SharedParametersV1 sharedParameters = new SharedParametersV1();
+            sharedParameters.load(content);
+            handleSharedParameters(sharedParameters, file);
+        } else {
+            SharedParametersV2 sharedParameters = new SharedParametersV2();
+            sharedParameters.load(content);
+            handleSharedParameters(sharedParameters, file);
+        }
+    }
+
     void handlePrivateParameters(PrivateParametersV2 privateParameters,
             ConfigurationFile file) throws Exception {
         verifyInstanceIdentifier(privateParameters.getInstanceIdentifier(),
@@ -324,11 +484,17 @@ class ConfigurationDownloader {
             file);
     }
 
-    void persistContent(byte[] content, Path destination,
+    void persistContent(Path content, Path destination,
             ConfigurationFile file) throws Exception {
         log.info("Saving {} to {}", file, destination);
 
-        ConfigurationDirectory.save(destination, content, file.getMetadata());
+        ConfigurationDirectory.move(content, destination, file.getMetadata());
+
+        if (destination != null) {
+            localFileHashes.put(destination, new LocalFileHash(
+                    getFileVersion(destination, file.getHashAlgorithmId()),
+                    file.getHash()));
+        }
     }
 
     void updateExpirationDate(Path destination, ConfigurationFile file)
@@ -360,12 +526,49 @@ class ConfigurationDownloader {
 
     public static URLConnection getDownloadURLConnection(URL url) throws IOException {
         URLConnection connection = url.openConnection();
+        connection.setConnectTimeout(ConfigurationLocation.CONNECT_TIMEOUT);
         connection.setReadTimeout(READ_TIMEOUT);
         return connection;
     }
 
     // ------------------------------------------------------------------------
 
+    private String getLocalHash(Path file, String algoId) throws Exception {
+        // read the version before hashing, so that a concurrent change is
+        // detected next time
+        String fileVersion = getFileVersion(file, algoId);
+
+        LocalFileHash cached = localFileHashes.get(file);
+        if (cached != null && cached.getFileVersion().equals(fileVersion)) {
+            return cached.getHash();
+        }
+
+        String hash = encodeBase64(hash(file, algoId));
+        localFileHashes.put(file, new LocalFileHash(fileVersion, hash));
+
+        return hash;
+    }
+
+    private static String getFileVersion(Path file, String algoId)
+            throws IOException {
+        BasicFileAttributes attributes =
+                Files.readAttributes(file, BasicFileAttributes.class);
+
+        return attributes.fileKey() + "/" + attributes.size() + "/"
+                + attributes.lastModifiedTime().toMillis() + "/" + algoId;
+    }
+
+    private static Path createTempFile(Path destination) throws IOException {
+        Path parent = destination != null ? destination.getParent() : null;
+        if (parent == null) {
+            return DefaultFilepaths.createTempFile("conf", null);
+        }
+
+        Files.createDirectories(parent);
+
+        return DefaultFilepaths.createTempFile(parent, "conf", null);
+    }
+
     static byte[] hash(Path file, String algoId) throws Exception {
         DigestCalculator dc = createDigestCalculator(getAlgorithmId(algoId));
 
@@ -374,4 +577,10 @@ class ConfigurationDownloader {
             return dc.getDigest();
         }
     }
+
+    @Value
+    private static class LocalFileHash {
+        String fileVersion;
+        String hash;
+    }
 }
@@ -25,7 +25,6 @@ package ee.ria.xroad.common.conf.globalconf;
 import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.TestCertUtil;
-import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 
 import java.io.FileInputStream;
@@ -180,7 +179,7 @@ public class ConfigurationClientTest {
             }
 
             @Override
-            void persistContent(byte[] content, Path destination,
+            void persistContent(Path content, Path destination,
                     ConfigurationFile file) throws Exception {
                 receivedParts.add(file.getContentIdentifier());
             }
@@ -191,13 +190,11 @@ public class ConfigurationClientTest {
             }
 
             @Override
-            byte[] downloadContent(ConfigurationLocation location,
+            InputStream openContent(ConfigurationLocation location,
                     ConfigurationFile file) throws Exception {
-                try (InputStream in = Files.newInputStream(
+                return Files.newInputStream(
                         Paths.get(confPath, file.getInstanceIdentifier(),
-                                file.getContentLocation()))) {
-                    return IOUtils.toByteArray(in);
-                }
+                                file.getContentLocation()));
             }
         };
 
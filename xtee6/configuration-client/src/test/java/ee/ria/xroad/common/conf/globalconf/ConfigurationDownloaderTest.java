@@ -32,6 +32,7 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import ee.ria.xroad.common.SystemProperties;
@@ -49,6 +50,8 @@ import lombok.Value;
 public class ConfigurationDownloaderTest {
     private static final int MAX_ATTEMPTS = 5;
     private static final String LOCATION_URL_SUCCESS = "http://www.example.com/SUCCESS";
+    private static final int LOCATION_RACE_DELAY = 100;
+    private static final int SLOW_LOCATION_TIME = 10000;
 
     /**
      * For better HA, the order of sources to be tried to download configuration
@@ -108,6 +111,39 @@ public class ConfigurationDownloaderTest {
                 new URL("http://test.download.com"));
         assertEquals(connection.getReadTimeout(), ConfigurationDownloader.READ_TIMEOUT);
         assertTrue(connection.getReadTimeout() > 0);
+        assertEquals(connection.getConnectTimeout(), ConfigurationLocation.CONNECT_TIMEOUT);
+        assertTrue(connection.getConnectTimeout() > 0);
+    }
+
+    /**
+     * Checks that locations that do not answer do not delay downloading
+     * configuration from a location that does.
+     */
+    @Test
+    public void slowLocationsDoNotDelayDownload() {
+        // Given
+        ConfigurationDownloader downloader = getDownloader(
+                new TestConfigurationParser(LOCATION_URL_SUCCESS) {
+                    @Override
+                    public Configuration parse(ConfigurationLocation location,
+                            String... contentIdentifiersToBeHandled) {
+                        if (location.getDownloadURL().contains("slow")) {
+                            sleep(SLOW_LOCATION_TIME);
+                        }
+
+                        return super.parse(location,
+                                contentIdentifiersToBeHandled);
+                    }
+                });
+        List<String> locationUrls = getSlowLocationUrls();
+
+        // When
+        long start = System.currentTimeMillis();
+        DownloadResult result = downloader.download(getSource(locationUrls));
+
+        // Then
+        assertTrue(result.isSuccess());
+        assertTrue(System.currentTimeMillis() - start < SLOW_LOCATION_TIME);
     }
 
     private void resetParser(ConfigurationDownloader downloader) {
@@ -218,6 +254,24 @@ public class ConfigurationDownloaderTest {
         return result;
     }
 
+    private List<String> getSlowLocationUrls() {
+        List<String> result = new ArrayList<>();
+
+        result.add("http://www.example.com/slow1");
+        result.add(LOCATION_URL_SUCCESS);
+        result.add("http://www.example.com/slow2");
+
+        return result;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private ConfigurationSource getSource(final List<String> locationUrls) {
         return new TestConfigurationSource(locationUrls);
     }
@@ -225,17 +279,25 @@ public class ConfigurationDownloaderTest {
 
     private ConfigurationDownloader getDownloader(
             String ... successfulLocationUrls) {
+        return getDownloader(
+                new TestConfigurationParser(successfulLocationUrls));
+    }
+
+    private ConfigurationDownloader getDownloader(
+            final TestConfigurationParser parser) {
         FileNameProvider fileNameProvider = file -> new File("f").toPath();
 
         return new ConfigurationDownloader(fileNameProvider, SystemProperties.CURRENT_GLOBAL_CONFIGURATION_VERSION) {
 
-            ConfigurationParser parser =
-                    new TestConfigurationParser(successfulLocationUrls);
-
             @Override
             ConfigurationParser getParser() {
                 return parser;
             }
+
+            @Override
+            int getLocationRaceDelay() {
+                return LOCATION_RACE_DELAY;
+            }
         };
     }
 
@@ -272,7 +334,8 @@ public class ConfigurationDownloaderTest {
     private static class TestConfigurationParser extends ConfigurationParser {
 
         @Getter
-        private List<String> configurationUrls = new ArrayList<>();
+        private List<String> configurationUrls =
+                Collections.synchronizedList(new ArrayList<>());
         private final List<String> successfulDownloadUrls;
 
         TestConfigurationParser(String ... successfulDownloadUrls) {
@@ -294,7 +357,7 @@ public class ConfigurationDownloaderTest {
         }
 
         void reset() {
-            configurationUrls = new ArrayList<>();
+            configurationUrls = Collections.synchronizedList(new ArrayList<>());
         }
     }
 }
@@ -35,14 +35,18 @@ import ee.ria.xroad.signer.protocol.message.SignResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.io.output.TeeOutputStream;
+import org.bouncycastle.operator.DigestCalculator;
 import org.eclipse.jetty.util.MultiPartWriter;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -91,20 +95,28 @@ public class OutputBuilder {
 
     /**
      * Generates a signed directory MIME for the global configuration and
-     * writes the directory contents to a temporary location.
+     * writes the directory contents to a temporary location. The directory
+     * content is streamed to the signed directory file while its digest is
+     * calculated, so that only the digest needs to be signed.
      * @throws Exception if errors occur when reading global configuration files
      */
     public final void buildSignedDirectory() throws Exception {
-        try (ByteArrayOutputStream mimeContent = new ByteArrayOutputStream()) {
-            build(mimeContent);
-            log.debug("Generated directory content:\n{}\n",
-                    mimeContent.toString());
-            byte[] contentBytes = mimeContent.toByteArray();
-            mimeContent.reset();
-            sign(contentBytes, mimeContent);
-            Files.write(tempConfPath, mimeContent.toByteArray());
-            log.debug("Written signed directory to '{}'", tempConfPath);
+        String algId = conf.getSignatureAlgorithmId();
+        String digestAlgorithmId = getDigestAlgorithmId(algId);
+        DigestCalculator dc = createDigestCalculator(digestAlgorithmId);
+
+        try (OutputStream out = new BufferedOutputStream(
+                Files.newOutputStream(tempConfPath))) {
+            out.write(envelopeHeader.getBytes());
+            try (MultipartEncoder encoder =
+                    new MultipartEncoder(out, envelopeBoundary)) {
+                encoder.startPart(mpMixedContentType(dataBoundary));
+                build(new TeeOutputStream(new CloseShieldOutputStream(out),
+                        dc.getOutputStream()));
+                sign(encoder, digestAlgorithmId, dc.getDigest());
+            }
         }
+        log.debug("Written signed directory to '{}'", tempConfPath);
     }
 
     /**
@@ -153,7 +165,7 @@ public class OutputBuilder {
      * @param mimeContent output stream to write to
      * @throws Exception if reading global configuration files fails
      */
-    private void build(final ByteArrayOutputStream mimeContent)
+    private void build(final OutputStream mimeContent)
             throws Exception {
         try (MultipartEncoder encoder =
                 new MultipartEncoder(mimeContent, dataBoundary)) {
@@ -177,41 +189,34 @@ public class OutputBuilder {
     }
 
     /**
-     * Signs the global configuration directory content.
-     * @param contentBytes configuration directory content bytes
-     * @param mimeContent output stream to write to
+     * Signs the global configuration directory content and appends the
+     * signature part to the signed directory.
+     * @param encoder signed directory encoder to write the signature to
+     * @param digestAlgorithmId id of the algorithm used for the digest
+     * @param digest digest of the configuration directory content
      * @throws Exception if errors are encountered while writing
-     * the signed directory content to a temporary location
+     * the signature to a temporary location
      */
-    private void sign(final byte[] contentBytes,
-            final ByteArrayOutputStream mimeContent) throws Exception {
+    private void sign(final MultipartEncoder encoder,
+            final String digestAlgorithmId, final byte[] digest)
+                    throws Exception {
         String algId = conf.getSignatureAlgorithmId();
         String keyId = conf.getActiveSigningKey();
         log.debug("Signing directory with signing key '{}' "
                 + "and signing algorithm '{}'", keyId, algId);
-        String signature = signHelper(keyId, algId, contentBytes);
-
-        mimeContent.write(envelopeHeader.getBytes());
-        try (MultipartEncoder encoder =
-                new MultipartEncoder(mimeContent, envelopeBoundary)) {
-            encoder.startPart(mpMixedContentType(dataBoundary));
-            encoder.write(contentBytes);
-            String algURI = CryptoUtils.getSignatureAlgorithmURI(algId);
-            String hashURI = hashCalculator.getAlgoURI();
-            Path verificationCertPath = conf.getCertPath(keyId);
-            encoder.startPart(MimeTypes.BINARY, new String[] {
-                    HEADER_CONTENT_TRANSFER_ENCODING + ": base64",
-                    HEADER_SIG_ALGO_ID + ": " + algURI,
-                    HEADER_VERIFICATION_CERT_HASH + ": "
-                            + getVerificationCertHash(verificationCertPath)
-                            + "; " + HEADER_HASH_ALGORITHM_ID + "=" + hashURI
-                });
-            encoder.write(signature.getBytes());
-        }
-        log.debug("Generated signed directory:\n{}\n", mimeContent.toString());
+        String signature = signHelper(keyId, digestAlgorithmId, digest);
 
-        Files.write(tempConfPath, mimeContent.toByteArray());
-        log.debug("Written signed directory to '{}'", tempConfPath);
+        String algURI = CryptoUtils.getSignatureAlgorithmURI(algId);
+        String hashURI = hashCalculator.getAlgoURI();
+        Path verificationCertPath = conf.getCertPath(keyId);
+        encoder.startPart(MimeTypes.BINARY, new String[] {
+                HEADER_CONTENT_TRANSFER_ENCODING + ": base64",
+                HEADER_SIG_ALGO_ID + ": " + algURI,
+                HEADER_VERIFICATION_CERT_HASH + ": "
+                        + getVerificationCertHash(verificationCertPath)
+                        + "; " + HEADER_HASH_ALGORITHM_ID + "=" + hashURI
+            });
+        encoder.write(signature.getBytes());
     }
 
     /**
@@ -293,18 +298,14 @@ public class OutputBuilder {
     /**
      * Generates the signature of the configuration directory data.
      * @param keyId id of the key used for signing
-     * @param signatureAlgorithmId if of the algorithm used for signing
-     * @param data generated bytes of the directory content
+     * @param digestAlgorithmId id of the algorithm used for the digest
+     * @param digest digest of the directory content
      * @return the configuration directory signature string
      * @throws Exception if cryptographic operations fail
      */
     private String signHelper(final String keyId,
-            final String signatureAlgorithmId, final byte[] data)
+            final String digestAlgorithmId, final byte[] digest)
                     throws Exception {
-        String digestAlgorithmId = getDigestAlgorithmId(signatureAlgorithmId);
-
-        byte[] digest = calculateDigest(digestAlgorithmId, data);
-
         SignResponse response =
                 SignerClient.execute(
                         new Sign(keyId, digestAlgorithmId, digest));
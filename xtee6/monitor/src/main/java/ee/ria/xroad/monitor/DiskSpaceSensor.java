@@ -29,6 +29,7 @@ import java.util.concurrent.TimeUnit;
 
 import com.codahale.metrics.MetricRegistry;
 
+import ee.ria.xroad.common.util.MetricRegistryHolder;
 import ee.ria.xroad.monitor.common.SystemMetricNames;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
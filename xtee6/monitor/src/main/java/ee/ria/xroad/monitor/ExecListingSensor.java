@@ -24,6 +24,7 @@ package ee.ria.xroad.monitor;
 
 import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricRegistry;
+import ee.ria.xroad.common.util.MetricRegistryHolder;
 import ee.ria.xroad.monitor.common.SystemMetricNames;
 import ee.ria.xroad.monitor.executablelister.*;
 import lombok.extern.slf4j.Slf4j;
@@ -34,21 +35,29 @@ import java.util.ArrayList;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Sensor which collects data by running external commands and
- * parsing output from those.
+ * Sensor which collects process, package and operating system data. The
+ * data is read from the proc file system and package database where
+ * possible and by running external commands and parsing output from those
+ * otherwise.
  */
 @Slf4j
 public class ExecListingSensor extends AbstractSensor {
 
+    private final ProcessLister processLister = new ProcProcessLister();
+    private final ProcessLister xroadProcessLister =
+            new ProcXroadProcessLister();
+    private final PackageLister packageLister = new PackageDatabaseLister();
+    private final OsInfoLister osInfoLister = new OsInfoLister();
+
     /**
      * Constructor
      */
     public <T extends Metric> ExecListingSensor() {
         MetricRegistry metricRegistry = MetricRegistryHolder.getInstance().getMetrics();
-        ListedData<ProcessInfo> processes = new ProcessLister().list();
-        ListedData<ProcessInfo> xroadProcesses = new XroadProcessLister().list();
-        ListedData<PackageInfo> packages = new PackageLister().list();
-        ListedData<String> operatingSystemInfo = new OsInfoLister().list();
+        ListedData<ProcessInfo> processes = processLister.list();
+        ListedData<ProcessInfo> xroadProcesses = xroadProcessLister.list();
+        ListedData<PackageInfo> packages = packageLister.list();
+        ListedData<String> operatingSystemInfo = osInfoLister.list();
         metricRegistry.register(SystemMetricNames.PROCESSES, createParsedMetric(processes));
         metricRegistry.register(SystemMetricNames.PROCESS_STRINGS, createJmxMetric(processes));
         metricRegistry.register(SystemMetricNames.XROAD_PROCESSES, createParsedMetric(xroadProcesses));
@@ -77,10 +86,10 @@ public class ExecListingSensor extends AbstractSensor {
 
     private void updateMetrics() {
         MetricRegistry metricRegistry = MetricRegistryHolder.getInstance().getMetrics();
-        ListedData<ProcessInfo> processes = new ProcessLister().list();
-        ListedData<ProcessInfo> xroadProcesses = new XroadProcessLister().list();
-        ListedData<PackageInfo> packages = new PackageLister().list();
-        ListedData<String> operatingSystemInfo = new OsInfoLister().list();
+        ListedData<ProcessInfo> processes = processLister.list();
+        ListedData<ProcessInfo> xroadProcesses = xroadProcessLister.list();
+        ListedData<PackageInfo> packages = packageLister.list();
+        ListedData<String> operatingSystemInfo = osInfoLister.list();
         String osString = operatingSystemInfo.getJmxData().get(0);
         ((SimpleSensor) metricRegistry.getMetrics().get(SystemMetricNames.PROCESSES))
                 .update(processes);
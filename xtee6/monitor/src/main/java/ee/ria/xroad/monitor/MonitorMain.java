@@ -29,6 +29,7 @@ import com.google.common.collect.Lists;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 import ee.ria.xroad.common.SystemPropertiesLoader;
+import ee.ria.xroad.common.util.MetricRegistryHolder;
 import ee.ria.xroad.monitor.common.SystemMetricNames;
 import lombok.extern.java.Log;
 
@@ -29,6 +29,7 @@ import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.SlidingTimeWindowReservoir;
 import com.sun.management.UnixOperatingSystemMXBean;
 
+import ee.ria.xroad.common.util.MetricRegistryHolder;
 import ee.ria.xroad.common.util.SystemMetrics;
 import ee.ria.xroad.monitor.common.SystemMetricNames;
 import scala.concurrent.duration.Duration;
@@ -48,6 +48,22 @@ public class OsInfoLister extends AbstractExecLister<String> {
         System.out.println("parsed: " + p.getParsedData());
     }
 
+    /**
+     * Reads the operating system information directly from the proc file
+     * system, falling back to executing the command if it cannot be read.
+     */
+    @Override
+    ProcessOutputs executeProcess() throws IOException, InterruptedException {
+        try {
+            ProcessOutputs outputs = new ProcessOutputs();
+            outputs.setOut(new ProcFileSystem().readVersion());
+            return outputs;
+        } catch (IOException e) {
+            log.warn("Could not read operating system information", e);
+            return super.executeProcess();
+        }
+    }
+
     @Override
     protected String getCommand() {
         return SHOW_OS_INFO_COMMAND;
@@ -0,0 +1,189 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.monitor.executablelister;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Package lister that only lists the packages again after the package
+ * database has changed. On Debian based systems the packages are read
+ * directly from the dpkg status database. The rpm database cannot be read
+ * without rpm, so on Red Hat based systems rpm is executed, but only when
+ * the database has been modified.
+ */
+@Slf4j
+public class PackageDatabaseLister extends PackageLister {
+
+    private static final String PACKAGE_FIELD = "Package:";
+    private static final String VERSION_FIELD = "Version:";
+    private static final String STATUS_FIELD = "Status:";
+    private static final String NOT_INSTALLED_STATUS = "not-installed";
+
+    private final Path redHatRelease;
+    private final Path dpkgStatus;
+    private final Path rpmDatabase;
+
+    private String databaseVersion;
+    private ListedData<PackageInfo> packages;
+
+    /**
+     * Program entry point
+     */
+    public static void main(String[] args) throws IOException {
+        ListedData<PackageInfo> p = new PackageDatabaseLister().list();
+        System.out.println("raw: " + p.getJmxData());
+        System.out.println("parsed: " + p.getParsedData());
+    }
+
+    /**
+     * Constructs a package lister using the system package databases.
+     */
+    public PackageDatabaseLister() {
+        this(Paths.get("/etc/redhat-release"),
+                Paths.get("/var/lib/dpkg/status"), Paths.get("/var/lib/rpm"));
+    }
+
+    PackageDatabaseLister(Path redHatRelease, Path dpkgStatus,
+            Path rpmDatabase) {
+        this.redHatRelease = redHatRelease;
+        this.dpkgStatus = dpkgStatus;
+        this.rpmDatabase = rpmDatabase;
+    }
+
+    @Override
+    public synchronized ListedData<PackageInfo> list()
+            throws ExecListingFailedException {
+        validateSupportedOs();
+
+        boolean redHat = Files.exists(redHatRelease);
+        String version;
+        try {
+            version = getDatabaseVersion(redHat ? rpmDatabase : dpkgStatus);
+        } catch (IOException e) {
+            log.warn("Could not check package database for changes", e);
+            return super.list();
+        }
+
+        if (!version.equals(databaseVersion)) {
+            packages = redHat ? super.list() : listDpkgPackages();
+            databaseVersion = version;
+        }
+
+        return packages;
+    }
+
+    private ListedData<PackageInfo> listDpkgPackages() {
+        try {
+            return readDpkgStatus();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not read dpkg status database, "
+                    + "falling back to dpkg-query", e);
+            return super.list();
+        }
+    }
+
+    /**
+     * Reads the installed packages from the dpkg status database. The
+     * database consists of paragraphs of fields separated by empty lines,
+     * one paragraph per package.
+     */
+    private ListedData<PackageInfo> readDpkgStatus() throws IOException {
+        ArrayList<PackageInfo> parsedData = new ArrayList<>();
+        ArrayList<String> jmxData = new ArrayList<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(dpkgStatus,
+                StandardCharsets.UTF_8)) {
+            String name = null;
+            String version = null;
+            String status = null;
+            String line;
+            do {
+                line = reader.readLine();
+                if (line == null || line.isEmpty()) {
+                    if (name != null && version != null && status != null
+                            && !status.endsWith(NOT_INSTALLED_STATUS)) {
+                        PackageInfo info = new PackageInfo();
+                        info.setName(name);
+                        info.setVersion(version);
+                        parsedData.add(info);
+                        jmxData.add(name + "/" + version);
+                    }
+
+                    name = null;
+                    version = null;
+                    status = null;
+                } else if (line.startsWith(PACKAGE_FIELD)) {
+                    name = line.substring(PACKAGE_FIELD.length()).trim();
+                } else if (line.startsWith(VERSION_FIELD)) {
+                    version = line.substring(VERSION_FIELD.length()).trim();
+                } else if (line.startsWith(STATUS_FIELD)) {
+                    status = line.substring(STATUS_FIELD.length()).trim();
+                }
+            } while (line != null);
+        }
+
+        ListedData<PackageInfo> data = new ListedData<>();
+        data.setParsedData(parsedData);
+        data.setJmxData(jmxData);
+        return data;
+    }
+
+    /**
+     * Describes the state of the package database with the modification
+     * times and sizes of the database files.
+     */
+    private static String getDatabaseVersion(Path database)
+            throws IOException {
+        if (!Files.isDirectory(database)) {
+            return Files.getLastModifiedTime(database) + "/"
+                    + Files.size(database);
+        }
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream =
+                Files.newDirectoryStream(database)) {
+            stream.forEach(files::add);
+        }
+
+        Collections.sort(files);
+
+        StringBuilder version = new StringBuilder();
+        for (Path file : files) {
+            version.append(file.getFileName()).append('=')
+                    .append(getDatabaseVersion(file)).append(';');
+        }
+
+        return version.toString();
+    }
+}
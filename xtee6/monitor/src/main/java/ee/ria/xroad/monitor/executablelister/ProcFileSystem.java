@@ -0,0 +1,270 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.monitor.executablelister;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Splitter;
+
+import lombok.Getter;
+
+/**
+ * Reads process and system information directly from the proc file system
+ * instead of forking external commands.
+ */
+class ProcFileSystem {
+
+    /**
+     * Clock ticks per second used in the process times of /proc/[pid]/stat.
+     * The kernel exports the times in USER_HZ, which is 100 on all
+     * supported platforms.
+     */
+    static final long CLOCK_TICKS_PER_SECOND = 100;
+
+    private static final Splitter WHITESPACE_SPLITTER =
+            Splitter.on(CharMatcher.WHITESPACE).omitEmptyStrings();
+
+    // Indexes of the fields following the command name in /proc/[pid]/stat
+    private static final int STAT_UTIME_INDEX = 11;
+    private static final int STAT_STIME_INDEX = 12;
+    private static final int STAT_STARTTIME_INDEX = 19;
+
+    private static final int PASSWD_UID_INDEX = 2;
+
+    private final Path root;
+    private final Path passwd;
+
+    private Map<String, String> userNames = new HashMap<>();
+    private FileTime userNamesModified;
+
+    /**
+     * Process information read from /proc/[pid]/stat.
+     */
+    @Getter
+    static class ProcessStat {
+        private final String command;
+        private final long cpuTicks;
+        private final long startTicks;
+
+        ProcessStat(String command, long cpuTicks, long startTicks) {
+            this.command = command;
+            this.cpuTicks = cpuTicks;
+            this.startTicks = startTicks;
+        }
+    }
+
+    ProcFileSystem() {
+        this(Paths.get("/proc"), Paths.get("/etc/passwd"));
+    }
+
+    ProcFileSystem(Path root, Path passwd) {
+        this.root = root;
+        this.passwd = passwd;
+    }
+
+    /**
+     * @return ids of the processes currently running in ascending order
+     * @throws IOException if the proc file system cannot be read
+     */
+    List<Integer> listProcessIds() throws IOException {
+        List<Integer> pids = new ArrayList<>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root)) {
+            for (Path entry : stream) {
+                String name = entry.getFileName().toString();
+                if (CharMatcher.inRange('0', '9').matchesAllOf(name)) {
+                    pids.add(Integer.valueOf(name));
+                }
+            }
+        }
+
+        Collections.sort(pids);
+        return pids;
+    }
+
+    /**
+     * Reads /proc/[pid]/stat. The command name is enclosed in parentheses
+     * and may contain spaces and parentheses itself.
+     * @param pid process id
+     * @return the process command name and times
+     * @throws IOException if the process has exited or cannot be read
+     */
+    ProcessStat readStat(int pid) throws IOException {
+        String stat = readString(processFile(pid, "stat"));
+        int commandStart = stat.indexOf('(');
+        int commandEnd = stat.lastIndexOf(')');
+        if (commandStart < 0 || commandEnd < commandStart) {
+            throw new IOException("Malformed stat of process " + pid);
+        }
+
+        List<String> fields = WHITESPACE_SPLITTER.splitToList(
+                stat.substring(commandEnd + 1));
+        if (fields.size() <= STAT_STARTTIME_INDEX) {
+            throw new IOException("Malformed stat of process " + pid);
+        }
+
+        return new ProcessStat(stat.substring(commandStart + 1, commandEnd),
+                Long.parseLong(fields.get(STAT_UTIME_INDEX))
+                        + Long.parseLong(fields.get(STAT_STIME_INDEX)),
+                Long.parseLong(fields.get(STAT_STARTTIME_INDEX)));
+    }
+
+    /**
+     * Reads /proc/[pid]/status.
+     * @param pid process id
+     * @return status fields of the process by name
+     * @throws IOException if the process has exited or cannot be read
+     */
+    Map<String, String> readStatus(int pid) throws IOException {
+        return readFields(processFile(pid, "status"));
+    }
+
+    /**
+     * Reads /proc/[pid]/cmdline.
+     * @param pid process id
+     * @return the command line arguments separated by spaces, empty
+     * for kernel threads
+     * @throws IOException if the process has exited or cannot be read
+     */
+    String readCommandLine(int pid) throws IOException {
+        return CharMatcher.is('\0').trimAndCollapseFrom(
+                readString(processFile(pid, "cmdline")), ' ');
+    }
+
+    /**
+     * Reads /proc/[pid]/cgroup.
+     * @param pid process id
+     * @return control groups of the process, one per line
+     * @throws IOException if the process has exited or cannot be read
+     */
+    List<String> readControlGroups(int pid) throws IOException {
+        return Files.readAllLines(processFile(pid, "cgroup"),
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return total usable memory in kilobytes from /proc/meminfo
+     * @throws IOException if /proc/meminfo cannot be read
+     */
+    long readTotalMemoryKb() throws IOException {
+        String memTotal = readFields(root.resolve("meminfo")).get("MemTotal");
+        if (memTotal == null) {
+            throw new IOException("MemTotal missing from meminfo");
+        }
+
+        return Long.parseLong(WHITESPACE_SPLITTER.splitToList(memTotal).get(0));
+    }
+
+    /**
+     * @return system boot time in seconds since the epoch from /proc/stat
+     * @throws IOException if /proc/stat cannot be read
+     */
+    long readBootTime() throws IOException {
+        for (String line : Files.readAllLines(root.resolve("stat"),
+                StandardCharsets.UTF_8)) {
+            if (line.startsWith("btime ")) {
+                return Long.parseLong(line.substring("btime ".length()).trim());
+            }
+        }
+
+        throw new IOException("btime missing from stat");
+    }
+
+    /**
+     * @return seconds since boot from /proc/uptime
+     * @throws IOException if /proc/uptime cannot be read
+     */
+    double readUptime() throws IOException {
+        return Double.parseDouble(WHITESPACE_SPLITTER.splitToList(
+                readString(root.resolve("uptime"))).get(0));
+    }
+
+    /**
+     * @return contents of /proc/version
+     * @throws IOException if /proc/version cannot be read
+     */
+    String readVersion() throws IOException {
+        return readString(root.resolve("version")).trim();
+    }
+
+    /**
+     * Resolves the name of the user with the given id from the password
+     * file. The file is only read again after it has been modified.
+     * @param uid user id
+     * @return the user name or the id itself if the user is not known
+     * @throws IOException if the password file cannot be read
+     */
+    synchronized String getUserName(String uid) throws IOException {
+        FileTime modified = Files.getLastModifiedTime(passwd);
+        if (!modified.equals(userNamesModified)) {
+            Map<String, String> names = new HashMap<>();
+            for (String line : Files.readAllLines(passwd,
+                    StandardCharsets.UTF_8)) {
+                List<String> fields = Splitter.on(':').splitToList(line);
+                if (fields.size() > PASSWD_UID_INDEX) {
+                    names.putIfAbsent(fields.get(PASSWD_UID_INDEX),
+                            fields.get(0));
+                }
+            }
+
+            userNames = names;
+            userNamesModified = modified;
+        }
+
+        return userNames.getOrDefault(uid, uid);
+    }
+
+    private Path processFile(int pid, String name) {
+        return root.resolve(Integer.toString(pid)).resolve(name);
+    }
+
+    private static Map<String, String> readFields(Path file)
+            throws IOException {
+        Map<String, String> fields = new HashMap<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            int separator = line.indexOf(':');
+            if (separator > 0) {
+                fields.put(line.substring(0, separator),
+                        line.substring(separator + 1).trim());
+            }
+        }
+
+        return fields;
+    }
+
+    private static String readString(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+}
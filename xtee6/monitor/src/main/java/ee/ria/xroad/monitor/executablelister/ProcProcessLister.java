@@ -0,0 +1,77 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.monitor.executablelister;
+
+import java.io.IOException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Process lister that reads the process information from the proc file
+ * system. Falls back to listing the processes with ps if the proc file
+ * system cannot be read.
+ */
+@Slf4j
+public class ProcProcessLister extends ProcessLister {
+
+    private final ProcProcessReader reader;
+
+    private boolean procUnavailable;
+
+    /**
+     * Program entry point
+     */
+    public static void main(String[] args) throws IOException {
+        ListedData<ProcessInfo> p = new ProcProcessLister().list();
+        System.out.println("raw: " + p.getJmxData());
+        System.out.println("parsed: " + p.getParsedData());
+    }
+
+    /**
+     * Constructs a process lister reading from /proc.
+     */
+    public ProcProcessLister() {
+        this(new ProcFileSystem());
+    }
+
+    ProcProcessLister(ProcFileSystem proc) {
+        this.reader = new ProcProcessReader(proc, false);
+    }
+
+    @Override
+    public ListedData<ProcessInfo> list() throws ExecListingFailedException {
+        validateSupportedOs();
+
+        if (!procUnavailable) {
+            try {
+                return reader.list(process -> true);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not list processes from proc file system, "
+                        + "falling back to ps", e);
+                procUnavailable = true;
+            }
+        }
+
+        return super.list();
+    }
+}
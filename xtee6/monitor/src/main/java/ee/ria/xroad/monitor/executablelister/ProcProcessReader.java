@@ -0,0 +1,237 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.monitor.executablelister;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Splitter;
+
+import lombok.Getter;
+
+/**
+ * Lists processes from the proc file system in the same format as the
+ * ps based process listers. Information that does not change during the
+ * lifetime of a process (user, start time, command) is read only once per
+ * process, so that repeated listings only read the changing counters.
+ */
+class ProcProcessReader {
+
+    static final String HEADER = "USER     %CPU START %MEM   PID COMMAND";
+
+    private static final String ROW_FORMAT = "%-8s %4s %5s %4s %5s %s";
+
+    private static final long SECONDS_PER_DAY = 24 * 60 * 60;
+    private static final long SECONDS_PER_YEAR = 365 * SECONDS_PER_DAY;
+
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("HH:mm");
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("MMMdd", Locale.ENGLISH);
+    private static final DateTimeFormatter YEAR_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy");
+
+    private static final int STATUS_EFFECTIVE_UID_INDEX = 1;
+    private static final int PERCENT = 100;
+
+    private final ProcFileSystem proc;
+    private final boolean fullCommand;
+
+    private final Map<Integer, ProcessEntry> processes = new HashMap<>();
+
+    /**
+     * Information about a process that is only read once.
+     */
+    @Getter
+    static class ProcessEntry {
+        private final long startTicks;
+        private final String user;
+        private final String command;
+        private final List<String> controlGroups;
+
+        ProcessEntry(long startTicks, String user, String command,
+                List<String> controlGroups) {
+            this.startTicks = startTicks;
+            this.user = user;
+            this.command = command;
+            this.controlGroups = controlGroups;
+        }
+    }
+
+    /**
+     * @param proc the proc file system to read from
+     * @param fullCommand whether to list the full command line of processes
+     * or only the executable name
+     */
+    ProcProcessReader(ProcFileSystem proc, boolean fullCommand) {
+        this.proc = proc;
+        this.fullCommand = fullCommand;
+    }
+
+    /**
+     * Lists the running processes accepted by the filter.
+     * @param filter selects the processes to list
+     * @return the listed processes
+     * @throws IOException if the proc file system cannot be read
+     */
+    synchronized ListedData<ProcessInfo> list(Predicate<ProcessEntry> filter)
+            throws IOException {
+        long now = System.currentTimeMillis() / 1000;
+        long bootTime = proc.readBootTime();
+        double uptime = proc.readUptime();
+        long totalMemoryKb = proc.readTotalMemoryKb();
+
+        ArrayList<ProcessInfo> parsedData = new ArrayList<>();
+        ArrayList<String> jmxData = new ArrayList<>();
+        jmxData.add(HEADER);
+
+        Set<Integer> running = new HashSet<>();
+        for (Integer pid : proc.listProcessIds()) {
+            try {
+                ProcFileSystem.ProcessStat stat = proc.readStat(pid);
+                Map<String, String> status = proc.readStatus(pid);
+                ProcessEntry entry = getEntry(pid, stat, status);
+                running.add(pid);
+
+                if (filter.test(entry)) {
+                    ProcessInfo info = toProcessInfo(pid, entry, stat, status,
+                            now, bootTime, uptime, totalMemoryKb);
+                    parsedData.add(info);
+                    jmxData.add(String.format(ROW_FORMAT, info.getUserId(),
+                            info.getCpuLoad(), info.getStartTime(),
+                            info.getMemUsed(), info.getProcessId(),
+                            info.getCommand()));
+                }
+            } catch (NoSuchFileException e) {
+                // The process exited while it was being listed
+            }
+        }
+
+        processes.keySet().retainAll(running);
+
+        ListedData<ProcessInfo> data = new ListedData<>();
+        data.setParsedData(parsedData);
+        data.setJmxData(jmxData);
+        return data;
+    }
+
+    private ProcessEntry getEntry(int pid, ProcFileSystem.ProcessStat stat,
+            Map<String, String> status) throws IOException {
+        ProcessEntry entry = processes.get(pid);
+        // The process id has been reused if the start time differs
+        if (entry == null || entry.getStartTicks() != stat.getStartTicks()) {
+            entry = new ProcessEntry(stat.getStartTicks(),
+                    readUser(status), readCommand(pid, stat),
+                    proc.readControlGroups(pid));
+            processes.put(pid, entry);
+        }
+
+        return entry;
+    }
+
+    private String readUser(Map<String, String> status) throws IOException {
+        List<String> uids = Splitter.on(CharMatcher.WHITESPACE).omitEmptyStrings()
+                .splitToList(status.getOrDefault("Uid", ""));
+        if (uids.size() <= STATUS_EFFECTIVE_UID_INDEX) {
+            throw new IOException("Uid missing from process status");
+        }
+
+        return proc.getUserName(uids.get(STATUS_EFFECTIVE_UID_INDEX));
+    }
+
+    private String readCommand(int pid, ProcFileSystem.ProcessStat stat)
+            throws IOException {
+        if (!fullCommand) {
+            return stat.getCommand();
+        }
+
+        String commandLine = proc.readCommandLine(pid);
+        // Like ps, show kernel threads by their name in brackets
+        return commandLine.isEmpty() ? "[" + stat.getCommand() + "]"
+                : commandLine;
+    }
+
+    private static ProcessInfo toProcessInfo(int pid, ProcessEntry entry,
+            ProcFileSystem.ProcessStat stat, Map<String, String> status,
+            long now, long bootTime, double uptime, long totalMemoryKb) {
+        double startSeconds = (double) stat.getStartTicks()
+                / ProcFileSystem.CLOCK_TICKS_PER_SECOND;
+        double elapsedSeconds = uptime - startSeconds;
+        double cpuSeconds = (double) stat.getCpuTicks()
+                / ProcFileSystem.CLOCK_TICKS_PER_SECOND;
+
+        ProcessInfo info = new ProcessInfo();
+        info.setUserId(entry.getUser());
+        info.setCpuLoad(formatPercentage(elapsedSeconds > 0
+                ? cpuSeconds / elapsedSeconds : 0));
+        info.setStartTime(formatStartTime(now,
+                bootTime + (long) startSeconds));
+        info.setMemUsed(formatPercentage(totalMemoryKb > 0
+                ? (double) getResidentSetSizeKb(status) / totalMemoryKb : 0));
+        info.setProcessId(Integer.toString(pid));
+        info.setCommand(entry.getCommand());
+        return info;
+    }
+
+    private static long getResidentSetSizeKb(Map<String, String> status) {
+        // Kernel threads have no resident set size
+        String rss = status.get("VmRSS");
+        return rss == null ? 0
+                : Long.parseLong(Splitter.on(' ').splitToList(rss).get(0));
+    }
+
+    private static String formatPercentage(double ratio) {
+        return String.format(Locale.ROOT, "%.1f", ratio * PERCENT);
+    }
+
+    /**
+     * Formats the start time the way ps does: time of day for processes
+     * started during the last day, date for processes started during the
+     * last year and the year for older processes.
+     */
+    static String formatStartTime(long now, long startTime) {
+        LocalDateTime start = LocalDateTime.ofInstant(
+                Instant.ofEpochSecond(startTime), ZoneId.systemDefault());
+
+        if (now - startTime > SECONDS_PER_YEAR) {
+            return start.format(YEAR_FORMAT);
+        } else if (now - startTime > SECONDS_PER_DAY) {
+            return start.format(DATE_FORMAT);
+        } else {
+            return start.format(TIME_FORMAT);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.monitor.executablelister;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * X-Road process lister that reads the process information from the proc
+ * file system. X-Road processes are recognized by their systemd service
+ * control group, so the ps based lister is used as a fallback on systems
+ * that are not running systemd or if the proc file system cannot be read.
+ */
+@Slf4j
+public class ProcXroadProcessLister extends XroadProcessLister {
+
+    private static final String XROAD_SERVICE_PREFIX = "xroad-";
+    private static final String SERVICE_SUFFIX = ".service";
+
+    private final ProcProcessReader reader;
+    private final Path systemdRuntimeDirectory;
+
+    private boolean procUnavailable;
+
+    /**
+     * Program entry point
+     */
+    public static void main(String[] args) throws IOException {
+        ListedData<ProcessInfo> p = new ProcXroadProcessLister().list();
+        System.out.println("raw: " + p.getJmxData());
+        System.out.println("parsed: " + p.getParsedData());
+    }
+
+    /**
+     * Constructs an X-Road process lister reading from /proc.
+     */
+    public ProcXroadProcessLister() {
+        this(new ProcFileSystem(), Paths.get("/run/systemd/system"));
+    }
+
+    ProcXroadProcessLister(ProcFileSystem proc, Path systemdRuntimeDirectory) {
+        this.reader = new ProcProcessReader(proc, true);
+        this.systemdRuntimeDirectory = systemdRuntimeDirectory;
+    }
+
+    @Override
+    public ListedData<ProcessInfo> list() throws ExecListingFailedException {
+        validateSupportedOs();
+
+        if (!procUnavailable && Files.isDirectory(systemdRuntimeDirectory)) {
+            try {
+                return reader.list(ProcXroadProcessLister::isXroadProcess);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not list X-Road processes from proc file "
+                        + "system, falling back to ps", e);
+                procUnavailable = true;
+            }
+        }
+
+        return super.list();
+    }
+
+    private static boolean isXroadProcess(
+            ProcProcessReader.ProcessEntry process) {
+        return process.getControlGroups().stream().anyMatch(group -> {
+            String unit = group.substring(group.lastIndexOf('/') + 1);
+            return unit.startsWith(XROAD_SERVICE_PREFIX)
+                    && unit.endsWith(SERVICE_SUFFIX);
+        });
+    }
+}
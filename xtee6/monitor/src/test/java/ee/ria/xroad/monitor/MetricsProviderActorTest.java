@@ -41,6 +41,7 @@ import akka.actor.Props;
 import akka.pattern.Patterns;
 import akka.testkit.TestActorRef;
 import akka.util.Timeout;
+import ee.ria.xroad.common.util.MetricRegistryHolder;
 import ee.ria.xroad.monitor.common.SystemMetricsRequest;
 import ee.ria.xroad.monitor.common.SystemMetricsResponse;
 import ee.ria.xroad.monitor.common.dto.HistogramDto;
@@ -0,0 +1,58 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.monitor.executablelister;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+/**
+ * Tests for package database lister
+ */
+public class PackageDatabaseListerTest {
+
+    private static final String RESOURCE_PATH = "src/test/resources/";
+
+    @Test
+    public void testDpkgPackageList() throws Exception {
+        PackageDatabaseLister lister = new PackageDatabaseLister(
+                Paths.get(RESOURCE_PATH + "redhat-release"),
+                Paths.get(RESOURCE_PATH + "dpkg-status"),
+                Paths.get(RESOURCE_PATH + "rpm"));
+        ListedData<PackageInfo> data = lister.list();
+        assertEquals(2, data.getParsedData().size()); // not-installed package excluded
+        assertEquals(2, data.getJmxData().size());
+
+        PackageInfo info = data.getParsedData().get(0);
+        assertEquals("libc6", info.getName());
+        assertEquals("2.19-0ubuntu6.6", info.getVersion());
+
+        assertEquals("xroad-proxy/6.8.0-1", data.getJmxData().get(1));
+
+        // unchanged database is not read again
+        assertSame(data, lister.list());
+    }
+}
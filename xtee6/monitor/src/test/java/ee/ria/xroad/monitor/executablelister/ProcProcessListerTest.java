@@ -0,0 +1,110 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.monitor.executablelister;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+import org.junit.Test;
+
+/**
+ * Tests for the proc file system based process listers
+ */
+public class ProcProcessListerTest {
+
+    private static final String RESOURCE_PATH = "src/test/resources/";
+
+    private final ProcFileSystem proc = new ProcFileSystem(
+            Paths.get(RESOURCE_PATH + "proc"), Paths.get(RESOURCE_PATH + "passwd"));
+
+    @Test
+    public void testProcessList() throws Exception {
+        ListedData<ProcessInfo> data = new ProcProcessLister(proc).list();
+        assertEquals(3, data.getParsedData().size());
+        assertEquals(4, data.getJmxData().size()); // header row included
+
+        ProcessInfo info = data.getParsedData().get(0);
+        assertEquals("root", info.getUserId());
+        assertEquals("0.4", info.getCpuLoad());
+        assertEquals("0.1", info.getMemUsed());
+        assertEquals("1", info.getProcessId());
+        assertEquals("systemd", info.getCommand());
+
+        info = data.getParsedData().get(1);
+        assertEquals("root", info.getUserId());
+        assertEquals("0.0", info.getCpuLoad());
+        assertEquals("0.0", info.getMemUsed());
+        assertEquals("2", info.getProcessId());
+        assertEquals("kthreadd", info.getCommand());
+
+        info = data.getParsedData().get(2);
+        assertEquals("xroad", info.getUserId());
+        assertEquals("7.8", info.getCpuLoad());
+        assertEquals("5.0", info.getMemUsed());
+        assertEquals("1042", info.getProcessId());
+        assertEquals("java (proxy)", info.getCommand());
+
+        assertEquals(ProcProcessReader.HEADER, data.getJmxData().get(0));
+    }
+
+    @Test
+    public void testXroadProcessList() throws Exception {
+        Path systemdRuntimeDirectory = Paths.get(RESOURCE_PATH);
+        ListedData<ProcessInfo> data =
+                new ProcXroadProcessLister(proc, systemdRuntimeDirectory).list();
+        assertEquals(1, data.getParsedData().size());
+        assertEquals(2, data.getJmxData().size()); // header row included
+
+        ProcessInfo info = data.getParsedData().get(0);
+        assertEquals("xroad", info.getUserId());
+        assertEquals("1042", info.getProcessId());
+        assertEquals("/usr/bin/java -Xmx512m ee.ria.xroad.proxy.ProxyMain", info.getCommand());
+    }
+
+    @Test
+    public void testStartTimeFormat() {
+        long now = 1446700000L;
+        assertEquals(5, ProcProcessReader.formatStartTime(now, now - 60).length());
+        assertEquals("2014", ProcProcessReader.formatStartTime(now, 1400000000L));
+    }
+
+    @Test
+    public void testStartDateFormatIgnoresDefaultLocale() {
+        long now = 1446700000L;
+        long monthAgo = now - 30 * 24 * 60 * 60;
+
+        Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(new Locale("et", "EE"));
+        try {
+            String date = ProcProcessReader.formatStartTime(now, monthAgo);
+            assertTrue(date, date.startsWith("Oct"));
+            assertEquals(5, date.length());
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+}
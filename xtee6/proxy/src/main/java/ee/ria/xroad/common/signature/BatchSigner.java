@@ -22,6 +22,7 @@
  */
 package ee.ria.xroad.common.signature;
 
+import static com.codahale.metrics.MetricRegistry.name;
 import static ee.ria.xroad.common.ErrorCodes.SIGNER_X;
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.translateException;
@@ -29,23 +30,29 @@ import static ee.ria.xroad.common.util.CryptoUtils.calculateCertHexHash;
 import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
 import static ee.ria.xroad.common.util.CryptoUtils.getDigestAlgorithmId;
 
-import java.io.IOException;
-import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
-import org.bouncycastle.operator.OperatorCreationException;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.Props;
+import akka.actor.ReceiveTimeout;
+import akka.actor.Terminated;
 import akka.actor.UntypedActor;
-import akka.actor.UntypedActorWithStash;
 import akka.pattern.Patterns;
 import akka.util.Timeout;
 import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.util.MetricRegistryHolder;
 import ee.ria.xroad.signer.protocol.SignerClient;
 import ee.ria.xroad.signer.protocol.message.GetTokenBatchSigningEnabled;
 import ee.ria.xroad.signer.protocol.message.Sign;
@@ -54,6 +61,7 @@ import lombok.Data;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import scala.concurrent.Await;
+import scala.concurrent.duration.Duration;
 
 /**
  * This class handles batch signing. Batch signatures are created always, if
@@ -67,12 +75,26 @@ import scala.concurrent.Await;
  * The batch signer is an Akka actor, it creates child actors per
  * signing certificate, which means there is essentially one batch signer
  * per signing certificate.
+ *
+ * Requests are collected into a batch until the batch is full or the linger
+ * time has passed and the signing key has room for another batch in flight.
+ * Each batch is signed by a short-lived job actor, so building the hash chain
+ * and calculating the digest do not block collecting the next batch.
  */
 @Slf4j
 public class BatchSigner extends UntypedActor {
 
     private static final Timeout DEFAULT_TIMEOUT = new Timeout(30000, TimeUnit.MILLISECONDS);
 
+    private static final Histogram BATCH_SIZE = metrics().histogram(
+            name(BatchSigner.class, "batchSize"));
+
+    private static final Timer BATCH_SIGN_TIME = metrics().timer(
+            name(BatchSigner.class, "batchSignTime"));
+
+    private static final Meter SIGNED_REQUESTS = metrics().meter(
+            name(BatchSigner.class, "signedRequests"));
+
     // Holds the actor instance, which sends and receives messages.
     private static ActorRef instance;
 
@@ -148,19 +170,31 @@ public class BatchSigner extends UntypedActor {
         return worker;
     }
 
+    private static MetricRegistry metrics() {
+        return MetricRegistryHolder.getInstance().getMetrics();
+    }
+
     /**
-     * This is the worker that does the heavy lifting.
+     * This is the worker that collects the signing requests of one signing
+     * certificate into batches.
      */
-    private static class WorkerImpl extends UntypedActorWithStash {
+    private static class WorkerImpl extends UntypedActor {
+
+        private static final String LINGER_EXPIRED = "LingerExpired";
 
-        // The currently active signing ctx.
-        private BatchSignatureCtx workingSigningCtx;
+        private final int maxBatchSize =
+                SystemProperties.getBatchSignerMaxBatchSize();
+        private final int maxLinger =
+                SystemProperties.getBatchSignerMaxLinger();
+        private final int maxBatchesInFlight =
+                SystemProperties.getBatchSignerMaxInFlightBatches();
 
-        // The next signing ctx, if batch signing.
-        private BatchSignatureCtx nextSigningCtx;
+        // The batches waiting to be signed, the last one is still collecting.
+        private final Deque<BatchSignatureCtx> pendingBatches =
+                new ArrayDeque<>();
 
-        private long signStartTime;
-        private boolean workerBusy;
+        private int batchesInFlight;
+        private boolean lingerScheduled;
 
         private Boolean batchSigningEnabled;
 
@@ -170,17 +204,17 @@ public class BatchSigner extends UntypedActor {
 
             if (message instanceof SigningRequestWrapper) {
                 handleSignRequest((SigningRequestWrapper) message);
-            } else if (message instanceof SignResponse) {
-                handleSignResponse((SignResponse) message);
-            } else if (message instanceof Exception) {
-                handleException((Exception) message);
+            } else if (message instanceof Terminated) {
+                handleBatchFinished();
+            } else if (LINGER_EXPIRED.equals(message)) {
+                lingerScheduled = false;
+                startBatches();
             } else {
                 unhandled(message);
             }
         }
 
-        private void handleSignRequest(SigningRequestWrapper signRequest)
-                throws Exception {
+        private void handleSignRequest(SigningRequestWrapper signRequest) {
             log.trace("handleSignRequest()");
 
             // If we do not know whether batch signing is enabled for the token,
@@ -190,23 +224,18 @@ public class BatchSigner extends UntypedActor {
                 queryBatchSigningEnabled(signRequest.getKeyId());
             }
 
-            // Handle incoming sign request. If the token worker is currently
-            // busy (signing, generating key, etc...) and batch signing is
-            // enabled then create signing context and collect all following
-            // sign requests to be signed in batch. Otherwise just sign the
-            // data straight away.
-            if (isWorkerBusy()) {
-                if (batchSigningEnabled) {
-                    doBatchSign(signRequest);
-                } else {
-                    log.trace("Batch signing not enabled, stashing request");
-                    // Batch signing not enabled, but currently busy,
-                    // so stash this message for future.
-                    stash();
-                }
-            } else {
-                doSign(signRequest);
+            BatchSignatureCtx ctx = pendingBatches.peekLast();
+            if (ctx == null || ctx.size() >= getMaxBatchSize()
+                    || !ctx.getSignatureAlgorithmId().equals(
+                            signRequest.getSignatureAlgorithmId())) {
+                ctx = new BatchSignatureCtx(signRequest.getKeyId(),
+                        signRequest.getSignatureAlgorithmId());
+                pendingBatches.addLast(ctx);
             }
+
+            ctx.add(getSender(), signRequest.getRequest());
+
+            startBatches();
         }
 
         private void queryBatchSigningEnabled(String keyId) {
@@ -220,126 +249,128 @@ public class BatchSigner extends UntypedActor {
             }
         }
 
-        private void doBatchSign(SigningRequestWrapper wrapper) {
-            log.trace("doBatchSign()");
-
-            if (nextSigningCtx == null) {
-                nextSigningCtx = new BatchSignatureCtx(wrapper.getKeyId(),
-                        wrapper.getSignatureAlgorithmId());
-            }
-
-            nextSigningCtx.add(getSender(), wrapper.getRequest());
+        private int getMaxBatchSize() {
+            // Without batch signing every request gets its own signature
+            return Boolean.TRUE.equals(batchSigningEnabled) ? maxBatchSize : 1;
         }
 
-        private void doSign(SigningRequestWrapper wrapper) throws Exception {
-            log.trace("doSign()");
-
-            BatchSignatureCtx ctx = new BatchSignatureCtx(wrapper.getKeyId(),
-                    wrapper.getSignatureAlgorithmId());
-            ctx.add(getSender(), wrapper.getRequest());
+        private void handleBatchFinished() {
+            log.trace("handleBatchFinished()");
 
-            workingSigningCtx = ctx;
+            batchesInFlight--;
 
-            doCalculateSignature(ctx.getKeyId(), ctx.getSignatureAlgorithmId(),
-                    ctx.getDataToBeSigned());
+            startBatches();
         }
 
-        private void handleSignResponse(SignResponse signResponse) {
-            log.trace("handleSignResponse()");
+        private void startBatches() {
+            while (batchesInFlight < maxBatchesInFlight
+                    && !pendingBatches.isEmpty()) {
+                BatchSignatureCtx ctx = pendingBatches.peekFirst();
 
-            workerBusy = false;
-
-            // Handle the (successful) signature calculation result that came
-            // from Signer -- send the signature to the clients.
-            sendResponse(signResponse);
+                long lingerLeft = ctx.getCreatedAt() + maxLinger
+                        - System.currentTimeMillis();
+                if (ctx.size() < getMaxBatchSize() && lingerLeft > 0) {
+                    scheduleLinger(lingerLeft);
+                    return;
+                }
 
-            // If batch signing is not enabled, then start signing the next
-            // stashed messages.
-            if (!batchSigningEnabled) {
-                unstashAll();
-            } else if (nextSigningCtx != null) {
-                // Start the next batch signing (if any).
-                startNextBatchSigning();
+                startBatch(pendingBatches.pollFirst());
             }
         }
 
-        private void handleException(Exception exception) {
-            log.trace("handleException()");
+        private void startBatch(BatchSignatureCtx ctx) {
+            log.trace("startBatch({})", ctx.size());
 
-            workerBusy = false;
+            BATCH_SIZE.update(ctx.size());
 
-            sendResponse(exception);
-        }
+            getContext().watch(getContext().actorOf(
+                    Props.create(BatchSigningJob.class, ctx)));
 
-        private void startNextBatchSigning() {
-            log.trace("startNextBatchSigning()");
+            batchesInFlight++;
+        }
 
-            workingSigningCtx = nextSigningCtx;
-            nextSigningCtx = null;
-            try {
-                doCalculateSignature(
-                        workingSigningCtx.getKeyId(),
-                        workingSigningCtx.getSignatureAlgorithmId(),
-                        workingSigningCtx.getDataToBeSigned());
-            } catch (Exception e) {
-                sendResponse(workingSigningCtx, translateException(e));
+        private void scheduleLinger(long delay) {
+            if (!lingerScheduled) {
+                lingerScheduled = true;
 
-                workerBusy = true;
-                workingSigningCtx = null;
+                getContext().system().scheduler().scheduleOnce(
+                        Duration.create(delay, TimeUnit.MILLISECONDS),
+                        getSelf(), LINGER_EXPIRED, getContext().dispatcher(),
+                        ActorRef.noSender());
             }
         }
+    }
 
-        private boolean isWorkerBusy() {
-            if (isSignatureCreationTimedOut()) {
-                workerBusy = false;
-                throw new CodedException(X_INTERNAL_ERROR,
-                        "Signature creation timed out");
-            }
+    /**
+     * Signs one batch: builds the data to be signed, asks Signer for the
+     * signature and sends the signature data to the clients of the batch.
+     * Stops itself when done.
+     */
+    private static class BatchSigningJob extends UntypedActor {
 
-            return workerBusy;
-        }
+        private final BatchSignatureCtx ctx;
 
-        private boolean isSignatureCreationTimedOut() {
-            return workerBusy && System.currentTimeMillis() - signStartTime
-                    >= DEFAULT_TIMEOUT.duration().length();
+        private Timer.Context signTime;
+
+        BatchSigningJob(BatchSignatureCtx ctx) {
+            this.ctx = ctx;
         }
 
-        private void doCalculateSignature(String keyId,
-                String signatureAlgorithmId, byte[] data) throws
-                NoSuchAlgorithmException, IOException, OperatorCreationException {
-            workerBusy = true;
-            signStartTime = System.currentTimeMillis();
+        @Override
+        public void preStart() throws Exception {
+            signTime = BATCH_SIGN_TIME.time();
 
-            byte[] digest = calculateDigest(
-                    getDigestAlgorithmId(signatureAlgorithmId), data);
+            getContext().setReceiveTimeout(DEFAULT_TIMEOUT.duration());
 
-            // Proxy this request to the Signer.
-            SignerClient.execute(new Sign(keyId, signatureAlgorithmId, digest), getSelf());
+            try {
+                byte[] digest = calculateDigest(
+                        getDigestAlgorithmId(ctx.getSignatureAlgorithmId()),
+                        ctx.getDataToBeSigned());
+
+                // Proxy this request to the Signer.
+                SignerClient.execute(new Sign(ctx.getKeyId(),
+                        ctx.getSignatureAlgorithmId(), digest), getSelf());
+            } catch (Exception e) {
+                finish(translateException(e));
+            }
         }
 
-        private void sendResponse(Object message) {
-            log.trace("sendResponse({})", message);
+        @Override
+        public void onReceive(Object message) throws Exception {
+            log.trace("onReceive({})", message);
 
-            if (workingSigningCtx != null) {
+            if (message instanceof SignResponse) {
                 try {
-                    if (message instanceof SignResponse) {
-                        sendSignatureResponse(workingSigningCtx,
-                                ((SignResponse) message).getSignature());
-                    } else {
-                        sendResponse(workingSigningCtx, message);
-                    }
+                    sendSignatureResponse(
+                            ((SignResponse) message).getSignature());
+                    SIGNED_REQUESTS.mark(ctx.size());
                 } catch (Exception e) {
-                    sendResponse(workingSigningCtx, e);
+                    sendResponse(e);
                 }
 
-                workingSigningCtx = null;
+                finish(null);
+            } else if (message instanceof Exception) {
+                finish(message);
+            } else if (message instanceof ReceiveTimeout) {
+                finish(new CodedException(X_INTERNAL_ERROR,
+                        "Signature creation timed out"));
             } else {
-                throw new RuntimeException("No signing context");
+                unhandled(message);
             }
         }
 
-        private void sendSignatureResponse(BatchSignatureCtx ctx,
-                byte[] signatureValue) throws Exception {
+        private void finish(Object error) {
+            if (error != null) {
+                sendResponse(error);
+            }
+
+            signTime.stop();
+
+            getContext().stop(getSelf());
+        }
+
+        private void sendSignatureResponse(byte[] signatureValue)
+                throws Exception {
             String signature = ctx.createSignatureXml(signatureValue);
 
             // Each client gets corresponding hash chain -- client index in the
@@ -350,7 +381,9 @@ public class BatchSigner extends UntypedActor {
             }
         }
 
-        private void sendResponse(BatchSignatureCtx ctx, Object message) {
+        private void sendResponse(Object message) {
+            log.trace("sendResponse({})", message);
+
             for (ActorRef client : ctx.getClients()) {
                 sendResponse(client, message);
             }
@@ -391,6 +424,7 @@ public class BatchSigner extends UntypedActor {
 
         @Getter private final List<ActorRef> clients = new ArrayList<>();
         @Getter private final String keyId;
+        @Getter private final long createdAt = System.currentTimeMillis();
 
         BatchSignatureCtx(String keyId, String signatureAlgorithmId) {
             super(signatureAlgorithmId);
@@ -402,6 +436,10 @@ public class BatchSigner extends UntypedActor {
             clients.add(client);
             add(request);
         }
+
+        int size() {
+            return clients.size();
+        }
     }
 
 }
@@ -44,6 +44,8 @@ public class SignatureBuilder {
 
     private X509Certificate signingCert;
 
+    private SignatureTemplate template;
+
     /**
      * Adds a hash to be signed.
      * @param part input part to be added to the signature
@@ -76,6 +78,16 @@ public class SignatureBuilder {
         this.ocspResponses.addAll(extraOcspResponses);
     }
 
+    /**
+     * Sets a pre-rendered signature template. The template replaces the
+     * signing certificate, extra certificates and OCSP responses set
+     * through the other methods.
+     * @param signatureTemplate the signature template
+     */
+    public void setTemplate(SignatureTemplate signatureTemplate) {
+        this.template = signatureTemplate;
+    }
+
     /**
      * Builds signature data using the given signing key and signature algorithm.
      * @param signingKey the signing key
@@ -87,9 +99,13 @@ public class SignatureBuilder {
             String signatureAlgorithmId) throws Exception {
         log.trace("Sign, {} part(s)", parts.size());
 
-        SigningRequest request = new SigningRequest(signingCert, parts);
-        request.getExtraCertificates().addAll(extraCertificates);
-        request.getOcspResponses().addAll(ocspResponses);
+        SignatureTemplate requestTemplate = template;
+        if (requestTemplate == null) {
+            requestTemplate = new SignatureTemplate(signingCert,
+                    extraCertificates, ocspResponses);
+        }
+
+        SigningRequest request = new SigningRequest(requestTemplate, parts);
 
         return signingKey.calculateSignature(request, signatureAlgorithmId);
     }
@@ -22,55 +22,27 @@
  */
 package ee.ria.xroad.common.signature;
 
-import static ee.ria.xroad.common.signature.Helper.ALGORITHM_ATTRIBUTE;
-import static ee.ria.xroad.common.signature.Helper.CERTIFFICATE_VALUES_TAG;
-import static ee.ria.xroad.common.signature.Helper.CERT_DIGEST_TAG;
-import static ee.ria.xroad.common.signature.Helper.CERT_REFS_TAG;
-import static ee.ria.xroad.common.signature.Helper.CERT_TAG;
-import static ee.ria.xroad.common.signature.Helper.COMPLETE_CERTIFICATE_REFS_ID;
-import static ee.ria.xroad.common.signature.Helper.COMPLETE_CERTIFICATE_REFS_TAG;
 import static ee.ria.xroad.common.signature.Helper.DATAOBJECTFORMAT_TAG;
-import static ee.ria.xroad.common.signature.Helper.DIGEST_METHOD_TAG;
-import static ee.ria.xroad.common.signature.Helper.DIGEST_VALUE_TAG;
-import static ee.ria.xroad.common.signature.Helper.ENCAPSULATED_CERT_ID;
-import static ee.ria.xroad.common.signature.Helper.ENCAPSULATED_OCSP_VALUE_TAG;
-import static ee.ria.xroad.common.signature.Helper.ENCAPSULATED_X509_CERTIFICATE_TAG;
 import static ee.ria.xroad.common.signature.Helper.ID_ATTRIBUTE;
 import static ee.ria.xroad.common.signature.Helper.ID_SIGNATURE;
-import static ee.ria.xroad.common.signature.Helper.ISSUER_SERIAL_TAG;
 import static ee.ria.xroad.common.signature.Helper.MIMETYPE_TAG;
 import static ee.ria.xroad.common.signature.Helper.NS_SIG_PROP;
 import static ee.ria.xroad.common.signature.Helper.OBJECTREFERENCE_ATTR;
-import static ee.ria.xroad.common.signature.Helper.OCSP_RESPONSE_ID;
-import static ee.ria.xroad.common.signature.Helper.OCSP_VALUES_TAG;
 import static ee.ria.xroad.common.signature.Helper.PREFIX_DS;
 import static ee.ria.xroad.common.signature.Helper.PREFIX_XADES;
 import static ee.ria.xroad.common.signature.Helper.QUALIFYING_PROPS_TAG;
-import static ee.ria.xroad.common.signature.Helper.REVOCATION_VALUES_TAG;
 import static ee.ria.xroad.common.signature.Helper.SIGNATURE_VALUE_ID;
 import static ee.ria.xroad.common.signature.Helper.SIGNATURE_VALUE_TAG;
 import static ee.ria.xroad.common.signature.Helper.SIGNED_DATAOBJ_TAG;
 import static ee.ria.xroad.common.signature.Helper.SIGNED_PROPS_TAG;
 import static ee.ria.xroad.common.signature.Helper.SIGNED_SIGNATURE_PROPS_TAG;
-import static ee.ria.xroad.common.signature.Helper.SIGNING_CERTIFICATE_TAG;
 import static ee.ria.xroad.common.signature.Helper.SIGNING_TIME_TAG;
 import static ee.ria.xroad.common.signature.Helper.TARGET_ATTR;
-import static ee.ria.xroad.common.signature.Helper.UNSIGNED_PROPS_TAG;
-import static ee.ria.xroad.common.signature.Helper.UNSIGNED_SIGNATURE_PROPS_TAG;
-import static ee.ria.xroad.common.signature.Helper.URI_ATTRIBUTE;
-import static ee.ria.xroad.common.signature.Helper.X509_ISSUER_NAME_TAG;
-import static ee.ria.xroad.common.signature.Helper.X509_SERIAL_NUMBER_TAG;
 import static ee.ria.xroad.common.signature.Helper.createDocument;
 import static ee.ria.xroad.common.signature.Helper.createSignatureElement;
-import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
-import static ee.ria.xroad.common.util.CryptoUtils.encodeBase64;
 import static ee.ria.xroad.common.util.CryptoUtils.getDigestAlgorithmURI;
 
-import java.io.IOException;
-import java.security.cert.X509Certificate;
-import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.List;
 import java.util.TimeZone;
 
 import javax.xml.bind.DatatypeConverter;
@@ -82,7 +54,6 @@ import org.apache.xml.security.signature.XMLSignature;
 import org.apache.xml.security.signature.XMLSignatureException;
 import org.apache.xml.security.utils.Base64;
 import org.apache.xml.security.utils.resolver.ResourceResolverSpi;
-import org.bouncycastle.cert.ocsp.OCSPResp;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Text;
@@ -99,10 +70,7 @@ final class SignatureXmlBuilder {
 
     private static final int MAX_LINE_LENGTH = 76;
 
-    private final List<X509Certificate> extraCertificates = new ArrayList<>();
-    private final List<OCSPResp> ocspResponses = new ArrayList<>();
-
-    private final X509Certificate signingCert;
+    private final SignatureTemplate template;
     private final String hashAlgorithmId;
     private final String hashAlgorithmURI;
 
@@ -113,9 +81,7 @@ final class SignatureXmlBuilder {
 
     SignatureXmlBuilder(SigningRequest request, String hashAlgorithmId)
             throws Exception {
-        this.signingCert = request.getSigningCert();
-        this.extraCertificates.addAll(request.getExtraCertificates());
-        this.ocspResponses.addAll(request.getOcspResponses());
+        this.template = request.getTemplate();
         this.hashAlgorithmId = hashAlgorithmId;
         this.hashAlgorithmURI = getDigestAlgorithmURI(hashAlgorithmId);
     }
@@ -127,7 +93,7 @@ final class SignatureXmlBuilder {
         document = createDocument();
 
         signature = createSignatureElement(document);
-        signature.addKeyInfo(signingCert);
+        signature.addKeyInfo(template.getSigningCert());
 
         signature.addResourceResolver(new IdResolver(document));
         signature.addResourceResolver(resourceResolver);
@@ -194,7 +160,9 @@ final class SignatureXmlBuilder {
         qualifyingProperties.setAttribute(TARGET_ATTR, "#" + ID_SIGNATURE);
 
         qualifyingProperties.appendChild(createSignedProperties());
-        qualifyingProperties.appendChild(createUnsignedProperties());
+        qualifyingProperties.appendChild(
+                template.importUnsignedProperties(document,
+                        getHashAlgorithmId()));
 
         objectContainer.appendChild(qualifyingProperties);
     }
@@ -215,11 +183,9 @@ final class SignatureXmlBuilder {
         signingTime.setTextContent(
                 DatatypeConverter.printDateTime(signatureSigningTime));
 
-        Element signingCertificate = createXadesElement(
-                signedSignatureProperties, SIGNING_CERTIFICATE_TAG);
-
-        Element cert = createXadesElement(signingCertificate, CERT_TAG);
-        createCertDigest(signature.getKeyInfo().getX509Certificate(), cert);
+        signedSignatureProperties.appendChild(
+                template.importSigningCertificate(document,
+                        getHashAlgorithmId()));
 
         Element signedDataObjectProperties =
                 createXadesElement(signedProperties, SIGNED_DATAOBJ_TAG);
@@ -248,119 +214,6 @@ final class SignatureXmlBuilder {
        }
     }
 
-    private void createCertDigest(X509Certificate cert, Element certElement)
-            throws Exception {
-        Element certDigest = createXadesElement(certElement, CERT_DIGEST_TAG);
-        createCertDigestAlgAndValue(cert, certDigest);
-
-        Element issuerSerial =
-                createXadesElement(certElement, ISSUER_SERIAL_TAG);
-        createCertId(cert, issuerSerial);
-    }
-
-    private void createCertDigestAlgAndValue(X509Certificate cert,
-            Element element) throws Exception {
-        createDigestAlgAndValue(getHashAlgorithmURI(),
-                digest(cert, getHashAlgorithmId()),
-                element);
-    }
-
-    private void createDigestAlgAndValue(String algorithmUri,
-            String digest, Element element) throws Exception {
-        Element digestMethod = createDsElement(element, DIGEST_METHOD_TAG);
-        digestMethod.setAttribute(ALGORITHM_ATTRIBUTE, algorithmUri);
-
-        Element digestValue = createDsElement(element, DIGEST_VALUE_TAG);
-        digestValue.setTextContent(digest);
-    }
-
-    private void createCertId(X509Certificate cert, Element element) {
-        Element issuerName = createDsElement(element, X509_ISSUER_NAME_TAG);
-        issuerName.setTextContent(cert.getIssuerX500Principal().getName());
-
-        Element issuerNumber = createDsElement(element, X509_SERIAL_NUMBER_TAG);
-        issuerNumber.setTextContent(cert.getSerialNumber().toString());
-    }
-
-    private Element createUnsignedProperties() throws Exception {
-        Element unsignedProperties = createXadesElement(UNSIGNED_PROPS_TAG);
-
-        Element unsignedSignatureProperties = createXadesElement(
-                unsignedProperties, UNSIGNED_SIGNATURE_PROPS_TAG);
-
-        if (!extraCertificates.isEmpty()) {
-            createCompleteCertificateRefs(unsignedSignatureProperties);
-        }
-
-        if (!extraCertificates.isEmpty()) {
-            createCertificateValues(unsignedSignatureProperties);
-        }
-
-        createRevocationValues(unsignedSignatureProperties);
-
-        return unsignedProperties;
-    }
-
-    private void createRevocationValues(Element unsignedSignatureProperties)
-            throws Exception {
-        Element revocationValues = createXadesElement(
-                unsignedSignatureProperties, REVOCATION_VALUES_TAG);
-
-        Element ocspValues =
-                createXadesElement(revocationValues, OCSP_VALUES_TAG);
-
-        int c = 1;
-        for (OCSPResp ocspResp : ocspResponses) {
-            createOcspValue(ocspValues, ocspResp, OCSP_RESPONSE_ID + (c++));
-        }
-    }
-
-    private void createOcspValue(Element ocspValues, OCSPResp ocspResponse,
-            String id) throws IOException {
-        Element encapsulatedOcspValue = createXadesElement(ocspValues,
-                        ENCAPSULATED_OCSP_VALUE_TAG);
-        encapsulatedOcspValue.setAttribute(ID_ATTRIBUTE, id);
-        encapsulatedOcspValue.setTextContent(
-                encodeBase64(ocspResponse.getEncoded()));
-    }
-
-    private void createCertificateValues(Element unsignedSignatureProperties)
-            throws Exception {
-        Element certificateValues = createXadesElement(
-                unsignedSignatureProperties, CERTIFFICATE_VALUES_TAG);
-
-        int c = 1;
-        for (X509Certificate cert : extraCertificates) {
-            Element encapsulatedX509Certificate =
-                    createXadesElement(certificateValues,
-                            ENCAPSULATED_X509_CERTIFICATE_TAG);
-            encapsulatedX509Certificate.setTextContent(
-                    encodeBase64(cert.getEncoded()));
-            encapsulatedX509Certificate.setAttribute(ID_ATTRIBUTE,
-                    ENCAPSULATED_CERT_ID + (c++));
-        }
-    }
-
-    private void createCompleteCertificateRefs(
-            Element unsignedSignatureProperties) throws Exception {
-        Element completeCertificateRefs = createXadesElement(
-                unsignedSignatureProperties, COMPLETE_CERTIFICATE_REFS_TAG);
-        completeCertificateRefs.setAttribute(ID_ATTRIBUTE,
-                COMPLETE_CERTIFICATE_REFS_ID/* + masterHash*/);
-
-        Element certRefs =
-                createXadesElement(completeCertificateRefs, CERT_REFS_TAG);
-
-        // add references to all the extra certificates
-        int c = 1;
-        for (X509Certificate cert : extraCertificates) {
-            Element certElement = createXadesElement(certRefs, CERT_TAG);
-            certElement.setAttribute(URI_ATTRIBUTE,
-                    "#" + ENCAPSULATED_CERT_ID + (c++));
-            createCertDigest(cert, certElement);
-        }
-    }
-
     private Element createXadesElement(Element parent, String name) {
         Element element = createXadesElement(name);
         parent.appendChild(element);
@@ -370,24 +223,4 @@ final class SignatureXmlBuilder {
     private Element createXadesElement(String name) {
         return document.createElement(PREFIX_XADES + name);
     }
-
-    private Element createDsElement(Element parent, String name) {
-        Element element = createDsElement(name);
-        parent.appendChild(element);
-        return element;
-    }
-
-    private Element createDsElement(String name) {
-        return document.createElement(PREFIX_DS + name);
-    }
-
-    private static String digest(X509Certificate cert, String method)
-            throws Exception {
-        return digest(cert.getEncoded(), method);
-    }
-
-    private static String digest(byte[] encoded, String method)
-            throws Exception {
-        return encodeBase64(calculateDigest(method, encoded));
-    }
 }
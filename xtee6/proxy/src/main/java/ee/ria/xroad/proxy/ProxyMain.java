@@ -38,6 +38,7 @@ import akka.actor.ActorSystem;
 import akka.pattern.Patterns;
 import akka.util.Timeout;
 
+import com.codahale.metrics.JmxReporter;
 import com.typesafe.config.ConfigFactory;
 
 import lombok.extern.slf4j.Slf4j;
@@ -60,6 +61,7 @@ import ee.ria.xroad.common.signature.BatchSigner;
 import ee.ria.xroad.common.util.AdminPort;
 import ee.ria.xroad.common.util.JobManager;
 import ee.ria.xroad.common.util.JsonUtils;
+import ee.ria.xroad.common.util.MetricRegistryHolder;
 import ee.ria.xroad.common.util.StartStop;
 import ee.ria.xroad.proxy.clientproxy.ClientProxy;
 import ee.ria.xroad.proxy.messagelog.MessageLog;
@@ -188,6 +190,30 @@ public final class ProxyMain {
         SERVICES.add(new CertHashBasedOcspResponder());
 
         SERVICES.add(createAdminPort());
+        SERVICES.add(createMetricsReporter());
+    }
+
+    private static StartStop createMetricsReporter() {
+        JmxReporter reporter = JmxReporter.forRegistry(
+                MetricRegistryHolder.getInstance().getMetrics())
+                .inDomain("xroad.proxy").build();
+
+        return new StartStop() {
+            @Override
+            public void start() {
+                reporter.start();
+            }
+
+            @Override
+            public void stop() {
+                reporter.stop();
+            }
+
+            @Override
+            public void join() {
+                // Nothing to join, the reporter has no threads of its own
+            }
+        };
     }
 
     private static void loadConfigurations() {
@@ -23,13 +23,17 @@
 package ee.ria.xroad.proxy.antidos;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.util.SystemMetrics;
@@ -37,6 +41,11 @@ import lombok.extern.slf4j.Slf4j;
 
 /**
  * Manages the incoming connections and prevents system resource exhaustion.
+ *
+ * The cost of accepting a connection does not depend on the load: the known
+ * member addresses are indexed and the system resources are sampled by a
+ * background thread, so accepting a connection neither reads the global
+ * configuration nor queries the operating system.
  */
 @Slf4j
 class AntiDosConnectionManager<T extends SocketChannelWrapper> {
@@ -44,16 +53,30 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
     // Tiny wrapper class for active connections of a partner
     private class HostData {
         final Deque<T> connections = new LinkedBlockingDeque<>();
+
+        // True while the partner is in the buffer of active partners.
+        // Guarded by the connection manager.
+        boolean active;
     }
 
     // The IP used for unknown members
     private static final String UNKNOWN_ORG_IP = "0.0.0.0";
 
+    // How often the system resources are sampled
+    private static final long RESOURCE_SAMPLE_INTERVAL_MS = 100;
+
+    // How often the known member addresses are checked for changes
+    private static final long ADDRESS_SYNC_INTERVAL_MS = 1000;
+
     // Holds the configuration
     protected final AntiDosConfiguration configuration;
 
-    // IP to HostData mapping
-    protected Map<String, HostData> database = new HashMap<>();
+    // IP to HostData mapping, replaced as a whole when the known
+    // addresses change
+    protected volatile Map<String, HostData> database;
+
+    // Incremented each time the database is replaced
+    protected volatile long databaseVersion;
 
     // Buffer of partners with waiting connections
     protected LinkedBlockingQueue<HostData> activePartners =
@@ -63,6 +86,11 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
     // Used to determine if should sync the database when conf changed.
     private Set<String> previousKnownOrganizations = new HashSet<>();
 
+    // The latest sample of the system resources
+    private volatile boolean sufficientResources = true;
+
+    private ScheduledExecutorService sampler;
+
     AntiDosConnectionManager(AntiDosConfiguration configuration) {
         if (configuration == null) {
             throw new IllegalArgumentException("configuration cannot be null");
@@ -70,7 +98,11 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
 
         this.configuration = configuration;
         this.previousKnownOrganizations.add(UNKNOWN_ORG_IP);
-        this.database.put(UNKNOWN_ORG_IP, new HostData());
+
+        Map<String, HostData> initialDatabase = new HashMap<>();
+        initialDatabase.put(UNKNOWN_ORG_IP, new HostData());
+
+        this.database = Collections.unmodifiableMap(initialDatabase);
     }
 
     void init() throws Exception {
@@ -78,6 +110,39 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
         syncDatabase();
     }
 
+    /**
+     * Starts the background thread that samples the system resources and
+     * keeps the database in sync with the known member addresses.
+     */
+    synchronized void startSampler() {
+        if (sampler != null) {
+            return;
+        }
+
+        sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread samplerThread = new Thread(r, "AntiDosResourceSampler");
+            samplerThread.setDaemon(true);
+            return samplerThread;
+        });
+
+        sampler.scheduleWithFixedDelay(this::sampleResources,
+                0, RESOURCE_SAMPLE_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+        sampler.scheduleWithFixedDelay(this::syncDatabase,
+                ADDRESS_SYNC_INTERVAL_MS, ADDRESS_SYNC_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background thread.
+     */
+    synchronized void stopSampler() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+            sampler = null;
+        }
+    }
+
     /**
      * Checks if we can accept the incoming connection. Basically verify that
      * we have at least one free file handle.
@@ -92,9 +157,6 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
      * Adds the connection into the partner's connection queue.
      */
     synchronized void accept(T connection) {
-        // We need to synchronize the database with the existing members.
-        syncDatabase();
-
         // Find the host data for the incoming connection and register
         // the new connection to this host data
         HostData currentPartner = getHostData(connection.getHostAddress());
@@ -102,7 +164,8 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
 
         // If the host data is not for an active partner,
         // add it to the connection buffer as the newest partner.
-        if (!activePartners.contains(currentPartner)) {
+        if (!currentPartner.active) {
+            currentPartner.active = true;
             activePartners.add(currentPartner);
         }
     }
@@ -132,20 +195,27 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
         // Take the oldest partner from the buffer (blocks until available).
         HostData oldestPartner = activePartners.take();
 
-        // Take the oldest connection.
-        T sock = oldestPartner.connections.pollLast();
-        if (sock == null) {
-            return null;
+        T sock;
+
+        synchronized (this) {
+            // Take the oldest connection.
+            sock = oldestPartner.connections.pollLast();
+
+            // If there are more connections left for this partner, add the
+            // partner back to the buffer as the first partner.
+            if (!oldestPartner.connections.isEmpty()) {
+                activePartners.add(oldestPartner);
+            } else {
+                oldestPartner.active = false;
+            }
         }
 
-        // If there are more connections left for this partner, add the partner
-        // back to the buffer as the first partner.
-        if (!oldestPartner.connections.isEmpty()) {
-            activePartners.add(oldestPartner);
+        if (sock == null) {
+            return null;
         }
 
         // Processing a connection consumes file handles and other resources
-        if (hasSufficientResources()) {
+        if (sufficientResources) {
             return sock;
         }
 
@@ -177,35 +247,58 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
         return SystemMetrics.getHeapUsage();
     }
 
+    /**
+     * Samples the system resources. Called periodically by the sampler
+     * thread.
+     */
+    void sampleResources() {
+        try {
+            sufficientResources = hasSufficientResources();
+        } catch (Exception e) {
+            log.error("Error sampling system resources", e);
+        }
+    }
+
     private HostData getHostData(String ip) {
-        return database.containsKey(ip)
-                ? database.get(ip) : database.get(UNKNOWN_ORG_IP);
+        Map<String, HostData> currentDatabase = database;
+
+        HostData hostData = currentDatabase.get(ip);
+
+        return hostData != null
+                ? hostData : currentDatabase.get(UNKNOWN_ORG_IP);
     }
 
-    private void syncDatabase() {
+    synchronized void syncDatabase() {
         Set<String> knownAddresses = getAllAddresses();
 
-        if (previousKnownOrganizations.equals(knownAddresses)) {
+        if (knownAddresses == null
+                || previousKnownOrganizations.equals(knownAddresses)) {
             // Nothing has changed, do not sync.
             return;
         }
 
+        Map<String, HostData> currentDatabase = database;
         Map<String, HostData> newDatabase = new HashMap<>();
 
         // Retain existing members connections
-        database.keySet().stream()
+        currentDatabase.keySet().stream()
                 .filter(knownAddresses::contains)
                 .forEach(existingAddress -> newDatabase.put(
-                        existingAddress, database.get(existingAddress)));
+                        existingAddress, currentDatabase.get(existingAddress)));
 
         // Add new members
         knownAddresses.stream()
-                .filter(knownAddress -> !database.containsKey(knownAddress))
+                .filter(knownAddress -> !currentDatabase.containsKey(
+                        knownAddress))
                 .forEach(knownAddress ->
                         registerHostData(newDatabase, knownAddress));
 
         previousKnownOrganizations = knownAddresses;
-        database = newDatabase;
+        database = Collections.unmodifiableMap(newDatabase);
+        databaseVersion++;
+
+        log.debug("Known member addresses changed, database version {}",
+                databaseVersion);
     }
 
     private void registerHostData(
@@ -222,7 +315,7 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
         double heapUsage = getHeapUsage();
         double maxHeapUsage = configuration.getMaxHeapUsage();
 
-        log.trace("Resource usage when considering connection:\n"
+        log.trace("Resource usage when sampling:\n"
                 + "freeFileDescriptorCount: {} ( >= {})\n"
                 + "cpuLoad: {} ( < {})\n"
                 + "heapUsage: {} ( < {})",
@@ -234,15 +327,16 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
                 && heapUsage < maxHeapUsage;
     }
 
+    // Returns null if the configuration could not be read.
     private static Set<String> getAllAddresses() {
         Set<String> addresses = new HashSet<>();
         try {
             addresses.addAll(GlobalConf.getKnownAddresses());
-        } catch (Exception ignored) {
-            // In case the conf was invalid, we do not sync. We should not
-            // log this exception, since this method might be
-            // called very frequently.
-            ignored.getClass(); //dummy code
+        } catch (Exception e) {
+            // In case the conf was invalid, we do not sync.
+            log.trace("Could not get known addresses", e);
+
+            return null;
         }
 
         addresses.add(UNKNOWN_ORG_IP);
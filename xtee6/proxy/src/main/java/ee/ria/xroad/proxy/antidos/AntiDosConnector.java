@@ -71,6 +71,13 @@ public class AntiDosConnector extends SelectChannelConnector {
         delegate.doStart();
     }
 
+    @Override
+    protected void doStop() throws Exception {
+        delegate.doStop();
+
+        super.doStop();
+    }
+
     @Override
     public void accept(int acceptorID) throws IOException {
         ServerSocketChannel server;
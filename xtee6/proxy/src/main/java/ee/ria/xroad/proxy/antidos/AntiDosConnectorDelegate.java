@@ -61,10 +61,15 @@ class AntiDosConnectorDelegate {
 
     void doStart() throws Exception {
         manager.init();
+        manager.startSampler();
 
         connector.getThreadPool().dispatch(new QueueManager());
     }
 
+    void doStop() {
+        manager.stopSampler();
+    }
+
     void accept(ServerSocketChannel server) throws IOException {
         if (canAccept(server) && connector.getSelectorManager().isStarted()) {
             SocketChannel channel = server.accept();
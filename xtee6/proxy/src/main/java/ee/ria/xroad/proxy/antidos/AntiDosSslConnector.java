@@ -73,6 +73,13 @@ public class AntiDosSslConnector extends SslSelectChannelConnector {
         delegate.doStart();
     }
 
+    @Override
+    protected void doStop() throws Exception {
+        delegate.doStop();
+
+        super.doStop();
+    }
+
     @Override
     public void accept(int acceptorID) throws IOException {
         ServerSocketChannel server;
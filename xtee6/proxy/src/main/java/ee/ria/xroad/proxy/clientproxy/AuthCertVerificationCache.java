@@ -0,0 +1,143 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import lombok.Value;
+
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.SingleResp;
+
+import ee.ria.xroad.common.identifier.ClientId;
+
+/**
+ * Remembers successful verifications of server proxy authentication
+ * certificates. A verification is kept per authentication certificate and
+ * service provider until the cache period ends, the certificate expires or
+ * any of the OCSP responses used is no longer fresh, whichever comes first.
+ * Expired verifications are dropped when they are looked up, and all
+ * verifications are dropped when the cache is full.
+ */
+final class AuthCertVerificationCache {
+
+    private final int maxSize;
+    private final LongSupplier clock;
+
+    private final Map<Key, Long> verifications = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a verification cache.
+     * @param maxSize the maximum number of cached verifications
+     * @param clock the source of the current time in milliseconds
+     */
+    AuthCertVerificationCache(int maxSize, LongSupplier clock) {
+        this.maxSize = maxSize;
+        this.clock = clock;
+    }
+
+    /**
+     * @param certHash the hash of the authentication certificate
+     * @param serviceProvider the service provider
+     * @return true if the certificate has been verified for the service
+     * provider and the verification has not expired
+     */
+    boolean isVerified(String certHash, ClientId serviceProvider) {
+        Key key = new Key(certHash, serviceProvider);
+
+        Long expiresAt = verifications.get(key);
+        if (expiresAt == null) {
+            return false;
+        }
+
+        if (expiresAt <= clock.getAsLong()) {
+            verifications.remove(key, expiresAt);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Caches a successful verification.
+     * @param certHash the hash of the authentication certificate
+     * @param serviceProvider the service provider
+     * @param cert the authentication certificate
+     * @param ocspResponses the OCSP responses used in the verification
+     * @param cachePeriod the maximum time in seconds to cache the
+     * verification, 0 or less to not cache it
+     * @param ocspFreshnessSeconds the time in seconds an OCSP response is
+     * fresh after its thisUpdate
+     * @throws Exception if the OCSP responses cannot be parsed
+     */
+    void put(String certHash, ClientId serviceProvider, X509Certificate cert,
+            List<OCSPResp> ocspResponses, int cachePeriod,
+            int ocspFreshnessSeconds) throws Exception {
+        if (cachePeriod <= 0) {
+            return;
+        }
+
+        long freshnessMillis = ocspFreshnessSeconds * 1000L;
+
+        long expiresAt = Math.min(
+                clock.getAsLong() + cachePeriod * 1000L,
+                cert.getNotAfter().getTime());
+
+        for (OCSPResp ocspResponse : ocspResponses) {
+            BasicOCSPResp basicResponse =
+                    (BasicOCSPResp) ocspResponse.getResponseObject();
+
+            for (SingleResp singleResponse : basicResponse.getResponses()) {
+                expiresAt = Math.min(expiresAt,
+                        singleResponse.getThisUpdate().getTime()
+                            + freshnessMillis);
+
+                if (singleResponse.getNextUpdate() != null) {
+                    expiresAt = Math.min(expiresAt,
+                            singleResponse.getNextUpdate().getTime());
+                }
+            }
+        }
+
+        if (verifications.size() >= maxSize) {
+            verifications.clear();
+        }
+
+        verifications.put(new Key(certHash, serviceProvider), expiresAt);
+    }
+
+    int size() {
+        return verifications.size();
+    }
+
+    @Value
+    private static class Key {
+        private final String certHash;
+        private final ClientId serviceProvider;
+    }
+}
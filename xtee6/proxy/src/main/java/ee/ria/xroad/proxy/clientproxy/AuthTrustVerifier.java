@@ -38,8 +38,10 @@ import org.apache.http.protocol.HttpContext;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 
 import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.cert.CertChain;
 import ee.ria.xroad.common.cert.CertHelper;
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.ServiceId;
 import ee.ria.xroad.common.util.CertUtils;
@@ -47,6 +49,8 @@ import ee.ria.xroad.proxy.conf.KeyConf;
 
 import static ee.ria.xroad.common.ErrorCodes.*;
 import static ee.ria.xroad.common.util.CertHashBasedOcspResponderClient.getOcspResponsesFromServer;
+import static ee.ria.xroad.common.util.CryptoUtils.SHA256_ID;
+import static ee.ria.xroad.common.util.CryptoUtils.hexDigest;
 
 /**
  * This class is responsible for verifying the server proxy SSL certificate.
@@ -60,12 +64,22 @@ import static ee.ria.xroad.common.util.CertHashBasedOcspResponderClient.getOcspR
  * SSL handshake takes place. We can then retrieve the provider name from
  * the HttpContext (stored there previously by the MultipartSender) and
  * the peer certificates and do the validation of the certificate.
+ *
+ * Successful verifications are cached per authentication certificate and
+ * service provider until the OCSP responses used are no longer fresh, so
+ * that new connections to the same server need no Signer or PKIX work.
  */
 @Slf4j
 public final class AuthTrustVerifier {
 
     public static final String ID_PROVIDERNAME = "request.providerName";
 
+    private static final int VERIFICATION_CACHE_MAX_SIZE = 10000;
+
+    private static final AuthCertVerificationCache VERIFICATION_CACHE =
+            new AuthCertVerificationCache(VERIFICATION_CACHE_MAX_SIZE,
+                    System::currentTimeMillis);
+
     private AuthTrustVerifier() {
     }
 
@@ -94,6 +108,13 @@ public final class AuthTrustVerifier {
 
     private static void verifyAuthCert(ClientId serviceProvider,
             X509Certificate[] certs, URI address) throws Exception {
+        String certHash = hexDigest(SHA256_ID, certs[0].getEncoded());
+        if (VERIFICATION_CACHE.isVerified(certHash, serviceProvider)) {
+            log.trace("Authentication certificate of {} already verified",
+                    serviceProvider);
+            return;
+        }
+
         CertChain chain;
         List<OCSPResp> ocspResponses;
         try {
@@ -110,6 +131,11 @@ public final class AuthTrustVerifier {
         }
 
         CertHelper.verifyAuthCert(chain, ocspResponses, serviceProvider);
+
+        VERIFICATION_CACHE.put(certHash, serviceProvider,
+                chain.getEndEntityCert(), ocspResponses,
+                SystemProperties.getAuthCertVerificationCachePeriod(),
+                GlobalConf.getOcspFreshnessSeconds(false));
     }
 
     /**
@@ -201,5 +227,4 @@ public final class AuthTrustVerifier {
                     + "did not send correct authentication certificate");
         }
     }
-
 }
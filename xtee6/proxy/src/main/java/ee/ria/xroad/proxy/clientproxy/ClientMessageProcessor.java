@@ -55,12 +55,14 @@ import ee.ria.xroad.proxy.protocol.ProxyMessage;
 import ee.ria.xroad.proxy.protocol.ProxyMessageDecoder;
 import ee.ria.xroad.proxy.protocol.ProxyMessageEncoder;
 import ee.ria.xroad.proxy.util.MessageProcessorBase;
+import ee.ria.xroad.proxy.util.MessageStageTimer;
+import ee.ria.xroad.proxy.util.MessageStageTimer.Stage;
 import lombok.EqualsAndHashCode;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.IOUtils;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.protocol.HttpCoreContext;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 import org.bouncycastle.util.Arrays;
 import org.xml.sax.Attributes;
@@ -99,6 +101,7 @@ import static ee.ria.xroad.common.util.MimeUtils.HEADER_ORIGINAL_CONTENT_TYPE;
 import static ee.ria.xroad.common.util.MimeUtils.HEADER_PROXY_VERSION;
 import static ee.ria.xroad.common.util.TimeUtils.getEpochMillisecond;
 import static ee.ria.xroad.proxy.clientproxy.FastestConnectionSelectingSSLSocketFactory.ID_TARGETS;
+import static ee.ria.xroad.proxy.clientproxy.FastestConnectionSelectingSSLSocketFactory.getSelectedTarget;
 
 @Slf4j
 class ClientMessageProcessor extends MessageProcessorBase {
@@ -150,6 +153,12 @@ class ClientMessageProcessor extends MessageProcessorBase {
     //** Holds operational monitoring data. */
     private volatile OpMonitoringData opMonitoringData;
 
+    private final MessageStageTimer stageTimer =
+            MessageStageTimer.start("clientproxy");
+
+    /** Beginning of parsing the request, set by the SOAP handler thread. */
+    private long parseRequestBegin;
+
     private static final ExecutorService SOAP_HANDLER_EXECUTOR =
             createSoapHandlerExecutor();
 
@@ -191,12 +200,16 @@ class ClientMessageProcessor extends MessageProcessorBase {
             // If the handler thread excepted, do not continue.
             checkError();
 
+            long begin = stageTimer.begin();
+
             // Verify that the client is registered
             verifyClientStatus();
 
             // Check client authentication mode
             verifyClientAuthentication();
 
+            stageTimer.end(Stage.VERIFY_ACCESS, begin);
+
             processRequest();
 
             if (response != null) {
@@ -216,6 +229,8 @@ class ClientMessageProcessor extends MessageProcessorBase {
             if (response != null) {
                 response.consume();
             }
+
+            stageTimer.report();
         }
     }
 
@@ -290,12 +305,22 @@ class ClientMessageProcessor extends MessageProcessorBase {
                     servletRequest.getContentType());
 
             try {
-                opMonitoringData.setRequestOutTs(getEpochMillisecond());
+                long requestOutTs = getEpochMillisecond();
+
+                opMonitoringData.setRequestOutTs(requestOutTs);
+
+                long begin = stageTimer.begin();
 
                 httpSender.doPost(getDummyServiceAddress(addresses), reqIns,
                         CHUNKED_LENGTH, outputContentType);
 
-                opMonitoringData.setResponseInTs(getEpochMillisecond());
+                stageTimer.end(Stage.SEND_REQUEST, begin);
+
+                long responseInTs = getEpochMillisecond();
+
+                opMonitoringData.setResponseInTs(responseInTs);
+
+                recordResponseTime(httpSender, responseInTs - requestOutTs);
             } catch (Exception e) {
                 // Failed to connect to server proxy
                 MonitorAgent.serverProxyFailed(createRequestMessageInfo());
@@ -309,6 +334,19 @@ class ClientMessageProcessor extends MessageProcessorBase {
         }
     }
 
+    private static void recordResponseTime(HttpSender httpSender,
+            long responseTime) {
+        if (isSslEnabled()
+                && SystemProperties.isClientProxyTargetSelectionByLatency()) {
+            URI target = getSelectedTarget(httpSender.getAttribute(
+                    HttpCoreContext.HTTP_CONNECTION));
+
+            if (target != null) {
+                TargetHostHealth.getInstance().responded(target, responseTime);
+            }
+        }
+    }
+
     @EqualsAndHashCode
     public static class TargetHostsUserToken {
         private final Set<URI> targetHosts;
@@ -344,18 +382,23 @@ class ClientMessageProcessor extends MessageProcessorBase {
         ProxyMessageDecoder decoder = new ProxyMessageDecoder(response,
                 httpSender.getResponseContentType(),
                 getHashAlgoId(httpSender));
+        long begin = stageTimer.begin();
         try {
             decoder.parse(httpSender.getResponseContent());
         } catch (CodedException ex) {
             throw ex.withPrefix(X_SERVICE_FAILED_X);
         }
 
+        stageTimer.end(Stage.PARSE_RESPONSE, begin);
+
         updateOpMonitoringDataByResponse(decoder);
 
         // Ensure we have the required parts.
         checkResponse();
 
+        begin = stageTimer.begin();
         decoder.verify(requestServiceId.getClientId(), response.getSignature());
+        stageTimer.end(Stage.VERIFY_SIGNATURE, begin);
     }
 
     private void updateOpMonitoringServiceSecurityServerAddress(
@@ -450,7 +493,9 @@ class ClientMessageProcessor extends MessageProcessorBase {
     private void logResponseMessage() throws Exception {
         log.trace("logResponseMessage()");
 
+        long begin = stageTimer.begin();
         MessageLog.log(response.getSoap(), response.getSignature(), true);
+        stageTimer.end(Stage.LOG_MESSAGE, begin);
     }
 
     private void sendResponse() throws Exception {
@@ -461,9 +506,9 @@ class ClientMessageProcessor extends MessageProcessorBase {
         servletResponse.setCharacterEncoding(MimeUtils.UTF8);
         servletResponse.setContentType(response.getSoapContentType());
 
-        try (InputStream is = response.getSoapContent()) {
-            IOUtils.copy(is, servletResponse.getOutputStream());
-        }
+        long begin = stageTimer.begin();
+        response.writeSoapContent(servletResponse.getOutputStream());
+        stageTimer.end(Stage.SEND_RESPONSE, begin);
     }
 
     private void waitForSoapMessage() {
@@ -611,6 +656,7 @@ class ClientMessageProcessor extends MessageProcessorBase {
                     new SoapMessageDecoder(servletRequest.getContentType(),
                             handler, new RequestSoapParserImpl());
             try {
+                parseRequestBegin = stageTimer.begin();
                 soapMessageDecoder.parse(servletRequest.getInputStream());
             } catch (Exception ex) {
                 throw new ClientException(translateException(ex));
@@ -633,6 +679,8 @@ class ClientMessageProcessor extends MessageProcessorBase {
                 log.trace("soap({})", message.getXml());
             }
 
+            stageTimer.end(Stage.PARSE_REQUEST, parseRequestBegin);
+
             requestSoap = (SoapMessageImpl) message;
             requestServiceId = requestSoap.getService();
 
@@ -681,7 +729,10 @@ class ClientMessageProcessor extends MessageProcessorBase {
             updateOpMonitoringData();
 
             try {
+                long begin = stageTimer.begin();
                 request.sign(KeyConf.getSigningCtx(requestSoap.getClient()));
+                stageTimer.end(Stage.SIGN, begin);
+
                 logRequestMessage();
                 request.writeSignature();
             } catch (Exception ex) {
@@ -703,7 +754,9 @@ class ClientMessageProcessor extends MessageProcessorBase {
         private void logRequestMessage() throws Exception {
             log.trace("logRequestMessage()");
 
+            long begin = stageTimer.begin();
             MessageLog.log(requestSoap, request.getSignature(), true);
+            stageTimer.end(Stage.LOG_MESSAGE, begin);
         }
 
         @Override
@@ -715,9 +768,11 @@ class ClientMessageProcessor extends MessageProcessorBase {
         }
 
         private void writeOcspResponses() throws Exception {
+            long begin = stageTimer.begin();
             CertChain chain = KeyConf.getAuthKey().getCertChain();
             List<OCSPResp> ocspResponses = KeyConf.getAllOcspResponses(
                     chain.getAllCertsWithoutTrustedRoot()); // exclude TopCA
+            stageTimer.end(Stage.GET_OCSP_RESPONSES, begin);
 
             for (OCSPResp ocsp : ocspResponses) {
                 request.ocspResponse(ocsp);
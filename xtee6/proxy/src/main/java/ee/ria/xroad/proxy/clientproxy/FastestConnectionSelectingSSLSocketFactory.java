@@ -29,6 +29,7 @@ import ee.ria.xroad.proxy.clientproxy.FastestSocketSelector.SocketInfo;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpHost;
+import org.apache.http.conn.ManagedHttpClientConnection;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.protocol.HttpContext;
 
@@ -58,6 +59,10 @@ import static ee.ria.xroad.proxy.clientproxy.AuthTrustVerifier.verify;
  *
  * If an SSL session already exists to one of the provided addresses, then
  * that address is selected immediately without previous selection algorithm.
+ *
+ * If selection by latency is enabled, the address with the lowest observed
+ * latency is used instead (see {@link TargetHostHealth}) and the addresses
+ * are raced against each other only when needed.
  */
 @Slf4j
 class FastestConnectionSelectingSSLSocketFactory
@@ -99,6 +104,11 @@ class FastestConnectionSelectingSSLSocketFactory
             HttpContext context) throws IOException {
         // Read target addresses from the context.
         URI[] addressesFromContext = getAddressesFromContext(context);
+
+        if (SystemProperties.isClientProxyTargetSelectionByLatency()) {
+            return connectByLatency(addressesFromContext, context, timeout);
+        }
+
         URI[] addresses = addressesFromContext;
 
         // If the current SSL session cache contains a session to a target
@@ -138,6 +148,11 @@ class FastestConnectionSelectingSSLSocketFactory
             }
         }
 
+        return connectSSL(selectedSocket, context);
+    }
+
+    private SSLSocket connectSSL(SocketInfo selectedSocket,
+            HttpContext context) throws IOException {
         log.info("Connecting to {}", selectedSocket.getUri());
 
         configureSocket(selectedSocket.getSocket());
@@ -150,6 +165,102 @@ class FastestConnectionSelectingSSLSocketFactory
         return sslSocket;
     }
 
+    /**
+     * Connects to the address with the lowest observed latency. The addresses
+     * are raced against each other if the health table so decides.
+     */
+    private SSLSocket connectByLatency(URI[] addresses, HttpContext context,
+            int timeout) throws IOException {
+        TargetHostHealth health = TargetHostHealth.getInstance();
+
+        URI[] ranked = health.rank(addresses);
+
+        if (ranked != null) {
+            for (URI address : ranked) {
+                try {
+                    SSLSocket sslSocket = connectAndRecord(health,
+                            new URI[] {address}, context, timeout);
+
+                    if (sslSocket != null) {
+                        return sslSocket;
+                    }
+                } catch (IOException | CodedException e) {
+                    log.warn("Could not connect to '{}'", address, e);
+                }
+            }
+
+            log.debug("Could not connect to any ranked target host,"
+                    + " trying all hosts");
+        }
+
+        health.raced(addresses);
+
+        SSLSocket sslSocket =
+                connectAndRecord(health, addresses, context, timeout);
+
+        if (sslSocket == null) {
+            throw couldNotConnectException(addresses);
+        }
+
+        return sslSocket;
+    }
+
+    private SSLSocket connectAndRecord(TargetHostHealth health,
+            URI[] addresses, HttpContext context, int timeout)
+            throws IOException {
+        long start = System.currentTimeMillis();
+
+        SocketInfo selectedSocket = connect(addresses, context, timeout);
+
+        if (selectedSocket == null) {
+            for (URI address : addresses) {
+                health.failed(address);
+            }
+
+            return null;
+        }
+
+        try {
+            SSLSocket sslSocket = connectSSL(selectedSocket, context);
+
+            health.connected(selectedSocket.getUri(),
+                    System.currentTimeMillis() - start);
+
+            return sslSocket;
+        } catch (IOException | RuntimeException e) {
+            health.failed(selectedSocket.getUri());
+
+            IOUtils.closeQuietly(selectedSocket.getSocket());
+
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the target address the given client connection was connected
+     * to by this factory.
+     * @param connection the connection from the HTTP context
+     * @return the target address, or null if not known
+     */
+    static URI getSelectedTarget(Object connection) {
+        try {
+            if (connection instanceof ManagedHttpClientConnection) {
+                SSLSession session = ((ManagedHttpClientConnection) connection)
+                        .getSSLSession();
+
+                if (session != null) {
+                    Object target = session.getValue(ID_SELECTED_TARGET);
+
+                    return target instanceof URI ? (URI) target : null;
+                }
+            }
+        } catch (Exception e) {
+            log.trace("Could not get selected target of connection", e);
+        }
+
+        return null;
+    }
+
     private static void updateOpMonitoringData(HttpContext context,
             SocketInfo socketInfo) {
         try {
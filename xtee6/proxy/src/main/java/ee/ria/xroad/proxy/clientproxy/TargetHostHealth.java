@@ -0,0 +1,261 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.common.SystemProperties;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
+import static ee.ria.xroad.common.util.TimeUtils.secondsToMillis;
+
+/**
+ * Keeps track of the latency and failures of the security servers the client
+ * proxy connects to.
+ *
+ * Connection and response times are kept as exponentially weighted moving
+ * averages. A host whose connection fails is avoided for a backoff period that
+ * doubles with each consecutive failure. Hosts that have not been measured
+ * yet are tried after the measured ones. The hosts of a service provider are
+ * raced against each other (connecting to all of them at the same time) when
+ * none of them has been measured yet, when all of them are backing off, and
+ * periodically so that a recovered, unmeasured or faster host is noticed.
+ */
+@Slf4j
+final class TargetHostHealth {
+
+    private static final TargetHostHealth INSTANCE = new TargetHostHealth(
+            secondsToMillis(
+                    SystemProperties.getClientProxyTargetSelectionRaceInterval()),
+            System::currentTimeMillis);
+
+    // Weight of the newest sample in the moving averages.
+    private static final double SAMPLE_WEIGHT = 0.3;
+
+    private static final long INITIAL_BACKOFF = 1000;
+
+    private static final long MAX_BACKOFF = 60000;
+
+    private static final int MAX_BACKOFF_DOUBLINGS = 6;
+
+    private final ConcurrentMap<URI, HostStatistics> hosts =
+            new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Set<URI>, Long> nextRaceTimes =
+            new ConcurrentHashMap<>();
+
+    private final long raceInterval;
+    private final LongSupplier clock;
+
+    TargetHostHealth(long raceInterval, LongSupplier clock) {
+        this.raceInterval = raceInterval;
+        this.clock = clock;
+    }
+
+    static TargetHostHealth getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Orders the addresses by their observed latency, followed by the
+     * addresses that have not been measured yet, leaving out the addresses
+     * that are backing off after failures.
+     * @param addresses the addresses of the security servers
+     * @return the addresses to try one by one, or null if the addresses
+     * should be raced against each other
+     */
+    URI[] rank(URI[] addresses) {
+        if (addresses.length == 1) {
+            return addresses;
+        }
+
+        long now = clock.getAsLong();
+
+        List<HostStatistics> measured = new ArrayList<>(addresses.length);
+        List<URI> unmeasured = new ArrayList<>(addresses.length);
+
+        for (URI address : addresses) {
+            HostStatistics host = hosts.get(address);
+
+            if (host != null && host.isBackingOff(now)) {
+                continue;
+            }
+
+            if (host != null && host.isMeasured()) {
+                measured.add(host);
+            } else {
+                unmeasured.add(address);
+            }
+        }
+
+        if (measured.isEmpty() || isRaceDue(addresses, now)) {
+            return null;
+        }
+
+        measured.sort(Comparator.comparingDouble(HostStatistics::getScore));
+
+        return Stream.concat(measured.stream().map(HostStatistics::getAddress),
+                unmeasured.stream()).toArray(URI[]::new);
+    }
+
+    /**
+     * Records that the addresses were raced against each other.
+     * @param addresses the raced addresses
+     */
+    void raced(URI[] addresses) {
+        nextRaceTimes.put(toKey(addresses), clock.getAsLong() + raceInterval);
+    }
+
+    /**
+     * Records a successful connection.
+     * @param address the address of the security server
+     * @param connectTime the time (in milliseconds) it took to connect
+     */
+    void connected(URI address, long connectTime) {
+        getHost(address).connected(connectTime);
+    }
+
+    /**
+     * Records the time it took the security server to respond to a request.
+     * @param address the address of the security server
+     * @param responseTime the response time in milliseconds
+     */
+    void responded(URI address, long responseTime) {
+        getHost(address).responded(responseTime);
+    }
+
+    /**
+     * Records a failed connection.
+     * @param address the address of the security server
+     */
+    void failed(URI address) {
+        getHost(address).failed(clock.getAsLong());
+    }
+
+    HostStatistics getHost(URI address) {
+        return hosts.computeIfAbsent(address, HostStatistics::new);
+    }
+
+    private boolean isRaceDue(URI[] addresses, long now) {
+        Set<URI> key = toKey(addresses);
+        Long nextRaceTime = nextRaceTimes.get(key);
+
+        // Only the request that moves the next race time races, the others
+        // use the ranking.
+        if (nextRaceTime == null) {
+            return nextRaceTimes.putIfAbsent(key, now + raceInterval) == null;
+        }
+
+        return now >= nextRaceTime
+                && nextRaceTimes.replace(key, nextRaceTime, now + raceInterval);
+    }
+
+    private static Set<URI> toKey(URI[] addresses) {
+        return new HashSet<>(Arrays.asList(addresses));
+    }
+
+    /**
+     * Latency and failures of one security server.
+     */
+    static final class HostStatistics {
+
+        private final URI address;
+
+        private double connectTime = -1;
+        private double responseTime = -1;
+
+        private int consecutiveFailures;
+        private long failures;
+        private long backoffEndTime;
+
+        HostStatistics(URI address) {
+            this.address = address;
+        }
+
+        URI getAddress() {
+            return address;
+        }
+
+        synchronized boolean isMeasured() {
+            return connectTime >= 0;
+        }
+
+        synchronized boolean isBackingOff(long now) {
+            return now < backoffEndTime;
+        }
+
+        synchronized double getConnectTime() {
+            return connectTime;
+        }
+
+        synchronized double getResponseTime() {
+            return responseTime;
+        }
+
+        synchronized long getFailures() {
+            return failures;
+        }
+
+        synchronized double getScore() {
+            return connectTime + Math.max(responseTime, 0);
+        }
+
+        synchronized void connected(long time) {
+            connectTime = average(connectTime, time);
+            consecutiveFailures = 0;
+            backoffEndTime = 0;
+        }
+
+        synchronized void responded(long time) {
+            responseTime = average(responseTime, time);
+        }
+
+        synchronized void failed(long now) {
+            failures++;
+            consecutiveFailures++;
+
+            long backoff = INITIAL_BACKOFF << Math.min(
+                    consecutiveFailures - 1, MAX_BACKOFF_DOUBLINGS);
+            backoffEndTime = now + Math.min(backoff, MAX_BACKOFF);
+
+            log.debug("Connection to {} failed {} consecutive times,"
+                    + " avoiding it until {}", address, consecutiveFailures,
+                    backoffEndTime);
+        }
+
+        private static double average(double current, long sample) {
+            return current < 0 ? sample
+                    : SAMPLE_WEIGHT * sample + (1 - SAMPLE_WEIGHT) * current;
+        }
+    }
+}
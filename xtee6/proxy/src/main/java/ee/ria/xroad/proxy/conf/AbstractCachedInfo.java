@@ -23,16 +23,82 @@
 package ee.ria.xroad.proxy.conf;
 
 import java.util.Date;
+import java.util.List;
 
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.SingleResp;
 import org.joda.time.DateTime;
 
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+import ee.ria.xroad.common.conf.globalconfextension.GlobalConfExtensions;
 import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
 
+@Slf4j
 abstract class AbstractCachedInfo {
 
     @Getter
     private final DateTime createdAt = new DateTime();
 
+    // Computed on first use, the OCSP responses do not change
+    private volatile Date ocspStaleAt;
+    private volatile boolean ocspStaleAtComputed;
+
     abstract boolean verifyValidity(Date atDate);
 
+    abstract List<OCSPResp> getOcspResponses();
+
+    /**
+     * Returns the time when the first of the OCSP responses of this info
+     * stops being fresh enough to be used, or null if there is no such time.
+     * @return the time or null
+     */
+    Date getOcspStaleAt() {
+        if (!ocspStaleAtComputed) {
+            ocspStaleAt = computeOcspStaleAt();
+            ocspStaleAtComputed = true;
+        }
+
+        return ocspStaleAt;
+    }
+
+    private Date computeOcspStaleAt() {
+        int freshnessSeconds = GlobalConf.getOcspFreshnessSeconds(false);
+        boolean verifyNextUpdate = GlobalConfExtensions.getInstance()
+                .shouldVerifyOcspNextUpdate();
+
+        Date staleAt = null;
+        try {
+            for (OCSPResp ocsp : getOcspResponses()) {
+                BasicOCSPResp basicResp =
+                        (BasicOCSPResp) ocsp.getResponseObject();
+
+                for (SingleResp singleResp : basicResp.getResponses()) {
+                    staleAt = earliest(staleAt,
+                            new DateTime(singleResp.getThisUpdate())
+                                    .plusSeconds(freshnessSeconds).toDate());
+
+                    if (verifyNextUpdate) {
+                        staleAt = earliest(staleAt,
+                                singleResp.getNextUpdate());
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to read the OCSP responses of cached info: {}",
+                    e);
+            return null;
+        }
+
+        return staleAt;
+    }
+
+    private static Date earliest(Date a, Date b) {
+        if (a == null) {
+            return b;
+        }
+
+        return b == null || a.before(b) ? a : b;
+    }
 }
@@ -25,7 +25,9 @@ package ee.ria.xroad.proxy.conf;
 import java.security.cert.CertificateExpiredException;
 import java.security.cert.CertificateNotYetValidException;
 import java.security.cert.X509Certificate;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 
 import org.bouncycastle.cert.ocsp.OCSPResp;
 
@@ -49,6 +51,8 @@ final class CachedSigningInfoImpl extends AbstractCachedInfo {
     private final X509Certificate cert;
     private final OCSPResp ocsp;
 
+    private volatile SigningCtx signingCtx;
+
     // ------------------------------------------------------------------------
 
     @Override
@@ -65,8 +69,22 @@ final class CachedSigningInfoImpl extends AbstractCachedInfo {
         }
     }
 
+    @Override
+    List<OCSPResp> getOcspResponses() {
+        return Collections.singletonList(ocsp);
+    }
+
     SigningCtx getSigningCtx() {
-        return new SigningCtxImpl(clientId, new SignerSigningKey(keyId), cert);
+        // the signing context is kept with the cached info, so that its
+        // signature template is reused until the info expires
+        SigningCtx ctx = signingCtx;
+        if (ctx == null) {
+            ctx = new SigningCtxImpl(clientId, new SignerSigningKey(keyId),
+                    cert);
+            signingCtx = ctx;
+        }
+
+        return ctx;
     }
 
     // ------------------------------------------------------------------------
@@ -27,10 +27,7 @@ import static ee.ria.xroad.common.util.CryptoUtils.readCertificate;
 
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
-import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.bouncycastle.cert.ocsp.OCSPResp;
 
@@ -58,12 +55,24 @@ class CachingKeyConfImpl extends KeyConfImpl {
     // Specifies how long data is cached
     private static final int CACHE_PERIOD_SECONDS = 300;
 
+    // Specifies how long before the data expires, or its OCSP responses
+    // stop being fresh, it is refreshed in the background
+    private static final int REFRESH_AHEAD_SECONDS = 60;
+
+    // The authentication info has a single cache entry
+    private static final String AUTH_KEY_INFO = "authKeyInfo";
+
     private final FileContentChangeChecker keyConfChangeChecker;
 
-    private final Map<ClientId, CachedSigningInfoImpl> signingInfoCache =
-            new HashMap<>();
+    private final RefreshAheadCache<ClientId, CachedSigningInfoImpl>
+            signingInfoCache = new RefreshAheadCache<>(
+                    CachingKeyConfImpl::getSigningInfo,
+                    CACHE_PERIOD_SECONDS, REFRESH_AHEAD_SECONDS);
 
-    private CachedAuthKeyInfoImpl authKeyInfo;
+    private final RefreshAheadCache<String, CachedAuthKeyInfoImpl>
+            authKeyInfoCache = new RefreshAheadCache<>(
+                    key -> getAuthKeyInfo(),
+                    CACHE_PERIOD_SECONDS, REFRESH_AHEAD_SECONDS);
 
     CachingKeyConfImpl() throws Exception {
         keyConfChangeChecker =
@@ -72,14 +81,10 @@ class CachingKeyConfImpl extends KeyConfImpl {
 
     @Override
     public SigningCtx getSigningCtx(ClientId clientId) {
-        CachedSigningInfoImpl signingInfo = signingInfoCache.get(clientId);
         try {
-            if (hasExpired(signingInfo) || keyConfHasChanged()) {
-                signingInfo = getSigningInfo(clientId);
-            }
+            invalidateIfKeyConfChanged();
 
-            signingInfoCache.put(clientId, signingInfo);
-            return signingInfo.getSigningCtx();
+            return signingInfoCache.get(clientId).getSigningCtx();
         } catch (Exception e) {
             throw new CodedException(X_CANNOT_CREATE_SIGNATURE,
                     "Failed to get signing info for member '%s': %s",
@@ -90,17 +95,22 @@ class CachingKeyConfImpl extends KeyConfImpl {
     @Override
     public AuthKey getAuthKey() {
         try {
-            if (hasExpired(authKeyInfo) || keyConfHasChanged()) {
-                authKeyInfo = getAuthKeyInfo();
-            }
+            invalidateIfKeyConfChanged();
 
-            return authKeyInfo.getAuthKey();
+            return authKeyInfoCache.get(AUTH_KEY_INFO).getAuthKey();
         } catch (Exception e) {
             log.error("Failed to get authentication key", e);
             return new AuthKey(null, null);
         }
     }
 
+    private void invalidateIfKeyConfChanged() {
+        if (keyConfHasChanged()) {
+            signingInfoCache.invalidateAll();
+            authKeyInfoCache.invalidateAll();
+        }
+    }
+
     boolean keyConfHasChanged() {
         try {
             boolean changed = keyConfChangeChecker.hasChanged();
@@ -144,12 +154,4 @@ class CachingKeyConfImpl extends KeyConfImpl {
         return new CachedSigningInfoImpl(signingInfo.getKeyId(), clientId,
                 cert, ocsp);
     }
-
-    private static boolean hasExpired(AbstractCachedInfo cachedInfo) {
-        log.trace("CachingKeyConfImpl.hasExpired cachedInfo={}", cachedInfo);
-        return cachedInfo == null
-                || cachedInfo.getCreatedAt().plusSeconds(CACHE_PERIOD_SECONDS)
-                        .isBeforeNow()
-                || !cachedInfo.verifyValidity(new Date());
-    }
 }
@@ -0,0 +1,228 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.conf;
+
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.joda.time.DateTime;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cache of signing and authentication info that is refreshed in the
+ * background before the info expires or its OCSP responses stop being
+ * fresh. There is at most one load in flight per key, and callers wait for
+ * it only when there is no usable cached info.
+ * @param <K> the key type
+ * @param <V> the cached info type
+ */
+@Slf4j
+class RefreshAheadCache<K, V extends AbstractCachedInfo> {
+
+    /**
+     * Loads the info for a key.
+     * @param <K> the key type
+     * @param <V> the cached info type
+     */
+    @FunctionalInterface
+    interface Loader<K, V> {
+        V load(K key) throws Exception;
+    }
+
+    // Info is not refreshed more often than this, even if the refreshed
+    // info carries the same OCSP responses as before or the refresh fails
+    private static final int MIN_REFRESH_INTERVAL_SECONDS = 10;
+
+    private static final ExecutorService LOAD_EXECUTOR =
+            Executors.newCachedThreadPool(r -> {
+                Thread loaderThread = new Thread(r, "keyconf-loader");
+                loaderThread.setDaemon(true);
+                return loaderThread;
+            });
+
+    private final ConcurrentMap<K, V> entries = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<K, CompletableFuture<V>> loads =
+            new ConcurrentHashMap<>();
+
+    // Start time of the last load of each key, whether it succeeded or not
+    private final ConcurrentMap<K, DateTime> loadAttempts =
+            new ConcurrentHashMap<>();
+
+    // Incremented on invalidation, so that loads started before it do not
+    // store their results
+    private final AtomicLong generation = new AtomicLong();
+
+    private final Loader<K, V> loader;
+    private final int cachePeriodSeconds;
+    private final int refreshAheadSeconds;
+    private final int minRefreshIntervalSeconds;
+
+    /**
+     * Creates the cache.
+     * @param loader loads the info for a key
+     * @param cachePeriodSeconds how long the info is used after loading
+     * @param refreshAheadSeconds how long before the expiry of the info or
+     * its OCSP responses the info is refreshed
+     */
+    RefreshAheadCache(Loader<K, V> loader, int cachePeriodSeconds,
+            int refreshAheadSeconds) {
+        this(loader, cachePeriodSeconds, refreshAheadSeconds,
+                MIN_REFRESH_INTERVAL_SECONDS);
+    }
+
+    /**
+     * Creates the cache.
+     * @param loader loads the info for a key
+     * @param cachePeriodSeconds how long the info is used after loading
+     * @param refreshAheadSeconds how long before the expiry of the info or
+     * its OCSP responses the info is refreshed
+     * @param minRefreshIntervalSeconds how long after the last load of a
+     * key, successful or not, no background refresh is started
+     */
+    RefreshAheadCache(Loader<K, V> loader, int cachePeriodSeconds,
+            int refreshAheadSeconds, int minRefreshIntervalSeconds) {
+        this.loader = loader;
+        this.cachePeriodSeconds = cachePeriodSeconds;
+        this.refreshAheadSeconds = refreshAheadSeconds;
+        this.minRefreshIntervalSeconds = minRefreshIntervalSeconds;
+    }
+
+    /**
+     * Returns the cached info for the key. Waits for the info to be loaded
+     * if there is no valid cached info, otherwise starts a background
+     * refresh if the info is about to expire.
+     * @param key the key
+     * @return the info
+     * @throws Exception if the info cannot be loaded
+     */
+    V get(K key) throws Exception {
+        V info = entries.get(key);
+
+        if (info == null || hasExpired(info)
+                || !info.verifyValidity(new Date())) {
+            return await(load(key));
+        }
+
+        if (isRefreshDue(key, info)) {
+            log.debug("Refreshing cached info for '{}' ahead of expiry", key);
+            load(key);
+        }
+
+        return info;
+    }
+
+    /**
+     * Discards all cached info. Loads that are in flight do not store
+     * their results.
+     */
+    void invalidateAll() {
+        generation.incrementAndGet();
+        entries.clear();
+        loads.clear();
+        loadAttempts.clear();
+    }
+
+    private CompletableFuture<V> load(K key) {
+        CompletableFuture<V> newLoad = new CompletableFuture<>();
+
+        CompletableFuture<V> currentLoad = loads.putIfAbsent(key, newLoad);
+        if (currentLoad != null) {
+            return currentLoad;
+        }
+
+        loadAttempts.put(key, new DateTime());
+
+        long loadGeneration = generation.get();
+
+        // The load is removed before it is completed, so that the callers
+        // it wakes up do not get the same result again for a new load
+        LOAD_EXECUTOR.execute(() -> {
+            try {
+                V info = loader.load(key);
+
+                if (generation.get() == loadGeneration) {
+                    entries.put(key, info);
+                }
+
+                loads.remove(key, newLoad);
+                newLoad.complete(info);
+            } catch (Exception e) {
+                log.warn("Failed to load info for '{}': {}", key, e);
+
+                loads.remove(key, newLoad);
+                newLoad.completeExceptionally(e);
+            }
+        });
+
+        return newLoad;
+    }
+
+    private boolean hasExpired(V info) {
+        return info.getCreatedAt().plusSeconds(cachePeriodSeconds)
+                .isBeforeNow();
+    }
+
+    private boolean isRefreshDue(K key, V info) {
+        DateTime lastAttempt = loadAttempts.getOrDefault(key,
+                info.getCreatedAt());
+
+        if (lastAttempt.plusSeconds(minRefreshIntervalSeconds).isAfterNow()) {
+            return false;
+        }
+
+        DateTime refreshAt = info.getCreatedAt()
+                .plusSeconds(cachePeriodSeconds - refreshAheadSeconds);
+
+        Date ocspStaleAt = info.getOcspStaleAt();
+        if (ocspStaleAt != null) {
+            DateTime ocspRefreshAt = new DateTime(ocspStaleAt)
+                    .minusSeconds(refreshAheadSeconds);
+
+            if (ocspRefreshAt.isBefore(refreshAt)) {
+                refreshAt = ocspRefreshAt;
+            }
+        }
+
+        return refreshAt.isBeforeNow();
+    }
+
+    private static <V> V await(CompletableFuture<V> load) throws Exception {
+        try {
+            return load.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+
+            throw e;
+        }
+    }
+}
@@ -36,6 +36,7 @@ import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.signature.SignatureBuilder;
 import ee.ria.xroad.common.signature.SignatureData;
+import ee.ria.xroad.common.signature.SignatureTemplate;
 import ee.ria.xroad.common.util.CryptoUtils;
 import ee.ria.xroad.proxy.signedmessage.SigningKey;
 import lombok.RequiredArgsConstructor;
@@ -56,19 +57,33 @@ public class SigningCtxImpl implements SigningCtx {
     /** The certificate of the signer. */
     private final X509Certificate cert;
 
+    /** The signature template for the current certificates and OCSP
+     * responses. */
+    private volatile SignatureTemplate template;
+
     @Override
     public SignatureData buildSignature(SignatureBuilder builder)
             throws Exception {
         List<X509Certificate> extraCerts = getIntermediateCaCerts();
         List<OCSPResp> ocspResponses = getOcspResponses(extraCerts);
 
-        builder.addExtraCertificates(extraCerts);
-        builder.addOcspResponses(ocspResponses);
-        builder.setSigningCert(cert);
+        builder.setTemplate(getTemplate(extraCerts, ocspResponses));
 
         return builder.build(key, CryptoUtils.SHA512WITHRSA_ID);
     }
 
+    private SignatureTemplate getTemplate(List<X509Certificate> extraCerts,
+            List<OCSPResp> ocspResponses) {
+        SignatureTemplate current = template;
+        if (current == null
+                || !current.matches(cert, extraCerts, ocspResponses)) {
+            current = new SignatureTemplate(cert, extraCerts, ocspResponses);
+            template = current;
+        }
+
+        return current;
+    }
+
     private List<OCSPResp> getOcspResponses(List<X509Certificate> certs)
             throws Exception {
         List<X509Certificate> allCerts = new ArrayList<>(certs.size() + 1);
@@ -32,11 +32,13 @@ import ee.ria.xroad.common.util.MimeTypes;
 import ee.ria.xroad.common.util.MimeUtils;
 import ee.ria.xroad.common.util.MultipartEncoder;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -140,6 +142,27 @@ public class ProxyMessage implements ProxyMessageConsumer {
         }
     }
 
+    /**
+     * Writes the content of the cached message to the given stream.
+     * Messages with attachments are written directly from the attachment
+     * cache.
+     * @param out the stream to write to
+     * @throws Exception in case of any errors
+     */
+    public void writeSoapContent(OutputStream out) throws Exception {
+        if (hasAttachments() && !isMimeEncodedSoap()) {
+            // Finish writing to the attachment cache.
+            encoder.close();
+
+            hasBeenConsumed = true;
+            attachmentCache.writeCachedContents(out);
+        } else {
+            try (InputStream is = getSoapContent()) {
+                IOUtils.copy(is, out);
+            }
+        }
+    }
+
     /**
      * Finalize SOAP message processing.
      */
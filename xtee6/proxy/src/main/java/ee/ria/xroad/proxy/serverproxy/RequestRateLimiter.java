@@ -0,0 +1,157 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.serverproxy;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import ee.ria.xroad.common.util.MetricRegistryHolder;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Limits the rate of requests per key (client identifier or IP address).
+ *
+ * Each key has a token bucket that holds up to one second's worth of
+ * requests and is refilled at the configured rate. The bucket is kept in the
+ * virtual scheduling form: a single time value per key, the time at which
+ * the bucket will be full again, which is updated with compare-and-set so no
+ * locks are needed. Buckets that are full again are forgotten when the
+ * number of tracked keys grows large, at most once per sweep interval.
+ *
+ * @param <K> the type of the key
+ */
+final class RequestRateLimiter<K> {
+
+    // Full buckets are removed when there are more keys than this.
+    private static final int SWEEP_THRESHOLD = 10000;
+
+    // Full buckets are removed at most once in this time.
+    private static final long SWEEP_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private final int rate;
+    private final long interval;
+    private final long burstTolerance;
+    private final LongSupplier clock;
+
+    private final ConcurrentMap<K, AtomicLong> buckets =
+            new ConcurrentHashMap<>();
+
+    private final AtomicLong lastSweep;
+
+    private final Meter accepted;
+    private final Meter rejected;
+
+    /**
+     * Creates a rate limiter.
+     * @param name the name of the limiter in the metrics
+     * @param rate the maximum number of requests per second, 0 or less
+     * if unlimited
+     * @param clock the source of the current time in nanoseconds
+     */
+    RequestRateLimiter(String name, int rate, LongSupplier clock) {
+        this.rate = rate;
+        this.interval = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / rate : 0;
+        this.burstTolerance = interval * Math.max(rate - 1, 0);
+        this.clock = clock;
+        this.lastSweep = new AtomicLong(clock.getAsLong() - SWEEP_INTERVAL);
+
+        MetricRegistry metrics = MetricRegistryHolder.getInstance().getMetrics();
+
+        this.accepted = metrics.meter(name(getClass(), name, "accepted"));
+        this.rejected = metrics.meter(name(getClass(), name, "rejected"));
+
+        String bucketsName = name(getClass(), name, "buckets");
+
+        metrics.remove(bucketsName);
+        metrics.register(bucketsName, (Gauge<Integer>) buckets::size);
+    }
+
+    /**
+     * @return true if the requests are limited
+     */
+    boolean isEnabled() {
+        return rate > 0;
+    }
+
+    /**
+     * Takes a token from the bucket of the key.
+     * @param key the key
+     * @return true if the request is within the limit
+     */
+    boolean tryAcquire(K key) {
+        if (!isEnabled()) {
+            return true;
+        }
+
+        long now = clock.getAsLong();
+
+        AtomicLong fullTime = buckets.get(key);
+
+        if (fullTime == null) {
+            if (buckets.size() >= SWEEP_THRESHOLD) {
+                trySweep(now);
+            }
+
+            fullTime = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+
+        while (true) {
+            long current = fullTime.get();
+            long start = current - now > 0 ? current : now;
+
+            if (start - now > burstTolerance) {
+                rejected.mark();
+
+                return false;
+            }
+
+            if (fullTime.compareAndSet(current, start + interval)) {
+                accepted.mark();
+
+                return true;
+            }
+        }
+    }
+
+    int getBucketCount() {
+        return buckets.size();
+    }
+
+    private void trySweep(long now) {
+        long last = lastSweep.get();
+
+        // Only one thread sweeps and only once per interval, so a flood of
+        // new keys does not scan the whole map on every request.
+        if (now - last >= SWEEP_INTERVAL
+                && lastSweep.compareAndSet(last, now)) {
+            buckets.values().removeIf(fullTime -> fullTime.get() - now <= 0);
+        }
+    }
+}
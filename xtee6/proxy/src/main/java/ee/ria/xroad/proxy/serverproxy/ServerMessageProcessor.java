@@ -53,6 +53,8 @@ import ee.ria.xroad.proxy.protocol.ProxyMessage;
 import ee.ria.xroad.proxy.protocol.ProxyMessageDecoder;
 import ee.ria.xroad.proxy.protocol.ProxyMessageEncoder;
 import ee.ria.xroad.proxy.util.MessageProcessorBase;
+import ee.ria.xroad.proxy.util.MessageStageTimer;
+import ee.ria.xroad.proxy.util.MessageStageTimer.Stage;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -87,6 +89,16 @@ class ServerMessageProcessor extends MessageProcessorBase {
     private static final String SERVERPROXY_SERVICE_HANDLERS =
             SystemProperties.PREFIX + "proxy.serverServiceHandlers";
 
+    private static final RequestRateLimiter<ClientId> CLIENT_RATE_LIMITER =
+            new RequestRateLimiter<>("client",
+                    SystemProperties.getServerProxyClientRateLimit(),
+                    System::nanoTime);
+
+    private static final RequestRateLimiter<String> ADDRESS_RATE_LIMITER =
+            new RequestRateLimiter<>("address",
+                    SystemProperties.getServerProxyAddressRateLimit(),
+                    System::nanoTime);
+
     private final X509Certificate[] clientSslCerts;
 
     private final List<ServiceHandler> handlers = new ArrayList<>();
@@ -101,9 +113,14 @@ class ServerMessageProcessor extends MessageProcessorBase {
 
     private SigningCtx responseSigningCtx;
 
+    private ServiceEndpointGuard.Permit serviceEndpointPermit;
+
     private HttpClient opMonitorHttpClient;
     private OpMonitoringData opMonitoringData;
 
+    private final MessageStageTimer stageTimer =
+            MessageStageTimer.start("serverproxy");
+
     ServerMessageProcessor(HttpServletRequest servletRequest,
             HttpServletResponse servletResponse, HttpClient httpClient,
             X509Certificate[] clientSslCerts, HttpClient opMonitorHttpClient,
@@ -125,6 +142,8 @@ class ServerMessageProcessor extends MessageProcessorBase {
         updateOpMonitoringServiceSecurityServerAddress();
 
         try {
+            verifyAddressRateLimit();
+
             readMessage();
 
             handleRequest();
@@ -142,6 +161,8 @@ class ServerMessageProcessor extends MessageProcessorBase {
             if (requestMessage != null) {
                 requestMessage.consume();
             }
+
+            stageTimer.report();
         }
     }
 
@@ -221,11 +242,20 @@ class ServerMessageProcessor extends MessageProcessorBase {
         }
 
         if (handler.shouldVerifyAccess()) {
+            long begin = stageTimer.begin();
             verifyAccess();
+            stageTimer.end(Stage.VERIFY_ACCESS, begin);
         }
 
         if (handler.shouldVerifySignature()) {
+            long begin = stageTimer.begin();
             verifySignature();
+            stageTimer.end(Stage.VERIFY_SIGNATURE, begin);
+
+            if (!SystemProperties.isSslEnabled()) {
+                // Without TLS the client is authenticated by its signature.
+                verifyClientRateLimit(requestMessage.getSoap().getClient());
+            }
         }
 
         if (handler.shouldLogSignature()) {
@@ -264,6 +294,9 @@ class ServerMessageProcessor extends MessageProcessorBase {
 
                 if (SystemProperties.isSslEnabled()) {
                     verifySslClientCert();
+
+                    // The client is now authenticated by its TLS certificate.
+                    verifyClientRateLimit(soapMessage.getClient());
                 }
             }
         };
@@ -271,12 +304,15 @@ class ServerMessageProcessor extends MessageProcessorBase {
         decoder = new ProxyMessageDecoder(requestMessage,
                 servletRequest.getContentType(), false,
                 getHashAlgoId(servletRequest));
+        long begin = stageTimer.begin();
         try {
             decoder.parse(servletRequest.getInputStream());
         } catch (CodedException e) {
             throw e.withPrefix(X_SERVICE_FAILED_X);
         }
 
+        stageTimer.end(Stage.PARSE_REQUEST, begin);
+
         updateOpMonitoringDataByRequest();
 
         // Check if the input contained all the required bits.
@@ -308,6 +344,22 @@ class ServerMessageProcessor extends MessageProcessorBase {
         }
     }
 
+    private void verifyAddressRateLimit() {
+        String address = servletRequest.getRemoteAddr();
+
+        if (!ADDRESS_RATE_LIMITER.tryAcquire(address)) {
+            throw new CodedException(X_RATE_LIMIT_EXCEEDED,
+                    "Request rate limit exceeded for address %s", address);
+        }
+    }
+
+    private static void verifyClientRateLimit(ClientId client) {
+        if (!CLIENT_RATE_LIMITER.tryAcquire(client)) {
+            throw new CodedException(X_RATE_LIMIT_EXCEEDED,
+                    "Request rate limit exceeded for client %s", client);
+        }
+    }
+
     private void verifyClientStatus() {
         ClientId client = requestServiceId.getClientId();
 
@@ -424,15 +476,19 @@ class ServerMessageProcessor extends MessageProcessorBase {
     private void logRequestMessage() throws Exception {
         log.trace("logRequestMessage()");
 
+        long begin = stageTimer.begin();
         MessageLog.log(requestMessage.getSoap(), requestMessage.getSignature(),
                 false);
+        stageTimer.end(Stage.LOG_MESSAGE, begin);
     }
 
     private void logResponseMessage() throws Exception {
         if (responseSoap != null && encoder != null) {
             log.trace("logResponseMessage()");
 
+            long begin = stageTimer.begin();
             MessageLog.log(responseSoap, encoder.getSignature(), false);
+            stageTimer.end(Stage.LOG_MESSAGE, begin);
         }
     }
 
@@ -460,21 +516,44 @@ class ServerMessageProcessor extends MessageProcessorBase {
             contentType = requestMessage.getSoapContentType();
         }
 
+        ServiceEndpointGuard guard = ServiceEndpointGuard.getInstance(uri);
+
+        if (guard != null) {
+            serviceEndpointPermit = guard.acquire();
+        }
+
         try (InputStream in = requestMessage.getSoapContent()) {
             opMonitoringData.setRequestOutTs(getEpochMillisecond());
 
+            long begin = stageTimer.begin();
             httpSender.doPost(uri, in, CHUNKED_LENGTH, contentType);
+            stageTimer.end(Stage.SEND_REQUEST, begin);
 
             opMonitoringData.setResponseInTs(getEpochMillisecond());
+
+            if (serviceEndpointPermit != null) {
+                serviceEndpointPermit.success();
+            }
         } catch (Exception ex) {
             if (ex instanceof CodedException) {
                 opMonitoringData.setResponseInTs(getEpochMillisecond());
             }
 
+            if (serviceEndpointPermit != null) {
+                serviceEndpointPermit.failure();
+            }
+
             throw translateException(ex).withPrefix(X_SERVICE_FAILED_X);
         }
     }
 
+    private void releaseServiceEndpointPermit() {
+        if (serviceEndpointPermit != null) {
+            serviceEndpointPermit.release();
+            serviceEndpointPermit = null;
+        }
+    }
+
     private void parseResponse(ServiceHandler handler) throws Exception {
         log.trace("parseResponse()");
 
@@ -483,12 +562,14 @@ class ServerMessageProcessor extends MessageProcessorBase {
         // Preserve the original content type of the service response
         servletResponse.addHeader(HEADER_ORIGINAL_CONTENT_TYPE,
                 handler.getResponseContentType());
+        long begin = stageTimer.begin();
         try (SoapMessageHandler messageHandler = new SoapMessageHandler()) {
             SoapMessageDecoder soapMessageDecoder =
                     new SoapMessageDecoder(handler.getResponseContentType(),
                             messageHandler,
                             new ResponseSoapParserImpl());
             soapMessageDecoder.parse(handler.getResponseContent());
+            stageTimer.end(Stage.PARSE_RESPONSE, begin);
         } catch (Exception ex) {
             throw translateException(ex).withPrefix(X_SERVICE_FAILED_X);
         }
@@ -523,7 +604,9 @@ class ServerMessageProcessor extends MessageProcessorBase {
     private void sign() throws Exception {
         log.trace("sign({})", requestServiceId.getClientId());
 
+        long begin = stageTimer.begin();
         encoder.sign(responseSigningCtx);
+        stageTimer.end(Stage.SIGN, begin);
     }
 
     private void writeSignature() throws Exception {
@@ -654,8 +737,12 @@ class ServerMessageProcessor extends MessageProcessorBase {
 
         @Override
         public void finishHandling() throws Exception {
-            sender.close();
-            sender = null;
+            try {
+                sender.close();
+                sender = null;
+            } finally {
+                releaseServiceEndpointPermit();
+            }
         }
 
         @Override
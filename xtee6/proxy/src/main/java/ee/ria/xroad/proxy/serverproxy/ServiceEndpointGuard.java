@@ -0,0 +1,339 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.serverproxy;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.util.MetricRegistryHolder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static ee.ria.xroad.common.ErrorCodes.X_SERVICE_FAILED_X;
+import static ee.ria.xroad.common.ErrorCodes.X_SERVICE_OVERLOADED;
+import static ee.ria.xroad.common.ErrorCodes.X_SERVICE_UNAVAILABLE;
+import static ee.ria.xroad.common.util.TimeUtils.secondsToMillis;
+
+/**
+ * Protects a service address (host and port) of the provider information
+ * system from more requests than it can handle.
+ *
+ * The number of concurrent requests is limited. The limit starts at the
+ * configured maximum and adapts to the observed latency: it is decreased by
+ * a tenth (at most once per round trip) when a request fails or its response
+ * takes more than twice the lowest recently observed latency, and increased
+ * by one per limit's worth of fast responses while in use.
+ *
+ * After a number of consecutive failures the guard opens and requests are
+ * rejected without sending them. After the open time, one trial request is
+ * sent; its success closes the guard, its failure opens it again.
+ */
+@Slf4j
+final class ServiceEndpointGuard {
+
+    /** The state of the circuit. */
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final ConcurrentMap<String, ServiceEndpointGuard> GUARDS =
+            new ConcurrentHashMap<>();
+
+    private static final int HTTP_PORT = 80;
+    private static final int HTTPS_PORT = 443;
+
+    private static final double DECREASE_FACTOR = 0.9;
+
+    private static final int SLOW_LATENCY_FACTOR = 2;
+
+    // Latency differences below this are not considered slow.
+    private static final long LATENCY_TOLERANCE = 10;
+
+    // The lowest latency is forgotten after this many milliseconds.
+    private static final long MIN_LATENCY_PERIOD = 60000;
+
+    private final String endpoint;
+    private final int maxConcurrency;
+    private final int failureThreshold;
+    private final long openTime;
+    private final LongSupplier clock;
+
+    private final Meter rejected;
+
+    private double limit;
+    private int inFlight;
+
+    private long minLatency = -1;
+    private long minLatencyTime;
+    private long lastDecreaseTime = Long.MIN_VALUE;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedTime;
+    private boolean trialInFlight;
+
+    ServiceEndpointGuard(String endpoint, int maxConcurrency,
+            int failureThreshold, long openTime, LongSupplier clock) {
+        this.endpoint = endpoint;
+        this.maxConcurrency = maxConcurrency;
+        this.failureThreshold = failureThreshold;
+        this.openTime = openTime;
+        this.clock = clock;
+        this.limit = maxConcurrency;
+
+        MetricRegistry metrics = MetricRegistryHolder.getInstance().getMetrics();
+
+        this.rejected = metrics.meter(name(getClass(), endpoint, "rejected"));
+
+        register(metrics, "limit", (Gauge<Integer>) this::getLimit);
+        register(metrics, "inFlight", (Gauge<Integer>) this::getInFlight);
+        register(metrics, "state", (Gauge<String>) () -> getState().name());
+    }
+
+    /**
+     * Returns the guard of the service address, or null if neither the
+     * concurrency limit nor the failure threshold is configured.
+     * @param serviceAddress the service address
+     * @return the guard shared by all requests to the same host and port
+     */
+    static ServiceEndpointGuard getInstance(URI serviceAddress) {
+        int maxConcurrency =
+                SystemProperties.getServerProxyServiceMaxConcurrency();
+        int failureThreshold =
+                SystemProperties.getServerProxyServiceFailureThreshold();
+
+        if (maxConcurrency <= 0 && failureThreshold <= 0) {
+            return null;
+        }
+
+        return GUARDS.computeIfAbsent(getEndpoint(serviceAddress),
+                e -> new ServiceEndpointGuard(e, maxConcurrency,
+                        failureThreshold, secondsToMillis(
+                                SystemProperties.getServerProxyServiceOpenTime()),
+                        System::currentTimeMillis));
+    }
+
+    static String getEndpoint(URI serviceAddress) {
+        if (serviceAddress.getHost() == null) {
+            return serviceAddress.toString();
+        }
+
+        int port = serviceAddress.getPort();
+
+        if (port == -1) {
+            port = "https".equalsIgnoreCase(serviceAddress.getScheme())
+                    ? HTTPS_PORT : HTTP_PORT;
+        }
+
+        return serviceAddress.getScheme() + "://" + serviceAddress.getHost()
+                + ":" + port;
+    }
+
+    /**
+     * Reserves a place for a request to the service address.
+     * @return the permit that must be released when the request is done
+     * @throws CodedException if the request must not be sent
+     */
+    synchronized Permit acquire() {
+        boolean trial = false;
+
+        if (state == State.OPEN) {
+            if (clock.getAsLong() - openedTime < openTime) {
+                throw reject(X_SERVICE_UNAVAILABLE,
+                        "Service address %s failed %d consecutive times",
+                        endpoint, consecutiveFailures);
+            }
+
+            log.info("Sending trial request to service address {}", endpoint);
+
+            state = State.HALF_OPEN;
+        }
+
+        if (state == State.HALF_OPEN) {
+            if (trialInFlight) {
+                throw reject(X_SERVICE_UNAVAILABLE,
+                        "Service address %s is being tested for recovery",
+                        endpoint);
+            }
+
+            trial = true;
+        }
+
+        if (maxConcurrency > 0 && inFlight >= getLimit()) {
+            throw reject(X_SERVICE_OVERLOADED,
+                    "Service address %s has %d requests in progress",
+                    endpoint, inFlight);
+        }
+
+        trialInFlight |= trial;
+        inFlight++;
+
+        return new Permit(trial, clock.getAsLong());
+    }
+
+    synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    private synchronized void onSuccess(Permit permit) {
+        long now = clock.getAsLong();
+        long latency = now - permit.startTime;
+
+        if (minLatency < 0 || latency < minLatency
+                || now - minLatencyTime > MIN_LATENCY_PERIOD) {
+            minLatency = latency;
+            minLatencyTime = now;
+        }
+
+        if (latency > SLOW_LATENCY_FACTOR * minLatency + LATENCY_TOLERANCE) {
+            decreaseLimit(permit);
+        } else if (inFlight * 2 >= limit) {
+            limit = Math.min(maxConcurrency, limit + 1 / limit);
+        }
+
+        consecutiveFailures = 0;
+
+        if (permit.trial) {
+            log.info("Service address {} recovered", endpoint);
+
+            state = State.CLOSED;
+        }
+    }
+
+    private synchronized void onFailure(Permit permit) {
+        decreaseLimit(permit);
+
+        consecutiveFailures++;
+
+        if (permit.trial || (state == State.CLOSED && failureThreshold > 0
+                && consecutiveFailures >= failureThreshold)) {
+            log.warn("Service address {} failed {} consecutive times,"
+                    + " rejecting requests for {} ms", endpoint,
+                    consecutiveFailures, openTime);
+
+            state = State.OPEN;
+            openedTime = clock.getAsLong();
+        }
+    }
+
+    private synchronized void onRelease(Permit permit) {
+        inFlight--;
+
+        if (permit.trial) {
+            trialInFlight = false;
+
+            // The trial ended without a response, test again.
+            if (state == State.HALF_OPEN) {
+                state = State.OPEN;
+                openedTime = clock.getAsLong();
+            }
+        }
+    }
+
+    private void decreaseLimit(Permit permit) {
+        // Requests that were sent before the last decrease do not yet
+        // reflect its effect.
+        if (permit.startTime > lastDecreaseTime) {
+            limit = Math.max(1, limit * DECREASE_FACTOR);
+            lastDecreaseTime = clock.getAsLong();
+        }
+    }
+
+    private CodedException reject(String errorCode, String format,
+            Object... args) {
+        rejected.mark();
+
+        return new CodedException(errorCode, format, args)
+                .withPrefix(X_SERVICE_FAILED_X);
+    }
+
+    private void register(MetricRegistry metrics, String metric,
+            Gauge<?> gauge) {
+        String metricName = name(getClass(), endpoint, metric);
+
+        metrics.remove(metricName);
+        metrics.register(metricName, gauge);
+    }
+
+    /**
+     * Place of one request to the service address.
+     */
+    final class Permit {
+
+        private final boolean trial;
+        private final long startTime;
+
+        private boolean done;
+        private boolean released;
+
+        private Permit(boolean trial, long startTime) {
+            this.trial = trial;
+            this.startTime = startTime;
+        }
+
+        /**
+         * Records that the service address responded to the request.
+         */
+        void success() {
+            if (!done) {
+                done = true;
+                onSuccess(this);
+            }
+        }
+
+        /**
+         * Records that the request to the service address failed.
+         */
+        void failure() {
+            if (!done) {
+                done = true;
+                onFailure(this);
+            }
+        }
+
+        /**
+         * Frees the place of the request.
+         */
+        void release() {
+            if (!released) {
+                released = true;
+                onRelease(this);
+            }
+        }
+    }
+}
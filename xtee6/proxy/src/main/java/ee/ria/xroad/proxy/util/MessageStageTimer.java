@@ -0,0 +1,160 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.util;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.util.MetricRegistryHolder;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Measures the time spent in the stages of processing a single message.
+ * The elapsed times are accumulated per stage in slots allocated when the
+ * processing starts and are reported to a timer per pipeline and stage in
+ * the {@link MetricRegistryHolder} when the processing ends.
+ *
+ * Stage timing is enabled with the proxy.stage-timing-enabled system
+ * parameter. When it is disabled, all messages share an instance that
+ * does not read the clock or record anything.
+ */
+public final class MessageStageTimer {
+
+    /**
+     * The measured stages of processing a message. A stage can be entered
+     * several times during the processing of a message, for example the
+     * request and the response are both logged.
+     */
+    public enum Stage {
+        /** Reading and parsing the request SOAP message. */
+        PARSE_REQUEST,
+        /** Checking the client status and access rights. */
+        VERIFY_ACCESS,
+        /** Fetching the OCSP responses sent along with the request. */
+        GET_OCSP_RESPONSES,
+        /** Verifying the signature and certificates of a message. */
+        VERIFY_SIGNATURE,
+        /** Signing a message. */
+        SIGN,
+        /** Writing a message to the message log. */
+        LOG_MESSAGE,
+        /** Sending the request and waiting for the response headers. */
+        SEND_REQUEST,
+        /** Reading and parsing the response message. */
+        PARSE_RESPONSE,
+        /** Writing the response to the client. */
+        SEND_RESPONSE
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private static final boolean ENABLED =
+            SystemProperties.isProxyStageTimingEnabled();
+
+    private static final MessageStageTimer DISABLED =
+            new MessageStageTimer(null);
+
+    private static final Map<String, Timer[]> PIPELINE_TIMERS =
+            new ConcurrentHashMap<>();
+
+    private final Timer[] timers;
+    private final AtomicLongArray elapsed;
+
+    MessageStageTimer(Timer[] timers) {
+        this.timers = timers;
+        this.elapsed = timers != null ? new AtomicLongArray(STAGES.length)
+                : null;
+    }
+
+    /**
+     * Starts measuring the stages of processing a message.
+     * @param pipeline name of the message pipeline the stage timers are
+     * reported under
+     * @return the timer for the message
+     */
+    public static MessageStageTimer start(String pipeline) {
+        if (!ENABLED) {
+            return DISABLED;
+        }
+
+        return new MessageStageTimer(PIPELINE_TIMERS.computeIfAbsent(
+                pipeline, p -> createTimers(
+                        MetricRegistryHolder.getInstance().getMetrics(), p)));
+    }
+
+    /**
+     * Marks the beginning of a stage.
+     * @return the value to pass to {@link #end(Stage, long)} when the
+     * stage ends
+     */
+    public long begin() {
+        return timers != null ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Marks the end of a stage.
+     * @param stage the stage that ended
+     * @param begin the value returned by {@link #begin()} when the stage
+     * began
+     */
+    public void end(Stage stage, long begin) {
+        if (timers != null) {
+            elapsed.addAndGet(stage.ordinal(), System.nanoTime() - begin);
+        }
+    }
+
+    /**
+     * Reports the time spent in the stages entered during the processing
+     * of the message to the stage timers.
+     */
+    public void report() {
+        if (timers == null) {
+            return;
+        }
+
+        for (int i = 0; i < STAGES.length; i++) {
+            long nanos = elapsed.getAndSet(i, 0);
+            if (nanos > 0) {
+                timers[i].update(nanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    static Timer[] createTimers(MetricRegistry metrics, String pipeline) {
+        Timer[] timers = new Timer[STAGES.length];
+        for (Stage stage : STAGES) {
+            timers[stage.ordinal()] = metrics.timer(name(
+                    MessageStageTimer.class, pipeline,
+                    stage.name().toLowerCase(Locale.ENGLISH)));
+        }
+
+        return timers;
+    }
+}
@@ -40,8 +40,10 @@ import ee.ria.xroad.common.TestSecurityUtil;
 import ee.ria.xroad.common.util.CryptoUtils;
 import ee.ria.xroad.common.util.MessageFileNames;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Test to verify correct signature builder behavior.
@@ -129,6 +131,44 @@ public class SignatureBuilderTest {
         assertNotNull(data.getHashChain());
     }
 
+    /**
+     * Test to ensure signatures built with a shared template contain
+     * the template certificates and OCSP responses.
+     * @throws Exception in case of any unexpected error
+     */
+    @Test
+    public void buildSuccessfullyWithSharedTemplate() throws Exception {
+        OCSPResp ocsp = OcspTestUtils.createOCSPResponse(
+                subjectCert, issuerCert, signerCert,
+                signerKey, CertificateStatus.GOOD);
+
+        SignatureTemplate template = new SignatureTemplate(subjectCert,
+                Collections.singletonList(issuerCert),
+                Collections.singletonList(ocsp));
+
+        assertTrue(template.matches(subjectCert,
+                Collections.singletonList(issuerCert),
+                Collections.singletonList(ocsp)));
+        assertFalse(template.matches(subjectCert,
+                Collections.emptyList(), Collections.singletonList(ocsp)));
+
+        for (int i = 0; i < 2; i++) {
+            SignatureBuilder builder = new SignatureBuilder();
+            builder.addPart(new MessagePart(MessageFileNames.MESSAGE,
+                    CryptoUtils.SHA512_ID, hash("xxx"), hash("xxx")));
+            builder.setTemplate(template);
+
+            SignatureData data = builder.build(new TestSigningKey(subjectKey),
+                    CryptoUtils.SHA512WITHRSA_ID);
+
+            String xml = data.getSignatureXml();
+            assertTrue(xml.contains(
+                    CryptoUtils.encodeBase64(ocsp.getEncoded())));
+            assertTrue(xml.contains(
+                    CryptoUtils.encodeBase64(issuerCert.getEncoded())));
+        }
+    }
+
     private static byte[] hash(String input) {
         return input.getBytes();
     }
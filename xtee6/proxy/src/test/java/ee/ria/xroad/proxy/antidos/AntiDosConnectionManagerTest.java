@@ -22,6 +22,7 @@
  */
 package ee.ria.xroad.proxy.antidos;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
@@ -154,6 +155,73 @@ public class AntiDosConnectionManagerTest {
         cm.assertEmpty();
     }
 
+    /**
+     * Test to ensure a partner is buffered only once regardless of the
+     * number of its waiting connections.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void partnerBufferedOnce() throws Exception {
+        TestConfiguration conf = new TestConfiguration(5, 1.1);
+
+        TestSystemMetrics sm = new TestSystemMetrics();
+        sm.addLoad(7, 0.1);
+
+        TestSocketChannel member1 = createConnection("test1");
+
+        TestConnectionManager cm = createConnectionManager(conf, sm);
+        cm.accept(member1, member1, member1);
+
+        assertEquals(1, cm.numActivePartners());
+
+        cm.assertConnections(member1, member1, member1);
+        cm.assertEmpty();
+
+        cm.accept(member1);
+
+        assertEquals(1, cm.numActivePartners());
+    }
+
+    /**
+     * Test to ensure the known addresses are indexed again when
+     * the global configuration changes.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void knownAddressesChange() throws Exception {
+        TestConfiguration conf = new TestConfiguration(5, 1.1);
+
+        TestSystemMetrics sm = new TestSystemMetrics();
+        sm.addLoad(7, 0.1);
+
+        TestSocketChannel member4 = createConnection("test4");
+        TestSocketChannel attacker1 = createConnection("attacker1");
+
+        TestConnectionManager cm = createConnectionManager(conf, sm);
+
+        long version = cm.databaseVersion;
+
+        cm.syncDatabase();
+        assertEquals(version, cm.databaseVersion);
+
+        // Before the change, member4 shares the queue of unknown addresses
+        cm.accept(attacker1, attacker1, member4);
+        cm.assertConnections(attacker1, attacker1, member4);
+
+        KNOWN_ADDRESSES.add("test4");
+        try {
+            cm.syncDatabase();
+            assertEquals(version + 1, cm.databaseVersion);
+
+            cm.accept(attacker1, attacker1, member4);
+            cm.assertConnections(attacker1, member4, attacker1);
+
+            cm.assertEmpty();
+        } finally {
+            KNOWN_ADDRESSES.remove("test4");
+        }
+    }
+
     // ------------------------------------------------------------------------
 
     private static TestConnectionManager createConnectionManager(
@@ -39,6 +39,7 @@ class TestConnectionManager
     protected TestSocketChannel getNextConnection()
             throws InterruptedException {
         systemMetrics.next();
+        sampleResources();
 
         return super.getNextConnection();
     }
@@ -0,0 +1,193 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.junit.Before;
+import org.junit.Test;
+
+import ee.ria.xroad.common.OcspTestUtils;
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.identifier.ClientId;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the cache of verified authentication certificates.
+ */
+public class AuthCertVerificationCacheTest {
+
+    private static final int CACHE_PERIOD = 60;
+    private static final int OCSP_FRESHNESS = 3600;
+
+    private static final ClientId PROVIDER =
+            ClientId.create("EE", "BUSINESS", "producer");
+    private static final ClientId OTHER_PROVIDER =
+            ClientId.create("EE", "BUSINESS", "other");
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private X509Certificate cert;
+    private AuthCertVerificationCache cache;
+
+    /**
+     * Sets the clock within the validity of the test certificate.
+     */
+    @Before
+    public void setUp() {
+        cert = TestCertUtil.getProducer().cert;
+        clock.set(cert.getNotBefore().getTime() + 1000);
+
+        cache = new AuthCertVerificationCache(2, clock::get);
+    }
+
+    /**
+     * Test that a verification is found for the same certificate and
+     * service provider only.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void cachedVerification() throws Exception {
+        assertFalse(cache.isVerified("a", PROVIDER));
+
+        put("a", PROVIDER, ocsp(0, null), CACHE_PERIOD);
+
+        assertTrue(cache.isVerified("a", PROVIDER));
+        assertFalse(cache.isVerified("a", OTHER_PROVIDER));
+        assertFalse(cache.isVerified("b", PROVIDER));
+    }
+
+    /**
+     * Test that verifications are not cached when the cache period is 0.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void cacheDisabled() throws Exception {
+        put("a", PROVIDER, ocsp(0, null), 0);
+
+        assertFalse(cache.isVerified("a", PROVIDER));
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * Test that a verification expires at the end of the cache period and
+     * the expired verification is dropped.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void expiresAfterCachePeriod() throws Exception {
+        put("a", PROVIDER, ocsp(0, null), CACHE_PERIOD);
+
+        clock.addAndGet(CACHE_PERIOD * 1000L - 1);
+        assertTrue(cache.isVerified("a", PROVIDER));
+
+        clock.incrementAndGet();
+        assertFalse(cache.isVerified("a", PROVIDER));
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * Test that a verification expires when an OCSP response used in it is
+     * no longer fresh.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void expiresWithOcspFreshness() throws Exception {
+        // thisUpdate is 10 seconds short of the freshness limit
+        put("a", PROVIDER, ocsp(10 - OCSP_FRESHNESS, null), CACHE_PERIOD);
+
+        clock.addAndGet(9000);
+        assertTrue(cache.isVerified("a", PROVIDER));
+
+        clock.addAndGet(1000);
+        assertFalse(cache.isVerified("a", PROVIDER));
+    }
+
+    /**
+     * Test that a verification expires at the next update of an OCSP
+     * response used in it.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void expiresAtOcspNextUpdate() throws Exception {
+        put("a", PROVIDER, ocsp(0, 5), CACHE_PERIOD);
+
+        clock.addAndGet(4000);
+        assertTrue(cache.isVerified("a", PROVIDER));
+
+        clock.addAndGet(1000);
+        assertFalse(cache.isVerified("a", PROVIDER));
+    }
+
+    /**
+     * Test that all verifications are dropped when the cache is full.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void clearedWhenFull() throws Exception {
+        put("a", PROVIDER, ocsp(0, null), CACHE_PERIOD);
+        put("b", PROVIDER, ocsp(0, null), CACHE_PERIOD);
+
+        assertEquals(2, cache.size());
+
+        put("c", PROVIDER, ocsp(0, null), CACHE_PERIOD);
+
+        assertEquals(1, cache.size());
+        assertFalse(cache.isVerified("a", PROVIDER));
+        assertFalse(cache.isVerified("b", PROVIDER));
+        assertTrue(cache.isVerified("c", PROVIDER));
+    }
+
+    private void put(String certHash, ClientId serviceProvider,
+            OCSPResp ocsp, int cachePeriod) throws Exception {
+        List<OCSPResp> ocspResponses = Collections.singletonList(ocsp);
+
+        cache.put(certHash, serviceProvider, cert, ocspResponses,
+                cachePeriod, OCSP_FRESHNESS);
+    }
+
+    /**
+     * Creates an OCSP response with thisUpdate and nextUpdate given in
+     * seconds from the current time.
+     */
+    private OCSPResp ocsp(int thisUpdate, Integer nextUpdate)
+            throws Exception {
+        Date now = new Date(clock.get());
+
+        return OcspTestUtils.createOCSPResponse(cert,
+                TestCertUtil.getCaCert(), TestCertUtil.getOcspSigner().cert,
+                TestCertUtil.getOcspSigner().key, CertificateStatus.GOOD,
+                new Date(now.getTime() + thisUpdate * 1000L),
+                nextUpdate != null
+                        ? new Date(now.getTime() + nextUpdate * 1000L) : null);
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.proxy.clientproxy.FastestSocketSelector.SocketInfo;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the latency and failure tracking of target hosts.
+ */
+public class TargetHostHealthTest {
+
+    private static final long RACE_INTERVAL = 300000;
+
+    private static final URI HOST1 = URI.create("https://10.0.0.1:5500");
+    private static final URI HOST2 = URI.create("https://10.0.0.2:5500");
+    private static final URI HOST3 = URI.create("https://10.0.0.3:5500");
+
+    private static final URI[] HOSTS = {HOST1, HOST2, HOST3};
+
+    private final AtomicLong clock = new AtomicLong(1000);
+
+    private final TargetHostHealth health =
+            new TargetHostHealth(RACE_INTERVAL, clock::get);
+
+    /**
+     * Test that hosts are raced until one of them has been measured and
+     * that unmeasured hosts are ranked after the measured ones.
+     */
+    @Test
+    public void rankUnmeasuredHostsLast() {
+        assertNull(health.rank(HOSTS));
+
+        health.raced(HOSTS);
+        health.connected(HOST2, 5);
+
+        assertArrayEquals(new URI[] {HOST2, HOST1, HOST3}, health.rank(HOSTS));
+
+        health.connected(HOST3, 1);
+
+        assertArrayEquals(new URI[] {HOST3, HOST2, HOST1}, health.rank(HOSTS));
+
+        health.failed(HOST1);
+
+        assertArrayEquals(new URI[] {HOST3, HOST2}, health.rank(HOSTS));
+    }
+
+    /**
+     * Test that after racing a reachable and an unreachable host, the
+     * following connections use the ranking instead of racing again.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void rankAfterRaceWithDeadHost() throws Exception {
+        URI dead;
+        try (ServerSocket closed = new ServerSocket(0)) {
+            dead = URI.create("https://127.0.0.1:" + closed.getLocalPort());
+        }
+
+        try (ServerSocket server = new ServerSocket(0)) {
+            URI live = URI.create("https://127.0.0.1:" + server.getLocalPort());
+            URI[] hosts = {dead, live};
+
+            assertNull(health.rank(hosts));
+
+            health.raced(hosts);
+
+            SocketInfo selected = new FastestSocketSelector(hosts, 1000).select();
+            try {
+                assertEquals(live, selected.getUri());
+
+                health.connected(selected.getUri(), 1);
+            } finally {
+                IOUtils.closeQuietly(selected.getSocket());
+            }
+
+            assertArrayEquals(new URI[] {live, dead}, health.rank(hosts));
+        }
+    }
+
+    /**
+     * Test that a single host is never raced.
+     */
+    @Test
+    public void singleHost() {
+        URI[] hosts = {HOST1};
+
+        assertArrayEquals(hosts, health.rank(hosts));
+    }
+
+    /**
+     * Test that response times affect the ranking.
+     */
+    @Test
+    public void rankByResponseTime() {
+        measureAll();
+
+        health.responded(HOST1, 500);
+        health.responded(HOST2, 100);
+        health.responded(HOST3, 100);
+
+        assertArrayEquals(new URI[] {HOST2, HOST3, HOST1}, health.rank(HOSTS));
+    }
+
+    /**
+     * Test that the averages follow the latest samples.
+     */
+    @Test
+    public void movingAverage() {
+        health.connected(HOST1, 100);
+
+        assertEquals(100, health.getHost(HOST1).getConnectTime(), 0.001);
+
+        health.connected(HOST1, 200);
+
+        assertEquals(130, health.getHost(HOST1).getConnectTime(), 0.001);
+    }
+
+    /**
+     * Test that failed hosts are left out for a doubling backoff period and
+     * that all hosts are raced when every one of them is backing off.
+     */
+    @Test
+    public void backoffAfterFailure() {
+        measureAll();
+
+        health.failed(HOST1);
+
+        assertArrayEquals(new URI[] {HOST2, HOST3}, health.rank(HOSTS));
+
+        clock.addAndGet(1000);
+
+        assertArrayEquals(new URI[] {HOST1, HOST2, HOST3}, health.rank(HOSTS));
+
+        health.failed(HOST1);
+        clock.addAndGet(1000);
+
+        assertArrayEquals(new URI[] {HOST2, HOST3}, health.rank(HOSTS));
+
+        health.failed(HOST2);
+        health.failed(HOST3);
+
+        assertNull(health.rank(HOSTS));
+        assertEquals(2, health.getHost(HOST1).getFailures());
+
+        health.connected(HOST1, 1);
+        health.connected(HOST2, 1);
+        health.connected(HOST3, 1);
+
+        assertNotNull(health.rank(HOSTS));
+    }
+
+    /**
+     * Test that the hosts are raced again periodically, by one request only.
+     */
+    @Test
+    public void periodicRace() {
+        measureAll();
+
+        clock.addAndGet(RACE_INTERVAL - 1);
+
+        assertNotNull(health.rank(HOSTS));
+
+        clock.incrementAndGet();
+
+        assertNull(health.rank(HOSTS));
+        assertNotNull(health.rank(HOSTS));
+
+        health.raced(HOSTS);
+
+        assertNotNull(health.rank(HOSTS));
+    }
+
+    private void measureAll() {
+        health.rank(HOSTS);
+        health.raced(HOSTS);
+
+        health.connected(HOST1, 1);
+        health.connected(HOST2, 2);
+        health.connected(HOST3, 3);
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.conf;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.joda.time.DateTime;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ee.ria.xroad.common.OcspTestUtils;
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.conf.globalconf.EmptyGlobalConf;
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests computing the staleness time of the OCSP responses of cached info.
+ */
+public class AbstractCachedInfoTest {
+
+    private static final int OCSP_FRESHNESS = 600;
+
+    // OCSP responses carry their dates with second precision
+    private final DateTime now = new DateTime().withMillisOfSecond(0);
+
+    /**
+     * Sets the OCSP freshness of the global configuration.
+     */
+    @BeforeClass
+    public static void reloadGlobalConf() {
+        GlobalConf.reload(new EmptyGlobalConf() {
+            @Override
+            public int getOcspFreshnessSeconds(boolean smallestValue) {
+                return OCSP_FRESHNESS;
+            }
+        });
+    }
+
+    /**
+     * Test that a response is stale when its freshness period is over,
+     * if that comes before its nextUpdate.
+     */
+    @Test
+    public void staleAfterFreshnessPeriod() throws Exception {
+        DateTime thisUpdate = now.minusSeconds(100);
+
+        TestInfo info = new TestInfo(
+                ocsp(thisUpdate, now.plusSeconds(OCSP_FRESHNESS)));
+
+        assertEquals(thisUpdate.plusSeconds(OCSP_FRESHNESS).toDate(),
+                info.getOcspStaleAt());
+    }
+
+    /**
+     * Test that a response is stale at its nextUpdate, if that comes
+     * before the end of its freshness period.
+     */
+    @Test
+    public void staleAtNextUpdate() throws Exception {
+        DateTime nextUpdate = now.plusSeconds(60);
+
+        TestInfo info = new TestInfo(ocsp(now, nextUpdate));
+
+        assertEquals(nextUpdate.toDate(), info.getOcspStaleAt());
+    }
+
+    /**
+     * Test that a response without nextUpdate is stale when its freshness
+     * period is over.
+     */
+    @Test
+    public void noNextUpdate() throws Exception {
+        TestInfo info = new TestInfo(ocsp(now, null));
+
+        assertEquals(now.plusSeconds(OCSP_FRESHNESS).toDate(),
+                info.getOcspStaleAt());
+    }
+
+    /**
+     * Test that the info is stale when the first of its responses is.
+     */
+    @Test
+    public void earliestResponseWins() throws Exception {
+        DateTime nextUpdate = now.plusSeconds(120);
+
+        TestInfo info = new TestInfo(
+                ocsp(now, null),
+                ocsp(now.minusSeconds(60), nextUpdate),
+                ocsp(now.minusSeconds(30), now.plusSeconds(300)));
+
+        assertEquals(nextUpdate.toDate(), info.getOcspStaleAt());
+    }
+
+    /**
+     * Test that info without responses never goes stale.
+     */
+    @Test
+    public void noResponses() {
+        assertNull(new TestInfo().getOcspStaleAt());
+    }
+
+    private static OCSPResp ocsp(DateTime thisUpdate, DateTime nextUpdate)
+            throws Exception {
+        return OcspTestUtils.createOCSPResponse(
+                TestCertUtil.getProducer().cert, TestCertUtil.getCaCert(),
+                TestCertUtil.getOcspSigner().cert,
+                TestCertUtil.getOcspSigner().key, CertificateStatus.GOOD,
+                thisUpdate.toDate(),
+                nextUpdate != null ? nextUpdate.toDate() : null);
+    }
+
+    private static final class TestInfo extends AbstractCachedInfo {
+
+        private final List<OCSPResp> ocspResponses;
+
+        TestInfo(OCSPResp... ocspResponses) {
+            this.ocspResponses = Arrays.asList(ocspResponses);
+        }
+
+        @Override
+        boolean verifyValidity(Date atDate) {
+            return true;
+        }
+
+        @Override
+        List<OCSPResp> getOcspResponses() {
+            return ocspResponses;
+        }
+    }
+}
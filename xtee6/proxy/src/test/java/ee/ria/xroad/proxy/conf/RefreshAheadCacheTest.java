@@ -0,0 +1,296 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.conf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the refresh-ahead cache of signing and authentication info.
+ */
+public class RefreshAheadCacheTest {
+
+    private static final int CACHE_PERIOD = 300;
+    private static final int REFRESH_AHEAD = 60;
+
+    // The cached info in the refresh tests is made to look old right after
+    // loading, so the minimum refresh interval is not applied
+    private static final int NO_MIN_REFRESH_INTERVAL = 0;
+
+    private static final String KEY = "member";
+
+    /**
+     * Test that concurrent requests for missing info share a single load.
+     */
+    @Test
+    public void concurrentMissesLoadOnce() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loadCount = new AtomicInteger();
+
+        RefreshAheadCache<String, TestInfo> cache = new RefreshAheadCache<>(
+                key -> {
+                    loadCount.incrementAndGet();
+                    release.await();
+                    return new TestInfo(0);
+                }, CACHE_PERIOD, REFRESH_AHEAD);
+
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+        try {
+            List<Future<TestInfo>> results = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                results.add(executor.submit(() -> cache.get(KEY)));
+            }
+
+            Thread.sleep(100);
+            release.countDown();
+
+            TestInfo first = results.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<TestInfo> result : results) {
+                assertSame(first, result.get(5, TimeUnit.SECONDS));
+            }
+
+            assertEquals(1, loadCount.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Test that info close to its expiry is returned while it is refreshed
+     * in the background.
+     */
+    @Test
+    public void refreshesAheadOfExpiry() throws Exception {
+        TestInfo old = new TestInfo(CACHE_PERIOD - REFRESH_AHEAD + 1);
+        TestInfo fresh = new TestInfo(0);
+        CountDownLatch release = new CountDownLatch(1);
+
+        RefreshAheadCache<String, TestInfo> cache = new RefreshAheadCache<>(
+                loader(old, () -> {
+                    release.await();
+                    return fresh;
+                }), CACHE_PERIOD, REFRESH_AHEAD, NO_MIN_REFRESH_INTERVAL);
+
+        assertSame(old, cache.get(KEY));
+
+        // The refresh is in flight, the old info is returned meanwhile
+        assertSame(old, cache.get(KEY));
+
+        release.countDown();
+        assertSame(fresh, awaitInfo(cache, fresh));
+    }
+
+    /**
+     * Test that info is refreshed ahead of its OCSP responses going stale.
+     */
+    @Test
+    public void refreshesAheadOfOcspStaleness() throws Exception {
+        TestInfo old = new TestInfo(30);
+        old.ocspStaleAt = new DateTime().plusSeconds(REFRESH_AHEAD - 1)
+                .toDate();
+        TestInfo fresh = new TestInfo(0);
+
+        RefreshAheadCache<String, TestInfo> cache = new RefreshAheadCache<>(
+                loader(old, () -> fresh), CACHE_PERIOD, REFRESH_AHEAD,
+                NO_MIN_REFRESH_INTERVAL);
+
+        assertSame(old, cache.get(KEY));
+        assertSame(fresh, awaitInfo(cache, fresh));
+    }
+
+    /**
+     * Test that a failed refresh is not retried on every request, but only
+     * after the minimum refresh interval has passed since the last attempt.
+     */
+    @Test
+    public void failedRefreshIsThrottled() throws Exception {
+        TestInfo old = new TestInfo(CACHE_PERIOD - REFRESH_AHEAD + 1);
+        AtomicInteger loadCount = new AtomicInteger();
+
+        RefreshAheadCache<String, TestInfo> cache = new RefreshAheadCache<>(
+                key -> {
+                    if (loadCount.getAndIncrement() == 0) {
+                        return old;
+                    }
+
+                    throw new Exception("Signer is not available");
+                }, CACHE_PERIOD, REFRESH_AHEAD, 1);
+
+        assertSame(old, cache.get(KEY));
+
+        Thread.sleep(1100);
+
+        // Starts a refresh that fails, the old info is returned meanwhile
+        assertSame(old, cache.get(KEY));
+        Thread.sleep(100);
+
+        for (int i = 0; i < 10; i++) {
+            assertSame(old, cache.get(KEY));
+        }
+
+        Thread.sleep(100);
+        assertEquals(2, loadCount.get());
+
+        Thread.sleep(1000);
+
+        assertSame(old, cache.get(KEY));
+        Thread.sleep(100);
+        assertEquals(3, loadCount.get());
+    }
+
+    /**
+     * Test that info that is neither expiring nor stale is not refreshed.
+     */
+    @Test
+    public void doesNotRefreshValidInfo() throws Exception {
+        TestInfo info = new TestInfo(30);
+        info.ocspStaleAt = new DateTime().plusSeconds(REFRESH_AHEAD + 60)
+                .toDate();
+        AtomicInteger loadCount = new AtomicInteger();
+
+        RefreshAheadCache<String, TestInfo> cache = new RefreshAheadCache<>(
+                key -> {
+                    loadCount.incrementAndGet();
+                    return info;
+                }, CACHE_PERIOD, REFRESH_AHEAD);
+
+        for (int i = 0; i < 10; i++) {
+            assertSame(info, cache.get(KEY));
+        }
+
+        Thread.sleep(100);
+        assertEquals(1, loadCount.get());
+    }
+
+    /**
+     * Test that expired and invalid info is reloaded before returning.
+     */
+    @Test
+    public void reloadsExpiredAndInvalidInfo() throws Exception {
+        TestInfo expired = new TestInfo(CACHE_PERIOD + 1);
+        TestInfo invalid = new TestInfo(0);
+        invalid.valid = false;
+        TestInfo fresh = new TestInfo(0);
+
+        List<TestInfo> infos = new ArrayList<>();
+        Collections.addAll(infos, expired, invalid, fresh);
+
+        RefreshAheadCache<String, TestInfo> cache = new RefreshAheadCache<>(
+                key -> infos.remove(0), CACHE_PERIOD, REFRESH_AHEAD);
+
+        // The first load returns expired info to the waiting caller
+        assertSame(expired, cache.get(KEY));
+        assertSame(invalid, cache.get(KEY));
+        assertSame(fresh, cache.get(KEY));
+        assertSame(fresh, cache.get(KEY));
+    }
+
+    /**
+     * Test that invalidation discards the cached info.
+     */
+    @Test
+    public void invalidateAll() throws Exception {
+        AtomicInteger loadCount = new AtomicInteger();
+
+        RefreshAheadCache<String, TestInfo> cache = new RefreshAheadCache<>(
+                key -> {
+                    loadCount.incrementAndGet();
+                    return new TestInfo(0);
+                }, CACHE_PERIOD, REFRESH_AHEAD);
+
+        TestInfo first = cache.get(KEY);
+        cache.invalidateAll();
+
+        assertTrue(first != cache.get(KEY));
+        assertEquals(2, loadCount.get());
+    }
+
+    private static RefreshAheadCache.Loader<String, TestInfo> loader(
+            TestInfo first, Callable<TestInfo> next) {
+        AtomicInteger loadCount = new AtomicInteger();
+
+        return key -> loadCount.getAndIncrement() == 0 ? first : next.call();
+    }
+
+    private static TestInfo awaitInfo(RefreshAheadCache<String, TestInfo> cache,
+            TestInfo expected) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+
+        TestInfo info = cache.get(KEY);
+        while (info != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            info = cache.get(KEY);
+        }
+
+        return info;
+    }
+
+    private static final class TestInfo extends AbstractCachedInfo {
+
+        private final DateTime createdAt;
+
+        private volatile boolean valid = true;
+        private volatile Date ocspStaleAt;
+
+        TestInfo(int ageSeconds) {
+            this.createdAt = new DateTime().minusSeconds(ageSeconds);
+        }
+
+        @Override
+        public DateTime getCreatedAt() {
+            return createdAt;
+        }
+
+        @Override
+        boolean verifyValidity(Date atDate) {
+            return valid;
+        }
+
+        @Override
+        List<OCSPResp> getOcspResponses() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        Date getOcspStaleAt() {
+            return ocspStaleAt;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.serverproxy;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the token bucket rate limiting of requests.
+ */
+public class RequestRateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong clock = new AtomicLong(-SECOND);
+
+    /**
+     * Test that a disabled limiter accepts all requests.
+     */
+    @Test
+    public void disabled() {
+        RequestRateLimiter<String> limiter = createLimiter(0);
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(limiter.tryAcquire("a"));
+        }
+
+        assertEquals(0, limiter.getBucketCount());
+    }
+
+    /**
+     * Test that a burst of one second's worth of requests is accepted and
+     * the bucket is refilled at the configured rate.
+     */
+    @Test
+    public void burstAndRefill() {
+        RequestRateLimiter<String> limiter = createLimiter(10);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire("a"));
+        }
+
+        assertFalse(limiter.tryAcquire("a"));
+
+        clock.addAndGet(SECOND / 10);
+
+        assertTrue(limiter.tryAcquire("a"));
+        assertFalse(limiter.tryAcquire("a"));
+
+        clock.addAndGet(SECOND);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire("a"));
+        }
+
+        assertFalse(limiter.tryAcquire("a"));
+    }
+
+    /**
+     * Test that the keys have separate buckets.
+     */
+    @Test
+    public void separateKeys() {
+        RequestRateLimiter<String> limiter = createLimiter(1);
+
+        assertTrue(limiter.tryAcquire("a"));
+        assertFalse(limiter.tryAcquire("a"));
+
+        assertTrue(limiter.tryAcquire("b"));
+        assertFalse(limiter.tryAcquire("b"));
+
+        assertEquals(2, limiter.getBucketCount());
+    }
+
+    /**
+     * Test that full buckets are swept when there are many keys, but at most
+     * once per sweep interval.
+     */
+    @Test
+    public void sweepOncePerInterval() {
+        RequestRateLimiter<String> limiter = createLimiter(10);
+
+        addKeys(limiter, "a", 10000);
+
+        clock.addAndGet(SECOND / 2);
+
+        assertTrue(limiter.tryAcquire("b"));
+        assertEquals(1, limiter.getBucketCount());
+
+        addKeys(limiter, "c", 9999);
+
+        clock.addAndGet(SECOND / 2);
+
+        assertTrue(limiter.tryAcquire("d"));
+        assertEquals(10001, limiter.getBucketCount());
+
+        clock.addAndGet(SECOND);
+
+        assertTrue(limiter.tryAcquire("e"));
+        assertEquals(1, limiter.getBucketCount());
+    }
+
+    /**
+     * Test that the limit holds when requests come from several threads.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void concurrentRequests() throws Exception {
+        RequestRateLimiter<String> limiter = createLimiter(100);
+
+        AtomicLong acceptedCount = new AtomicLong();
+
+        Thread[] threads = new Thread[4];
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 100; j++) {
+                    if (limiter.tryAcquire("a")) {
+                        acceptedCount.incrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(100, acceptedCount.get());
+    }
+
+    private static void addKeys(RequestRateLimiter<String> limiter,
+            String prefix, int count) {
+        for (int i = 0; i < count; i++) {
+            assertTrue(limiter.tryAcquire(prefix + i));
+        }
+    }
+
+    private RequestRateLimiter<String> createLimiter(int rate) {
+        return new RequestRateLimiter<>("test", rate, clock::get);
+    }
+}
@@ -0,0 +1,260 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.serverproxy;
+
+import ee.ria.xroad.common.ExpectedCodedException;
+import ee.ria.xroad.proxy.serverproxy.ServiceEndpointGuard.Permit;
+import ee.ria.xroad.proxy.serverproxy.ServiceEndpointGuard.State;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static ee.ria.xroad.common.ErrorCodes.X_SERVICE_FAILED_X;
+import static ee.ria.xroad.common.ErrorCodes.X_SERVICE_OVERLOADED;
+import static ee.ria.xroad.common.ErrorCodes.X_SERVICE_UNAVAILABLE;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the concurrency limit and circuit breaker of service addresses.
+ */
+public class ServiceEndpointGuardTest {
+
+    private static final long OPEN_TIME = 30000;
+
+    private final AtomicLong clock = new AtomicLong(1000);
+
+    @Rule
+    public ExpectedCodedException thrown = ExpectedCodedException.none();
+
+    /**
+     * Test that requests over the limit are rejected.
+     */
+    @Test
+    public void rejectRequestsOverLimit() {
+        ServiceEndpointGuard guard = createGuard(2, 0);
+
+        guard.acquire();
+        guard.acquire();
+
+        assertEquals(2, guard.getInFlight());
+
+        thrown.expectError(X_SERVICE_FAILED_X, X_SERVICE_OVERLOADED);
+        guard.acquire();
+    }
+
+    /**
+     * Test that a released place can be reused.
+     */
+    @Test
+    public void reuseReleasedPlace() {
+        ServiceEndpointGuard guard = createGuard(1, 0);
+
+        Permit permit = guard.acquire();
+        permit.success();
+        permit.release();
+        permit.release();
+
+        assertEquals(0, guard.getInFlight());
+
+        guard.acquire();
+    }
+
+    /**
+     * Test that slow responses decrease the limit once per round trip
+     * and fast responses increase it again.
+     */
+    @Test
+    public void adaptLimitToLatency() {
+        ServiceEndpointGuard guard = createGuard(100, 0);
+
+        complete(guard.acquire(), 10);
+        assertEquals(100, guard.getLimit());
+
+        List<Permit> permits = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            permits.add(guard.acquire());
+        }
+
+        clock.addAndGet(500);
+
+        // All requests were sent before the first decrease.
+        for (Permit permit : permits) {
+            permit.success();
+            permit.release();
+        }
+
+        assertEquals(90, guard.getLimit());
+
+        clock.incrementAndGet();
+
+        complete(guard.acquire(), 500);
+        assertEquals(81, guard.getLimit());
+
+        // Two rounds of fast responses while the limit is in full use.
+        for (int round = 0; round < 2; round++) {
+            permits.clear();
+
+            for (int i = 0; i < 81; i++) {
+                permits.add(guard.acquire());
+            }
+
+            for (Permit permit : permits) {
+                permit.success();
+            }
+
+            for (Permit permit : permits) {
+                permit.release();
+            }
+        }
+
+        assertEquals(82, guard.getLimit());
+    }
+
+    /**
+     * Test that the limit is never decreased below one.
+     */
+    @Test
+    public void keepLimitAboveZero() {
+        ServiceEndpointGuard guard = createGuard(1, 0);
+
+        complete(guard.acquire(), 10);
+        complete(guard.acquire(), 1000);
+
+        assertEquals(1, guard.getLimit());
+    }
+
+    /**
+     * Test that consecutive failures open the circuit, requests are rejected
+     * while it is open and a successful trial request closes it.
+     */
+    @Test
+    public void openAndCloseCircuit() {
+        ServiceEndpointGuard guard = createGuard(0, 3);
+
+        fail(guard.acquire());
+        fail(guard.acquire());
+        complete(guard.acquire(), 10);
+        fail(guard.acquire());
+        fail(guard.acquire());
+
+        assertEquals(State.CLOSED, guard.getState());
+
+        fail(guard.acquire());
+
+        assertEquals(State.OPEN, guard.getState());
+
+        clock.addAndGet(OPEN_TIME);
+
+        Permit trial = guard.acquire();
+
+        assertEquals(State.HALF_OPEN, guard.getState());
+
+        complete(trial, 10);
+
+        assertEquals(State.CLOSED, guard.getState());
+
+        guard.acquire();
+    }
+
+    /**
+     * Test that requests are rejected while the circuit is open.
+     */
+    @Test
+    public void rejectRequestsWhileOpen() {
+        ServiceEndpointGuard guard = createGuard(0, 1);
+
+        fail(guard.acquire());
+
+        clock.addAndGet(OPEN_TIME - 1);
+
+        thrown.expectError(X_SERVICE_FAILED_X, X_SERVICE_UNAVAILABLE);
+        guard.acquire();
+    }
+
+    /**
+     * Test that only one trial request is sent and its failure opens
+     * the circuit again.
+     */
+    @Test
+    public void reopenCircuitAfterFailedTrial() {
+        ServiceEndpointGuard guard = createGuard(0, 1);
+
+        fail(guard.acquire());
+
+        clock.addAndGet(OPEN_TIME);
+
+        Permit trial = guard.acquire();
+
+        try {
+            guard.acquire();
+        } catch (Exception expected) {
+            // Only one trial request at a time.
+        }
+
+        fail(trial);
+
+        assertEquals(State.OPEN, guard.getState());
+
+        thrown.expectError(X_SERVICE_FAILED_X, X_SERVICE_UNAVAILABLE);
+        guard.acquire();
+    }
+
+    /**
+     * Test that service addresses are grouped by host and port.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void getEndpoint() throws Exception {
+        assertEquals("http://localhost:80", ServiceEndpointGuard.getEndpoint(
+                new URI("http://localhost/service")));
+        assertEquals("https://localhost:443", ServiceEndpointGuard.getEndpoint(
+                new URI("https://localhost/service?wsdl")));
+        assertEquals("http://localhost:8080", ServiceEndpointGuard.getEndpoint(
+                new URI("http://localhost:8080")));
+    }
+
+    private ServiceEndpointGuard createGuard(int maxConcurrency,
+            int failureThreshold) {
+        return new ServiceEndpointGuard("test" + System.nanoTime(),
+                maxConcurrency, failureThreshold, OPEN_TIME, clock::get);
+    }
+
+    private void complete(Permit permit, long latency) {
+        clock.addAndGet(latency);
+
+        permit.success();
+        permit.release();
+    }
+
+    private void fail(Permit permit) {
+        clock.addAndGet(1);
+
+        permit.failure();
+        permit.release();
+    }
+}
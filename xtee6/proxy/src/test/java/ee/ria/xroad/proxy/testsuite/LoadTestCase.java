@@ -0,0 +1,217 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.testsuite;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+import ee.ria.xroad.common.util.MimeTypes;
+import ee.ria.xroad.common.util.MimeUtils;
+
+/**
+ * Test case that serves as the service of the load test. The requests are
+ * built from the getstate query, with the body payload and the attachment
+ * padded to the configured sizes. The service answers every request with
+ * the getstate answer padded to the configured size, carrying the query ID
+ * of the request, so that the client proxy accepts it.
+ */
+class LoadTestCase extends MessageTestCase {
+
+    private static final Pattern QUERY_ID =
+            Pattern.compile("<xroad:id>[^<]*</xroad:id>");
+
+    private static final Pattern REQUEST_PAYLOAD =
+            Pattern.compile("(<xroad:getState>)[^<]*(</xroad:getState>)");
+
+    private static final Pattern RESPONSE_PAYLOAD =
+            Pattern.compile("(<response>)[^<]*(</response>)");
+
+    // The query ID is in the SOAP header, before the padded payload
+    private static final int QUERY_ID_SEARCH_LIMIT = 4096;
+
+    private static final String BOUNDARY = "xroadloadtest";
+    private static final String CRLF = "\r\n";
+
+    private final byte[] requestHead;
+    private final byte[] requestTail;
+
+    private final byte[] responseHead;
+    private final byte[] responseTail;
+
+    /**
+     * Constructs the load test case.
+     * @param messageSize size of the request body payload in bytes
+     * @param responseSize size of the response body payload in bytes
+     * @param attachmentSize size of the request attachment in bytes,
+     * 0 if the request has no attachment
+     * @throws IOException if the query files cannot be read
+     */
+    LoadTestCase(int messageSize, int responseSize, int attachmentSize)
+            throws IOException {
+        setId("LoadTest");
+
+        requestFileName = "getstate.query";
+        responseFile = "getstate.answer";
+
+        String request = pad(readQuery(requestFileName), REQUEST_PAYLOAD,
+                messageSize);
+
+        if (attachmentSize > 0) {
+            requestContentType = MimeTypes.MULTIPART_RELATED
+                    + "; charset=UTF-8; boundary=" + BOUNDARY;
+            request = "--" + BOUNDARY + CRLF
+                    + "Content-Type: " + MimeUtils.TEXT_XML_UTF8 + CRLF + CRLF
+                    + request + CRLF;
+        }
+
+        String[] requestParts = splitAtQueryId(request);
+        requestHead = requestParts[0].getBytes(StandardCharsets.UTF_8);
+        requestTail = attachmentSize > 0
+                ? withAttachment(requestParts[1], attachmentSize)
+                : requestParts[1].getBytes(StandardCharsets.UTF_8);
+
+        String[] responseParts = splitAtQueryId(pad(readQuery(responseFile),
+                RESPONSE_PAYLOAD, responseSize));
+        responseHead = responseParts[0].getBytes(StandardCharsets.UTF_8);
+        responseTail = responseParts[1].getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the content type of the requests
+     */
+    String getRequestContentType() {
+        return requestContentType;
+    }
+
+    /**
+     * @param queryId the query ID of the request
+     * @return the length of the request with the given query ID in bytes
+     */
+    long getRequestLength(String queryId) {
+        return requestHead.length + queryIdElement(queryId).length
+                + requestTail.length;
+    }
+
+    /**
+     * @param queryId the query ID of the request
+     * @return the request with the given query ID
+     */
+    InputStream getRequest(String queryId) {
+        return new SequenceInputStream(Collections.enumeration(Arrays.asList(
+                new ByteArrayInputStream(requestHead),
+                new ByteArrayInputStream(queryIdElement(queryId)),
+                new ByteArrayInputStream(requestTail))));
+    }
+
+    @Override
+    public AbstractHandler getServiceHandler() {
+        return new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest,
+                    HttpServletRequest request, HttpServletResponse response)
+                    throws IOException, ServletException {
+                byte[] data = IOUtils.toByteArray(request.getInputStream());
+
+                response.setContentType(MimeUtils.TEXT_XML_UTF8);
+                response.setStatus(HttpServletResponse.SC_OK);
+                response.getOutputStream().write(responseHead);
+                response.getOutputStream().write(findQueryIdElement(data));
+                response.getOutputStream().write(responseTail);
+
+                baseRequest.setHandled(true);
+            }
+        };
+    }
+
+    private static String readQuery(String fileName) throws IOException {
+        return new String(Files.readAllBytes(Paths.get(QUERIES_DIR, fileName)),
+                StandardCharsets.UTF_8);
+    }
+
+    private static String pad(String message, Pattern payload, int size) {
+        return payload.matcher(message).replaceFirst(
+                "$1" + StringUtils.repeat('x', size) + "$2");
+    }
+
+    private static String[] splitAtQueryId(String message) {
+        Matcher m = QUERY_ID.matcher(message);
+        if (!m.find()) {
+            throw new IllegalArgumentException("Message has no query ID");
+        }
+
+        return new String[] {
+            message.substring(0, m.start()), message.substring(m.end())};
+    }
+
+    private static byte[] withAttachment(String soapTail, int attachmentSize)
+            throws IOException {
+        byte[] attachment = new byte[attachmentSize];
+        new Random().nextBytes(attachment);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(soapTail.getBytes(StandardCharsets.UTF_8));
+        out.write(("--" + BOUNDARY + CRLF
+                + "Content-Type: application/octet-stream" + CRLF + CRLF)
+                .getBytes(StandardCharsets.UTF_8));
+        out.write(attachment);
+        out.write((CRLF + "--" + BOUNDARY + "--" + CRLF)
+                .getBytes(StandardCharsets.UTF_8));
+
+        return out.toByteArray();
+    }
+
+    private static byte[] queryIdElement(String queryId) {
+        return ("<xroad:id>" + queryId + "</xroad:id>")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] findQueryIdElement(byte[] data) {
+        Matcher m = QUERY_ID.matcher(new String(data, 0,
+                Math.min(data.length, QUERY_ID_SEARCH_LIMIT),
+                StandardCharsets.ISO_8859_1));
+
+        return m.find()
+                ? m.group().getBytes(StandardCharsets.ISO_8859_1)
+                : new byte[0];
+    }
+}
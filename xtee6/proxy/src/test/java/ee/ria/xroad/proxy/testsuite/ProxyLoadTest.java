@@ -0,0 +1,385 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.testsuite;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.cli.BasicParser;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.UniformReservoir;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.util.CryptoUtils;
+import ee.ria.xroad.common.util.MimeUtils;
+import ee.ria.xroad.common.util.StartStop;
+
+/**
+ * Proxy load test program. Starts the client proxy, the server proxy and
+ * the dummy service of the proxy test suite and sends requests to the
+ * client proxy from concurrent clients for the given duration. Reports the
+ * throughput, the latency percentiles and the garbage collection and
+ * thread counts of the measured period.
+ */
+public final class ProxyLoadTest {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(ProxyLoadTest.class);
+
+    private static final int DEFAULT_CONCURRENCY = 10;
+    private static final int DEFAULT_WARMUP = 10;
+    private static final int DEFAULT_DURATION = 60;
+    private static final int DEFAULT_MESSAGE_SIZE = 1024;
+    private static final int DEFAULT_RESPONSE_SIZE = 1024;
+    private static final int DEFAULT_ATTACHMENT_SIZE = 0;
+
+    private static final int STARTUP_DELAY = 2000;
+    private static final int CLIENT_TIMEOUT = 45000;
+
+    private static final int LATENCY_SAMPLES = 100000;
+
+    // Faults of the client proxy are returned with status 200
+    private static final String FAULT_CODE = "faultcode>";
+    private static final int FAULT_SEARCH_LIMIT = 4096;
+
+    private static final Options OPTIONS = getOptions();
+
+    private final LoadTestCase testCase;
+    private final int concurrency;
+
+    private final URI url = URI.create("http://localhost:"
+            + SystemProperties.getClientProxyHttpPort());
+
+    private final String queryIdPrefix = UUID.randomUUID() + "-";
+    private final AtomicLong queryCount = new AtomicLong();
+
+    private final Histogram latencies =
+            new Histogram(new UniformReservoir(LATENCY_SAMPLES));
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private volatile boolean running = true;
+    private volatile boolean measuring;
+
+    private ProxyLoadTest(LoadTestCase testCase, int concurrency) {
+        this.testCase = testCase;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Main program entry point.
+     * @param args command-line arguments
+     * @throws Exception in case of any errors
+     */
+    public static void main(String[] args) throws Exception {
+        CommandLine cmd = parseCommandLine(args);
+
+        if (cmd.hasOption("help")) {
+            usage();
+
+            System.exit(0);
+        }
+
+        int concurrency = getOption(cmd, "concurrency", DEFAULT_CONCURRENCY);
+        int warmup = getOption(cmd, "warmup", DEFAULT_WARMUP);
+        int duration = getOption(cmd, "duration", DEFAULT_DURATION);
+
+        LoadTestCase testCase = new LoadTestCase(
+                getOption(cmd, "message-size", DEFAULT_MESSAGE_SIZE),
+                getOption(cmd, "response-size", DEFAULT_RESPONSE_SIZE),
+                getOption(cmd, "attachment-size", DEFAULT_ATTACHMENT_SIZE));
+
+        ProxyTestSuite.setSystemProperties();
+        System.setProperty(SystemProperties.PROXY_SSL_SUPPORT, "false");
+
+        ProxyTestSuite.setUp();
+        ProxyTestSuite.currentTestCase = testCase;
+
+        List<StartStop> services = ProxyTestSuite.getDefaultServices();
+        try {
+            ProxyTestSuite.initMessageLog();
+
+            for (StartStop s : services) {
+                s.start();
+                LOG.info(s.getClass().getSimpleName() + " started");
+            }
+
+            Thread.sleep(STARTUP_DELAY); // give time to start up
+
+            new ProxyLoadTest(testCase, concurrency).run(warmup, duration);
+        } finally {
+            for (StartStop s : services) {
+                s.stop();
+            }
+
+            ProxyTestSuite.tearDown();
+        }
+    }
+
+    private void run(int warmup, int duration) throws Exception {
+        try (CloseableHttpClient client = createClient()) {
+            ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+            for (int i = 0; i < concurrency; i++) {
+                executor.execute(() -> sendRequests(client));
+            }
+
+            LOG.info("Warming up for {} s with {} clients", warmup,
+                    concurrency);
+            TimeUnit.SECONDS.sleep(warmup);
+
+            LOG.info("Measuring for {} s", duration);
+            ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+            JvmStats before = JvmStats.capture();
+            long start = System.nanoTime();
+            measuring = true;
+
+            TimeUnit.SECONDS.sleep(duration);
+
+            measuring = false;
+            long elapsed = System.nanoTime() - start;
+            JvmStats after = JvmStats.capture();
+
+            running = false;
+            executor.shutdown();
+            executor.awaitTermination(CLIENT_TIMEOUT, TimeUnit.MILLISECONDS);
+
+            report(elapsed, before, after);
+        }
+    }
+
+    private void sendRequests(CloseableHttpClient client) {
+        while (running) {
+            boolean measured = measuring;
+            long begin = System.nanoTime();
+
+            boolean success = sendRequest(client);
+
+            if (measured && measuring) {
+                if (success) {
+                    latencies.update(TimeUnit.NANOSECONDS.toMicros(
+                            System.nanoTime() - begin));
+                    succeeded.incrementAndGet();
+                } else {
+                    failed.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private boolean sendRequest(CloseableHttpClient client) {
+        String queryId = queryIdPrefix + queryCount.incrementAndGet();
+
+        InputStreamEntity entity = new InputStreamEntity(
+                testCase.getRequest(queryId),
+                testCase.getRequestLength(queryId));
+        entity.setContentType(testCase.getRequestContentType());
+
+        HttpPost post = new HttpPost(url);
+        post.setHeader(MimeUtils.HEADER_HASH_ALGO_ID,
+                CryptoUtils.DEFAULT_DIGEST_ALGORITHM_ID);
+        post.setEntity(entity);
+
+        try (CloseableHttpResponse response = client.execute(post)) {
+            byte[] body = EntityUtils.toByteArray(response.getEntity());
+
+            int status = response.getStatusLine().getStatusCode();
+            if (status != HttpStatus.SC_OK || isFault(body)) {
+                LOG.debug("Request {} failed with status {}: {}", queryId,
+                        status, new String(body, StandardCharsets.UTF_8));
+
+                return false;
+            }
+
+            return true;
+        } catch (Exception e) {
+            LOG.debug("Request {} failed", queryId, e);
+
+            return false;
+        }
+    }
+
+    private CloseableHttpClient createClient() {
+        PoolingHttpClientConnectionManager connManager =
+                new PoolingHttpClientConnectionManager();
+        connManager.setMaxTotal(concurrency);
+        connManager.setDefaultMaxPerRoute(concurrency);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(CLIENT_TIMEOUT)
+                .setSocketTimeout(CLIENT_TIMEOUT)
+                .build();
+
+        return HttpClients.custom()
+                .setConnectionManager(connManager)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+    }
+
+    private void report(long elapsed, JvmStats before, JvmStats after) {
+        double seconds = elapsed / (double) TimeUnit.SECONDS.toNanos(1);
+        Snapshot snapshot = latencies.getSnapshot();
+
+        StringBuilder sb = new StringBuilder("Results:\n");
+        sb.append(String.format("\tclients: %d, duration: %.1f s%n",
+                concurrency, seconds));
+        sb.append(String.format("\trequests: %d succeeded, %d failed%n",
+                succeeded.get(), failed.get()));
+        sb.append(String.format("\tthroughput: %.1f requests/s%n",
+                succeeded.get() / seconds));
+        sb.append(String.format("\tlatency (ms): mean %.2f, 50%% %.2f, "
+                + "90%% %.2f, 99%% %.2f, 99.9%% %.2f, max %.2f%n",
+                millis(snapshot.getMean()), millis(snapshot.getMedian()),
+                millis(snapshot.getValue(0.9)),
+                millis(snapshot.get99thPercentile()),
+                millis(snapshot.get999thPercentile()),
+                millis(snapshot.getMax())));
+
+        for (Map.Entry<String, long[]> e : after.collections.entrySet()) {
+            long[] initial = before.collections.getOrDefault(e.getKey(),
+                    new long[2]);
+            sb.append(String.format("\tgc %s: %d collections, %d ms%n",
+                    e.getKey(), e.getValue()[0] - initial[0],
+                    e.getValue()[1] - initial[1]));
+        }
+
+        sb.append(String.format("\tthreads: %d live, %d peak%n",
+                after.threadCount, after.peakThreadCount));
+
+        LOG.info("{}", sb.toString());
+    }
+
+    private static double millis(double micros) {
+        return micros / TimeUnit.MILLISECONDS.toMicros(1);
+    }
+
+    private static boolean isFault(byte[] body) {
+        return new String(body, 0, Math.min(body.length, FAULT_SEARCH_LIMIT),
+                StandardCharsets.ISO_8859_1).contains(FAULT_CODE);
+    }
+
+    private static int getOption(CommandLine cmd, String name,
+            int defaultValue) {
+        return cmd.getOptionValue(name) != null
+                ? Integer.parseInt(cmd.getOptionValue(name))
+                : defaultValue;
+    }
+
+    private static CommandLine parseCommandLine(String[] args) {
+        try {
+            return new BasicParser().parse(OPTIONS, args);
+        } catch (ParseException e) {
+            LOG.error("Parsing command line failed: {}", e.getMessage());
+
+            usage();
+
+            System.exit(1);
+        }
+
+        return null;
+    }
+
+    private static Options getOptions() {
+        Options options = new Options();
+
+        options.addOption(new Option("c", "concurrency", true,
+                "number of concurrent clients (default: "
+                        + DEFAULT_CONCURRENCY + ")"));
+        options.addOption(new Option("w", "warmup", true,
+                "warm-up period in seconds, not measured (default: "
+                        + DEFAULT_WARMUP + ")"));
+        options.addOption(new Option("d", "duration", true,
+                "measured period in seconds (default: "
+                        + DEFAULT_DURATION + ")"));
+        options.addOption(new Option("m", "message-size", true,
+                "request body payload size in bytes (default: "
+                        + DEFAULT_MESSAGE_SIZE + ")"));
+        options.addOption(new Option("r", "response-size", true,
+                "response body payload size in bytes (default: "
+                        + DEFAULT_RESPONSE_SIZE + ")"));
+        options.addOption(new Option("a", "attachment-size", true,
+                "request attachment size in bytes, 0 for no attachment"
+                        + " (default: " + DEFAULT_ATTACHMENT_SIZE + ")"));
+        options.addOption(new Option("h", "help", false, "help"));
+
+        return options;
+    }
+
+    private static void usage() {
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.printHelp("ProxyLoadTest", OPTIONS);
+    }
+
+    private static final class JvmStats {
+
+        // Collector name -> {collection count, collection time in ms}
+        private final Map<String, long[]> collections = new LinkedHashMap<>();
+
+        private int threadCount;
+        private int peakThreadCount;
+
+        static JvmStats capture() {
+            JvmStats stats = new JvmStats();
+
+            for (GarbageCollectorMXBean gc
+                    : ManagementFactory.getGarbageCollectorMXBeans()) {
+                stats.collections.put(gc.getName(), new long[] {
+                    gc.getCollectionCount(), gc.getCollectionTime()});
+            }
+
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            stats.threadCount = threads.getThreadCount();
+            stats.peakThreadCount = threads.getPeakThreadCount();
+
+            return stats;
+        }
+    }
+}
@@ -74,16 +74,7 @@ public final class ProxyTestSuite {
      * @throws Exception in case of any errors
      */
     public static void main(String[] args) throws Exception {
-        System.setProperty(SystemProperties.PROXY_CLIENT_HTTP_PORT, "8080");
-        System.setProperty(SystemProperties.PROXY_CLIENT_HTTPS_PORT, "8443");
-        System.setProperty(
-                SystemProperties.JETTY_CLIENTPROXY_CONFIGURATION_FILE,
-                "src/test/clientproxy.xml");
-        System.setProperty(
-                SystemProperties.JETTY_SERVERPROXY_CONFIGURATION_FILE,
-                "src/test/serverproxy.xml");
-        System.setProperty(SystemProperties.TEMP_FILES_PATH, "build/");
-
+        setSystemProperties();
         setUp();
 
         List<MessageTestCase> testCasesToRun =
@@ -102,14 +93,12 @@ public final class ProxyTestSuite {
         startWatchdog();
 
         try {
-            MessageLog.init(actorSystem, jobManager);
-            OpMonitoring.init(actorSystem);
+            initMessageLog();
 
             runNormalTestCases(normalTestCases);
             runSslTestCases(sslTestCases);
         } finally {
-            jobManager.stop();
-            actorSystem.shutdown();
+            tearDown();
 
             List<MessageTestCase> failed = getFailedTestcases(testCasesToRun);
             LOG.info("COMPLETE, passed {} - failed {}",
@@ -133,7 +122,19 @@ public final class ProxyTestSuite {
         }
     }
 
-    private static void setUp() throws Exception {
+    static void setSystemProperties() {
+        System.setProperty(SystemProperties.PROXY_CLIENT_HTTP_PORT, "8080");
+        System.setProperty(SystemProperties.PROXY_CLIENT_HTTPS_PORT, "8443");
+        System.setProperty(
+                SystemProperties.JETTY_CLIENTPROXY_CONFIGURATION_FILE,
+                "src/test/clientproxy.xml");
+        System.setProperty(
+                SystemProperties.JETTY_SERVERPROXY_CONFIGURATION_FILE,
+                "src/test/serverproxy.xml");
+        System.setProperty(SystemProperties.TEMP_FILES_PATH, "build/");
+    }
+
+    static void setUp() throws Exception {
         KeyConf.reload(new TestKeyConf());
         ServerConf.reload(new TestServerConf());
         GlobalConf.reload(new TestGlobalConf());
@@ -150,6 +151,16 @@ public final class ProxyTestSuite {
                 ConfigFactory.load().getConfig("proxy"));
     }
 
+    static void initMessageLog() throws Exception {
+        MessageLog.init(actorSystem, jobManager);
+        OpMonitoring.init(actorSystem);
+    }
+
+    static void tearDown() throws Exception {
+        jobManager.stop();
+        actorSystem.shutdown();
+    }
+
     private static void runNormalTestCases(List<MessageTestCase> tc)
             throws Exception {
         if (tc.isEmpty()) {
@@ -237,7 +248,7 @@ public final class ProxyTestSuite {
         return failed;
     }
 
-    private static List<StartStop> getDefaultServices() throws Exception {
+    static List<StartStop> getDefaultServices() throws Exception {
         clientProxy = new ClientProxy();
         // listen at localhost to let dummy proxy listen at 127.0.0.2
         serverProxy = new ServerProxy("127.0.0.1");
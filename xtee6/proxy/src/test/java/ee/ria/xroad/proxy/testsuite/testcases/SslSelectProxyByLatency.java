@@ -0,0 +1,114 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.testsuite.testcases;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.proxy.clientproxy.TestTargetHostHealth;
+import ee.ria.xroad.proxy.testsuite.Message;
+import ee.ria.xroad.proxy.testsuite.SslMessageTestCase;
+import ee.ria.xroad.proxy.testsuite.TestGlobalConf;
+
+/**
+ * Tests that the security server is selected by latency when the service
+ * provider has several security servers, one of which does not respond.
+ * The first request races the addresses, the following ones use the
+ * measured latencies.
+ */
+public class SslSelectProxyByLatency extends SslMessageTestCase {
+
+    private static final int REQUEST_COUNT = 5;
+
+    private static final String UNREACHABLE_HOST = "1.0.0.1";
+
+    private static final List<String> HOSTS =
+            Arrays.asList("localhost", "127.0.0.1", UNREACHABLE_HOST);
+
+    /**
+     * Constructs the test case.
+     */
+    public SslSelectProxyByLatency() {
+        requestFileName = "getstate.query";
+        responseFile = "getstate.answer";
+    }
+
+    @Override
+    public void execute() throws Exception {
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            super.execute();
+        }
+
+        URI[] addresses = new URI[HOSTS.size()];
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = new URI("https", null, HOSTS.get(i),
+                    SystemProperties.getServerProxyPort(), "/", null, null);
+        }
+
+        URI[] ranked = TestTargetHostHealth.rank(addresses);
+        if (ranked == null) {
+            throw new Exception("Security servers are still raced after "
+                    + REQUEST_COUNT + " requests");
+        }
+
+        if (UNREACHABLE_HOST.equals(ranked[0].getHost())) {
+            throw new Exception("Unreachable security server is ranked first: "
+                    + Arrays.toString(ranked));
+        }
+    }
+
+    @Override
+    protected void startUp() throws Exception {
+        super.startUp();
+
+        System.setProperty(
+                SystemProperties.CLIENTPROXY_TARGET_SELECTION_BY_LATENCY,
+                "true");
+
+        GlobalConf.reload(new TestGlobalConf() {
+            @Override
+            public Collection<String> getProviderAddress(ClientId provider) {
+                return HOSTS;
+            }
+        });
+    }
+
+    @Override
+    protected void closeDown() throws Exception {
+        System.clearProperty(
+                SystemProperties.CLIENTPROXY_TARGET_SELECTION_BY_LATENCY);
+
+        super.closeDown();
+    }
+
+    @Override
+    protected void validateNormalResponse(Message receivedResponse)
+            throws Exception {
+        // Normal response, nothing more to check here.
+    }
+}
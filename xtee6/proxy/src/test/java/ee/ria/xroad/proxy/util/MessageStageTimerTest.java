@@ -0,0 +1,87 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.util;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import ee.ria.xroad.proxy.util.MessageStageTimer.Stage;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the recording of message processing stage times.
+ */
+public class MessageStageTimerTest {
+
+    /**
+     * Test that the times of a stage entered several times are summed and
+     * reported once per message.
+     */
+    @Test
+    public void reportsStagesPerMessage() throws Exception {
+        MetricRegistry metrics = new MetricRegistry();
+        Timer[] timers = MessageStageTimer.createTimers(metrics, "test");
+
+        MessageStageTimer timer = new MessageStageTimer(timers);
+
+        long begin = timer.begin();
+        Thread.sleep(5);
+        timer.end(Stage.LOG_MESSAGE, begin);
+
+        begin = timer.begin();
+        Thread.sleep(5);
+        timer.end(Stage.LOG_MESSAGE, begin);
+
+        begin = timer.begin();
+        timer.end(Stage.SIGN, begin - 1000);
+
+        timer.report();
+
+        Timer logMessage = metrics.getTimers().get(
+                MessageStageTimer.class.getName() + ".test.log_message");
+        assertEquals(1, logMessage.getCount());
+        assertTrue(logMessage.getSnapshot().getMax() >= 10000000);
+
+        assertEquals(1, timers[Stage.SIGN.ordinal()].getCount());
+        assertEquals(0, timers[Stage.PARSE_REQUEST.ordinal()].getCount());
+
+        // Reporting again does not report the same times twice
+        timer.report();
+        assertEquals(1, logMessage.getCount());
+    }
+
+    /**
+     * Test that a timer without stage timers does not record anything.
+     */
+    @Test
+    public void disabled() {
+        MessageStageTimer timer = new MessageStageTimer(null);
+
+        assertEquals(0, timer.begin());
+
+        timer.end(Stage.SIGN, 0);
+        timer.report();
+    }
+}
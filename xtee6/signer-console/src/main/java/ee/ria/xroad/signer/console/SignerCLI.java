@@ -64,6 +64,7 @@ import static ee.ria.xroad.signer.console.Utils.printTokenInfo;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
@@ -71,6 +72,10 @@ import java.util.GregorianCalendar;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.cli.BasicParser;
 import org.apache.commons.cli.CommandLine;
@@ -655,6 +660,52 @@ public class SignerCLI {
                 + duration + " milliseconds");
     }
 
+    /**
+     * Benchmark signing with concurrent clients.
+     * @param keyId key id
+     * @param threads number of concurrent signing clients
+     * @throws Exception if an error occurs
+     */
+    @Command(description = "Benchmark signing with concurrent clients")
+    public void signBenchmark(
+            @Param(name = "keyId", description = "Key ID")
+                String keyId,
+            @Param(name = "threads", description = "Number of concurrent clients")
+                int threads) throws Exception {
+        String algorithm = "SHA512withRSA";
+        String data = "Hello world!";
+        byte[] digest = calculateDigest(
+                getDigestAlgorithmId(algorithm),
+                data.getBytes(StandardCharsets.UTF_8));
+
+        int iterations = BENCHMARK_ITERATIONS * threads;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<Object>> clients = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                clients.add(() -> {
+                    for (int j = 0; j < BENCHMARK_ITERATIONS; j++) {
+                        SignerClient.execute(new Sign(keyId, algorithm, digest));
+                    }
+
+                    return null;
+                });
+            }
+
+            long startTime = System.currentTimeMillis();
+            for (Future<Object> result : executor.invokeAll(clients)) {
+                result.get();
+            }
+
+            long duration = System.currentTimeMillis() - startTime;
+            System.out.println("Signed " + iterations + " times using "
+                    + threads + " clients in " + duration + " milliseconds");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     /**
      * Generate key on token.
      * @param tokenId token id
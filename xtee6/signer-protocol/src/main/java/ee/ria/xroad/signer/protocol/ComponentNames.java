@@ -37,6 +37,8 @@ public final class ComponentNames {
 
     public static final String TOKEN_WORKER = "TokenWorker";
 
+    public static final String TOKEN_SIGN_WORKER = "TokenSignWorker";
+
     public static final String OCSP_RESPONSE_MANAGER = "OcspResponseManager";
 
     public static final String OCSP_CLIENT = "OcspClient";
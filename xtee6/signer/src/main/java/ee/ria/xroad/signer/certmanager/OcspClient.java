@@ -43,6 +43,7 @@ import org.bouncycastle.cert.ocsp.OCSPReqBuilder;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 import org.bouncycastle.operator.ContentSigner;
 
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.util.CryptoUtils;
 import ee.ria.xroad.common.util.MimeTypes;
@@ -55,9 +56,6 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public final class OcspClient {
 
-    private static final int CONNECT_TIMEOUT_MS = 20000;
-    private static final int READ_TIMEOUT_MS = 60000;
-
     private OcspClient() {
     }
 
@@ -177,8 +175,8 @@ public final class OcspClient {
         connection.setRequestProperty("Content-Type", MimeTypes.OCSP_REQUEST);
         connection.setRequestProperty("Accept", MimeTypes.OCSP_RESPONSE);
         connection.setDoOutput(true);
-        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
-        connection.setReadTimeout(READ_TIMEOUT_MS);
+        connection.setConnectTimeout(SystemProperties.getSignerOcspConnectTimeout());
+        connection.setReadTimeout(SystemProperties.getSignerOcspReadTimeout());
         connection.connect();
         return connection;
     }
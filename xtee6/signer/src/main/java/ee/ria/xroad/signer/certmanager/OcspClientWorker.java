@@ -27,6 +27,7 @@ import ee.ria.xroad.common.CertificationServiceDiagnostics;
 import ee.ria.xroad.common.CertificationServiceStatus;
 import ee.ria.xroad.common.DiagnosticsErrorCodes;
 import ee.ria.xroad.common.OcspResponderStatus;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.cert.CertChain;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.globalconfextension.GlobalConfExtensions;
@@ -53,6 +54,11 @@ import java.security.cert.X509Certificate;
 import java.time.LocalTime;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static ee.ria.xroad.common.util.CryptoUtils.*;
 import static ee.ria.xroad.signer.protocol.ComponentNames.OCSP_CLIENT_JOB;
@@ -65,6 +71,8 @@ import static java.util.Collections.emptyList;
  * server and providing the responses to the message signer.
  *
  * The certificate status is queried from the server at a fixed interval.
+ * The statuses of different certificates are queried in parallel, while the
+ * number of concurrent requests to a single responder is bounded.
  */
 @Slf4j
 @RequiredArgsConstructor
@@ -85,11 +93,26 @@ public class OcspClientWorker extends AbstractSignerActor {
 
     private CertificationServiceDiagnostics diagnostics;
 
+    private ExecutorService fetchExecutor;
+
+    private OcspResponders responders;
+
     @Override
     public void preStart() throws Exception {
         super.preStart();
         changeChecker = new GlobalConfChangeChecker();
         diagnostics = new CertificationServiceDiagnostics();
+        fetchExecutor = Executors.newFixedThreadPool(SystemProperties.getSignerOcspFetchParallelism());
+        responders = new OcspResponders(SystemProperties.getSignerOcspResponderMaxConcurrentRequests());
+    }
+
+    @Override
+    public void postStop() throws Exception {
+        if (fetchExecutor != null) {
+            fetchExecutor.shutdownNow();
+        }
+
+        super.postStop();
     }
 
     @Override
@@ -162,7 +185,7 @@ public class OcspClientWorker extends AbstractSignerActor {
         }
     }
 
-    void handleExecute() {
+    void handleExecute() throws InterruptedException {
         log.trace("handleExecute()");
         log.info("OCSP-response refresh cycle started");
         if (!GlobalConf.isValid()) {
@@ -179,18 +202,34 @@ public class OcspClientWorker extends AbstractSignerActor {
 
         log.info("Fetching OCSP responses for {} certificates", certs.size());
 
+        responders.resetFailures();
+
+        OcspVerifierOptions verifierOptions =
+                new OcspVerifierOptions(GlobalConfExtensions.getInstance().shouldVerifyOcspNextUpdate());
+
+        List<Callable<OCSPResp>> queries = new ArrayList<>(certs.size());
+        for (X509Certificate subject : certs) {
+            queries.add(() -> queryCertStatus(subject, verifierOptions));
+        }
+
+        List<Future<OCSPResp>> results = fetchExecutor.invokeAll(queries);
+
         Boolean failed = false;
         Map<String, OCSPResp> statuses = new HashMap<>();
-        for (X509Certificate subject : certs) {
+        for (int i = 0; i < certs.size(); i++) {
+            X509Certificate subject = certs.get(i);
             try {
-                OCSPResp status = queryCertStatus(subject,
-                        new OcspVerifierOptions(GlobalConfExtensions.getInstance().shouldVerifyOcspNextUpdate()));
+                OCSPResp status = results.get(i).get();
                 if (status != null) {
                     String subjectHash = calculateCertHexHash(subject);
                     statuses.put(subjectHash, status);
                 } else {
                     failed = true;
                 }
+            } catch (ExecutionException e) {
+                failed = true;
+                log.error("Error when querying certificate '"
+                        + subject.getSerialNumber() + "'", e.getCause());
             } catch (Exception e) {
                 failed = true;
                 log.error("Error when querying certificate '"
@@ -260,41 +299,13 @@ public class OcspClientWorker extends AbstractSignerActor {
             throw new ConnectException("No OCSP responder URIs available");
         }
 
-        OCSPResp response = null;
-        for (String responderURI : responderURIs) {
-            try {
-                log.debug("Fetching response from: {}", responderURI);
-                response = OcspClient.fetchResponse(responderURI, subject, issuer, signerKey, signer);
-                if (response != null) {
-                    reportOcspDiagnostics(issuer, responderURI, DiagnosticsErrorCodes.RETURN_SUCCESS, LocalTime.now(),
-                        LocalTime.now().plusSeconds(GlobalConfExtensions.getInstance().getOcspFetchInterval()));
-                    break;
-                }
-            } catch (OCSPException e) {
-                log.error("Parsing OCSP response from " + responderURI + " failed", e);
-                reportOcspDiagnostics(
-                    issuer,
-                    responderURI,
-                    DiagnosticsErrorCodes.ERROR_CODE_OCSP_RESPONSE_INVALID,
-                    LocalTime.now(),
-                    LocalTime.now().plusSeconds(GlobalConfExtensions.getInstance().getOcspFetchInterval()));
-            } catch (IOException e) {
-                log.error("Unable to connect to responder at " + responderURI, e);
-                reportOcspDiagnostics(
-                    issuer,
-                    responderURI,
-                    DiagnosticsErrorCodes.ERROR_CODE_OCSP_CONNECTION_ERROR,
-                    LocalTime.now(),
-                    LocalTime.now().plusSeconds(GlobalConfExtensions.getInstance().getOcspFetchInterval()));
-            } catch (Exception e) {
-                log.error("Unable to fetch response from responder at " + responderURI, e);
-                reportOcspDiagnostics(
-                    issuer,
-                    responderURI,
-                    DiagnosticsErrorCodes.ERROR_CODE_OCSP_FAILED,
-                    LocalTime.now(),
-                    LocalTime.now().plusSeconds(GlobalConfExtensions.getInstance().getOcspFetchInterval()));
-            }
+        OCSPResp response;
+        try {
+            response = responders.send(responderURIs,
+                    responderURI -> fetchResponse(responderURI, subject, issuer, signerKey, signer));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
         }
         try {
             log.debug("Verifying response: {}", response);
@@ -310,7 +321,51 @@ public class OcspClientWorker extends AbstractSignerActor {
         }
     }
 
-    private void reportOcspDiagnostics(X509Certificate issuer, String responderURI, int statusCode,
+    /**
+     * Fetches the response from the given responder and reports the outcome
+     * to the diagnostics.
+     */
+    private OCSPResp fetchResponse(String responderURI, X509Certificate subject, X509Certificate issuer,
+            PrivateKey signerKey, X509Certificate signer) throws Exception {
+        try {
+            log.debug("Fetching response from: {}", responderURI);
+            OCSPResp response = OcspClient.fetchResponse(responderURI, subject, issuer, signerKey, signer);
+            if (response != null) {
+                reportOcspDiagnostics(issuer, responderURI, DiagnosticsErrorCodes.RETURN_SUCCESS, LocalTime.now(),
+                    LocalTime.now().plusSeconds(GlobalConfExtensions.getInstance().getOcspFetchInterval()));
+            }
+            return response;
+        } catch (OCSPException e) {
+            log.error("Parsing OCSP response from " + responderURI + " failed", e);
+            reportOcspDiagnostics(
+                issuer,
+                responderURI,
+                DiagnosticsErrorCodes.ERROR_CODE_OCSP_RESPONSE_INVALID,
+                LocalTime.now(),
+                LocalTime.now().plusSeconds(GlobalConfExtensions.getInstance().getOcspFetchInterval()));
+            throw e;
+        } catch (IOException e) {
+            log.error("Unable to connect to responder at " + responderURI, e);
+            reportOcspDiagnostics(
+                issuer,
+                responderURI,
+                DiagnosticsErrorCodes.ERROR_CODE_OCSP_CONNECTION_ERROR,
+                LocalTime.now(),
+                LocalTime.now().plusSeconds(GlobalConfExtensions.getInstance().getOcspFetchInterval()));
+            throw e;
+        } catch (Exception e) {
+            log.error("Unable to fetch response from responder at " + responderURI, e);
+            reportOcspDiagnostics(
+                issuer,
+                responderURI,
+                DiagnosticsErrorCodes.ERROR_CODE_OCSP_FAILED,
+                LocalTime.now(),
+                LocalTime.now().plusSeconds(GlobalConfExtensions.getInstance().getOcspFetchInterval()));
+            throw e;
+        }
+    }
+
+    private synchronized void reportOcspDiagnostics(X509Certificate issuer, String responderURI, int statusCode,
                                        LocalTime prevUpdate, LocalTime nextUpdate) {
 
         OcspResponderStatus responderStatus = new OcspResponderStatus(
@@ -0,0 +1,138 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.certmanager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+import org.bouncycastle.cert.ocsp.OCSPResp;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Chooses the OCSP responders for the queries of a refresh cycle. Bounds the
+ * number of concurrent requests to a single responder and tries the
+ * responders that have failed during the current cycle last.
+ */
+@Slf4j
+class OcspResponders {
+
+    /**
+     * Sends an OCSP request to a single responder.
+     */
+    interface Request {
+        /**
+         * @param responderURI the responder
+         * @return the response or null if the responder returned none
+         * @throws Exception if the request failed
+         */
+        OCSPResp send(String responderURI) throws Exception;
+    }
+
+    private final int maxConcurrentRequests;
+
+    private final Map<String, Semaphore> permits = new ConcurrentHashMap<>();
+
+    private final Set<String> failed = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param maxConcurrentRequests the maximum number of concurrent requests
+     * to a single responder
+     */
+    OcspResponders(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    /**
+     * Forgets the responders that have failed, called when a new refresh
+     * cycle starts.
+     */
+    void resetFailures() {
+        failed.clear();
+    }
+
+    /**
+     * Sends the request to the responders in turn until one of them returns
+     * a response. The next responder is chosen again after the permit for
+     * the previous choice has been acquired, so that requests that were
+     * waiting for a responder that failed meanwhile move on to the other
+     * responders instead of waiting for the same timeout.
+     * @param responderURIs the responders in the order of preference
+     * @param request sends the request to a single responder
+     * @return the response or null if none of the responders returned one
+     * @throws InterruptedException if interrupted while waiting for a
+     * responder
+     */
+    OCSPResp send(List<String> responderURIs, Request request)
+            throws InterruptedException {
+        List<String> remaining = new ArrayList<>(responderURIs);
+
+        while (!remaining.isEmpty()) {
+            String responderURI = nextResponder(remaining);
+
+            Semaphore responderPermits = permits.computeIfAbsent(responderURI,
+                    uri -> new Semaphore(maxConcurrentRequests));
+
+            responderPermits.acquire();
+            try {
+                if (failed.contains(responderURI)
+                        && hasWorkingResponder(remaining)) {
+                    log.debug("Responder {} failed while waiting for it, "
+                            + "trying the other responders first",
+                            responderURI);
+                    continue;
+                }
+
+                remaining.remove(responderURI);
+
+                OCSPResp response = request.send(responderURI);
+                if (response != null) {
+                    return response;
+                }
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                failed.add(responderURI);
+            } finally {
+                responderPermits.release();
+            }
+        }
+
+        return null;
+    }
+
+    private String nextResponder(List<String> remaining) {
+        return remaining.stream()
+                .filter(uri -> !failed.contains(uri))
+                .findFirst()
+                .orElse(remaining.get(0));
+    }
+
+    private boolean hasWorkingResponder(List<String> remaining) {
+        return remaining.stream().anyMatch(uri -> !failed.contains(uri));
+    }
+}
@@ -35,7 +35,6 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.function.BiFunction;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 import org.bouncycastle.cert.ocsp.OCSPResp;
 
@@ -51,7 +50,6 @@ import ee.ria.xroad.signer.protocol.dto.KeyInfo;
 import ee.ria.xroad.signer.protocol.dto.KeyUsageInfo;
 import ee.ria.xroad.signer.protocol.dto.TokenInfo;
 import ee.ria.xroad.signer.protocol.dto.TokenStatusInfo;
-import ee.ria.xroad.signer.tokenmanager.module.SoftwareModuleType;
 import ee.ria.xroad.signer.tokenmanager.token.TokenType;
 import ee.ria.xroad.signer.util.SignerUtil;
 import ee.ria.xroad.signer.util.TokenAndKey;
@@ -59,6 +57,10 @@ import lombok.extern.slf4j.Slf4j;
 
 /**
  * Manages the current state of tokens, their keys and certificates.
+ *
+ * Modifications are synchronized. Lookups are served without locking from an
+ * immutable, indexed snapshot of the tokens, which is rebuilt on the first
+ * lookup after a modification.
  */
 @Slf4j
 public final class TokenManager {
@@ -67,6 +69,8 @@ public final class TokenManager {
 
     static boolean initialized;
 
+    private static volatile TokenRegistry registry;
+
     private TokenManager() {
     }
 
@@ -81,7 +85,10 @@ public final class TokenManager {
             log.error("Failed to load token conf", e);
         }
 
-        currentTokens = new ArrayList<>(TokenConf.getInstance().getTokens());
+        synchronized (TokenManager.class) {
+            currentTokens = new ArrayList<>(TokenConf.getInstance().getTokens());
+            modified();
+        }
 
         initialized = true;
     }
@@ -103,11 +110,8 @@ public final class TokenManager {
     /**
      * @return list of tokens
      */
-    public static synchronized List<TokenInfo> listTokens() {
-        return unmodifiableList(
-                currentTokens.stream()
-                    .map(t -> t.toDTO())
-                    .collect(Collectors.toList()));
+    public static List<TokenInfo> listTokens() {
+        return registry().getTokens();
     }
 
     /**
@@ -135,6 +139,7 @@ public final class TokenManager {
         token.setAvailable(true);
 
         currentTokens.add(token);
+        modified();
 
         return token.toDTO();
     }
@@ -157,53 +162,50 @@ public final class TokenManager {
      * @param tokenId the token id
      * @return the token info DTO for the token id or null of not found
      */
-    public static synchronized TokenInfo getTokenInfo(String tokenId) {
+    public static TokenInfo getTokenInfo(String tokenId) {
         log.trace("getTokenInfo({})", tokenId);
 
-        return currentTokens.stream()
-                .filter(t -> t.getId().equals(tokenId))
-                .map(t -> t.toDTO())
-                .findFirst().orElse(null);
+        return registry().getTokenInfo(tokenId);
     }
 
     /**
      * @param keyId the key id
      * @return the token and key or throws exception if not found
      */
-    public static synchronized TokenAndKey findTokenAndKey(String keyId) {
+    public static TokenAndKey findTokenAndKey(String keyId) {
         log.trace("findTokenAndKey({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                    (t, k) -> new TokenAndKey(t.getId(), k.toDTO()))
-                .orElseThrow(() -> keyNotFound(keyId));
+        TokenAndKey tokenAndKey = registry().getTokenAndKey(keyId);
+        if (tokenAndKey != null) {
+            return tokenAndKey;
+        }
+
+        throw keyNotFound(keyId);
     }
 
     /**
      * @param keyId the key id
      * @return the token id for the key id or throws exception if not found
      */
-    public static synchronized String findTokenIdForKeyId(String keyId) {
+    public static String findTokenIdForKeyId(String keyId) {
         log.trace("findTokenIdForKeyId({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> t.getId()).orElseThrow(() -> keyNotFound(keyId));
+        return findTokenAndKey(keyId).getTokenId();
     }
 
     /**
      * @return the software token id
      */
-    public static synchronized String getSoftwareTokenId() {
-        return forToken(t -> t.getType().equals(SoftwareModuleType.TYPE),
-                t -> t.getId()).orElse(null);
+    public static String getSoftwareTokenId() {
+        return registry().getSoftwareTokenId();
     }
 
     /**
      * @param tokenId the token id
      * @return the module id for the token id or null if not found
      */
-    public static synchronized String getModuleId(String tokenId) {
-        return forToken(t -> t.getId().equals(tokenId),
-                t -> t.getModuleId()).orElse(null);
+    public static String getModuleId(String tokenId) {
+        return registry().getModuleId(tokenId);
     }
 
     /**
@@ -223,51 +225,22 @@ public final class TokenManager {
      * @param keyId the key id
      * @return the key info for the key id or null if not found
      */
-    public static synchronized KeyInfo getKeyInfo(String keyId) {
+    public static KeyInfo getKeyInfo(String keyId) {
         log.trace("getKeyInfo({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> k.toDTO()).orElse(null);
+        TokenAndKey tokenAndKey = registry().getTokenAndKey(keyId);
+
+        return tokenAndKey != null ? tokenAndKey.getKey() : null;
     }
 
     /**
      * @param clientId the client id
      * @return the list of keys for the given client id
      */
-    public static synchronized List<KeyInfo> getKeyInfo(ClientId clientId) {
+    public static List<KeyInfo> getKeyInfo(ClientId clientId) {
         log.trace("getKeyInfo({})", clientId);
 
-        List<KeyInfo> keyInfo = new ArrayList<>();
-
-        for (Token token : currentTokens) {
-            if (!token.isActive() || !token.isAvailable()) {
-                // Ignore inactive (not usable) tokens
-                continue;
-            }
-
-            for (Key key : token.getKeys()) {
-                if (!key.isAvailable()
-                        || key.getUsage() == KeyUsageInfo.AUTHENTICATION) {
-                    // Ignore authentication keys
-                    continue;
-                }
-
-                for (Cert cert : key.getCerts()) {
-                    if (!cert.isActive() || cert.getMemberId() == null) {
-                        // Ignore inactive and invalid certificates
-                        continue;
-                    }
-
-                    if (certBelongsToMember(cert.toDTO(), clientId)) {
-                        log.debug("Found key '{}' for client '{}'",
-                                key.getId(), cert.getMemberId());
-                        keyInfo.add(key.toDTO());
-                    }
-                }
-            }
-        }
-
-        return keyInfo;
+        return registry().getSigningKeys(clientId);
     }
 
     /**
@@ -288,49 +261,41 @@ public final class TokenManager {
      * @param certId the certificate id
      * @return the certificate info for the certificate id or null if not found
      */
-    public static synchronized CertificateInfo getCertificateInfo(
-            String certId) {
+    public static CertificateInfo getCertificateInfo(String certId) {
         log.trace("getCertificateInfo({})", certId);
 
-        return forCert((k, c) -> c.getId().equals(certId), (k, c) -> c.toDTO())
-                .orElse(null);
+        return registry().getCertificateInfo(certId);
     }
 
     /**
      * @param certHash the certificate hash
      * @return the certificate info for the certificate hash or null
      */
-    public static synchronized CertificateInfo getCertificateInfoForCertHash(
+    public static CertificateInfo getCertificateInfoForCertHash(
             String certHash) {
         log.trace("getCertificateInfoForCertHash({})", certHash);
 
-        return forCert((k, c) -> certHash.equals(c.getHash()),
-                (k, c) -> c.toDTO()).orElse(null);
+        return registry().getCertificateInfoForCertHash(certHash);
     }
 
     /**
      * @param certHash the certificate hash
      * @return the certificate for the certificate hash or null
      */
-    public static synchronized X509Certificate getCertificateForCertHash(
+    public static X509Certificate getCertificateForCertHash(
             String certHash) {
         log.trace("getCertificateForCertHash({})", certHash);
 
-        return forCert((k, c) -> certHash.equals(c.getHash()),
-                (k, c) -> c.getCertificate()).orElse(null);
+        return registry().getCertificateForCertHash(certHash);
     }
 
     /**
      * @return all certificates
      */
-    public static synchronized List<CertificateInfo> getAllCerts() {
+    public static List<CertificateInfo> getAllCerts() {
         log.trace("getAllCerts()");
 
-        return currentTokens.stream()
-                .flatMap(t -> t.getKeys().stream())
-                .flatMap(k -> k.getCerts().stream())
-                .map(c -> c.toDTO())
-                .collect(Collectors.toList());
+        return registry().getAllCerts();
     }
 
     /**
@@ -347,6 +312,7 @@ public final class TokenManager {
                     c.setOcspResponse(response);
                     return null;
                 });
+        modified();
     }
 
     /**
@@ -369,22 +335,20 @@ public final class TokenManager {
      * @param certHash the certificate hash
      * @return key info for the certificate hash
      */
-    public static synchronized KeyInfo getKeyInfoForCertHash(String certHash) {
+    public static KeyInfo getKeyInfoForCertHash(String certHash) {
         log.trace("getKeyInfoForCertHash({})", certHash);
 
-        return forCert((k, c) -> certHash.equals(c.getHash()),
-                (k, c) -> k.toDTO()).orElse(null);
+        return registry().getKeyInfoForCertHash(certHash);
     }
 
     /**
      * @param certId the certificate id
      * @return key info for certificate id
      */
-    public static synchronized KeyInfo getKeyInfoForCertId(String certId) {
+    public static KeyInfo getKeyInfoForCertId(String certId) {
         log.trace("getKeyInfoForCertId({})", certId);
 
-        return forCert((k, c) -> c.getId().equals(certId),
-                (k, c) -> k.toDTO()).orElse(null);
+        return registry().getKeyInfoForCertId(certId);
     }
 
     /**
@@ -402,20 +366,20 @@ public final class TokenManager {
      * @param tokenId the token id
      * @return true if token is available
      */
-    public static synchronized boolean isTokenAvailable(String tokenId) {
+    public static boolean isTokenAvailable(String tokenId) {
         log.trace("isTokenAvailable({})", tokenId);
 
-        return findToken(tokenId).isAvailable();
+        return findTokenInfo(tokenId).isAvailable();
     }
 
     /**
      * @param tokenId the token id
      * @return true if token is active (logged in)
      */
-    public static synchronized boolean isTokenActive(String tokenId) {
+    public static boolean isTokenActive(String tokenId) {
         log.trace("isTokenActive({})", tokenId);
 
-        return findToken(tokenId).isActive();
+        return findTokenInfo(tokenId).isActive();
     }
 
     /**
@@ -432,6 +396,7 @@ public final class TokenManager {
         Token token = findToken(tokenId);
         token.setAvailable(available);
         token.setModuleId(tokenType.getModuleType());
+        modified();
     }
 
     /**
@@ -443,7 +408,11 @@ public final class TokenManager {
             boolean available) {
         log.trace("setTokenAvailable({}, {})", tokenId, available);
 
-        findToken(tokenId).setAvailable(available);
+        Token token = findToken(tokenId);
+        if (token.isAvailable() != available) {
+            token.setAvailable(available);
+            modified();
+        }
     }
 
     /**
@@ -455,7 +424,11 @@ public final class TokenManager {
             boolean active) {
         log.trace("setTokenActive({}, {})", tokenId, active);
 
-        findToken(tokenId).setActive(active);
+        Token token = findToken(tokenId);
+        if (token.isActive() != active) {
+            token.setActive(active);
+            modified();
+        }
     }
 
     /**
@@ -468,16 +441,17 @@ public final class TokenManager {
         log.trace("setTokenFriendlyName({}, {})", tokenId, friendlyName);
 
         findToken(tokenId).setFriendlyName(friendlyName);
+        modified();
     }
 
     /**
      * @param tokenId the token if
      * @return the token status info
      */
-    public static synchronized TokenStatusInfo getTokenStatus(String tokenId) {
+    public static TokenStatusInfo getTokenStatus(String tokenId) {
         log.trace("getTokenStatus({})", tokenId);
 
-        return findToken(tokenId).getStatus();
+        return findTokenInfo(tokenId).getStatus();
     }
 
     /**
@@ -489,7 +463,11 @@ public final class TokenManager {
             TokenStatusInfo status) {
         log.trace("setTokenStatus({}, {})", tokenId, status);
 
-        findToken(tokenId).setStatus(status);
+        Token token = findToken(tokenId);
+        if (token.getStatus() != status) {
+            token.setStatus(status);
+            modified();
+        }
     }
 
     /**
@@ -501,17 +479,21 @@ public final class TokenManager {
             boolean available) {
         log.trace("setKeyAvailable({}, {})", keyId, available);
 
-        findKey(keyId).setAvailable(available);
+        Key key = findKey(keyId);
+        if (key.isAvailable() != available) {
+            key.setAvailable(available);
+            modified();
+        }
     }
 
     /**
      * @param keyId the key id
      * @return true if key is available
      */
-    public static synchronized boolean isKeyAvailable(String keyId) {
+    public static boolean isKeyAvailable(String keyId) {
         log.trace("isKeyAvailable()");
 
-        return findKey(keyId).isAvailable();
+        return findKeyInfo(keyId).isAvailable();
     }
 
     /**
@@ -524,6 +506,7 @@ public final class TokenManager {
         log.trace("setKeyFriendlyName({}, {})", keyId, friendlyName);
 
         findKey(keyId).setFriendlyName(friendlyName);
+        modified();
     }
 
     /**
@@ -535,6 +518,7 @@ public final class TokenManager {
         log.trace("setKeyLabel({}, {})", keyId, label);
 
         findKey(keyId).setLabel(label);
+        modified();
     }
 
     /**
@@ -547,6 +531,7 @@ public final class TokenManager {
         log.trace("setKeyUsage({}, {})", keyId, keyUsage);
 
         findKey(keyId).setUsage(keyUsage);
+        modified();
     }
 
     /**
@@ -566,6 +551,7 @@ public final class TokenManager {
         key.setPublicKey(publicKeyBase64);
 
         token.addKey(key);
+        modified();
 
         return key.toDTO();
     }
@@ -578,8 +564,11 @@ public final class TokenManager {
     public static synchronized boolean removeKey(String keyId) {
         log.trace("removeKey({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
+        boolean removed = forKey((t, k) -> k.getId().equals(keyId),
                 (t, k) -> t.getKeys().remove(k)).orElse(false);
+        modified();
+
+        return removed;
     }
 
     /**
@@ -592,6 +581,7 @@ public final class TokenManager {
         log.trace("setPublicKey({}, {})", keyId, publicKeyBase64);
 
         findKey(keyId).setPublicKey(publicKeyBase64);
+        modified();
     }
 
     /**
@@ -608,6 +598,7 @@ public final class TokenManager {
         cert.setCertificate(certBytes);
 
         key.addCert(cert);
+        modified();
     }
 
     /**
@@ -630,6 +621,7 @@ public final class TokenManager {
         cert.setStatus(certInfo.getStatus());
 
         key.addCert(cert);
+        modified();
     }
 
     /**
@@ -642,6 +634,7 @@ public final class TokenManager {
         log.trace("setCertActive({}, {})", certId, active);
 
         findCert(certId).setActive(active);
+        modified();
     }
 
     /**
@@ -654,6 +647,7 @@ public final class TokenManager {
         log.trace("setCertStatus({}, {})", certId, status);
 
         findCert(certId).setStatus(status);
+        modified();
     }
 
     /**
@@ -664,8 +658,11 @@ public final class TokenManager {
     public static synchronized boolean removeCert(String certId) {
         log.trace("removeCert({})", certId);
 
-        return forCert((k, c) -> c.getId().equals(certId),
+        boolean removed = forCert((k, c) -> c.getId().equals(certId),
                 (k, c) -> k.getCerts().remove(c)).orElse(false);
+        modified();
+
+        return removed;
     }
 
     /**
@@ -690,6 +687,7 @@ public final class TokenManager {
         }
 
         key.setUsage(keyUsage);
+        modified();
 
         for (CertRequest certRequest : key.getCertRequests()) {
             ClientId crMember = certRequest.getMemberId();
@@ -707,6 +705,7 @@ public final class TokenManager {
 
         String certId = SignerUtil.randomId();
         key.addCertRequest(new CertRequest(certId, memberId, subjectName));
+        modified();
 
         log.info("Added new certificate request (memberId: {}, "
                 + "subjectId: {}) under key {}",
@@ -723,7 +722,7 @@ public final class TokenManager {
     public static synchronized String removeCertRequest(String certReqId) {
         log.trace("removeCertRequest({})", certReqId);
 
-        return forCertRequest((k, c) -> c.getId().equals(certReqId),
+        String keyId = forCertRequest((k, c) -> c.getId().equals(certReqId),
                 (k, c) -> {
                     if (k.getUsage() == KeyUsageInfo.AUTHENTICATION) {
                         // Authentication keys can only have one certificate request
@@ -736,6 +735,9 @@ public final class TokenManager {
 
                     return k.getId();
                 }).orElse(null);
+        modified();
+
+        return keyId;
     }
 
     /**
@@ -745,21 +747,57 @@ public final class TokenManager {
      */
     public static synchronized void setTokenInfo(String tokenId,
             Map<String, String> info) {
-        findToken(tokenId).setInfo(info);
+        Token token = findToken(tokenId);
+        if (!token.getTokenInfo().equals(info)) {
+            token.setInfo(info);
+            modified();
+        }
     }
 
     /**
      * @param tokenId the token id
      * @return true if batch signing is enabled for a token
      */
-    public static synchronized boolean isBatchSigningEnabled(String tokenId) {
+    public static boolean isBatchSigningEnabled(String tokenId) {
         log.trace("isBatchSigningEnabled({})", tokenId);
 
-        return findToken(tokenId).isBatchSigningEnabled();
+        TokenRegistry current = registry();
+        if (current.getTokenInfo(tokenId) == null) {
+            throw tokenNotFound(tokenId);
+        }
+
+        return current.isBatchSigningEnabled(tokenId);
     }
 
     // ------------------------------------------------------------------------
 
+    private static TokenRegistry registry() {
+        TokenRegistry current = registry;
+        if (current == null) {
+            current = rebuildRegistry();
+        }
+
+        return current;
+    }
+
+    private static synchronized TokenRegistry rebuildRegistry() {
+        if (registry == null) {
+            log.trace("rebuildRegistry()");
+
+            registry = new TokenRegistry(currentTokens);
+        }
+
+        return registry;
+    }
+
+    /**
+     * Discards the current snapshot of the tokens, must be called after the
+     * tokens have been modified.
+     */
+    private static void modified() {
+        registry = null;
+    }
+
     private static <T> Optional<T> forToken(Function<Token, Boolean> tester,
             Function<Token, T> mapper) {
         for (Token token : currentTokens) {
@@ -0,0 +1,219 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager;
+
+import static java.util.Collections.unmodifiableList;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.signer.model.Cert;
+import ee.ria.xroad.signer.model.Key;
+import ee.ria.xroad.signer.model.Token;
+import ee.ria.xroad.signer.protocol.dto.CertificateInfo;
+import ee.ria.xroad.signer.protocol.dto.KeyInfo;
+import ee.ria.xroad.signer.protocol.dto.KeyUsageInfo;
+import ee.ria.xroad.signer.protocol.dto.TokenInfo;
+import ee.ria.xroad.signer.tokenmanager.module.SoftwareModuleType;
+import ee.ria.xroad.signer.util.TokenAndKey;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Immutable snapshot of the tokens, their keys and certificates, indexed for
+ * the lookups done when handling signing requests. A new snapshot is built
+ * after the tokens have been modified.
+ */
+@Slf4j
+final class TokenRegistry {
+
+    private final List<TokenInfo> tokens = new ArrayList<>();
+
+    private final Map<String, TokenInfo> tokensById = new HashMap<>();
+
+    private final Map<String, String> moduleIdsByTokenId = new HashMap<>();
+
+    private final Set<String> batchSigningTokenIds = new HashSet<>();
+
+    private final Map<String, TokenAndKey> keysById = new HashMap<>();
+
+    private final Map<String, CertificateInfo> certsById = new HashMap<>();
+
+    private final Map<String, KeyInfo> keysByCertId = new HashMap<>();
+
+    private final Map<String, CertificateInfo> certsByHash = new HashMap<>();
+
+    private final Map<String, KeyInfo> keysByCertHash = new HashMap<>();
+
+    private final Map<String, X509Certificate> certificatesByHash =
+            new HashMap<>();
+
+    private final List<CertificateInfo> allCerts = new ArrayList<>();
+
+    // Filled on demand, since the snapshot does not change
+    private final ConcurrentMap<ClientId, List<KeyInfo>> signingKeysByMember =
+            new ConcurrentHashMap<>();
+
+    private String softwareTokenId;
+
+    TokenRegistry(List<Token> currentTokens) {
+        for (Token token : currentTokens) {
+            TokenInfo tokenInfo = token.toDTO();
+
+            tokens.add(tokenInfo);
+            tokensById.putIfAbsent(token.getId(), tokenInfo);
+            moduleIdsByTokenId.putIfAbsent(token.getId(), token.getModuleId());
+
+            if (token.isBatchSigningEnabled()) {
+                batchSigningTokenIds.add(token.getId());
+            }
+
+            if (softwareTokenId == null
+                    && SoftwareModuleType.TYPE.equals(token.getType())) {
+                softwareTokenId = token.getId();
+            }
+
+            List<Key> keys = token.getKeys();
+            for (int i = 0; i < keys.size(); i++) {
+                addKey(token, keys.get(i), tokenInfo.getKeyInfo().get(i));
+            }
+        }
+    }
+
+    List<TokenInfo> getTokens() {
+        return unmodifiableList(tokens);
+    }
+
+    TokenInfo getTokenInfo(String tokenId) {
+        return tokensById.get(tokenId);
+    }
+
+    String getModuleId(String tokenId) {
+        return moduleIdsByTokenId.get(tokenId);
+    }
+
+    boolean isBatchSigningEnabled(String tokenId) {
+        return batchSigningTokenIds.contains(tokenId);
+    }
+
+    String getSoftwareTokenId() {
+        return softwareTokenId;
+    }
+
+    TokenAndKey getTokenAndKey(String keyId) {
+        return keysById.get(keyId);
+    }
+
+    CertificateInfo getCertificateInfo(String certId) {
+        return certsById.get(certId);
+    }
+
+    KeyInfo getKeyInfoForCertId(String certId) {
+        return keysByCertId.get(certId);
+    }
+
+    CertificateInfo getCertificateInfoForCertHash(String certHash) {
+        return certsByHash.get(certHash);
+    }
+
+    KeyInfo getKeyInfoForCertHash(String certHash) {
+        return keysByCertHash.get(certHash);
+    }
+
+    X509Certificate getCertificateForCertHash(String certHash) {
+        return certificatesByHash.get(certHash);
+    }
+
+    List<CertificateInfo> getAllCerts() {
+        return unmodifiableList(allCerts);
+    }
+
+    List<KeyInfo> getSigningKeys(ClientId clientId) {
+        return signingKeysByMember.computeIfAbsent(clientId,
+                this::findSigningKeys);
+    }
+
+    private void addKey(Token token, Key key, KeyInfo keyInfo) {
+        keysById.putIfAbsent(key.getId(),
+                new TokenAndKey(token.getId(), keyInfo));
+
+        List<Cert> certs = key.getCerts();
+        for (int i = 0; i < certs.size(); i++) {
+            Cert cert = certs.get(i);
+            CertificateInfo certInfo = keyInfo.getCerts().get(i);
+
+            allCerts.add(certInfo);
+
+            certsById.putIfAbsent(cert.getId(), certInfo);
+            keysByCertId.putIfAbsent(cert.getId(), keyInfo);
+
+            if (cert.getHash() != null) {
+                certsByHash.putIfAbsent(cert.getHash(), certInfo);
+                keysByCertHash.putIfAbsent(cert.getHash(), keyInfo);
+                certificatesByHash.putIfAbsent(cert.getHash(),
+                        cert.getCertificate());
+            }
+        }
+    }
+
+    private List<KeyInfo> findSigningKeys(ClientId clientId) {
+        List<KeyInfo> keyInfo = new ArrayList<>();
+
+        for (TokenInfo token : tokens) {
+            if (!token.isActive() || !token.isAvailable()) {
+                // Ignore inactive (not usable) tokens
+                continue;
+            }
+
+            for (KeyInfo key : token.getKeyInfo()) {
+                if (!key.isAvailable()
+                        || key.getUsage() == KeyUsageInfo.AUTHENTICATION) {
+                    // Ignore authentication keys
+                    continue;
+                }
+
+                for (CertificateInfo cert : key.getCerts()) {
+                    if (!cert.isActive() || cert.getMemberId() == null) {
+                        // Ignore inactive and invalid certificates
+                        continue;
+                    }
+
+                    if (TokenManager.certBelongsToMember(cert, clientId)) {
+                        log.debug("Found key '{}' for client '{}'",
+                                key.getId(), cert.getMemberId());
+                        keyInfo.add(key);
+                    }
+                }
+            }
+        }
+
+        return unmodifiableList(keyInfo);
+    }
+}
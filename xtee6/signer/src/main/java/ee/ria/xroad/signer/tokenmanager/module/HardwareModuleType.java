@@ -42,4 +42,6 @@ public class HardwareModuleType implements ModuleType {
 
     private final boolean forceReadOnly;
 
+    private final int signSessionPoolSize;
+
 }
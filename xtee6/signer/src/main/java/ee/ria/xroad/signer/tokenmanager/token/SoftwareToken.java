@@ -22,15 +22,23 @@
  */
 package ee.ria.xroad.signer.tokenmanager.token;
 
+import static ee.ria.xroad.signer.protocol.ComponentNames.TOKEN_SIGN_WORKER;
+
+import java.security.PrivateKey;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import akka.actor.ActorRef;
 import akka.actor.Props;
+import akka.routing.RoundRobinPool;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.signer.protocol.dto.TokenInfo;
 import ee.ria.xroad.signer.tokenmanager.TokenManager;
 
 /**
- * Software token implementation.
+ * Software token implementation. Signatures are calculated by a pool of
+ * signing workers, while key management is handled by the token worker.
  */
 public class SoftwareToken extends AbstractToken {
 
@@ -38,6 +46,11 @@ public class SoftwareToken extends AbstractToken {
 
     private final SoftwareTokenType tokenType;
 
+    private final Map<String, PrivateKey> privateKeys =
+            new ConcurrentHashMap<>();
+
+    private ActorRef signWorkers;
+
     /**
      * Constructs new software token.
      * @param tokenInfo the token info
@@ -53,18 +66,36 @@ public class SoftwareToken extends AbstractToken {
     public void preStart() throws Exception {
         super.preStart();
 
+        signWorkers = createWatchedActor(createSignWorkers(),
+                TOKEN_SIGN_WORKER);
+
         initTokenInfo(tokenInfo);
     }
 
+    @Override
+    public void postStop() throws Exception {
+        stopWatchedActor(signWorkers);
+
+        super.postStop();
+    }
+
     @Override
     protected Props createWorker() {
         return Props.create(SoftwareTokenWorker.class,
-                tokenInfo, tokenType).withDispatcher(DISPATCHER);
+                tokenInfo, tokenType, privateKeys).withDispatcher(DISPATCHER);
     }
 
     @Override
     protected Props createSigner() {
-        return Props.create(TokenSigner.class);
+        return Props.create(TokenSigner.class, TOKEN_SIGN_WORKER);
+    }
+
+    private Props createSignWorkers() {
+        return new RoundRobinPool(
+                SystemProperties.getSignerSoftwareTokenSignWorkers()).props(
+                        Props.create(SoftwareTokenSignWorker.class,
+                                tokenInfo, privateKeys, worker)
+                                .withDispatcher(DISPATCHER));
     }
 
     private void initTokenInfo(TokenInfo tokenInfo) {
@@ -0,0 +1,107 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager.token;
+
+import static ee.ria.xroad.common.ErrorCodes.X_CANNOT_SIGN;
+import static ee.ria.xroad.signer.tokenmanager.TokenManager.isKeyAvailable;
+import static ee.ria.xroad.signer.tokenmanager.TokenManager.isTokenActive;
+import static ee.ria.xroad.signer.util.ExceptionHelper.keyNotAvailable;
+import static ee.ria.xroad.signer.util.ExceptionHelper.tokenNotActive;
+
+import java.security.PrivateKey;
+import java.util.Map;
+
+import akka.actor.ActorRef;
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.signer.protocol.dto.TokenInfo;
+import ee.ria.xroad.signer.util.AbstractSignerActor;
+import ee.ria.xroad.signer.util.CalculateSignature;
+import ee.ria.xroad.signer.util.CalculatedSignature;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Calculates signatures with the private keys loaded by the software token
+ * worker. Several sign workers can run in parallel, since each signature
+ * is calculated using a separate Signature instance.
+ */
+@Slf4j
+public class SoftwareTokenSignWorker extends AbstractSignerActor {
+
+    private final String tokenId;
+
+    private final Map<String, PrivateKey> privateKeys;
+
+    private final ActorRef tokenWorker;
+
+    /**
+     * Creates new sign worker.
+     * @param tokenInfo the token info
+     * @param privateKeys the private keys loaded by the token worker
+     * @param tokenWorker the token worker that loads the private keys
+     */
+    public SoftwareTokenSignWorker(TokenInfo tokenInfo,
+            Map<String, PrivateKey> privateKeys, ActorRef tokenWorker) {
+        this.tokenId = tokenInfo.getId();
+        this.privateKeys = privateKeys;
+        this.tokenWorker = tokenWorker;
+    }
+
+    @Override
+    public void onReceive(Object message) throws Exception {
+        if (message instanceof CalculateSignature) {
+            handleCalculateSignature((CalculateSignature) message);
+        } else {
+            unhandled(message);
+        }
+    }
+
+    private void handleCalculateSignature(CalculateSignature signRequest) {
+        String keyId = signRequest.getKeyId();
+
+        try {
+            if (!isTokenActive(tokenId)) {
+                throw tokenNotActive(tokenId);
+            }
+
+            if (!isKeyAvailable(keyId)) {
+                throw keyNotAvailable(keyId);
+            }
+
+            PrivateKey key = privateKeys.get(keyId);
+            if (key == null) {
+                // The key is not loaded yet, let the token worker load it
+                tokenWorker.forward(signRequest, getContext());
+                return;
+            }
+
+            log.debug("Signing with key '{}'", keyId);
+
+            byte[] signature = SoftwareTokenUtil.sign(key, signRequest.getData());
+            sendResponse(new CalculatedSignature(signRequest, signature, null));
+        } catch (Exception e) { // catch-log-rethrow
+            log.error("Error while signing with key '{}'", keyId, e);
+            CodedException tr = translateError(e).withPrefix(X_CANNOT_SIGN);
+            sendResponse(new CalculatedSignature(signRequest, null, tr));
+        }
+    }
+}
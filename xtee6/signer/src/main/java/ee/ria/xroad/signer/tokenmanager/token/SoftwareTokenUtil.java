@@ -32,6 +32,7 @@ import java.security.KeyPairGenerator;
 import java.security.KeyStore;
 import java.security.PrivateKey;
 import java.security.SecureRandom;
+import java.security.Signature;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
@@ -55,6 +56,9 @@ public final class SoftwareTokenUtil {
 
     static final String P12 = ".p12";
 
+    // Use no digesting algorithm, since the input data is already a digest
+    static final String SIGNATURE_ALGORITHM = "NONEwithRSA";
+
     private static final FilenameFilter P12_FILTER = new FilenameFilter() {
         @Override
         public boolean accept(File dir, String name) {
@@ -158,6 +162,13 @@ public final class SoftwareTokenUtil {
         return cert;
     }
 
+    static byte[] sign(PrivateKey key, byte[] data) throws Exception {
+        Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+        signature.initSign(key);
+        signature.update(data);
+        return signature.sign();
+    }
+
     static KeyPair generateKeyPair(int keySize) throws Exception {
         KeyPairGenerator keyPairGen = KeyPairGenerator.getInstance("RSA");
         keyPairGen.initialize(keySize, new SecureRandom());
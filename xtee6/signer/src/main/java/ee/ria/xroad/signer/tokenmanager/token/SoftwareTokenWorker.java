@@ -56,8 +56,6 @@ import java.nio.file.Paths;
 import java.security.KeyPair;
 import java.security.KeyStore;
 import java.security.PrivateKey;
-import java.security.Signature;
-import java.util.HashMap;
 import java.util.Map;
 
 import ee.ria.xroad.common.CodedException;
@@ -81,18 +79,20 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class SoftwareTokenWorker extends AbstractTokenWorker {
 
-    // Use no digesting algorithm, since the input data is already a digest
-    private static final String SIGNATURE_ALGORITHM = "NONEwithRSA";
-
-    private final Map<String, PrivateKey> privateKeys = new HashMap<>();
+    private final Map<String, PrivateKey> privateKeys;
 
     /**
      * Creates new worker.
      * @param tokenInfo the token info
      * @param ignored token type (not used)
+     * @param privateKeys the loaded private keys, shared with the
+     * signing workers of the token
      */
-    public SoftwareTokenWorker(TokenInfo tokenInfo, SoftwareTokenType ignored) {
+    public SoftwareTokenWorker(TokenInfo tokenInfo, SoftwareTokenType ignored,
+            Map<String, PrivateKey> privateKeys) {
         super(tokenInfo);
+
+        this.privateKeys = privateKeys;
     }
 
     @Override
@@ -194,10 +194,7 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
 
         log.debug("Signing with key '{}'", keyId);
 
-        Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
-        signature.initSign(key);
-        signature.update(data);
-        return signature.sign();
+        return SoftwareTokenUtil.sign(key, data);
     }
 
     // ------------------------------------------------------------------------
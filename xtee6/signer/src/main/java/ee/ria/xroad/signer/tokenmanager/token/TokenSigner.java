@@ -43,8 +43,23 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class TokenSigner extends UntypedActor {
 
-    private final ActorSelection tokenWorker =
-            getContext().actorSelection("../" + ComponentNames.TOKEN_WORKER);
+    private final ActorSelection tokenWorker;
+
+    /**
+     * Creates a token signer that calculates signatures using the token worker.
+     */
+    public TokenSigner() {
+        this(ComponentNames.TOKEN_WORKER);
+    }
+
+    /**
+     * Creates a token signer that calculates signatures using the given
+     * sibling actor.
+     * @param tokenWorkerName name of the actor calculating the signatures
+     */
+    public TokenSigner(String tokenWorkerName) {
+        tokenWorker = getContext().actorSelection("../" + tokenWorkerName);
+    }
 
     @Override
     public void onReceive(Object message) throws Exception {
@@ -0,0 +1,209 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.certmanager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ee.ria.xroad.common.OcspTestUtils;
+
+/**
+ * Tests for choosing the OCSP responders of a refresh cycle
+ */
+public class OcspRespondersTest {
+
+    private static final String FIRST = "http://first";
+    private static final String SECOND = "http://second";
+
+    private static final List<String> RESPONDERS = Arrays.asList(FIRST, SECOND);
+
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+
+    private OCSPResp response;
+
+    private ExecutorService executor;
+
+    /**
+     * Creates the response and the executor for parallel requests.
+     * @throws Exception if an error occurs
+     */
+    @Before
+    public void setUp() throws Exception {
+        response = OcspTestUtils.createSigRequiredOCSPResponse();
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    /**
+     * Stops the executor.
+     */
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Test that a responder that failed is tried after the other responders
+     * for the rest of the cycle, and first again in the next cycle.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void failedResponderTriedLast() throws Exception {
+        OcspResponders responders = new OcspResponders(4);
+
+        assertSame(response, responders.send(RESPONDERS, failing(FIRST)));
+        assertEquals(Arrays.asList(FIRST, SECOND), requests);
+
+        requests.clear();
+        assertSame(response, responders.send(RESPONDERS, failing(FIRST)));
+        assertEquals(Arrays.asList(SECOND), requests);
+
+        requests.clear();
+        responders.resetFailures();
+        assertSame(response, responders.send(RESPONDERS, failing(FIRST)));
+        assertEquals(Arrays.asList(FIRST, SECOND), requests);
+    }
+
+    /**
+     * Test that failed responders are still tried when no other responder
+     * is left.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void allRespondersFail() throws Exception {
+        OcspResponders responders = new OcspResponders(4);
+
+        assertNull(responders.send(RESPONDERS, failing(FIRST, SECOND)));
+        assertEquals(Arrays.asList(FIRST, SECOND), requests);
+
+        requests.clear();
+        assertNull(responders.send(RESPONDERS, failing(FIRST, SECOND)));
+        assertEquals(Arrays.asList(FIRST, SECOND), requests);
+    }
+
+    /**
+     * Test that requests to a responder are sent in parallel up to the
+     * per-responder limit.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void concurrentRequestsPerResponderLimited() throws Exception {
+        OcspResponders responders = new OcspResponders(2);
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+
+        List<Future<OCSPResp>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(() -> responders.send(Arrays.asList(FIRST), uri -> {
+                maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(50);
+                    return response;
+                } finally {
+                    active.decrementAndGet();
+                }
+            })));
+        }
+
+        for (Future<OCSPResp> result : results) {
+            assertSame(response, result.get(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(2, maxActive.get());
+    }
+
+    /**
+     * Test that requests waiting for a responder move on to the next
+     * responder when the responder fails, instead of each waiting for the
+     * failure themselves.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void waitingRequestsSkipResponderThatFailed() throws Exception {
+        OcspResponders responders = new OcspResponders(1);
+        CountDownLatch firstRequestSent = new CountDownLatch(1);
+        CountDownLatch timeout = new CountDownLatch(1);
+
+        OcspResponders.Request request = uri -> {
+            requests.add(uri);
+
+            if (FIRST.equals(uri)) {
+                firstRequestSent.countDown();
+                timeout.await();
+                throw new IOException("Connect timed out");
+            }
+
+            return response;
+        };
+
+        List<Future<OCSPResp>> results = new ArrayList<>();
+        results.add(executor.submit(() -> responders.send(RESPONDERS, request)));
+        firstRequestSent.await(5, TimeUnit.SECONDS);
+
+        // These wait for the permit of the first responder
+        for (int i = 0; i < 3; i++) {
+            results.add(executor.submit(() -> responders.send(RESPONDERS, request)));
+        }
+
+        Thread.sleep(100);
+        timeout.countDown();
+
+        for (Future<OCSPResp> result : results) {
+            assertSame(response, result.get(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(1, Collections.frequency(requests, FIRST));
+        assertEquals(4, Collections.frequency(requests, SECOND));
+    }
+
+    private OcspResponders.Request failing(String... failingResponders) {
+        List<String> failing = Arrays.asList(failingResponders);
+
+        return uri -> {
+            requests.add(uri);
+
+            if (failing.contains(uri)) {
+                throw new IOException("Connection refused");
+            }
+
+            return response;
+        };
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager;
+
+import static ee.ria.xroad.common.util.CryptoUtils.calculateCertHexHash;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.signer.protocol.dto.CertificateInfo;
+import ee.ria.xroad.signer.protocol.dto.KeyInfo;
+import ee.ria.xroad.signer.protocol.dto.KeyUsageInfo;
+import ee.ria.xroad.signer.tokenmanager.token.SoftwareTokenType;
+
+/**
+ * Tests the indexed lookups of the token manager.
+ */
+public class TokenManagerTest {
+
+    private static final String KEY_ID = "key";
+    private static final String CERT_ID = "cert";
+
+    private static final ClientId MEMBER =
+            ClientId.create("EE", "BUSINESS", "consumer");
+
+    private String tokenId;
+    private X509Certificate cert;
+
+    /**
+     * Creates a token with a signing key and certificate.
+     * @throws Exception if an error occurs
+     */
+    @Before
+    public void setUp() throws Exception {
+        TokenManager.currentTokens = new ArrayList<>();
+
+        tokenId = TokenManager.createToken(new SoftwareTokenType()).getId();
+        TokenManager.setTokenAvailable(tokenId, true);
+        TokenManager.setTokenActive(tokenId, true);
+
+        TokenManager.addKey(tokenId, KEY_ID, null);
+        TokenManager.setKeyAvailable(KEY_ID, true);
+        TokenManager.setKeyUsage(KEY_ID, KeyUsageInfo.SIGNING);
+
+        cert = TestCertUtil.getConsumer().cert;
+        TokenManager.addCert(KEY_ID, new CertificateInfo(MEMBER, true, true,
+                CertificateInfo.STATUS_REGISTERED, CERT_ID, cert.getEncoded(),
+                null));
+    }
+
+    /**
+     * Test.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void findsKeysAndCerts() throws Exception {
+        String certHash = calculateCertHexHash(cert);
+
+        assertEquals(tokenId, TokenManager.findTokenAndKey(KEY_ID).getTokenId());
+        assertEquals(KEY_ID, TokenManager.getKeyInfo(KEY_ID).getId());
+        assertEquals(CERT_ID, TokenManager.getCertificateInfo(CERT_ID).getId());
+        assertEquals(KEY_ID, TokenManager.getKeyInfoForCertId(CERT_ID).getId());
+        assertEquals(CERT_ID,
+                TokenManager.getCertificateInfoForCertHash(certHash).getId());
+        assertEquals(KEY_ID,
+                TokenManager.getKeyInfoForCertHash(certHash).getId());
+        assertEquals(cert, TokenManager.getCertificateForCertHash(certHash));
+        assertEquals(1, TokenManager.getAllCerts().size());
+
+        assertNull(TokenManager.getKeyInfo("foo"));
+        assertNull(TokenManager.getCertificateInfoForCertHash("foo"));
+    }
+
+    /**
+     * Test.
+     */
+    @Test
+    public void findsSigningKeysForMember() {
+        List<KeyInfo> keys = TokenManager.getKeyInfo(MEMBER);
+        assertEquals(1, keys.size());
+        assertEquals(KEY_ID, keys.get(0).getId());
+
+        assertTrue(TokenManager.getKeyInfo(
+                ClientId.create("EE", "BUSINESS", "producer")).isEmpty());
+    }
+
+    /**
+     * Test.
+     */
+    @Test
+    public void lookupsReflectModifications() {
+        assertTrue(TokenManager.isKeyAvailable(KEY_ID));
+        assertEquals(1, TokenManager.getKeyInfo(MEMBER).size());
+
+        TokenManager.setKeyAvailable(KEY_ID, false);
+
+        assertFalse(TokenManager.isKeyAvailable(KEY_ID));
+        assertTrue(TokenManager.getKeyInfo(MEMBER).isEmpty());
+
+        TokenManager.setCertActive(CERT_ID, false);
+        assertFalse(TokenManager.getCertificateInfo(CERT_ID).isActive());
+
+        assertTrue(TokenManager.removeCert(CERT_ID));
+        assertNull(TokenManager.getCertificateInfo(CERT_ID));
+
+        assertTrue(TokenManager.removeKey(KEY_ID));
+        assertNull(TokenManager.getKeyInfo(KEY_ID));
+        assertNotNull(TokenManager.getTokenInfo(tokenId));
+    }
+}